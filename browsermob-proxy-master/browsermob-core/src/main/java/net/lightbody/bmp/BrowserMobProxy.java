@@ -1,6 +1,7 @@
 package net.lightbody.bmp;
 
 import net.lightbody.bmp.core.har.Har;
+import net.lightbody.bmp.core.har.HarEntryBatch;
 import net.lightbody.bmp.filters.RequestFilter;
 import net.lightbody.bmp.filters.ResponseFilter;
 import net.lightbody.bmp.mitm.TrustSource;
@@ -107,6 +108,17 @@ public interface BrowserMobProxy {
      */
     Har getHar();
 
+    /**
+     * Retrieves the entries in the current HAR that were completed (i.e. their response was received or their request failed)
+     * after the specified cursor, and a new cursor. Passing the new cursor to the next call retrieves only the entries completed
+     * since this call, so a HAR can be polled without retrieving every entry each time. Cursors are specific to the current
+     * HAR; after {@link #newHar()} is called, poll the new HAR starting with a cursor of 0.
+     *
+     * @param cursor cursor returned by a previous call, or 0 to retrieve all completed entries
+     * @return entries completed after the cursor, and the new cursor, or null if HAR capture is not enabled
+     */
+    HarEntryBatch getHarEntriesSince(long cursor);
+
     /**
      * Starts a new HAR file with the default page name (see {@link #newPage()}. Enables HAR capture if it was not previously enabled.
      *
@@ -190,6 +202,34 @@ public interface BrowserMobProxy {
      */
     void disableHarCaptureTypes(CaptureType... captureTypes);
 
+    /**
+     * Limits the size of each request and response body captured in HARs created by subsequent calls to {@link #newHar()}.
+     * Bodies larger than the limit are truncated as they are received, and the HAR entry records the truncation in the custom
+     * <code>_truncated</code> and <code>_originalSize</code> fields of the entry's post data or content.
+     *
+     * @param maxContentSize maximum number of bytes to capture for each request or response body, or 0 for no limit
+     */
+    void setHarMaxContentSize(long maxContentSize);
+
+    /**
+     * @return maximum number of bytes captured for each request or response body, or 0 if the size is unlimited
+     */
+    long getHarMaxContentSize();
+
+    /**
+     * Limits the total size of the request and response bodies captured in each HAR created by subsequent calls to {@link #newHar()}.
+     * Once a HAR's budget is exhausted, bodies are truncated or not captured at all, and the truncation is recorded in the
+     * custom <code>_truncated</code> and <code>_originalSize</code> fields.
+     *
+     * @param contentBudget maximum number of bytes of content to capture in each HAR, or 0 for no limit
+     */
+    void setHarContentBudget(long contentBudget);
+
+    /**
+     * @return maximum number of bytes of content captured in each HAR, or 0 if the total size is unlimited
+     */
+    long getHarContentBudget();
+
     /**
      * Starts a new HAR page using the default page naming convention. The default page naming convention is "Page #", where "#" resets to 1
      * every time {@link #newHar()} or {@link #newHar(String)} is called, and increments on every subsequent call to {@link #newPage()} or
@@ -9,13 +9,31 @@ import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
 import net.lightbody.bmp.client.ClientUtil;
 import net.lightbody.bmp.core.har.Har;
+import net.lightbody.bmp.core.har.HarCapacity;
+import net.lightbody.bmp.core.har.HarCaptureBudget;
+import net.lightbody.bmp.core.har.HarContentStore;
+import net.lightbody.bmp.core.har.HarContentStoreFactory;
+import net.lightbody.bmp.core.har.HarEntry;
+import net.lightbody.bmp.core.har.HarEntryBatch;
+import net.lightbody.bmp.core.har.HarEntryIndex;
+import net.lightbody.bmp.core.har.HarEntryListener;
+import net.lightbody.bmp.core.har.HarEntrySubscription;
 import net.lightbody.bmp.core.har.HarLog;
 import net.lightbody.bmp.core.har.HarNameVersion;
 import net.lightbody.bmp.core.har.HarPage;
+import net.lightbody.bmp.core.har.HarPageAnalyzer;
+import net.lightbody.bmp.core.har.HarPageArchive;
+import net.lightbody.bmp.core.har.HarPageSummary;
+import net.lightbody.bmp.core.har.HeapContentStore;
 import net.lightbody.bmp.filters.AddHeadersFilter;
+import net.lightbody.bmp.filters.ActiveFilterPlan;
+import net.lightbody.bmp.filters.AsyncFilterHandler;
+import net.lightbody.bmp.filters.AsyncRequestFilter;
+import net.lightbody.bmp.filters.AsyncResponseFilter;
 import net.lightbody.bmp.filters.AutoBasicAuthFilter;
 import net.lightbody.bmp.filters.BlacklistFilter;
 import net.lightbody.bmp.filters.BrowserMobHttpFilterChain;
+import net.lightbody.bmp.filters.ConditionalFiltersSource;
 import net.lightbody.bmp.filters.HarCaptureFilter;
 import net.lightbody.bmp.filters.HttpConnectHarCaptureFilter;
 import net.lightbody.bmp.filters.HttpsHostCaptureFilter;
@@ -30,6 +48,8 @@ import net.lightbody.bmp.filters.ResponseFilterAdapter;
 import net.lightbody.bmp.filters.RewriteUrlFilter;
 import net.lightbody.bmp.filters.UnregisterRequestFilter;
 import net.lightbody.bmp.filters.WhitelistFilter;
+import net.lightbody.bmp.filters.support.FilterStatistics;
+import net.lightbody.bmp.filters.support.FilterStatisticsRecorder;
 import net.lightbody.bmp.mitm.KeyStoreFileCertificateSource;
 import net.lightbody.bmp.mitm.TrustSource;
 import net.lightbody.bmp.mitm.keys.ECKeyGenerator;
@@ -38,6 +58,7 @@ import net.lightbody.bmp.mitm.manager.ImpersonatingMitmManager;
 import net.lightbody.bmp.proxy.ActivityMonitor;
 import net.lightbody.bmp.proxy.BlacklistEntry;
 import net.lightbody.bmp.proxy.CaptureType;
+import net.lightbody.bmp.proxy.ContentCapturePolicy;
 import net.lightbody.bmp.proxy.RewriteRule;
 import net.lightbody.bmp.proxy.Whitelist;
 import net.lightbody.bmp.proxy.auth.AuthType;
@@ -60,13 +81,13 @@ import org.littleshoot.proxy.impl.ThreadPoolConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
@@ -100,6 +121,16 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
      */
     public static final String VIA_HEADER_ALIAS = "browsermobproxy";
 
+    /**
+     * The default maximum time to wait for each async filter's future to complete.
+     */
+    public static final long DEFAULT_ASYNC_FILTER_TIMEOUT_MS = 30000;
+
+    /**
+     * Maximum size of requests and responses aggregated for async filters, the same as the default of request and response filters.
+     */
+    private static final int ASYNC_FILTER_MAXIMUM_BUFFER_SIZE = 2097152;
+
     /**
      * True only after the proxy has been successfully started.
      */
@@ -115,6 +146,11 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
      */
     private final AtomicInteger harPageCount = new AtomicInteger(0);
 
+    /**
+     * The number of HARs whose pages have been persisted, used to give each HAR's persisted files a unique name.
+     */
+    private final AtomicInteger harArchiveCount = new AtomicInteger(0);
+
     /**
      * When true, MITM will be disabled. The proxy will no longer intercept HTTPS requests, but they will still be proxied.
      */
@@ -130,6 +166,33 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
      */
     private final List<HttpFiltersSource> filterFactories = new CopyOnWriteArrayList<>();
 
+    /**
+     * The filter factories that can affect requests under the current configuration. Recompiled by {@link #compileFilterPlan()}
+     * whenever the filter factories or the configuration of the built-in filters change.
+     */
+    private volatile ActiveFilterPlan activeFilterPlan = ActiveFilterPlan.EMPTY;
+
+    /**
+     * Records the latency of each filter's callbacks, when filterStatisticsEnabled is true.
+     */
+    private final FilterStatisticsRecorder filterStatisticsRecorder = new FilterStatisticsRecorder();
+
+    /**
+     * When true, the filters of new requests are instrumented by the filterStatisticsRecorder.
+     */
+    private volatile boolean filterStatisticsEnabled;
+
+    /**
+     * Asynchronous filters, which run outside the filter chain without blocking the event loop.
+     */
+    private final List<AsyncRequestFilter> asyncRequestFilters = new CopyOnWriteArrayList<>();
+    private final List<AsyncResponseFilter> asyncResponseFilters = new CopyOnWriteArrayList<>();
+
+    /**
+     * Maximum time to wait for each async filter's future to complete. 0 waits indefinitely.
+     */
+    private volatile long asyncFilterTimeoutMs = DEFAULT_ASYNC_FILTER_TIMEOUT_MS;
+
     /**
      * List of rejected URL patterns
      */
@@ -150,10 +213,56 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
      */
     private volatile EnumSet<CaptureType> harCaptureTypes = EnumSet.noneOf(CaptureType.class);
 
+    /**
+     * The capacity of HARs created by {@link #newHar()}. HARs are unlimited by default.
+     */
+    private volatile HarCapacity harCapacity = HarCapacity.UNLIMITED;
+
+    /**
+     * Selects the requests and responses whose content is captured. Captures all content by default.
+     */
+    private volatile ContentCapturePolicy harContentCapturePolicy = ContentCapturePolicy.CAPTURE_ALL;
+
+    /**
+     * The maximum size of each body and the total content captured in each new HAR, or 0 for no limit.
+     */
+    private volatile long harMaxContentSize;
+    private volatile long harContentBudget;
+
+    /**
+     * Creates the content store for each new HAR, or null if captured content is stored directly as text. By default, captured
+     * bodies are kept on the heap as bytes and are only converted to text when the HAR is read.
+     */
+    private volatile HarContentStoreFactory harContentStoreFactory = HeapContentStore.newFactory();
+
+    /**
+     * The directory to which the entries of ended pages are persisted, or null if all entries are kept in memory until the
+     * HAR is ended. Persistence is disabled by default.
+     */
+    private volatile File harPersistenceDirectory;
+
+    /**
+     * The size at which each HAR's persisted entries roll over to a new file, or 0 to persist each HAR to a single file.
+     */
+    private volatile long harPersistenceMaxFileSize = HarPageArchive.DEFAULT_MAX_FILE_SIZE;
+
+    /**
+     * Listeners notified when entries in the current HAR are completed.
+     */
+    private final List<HarEntryListener> harEntryListeners = new CopyOnWriteArrayList<>();
+
     /**
      * The current HAR being captured.
      */
     private volatile Har har;
+    /**
+     * The columnar index of the entries completed in the current HAR.
+     */
+    private volatile HarEntryIndex harEntryIndex;
+    /**
+     * Computes the page summaries of the current HAR.
+     */
+    private volatile HarPageAnalyzer harPageAnalyzer;
     /**
      * The current HarPage to which new requests will be associated.
      */
@@ -368,6 +477,8 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
         }
 
         proxyServer = bootstrap.start();
+
+        AsyncFilterHandler.installOnAcceptedConnections(this, proxyServer);
     }
 
     @Override
@@ -449,6 +560,16 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
         return har;
     }
 
+    @Override
+    public HarEntryBatch getHarEntriesSince(long cursor) {
+        Har har = this.har;
+        if (har == null) {
+            return null;
+        }
+
+        return har.getLog().getEntriesSince(cursor);
+    }
+
     @Override
     public Har newHar() {
         return newHar(null);
@@ -467,13 +588,240 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
 
         harPageCount.set(0);
 
-        this.har = new Har(new HarLog(HAR_CREATOR_VERSION));
+        closeContentStore(oldHar);
+        closePageArchive(oldHar);
+
+        HarLog harLog = new HarLog(HAR_CREATOR_VERSION, harCapacity);
+
+        HarContentStoreFactory contentStoreFactory = harContentStoreFactory;
+        if (contentStoreFactory != null) {
+            harLog.setContentStore(contentStoreFactory.newContentStore());
+        }
+
+        if (harMaxContentSize > 0L || harContentBudget > 0L) {
+            harLog.setCaptureBudget(new HarCaptureBudget(harMaxContentSize, harContentBudget));
+        }
+
+        File persistenceDirectory = harPersistenceDirectory;
+        if (persistenceDirectory != null) {
+            String filePrefix = "har-" + System.currentTimeMillis() + "-" + harArchiveCount.incrementAndGet();
+            harLog.setPageArchive(new HarPageArchive(persistenceDirectory, filePrefix, harPersistenceMaxFileSize));
+        }
+
+        HarEntryIndex entryIndex = new HarEntryIndex();
+        HarPageAnalyzer pageAnalyzer = new HarPageAnalyzer();
+        harLog.setEntryListener(newHarEntryDispatcher(entryIndex, pageAnalyzer));
+        harLog.setEvictionListener(entryIndex);
+
+        this.harEntryIndex = entryIndex;
+        this.harPageAnalyzer = pageAnalyzer;
+        this.har = new Har(harLog);
 
         newPage(initialPageRef, initialPageTitle);
 
         return oldHar;
     }
 
+    /**
+     * Sets the limits on the number of entries and amount of captured content that HARs created by subsequent calls to
+     * {@link #newHar()} will retain. When a HAR exceeds its capacity, older entries will be evicted or their content will
+     * be dropped, according to the capacity's {@link HarCapacity.EvictionPolicy}. Does not affect the current HAR.
+     * <p/>
+     * The capacity is not reset by {@link #newHar()}: it applies to every new HAR until it is changed. To remove the limits,
+     * set the capacity to null or {@link HarCapacity#UNLIMITED}.
+     *
+     * @param harCapacity capacity of new HARs, or null for unlimited
+     */
+    public void setHarCapacity(HarCapacity harCapacity) {
+        if (harCapacity == null) {
+            this.harCapacity = HarCapacity.UNLIMITED;
+        } else {
+            this.harCapacity = harCapacity;
+        }
+    }
+
+    /**
+     * @return the capacity of HARs created by {@link #newHar()}
+     */
+    public HarCapacity getHarCapacity() {
+        return harCapacity;
+    }
+
+    /**
+     * Sets the factory used to create a {@link HarContentStore} for each HAR created by subsequent calls to {@link #newHar()}.
+     * Captured request and response bodies are kept in the HAR's content store and are only converted to text when the HAR is
+     * read or serialized. The content store of a HAR is closed when the HAR is ended or replaced by a new HAR. By default, bodies
+     * are kept on the heap in a {@link HeapContentStore}. For example, to move large bodies out of the heap:
+     * <pre>
+     *     proxy.setHarContentStoreFactory(SpillingContentStore.newFactory(1024 * 1024, SpillTarget.MEMORY_MAPPED_FILE, null));
+     * </pre>
+     *
+     * @param harContentStoreFactory content store factory, or null to convert captured bodies to text as soon as they are captured
+     */
+    public void setHarContentStoreFactory(HarContentStoreFactory harContentStoreFactory) {
+        this.harContentStoreFactory = harContentStoreFactory;
+    }
+
+    public HarContentStoreFactory getHarContentStoreFactory() {
+        return harContentStoreFactory;
+    }
+
+    /**
+     * Enables persistence of ended pages for HARs created by subsequent calls to {@link #newHar()}. When a page ends, its
+     * completed entries are handed to a background thread that appends them to rolling files in the directory, one JSON entry
+     * per line, and the entries are released from memory. Entries of an ended page that complete later are persisted as they
+     * complete. The HAR's pages, and the entries of the current page, remain in memory.
+     * <p/>
+     * Persisted entries are read back from disk when the HAR's entries are read or the HAR is serialized, so
+     * {@link #getHar()} and {@link #endHar()} still return the complete HAR, and {@link #getHarEntriesSince(long)} still
+     * returns every completed entry. The persisted files are not deleted when the HAR ends. See {@link HarPageArchive}.
+     *
+     * @param directory directory to persist ended pages to, or null to keep all entries in memory
+     * @param maxFileSize size in bytes at which each HAR's persisted entries roll over to a new file, or 0 for no limit
+     */
+    public void setHarPersistence(File directory, long maxFileSize) {
+        if (maxFileSize < 0) {
+            throw new IllegalArgumentException("Maximum HAR persistence file size cannot be negative");
+        }
+
+        this.harPersistenceMaxFileSize = maxFileSize;
+        this.harPersistenceDirectory = directory;
+    }
+
+    /**
+     * @return the directory ended pages of new HARs are persisted to, or null if persistence is disabled
+     */
+    public File getHarPersistenceDirectory() {
+        return harPersistenceDirectory;
+    }
+
+    /**
+     * @return the size at which each HAR's persisted entries roll over to a new file, or 0 if there is no limit
+     */
+    public long getHarPersistenceMaxFileSize() {
+        return harPersistenceMaxFileSize;
+    }
+
+    /**
+     * Sets the policy that selects which requests and responses have their content captured, when content capture is enabled
+     * by the HAR capture types. Content that the policy does not select is not buffered at all. Takes effect for subsequent
+     * requests, including requests captured in the current HAR. For example, to capture only HTML documents and scripts:
+     * <pre>
+     *     proxy.setHarContentCapturePolicy(new ContentCapturePolicy(Arrays.asList(
+     *             new ContentCaptureRule(null, "text/html.*"),
+     *             new ContentCaptureRule(null, ".*javascript.*"))));
+     * </pre>
+     *
+     * @param harContentCapturePolicy content capture policy, or null to capture all content
+     */
+    public void setHarContentCapturePolicy(ContentCapturePolicy harContentCapturePolicy) {
+        if (harContentCapturePolicy == null) {
+            this.harContentCapturePolicy = ContentCapturePolicy.CAPTURE_ALL;
+        } else {
+            this.harContentCapturePolicy = harContentCapturePolicy;
+        }
+    }
+
+    public ContentCapturePolicy getHarContentCapturePolicy() {
+        return harContentCapturePolicy;
+    }
+
+    /**
+     * Returns the columnar index of the entries completed in the current HAR, which can aggregate entry timings and sizes
+     * without serializing the HAR. Each new HAR has its own index.
+     *
+     * @return the index of the current HAR, or null if no HAR has been created
+     */
+    public HarEntryIndex getHarEntryIndex() {
+        return harEntryIndex;
+    }
+
+    /**
+     * Returns the load times and sizes of each page in the current HAR, computed as entries were completed. See
+     * {@link HarPageAnalyzer} for how each value is calculated.
+     *
+     * @return summaries of the pages in the current HAR, or null if no HAR has been created
+     */
+    public List<HarPageSummary> getHarPageSummaries() {
+        Har har = this.har;
+        HarPageAnalyzer pageAnalyzer = this.harPageAnalyzer;
+        if (har == null || pageAnalyzer == null) {
+            return null;
+        }
+
+        return pageAnalyzer.getPageSummaries(har.getLog().getPages());
+    }
+
+    /**
+     * Adds a listener that will be notified when each HAR entry is completed, i.e. when its response has been fully received or
+     * its request has failed or timed out. The listener remains registered when a new HAR is created. Listeners are invoked on
+     * the proxy's event loop threads and must not block; to consume entries on another thread, add a {@link HarEntrySubscription}.
+     *
+     * @param listener listener to add
+     */
+    public void addHarEntryListener(HarEntryListener listener) {
+        harEntryListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addHarEntryListener(HarEntryListener)}.
+     *
+     * @param listener listener to remove
+     */
+    public void removeHarEntryListener(HarEntryListener listener) {
+        harEntryListeners.remove(listener);
+    }
+
+    /**
+     * Creates the entry listener of a new HAR, which adds completed entries to the HAR's index and page analyzer, and notifies
+     * the harEntryListeners. Since the listeners are shared by all HARs, they remain registered when a new HAR is created.
+     */
+    private HarEntryListener newHarEntryDispatcher(final HarEntryIndex entryIndex, final HarPageAnalyzer pageAnalyzer) {
+        return new HarEntryListener() {
+            @Override
+            public void entryCompleted(HarEntry entry) {
+                entryIndex.entryCompleted(entry);
+                pageAnalyzer.entryCompleted(entry);
+
+                for (HarEntryListener listener : harEntryListeners) {
+                    try {
+                        listener.entryCompleted(entry);
+                    } catch (RuntimeException e) {
+                        log.warn("HAR entry listener threw an exception", e);
+                    }
+                }
+            }
+        };
+    }
+
+    @Override
+    public void setHarMaxContentSize(long maxContentSize) {
+        if (maxContentSize < 0) {
+            throw new IllegalArgumentException("Maximum captured content size cannot be negative");
+        }
+
+        this.harMaxContentSize = maxContentSize;
+    }
+
+    @Override
+    public long getHarMaxContentSize() {
+        return harMaxContentSize;
+    }
+
+    @Override
+    public void setHarContentBudget(long contentBudget) {
+        if (contentBudget < 0) {
+            throw new IllegalArgumentException("HAR content budget cannot be negative");
+        }
+
+        this.harContentBudget = contentBudget;
+    }
+
+    @Override
+    public long getHarContentBudget() {
+        return harContentBudget;
+    }
+
     @Override
     public void setHarCaptureTypes(Set<CaptureType> harCaptureSettings) {
         if (harCaptureSettings == null || harCaptureSettings.isEmpty()) {
@@ -578,10 +926,34 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
         endPage();
 
         this.har = null;
+        this.harEntryIndex = null;
+        this.harPageAnalyzer = null;
+
+        closeContentStore(oldHar);
+        closePageArchive(oldHar);
 
         return oldHar;
     }
 
+    /**
+     * Closes the content store of the specified HAR, if it has one.
+     */
+    private static void closeContentStore(Har har) {
+        if (har != null && har.getLog() != null && har.getLog().getContentStore() != null) {
+            har.getLog().getContentStore().close();
+        }
+    }
+
+    /**
+     * Stops the page archive writer of the specified HAR, if it has one, once its pending entries are written. The archived
+     * entries remain readable through the HAR.
+     */
+    private static void closePageArchive(Har har) {
+        if (har != null && har.getLog() != null && har.getLog().getPageArchive() != null) {
+            har.getLog().getPageArchive().close();
+        }
+    }
+
     @Override
     public void setReadBandwidthLimit(long bytesPerSecond) {
         this.readBandwidthLimitBps = bytesPerSecond;
@@ -611,6 +983,7 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
     }
 
     public void endPage() {
+        Har har = this.har;
         if (har == null) {
             throw new IllegalStateException("No HAR exists for this proxy. Use newHar() to create a new HAR.");
         }
@@ -622,7 +995,10 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
             return;
         }
 
-        previousPage.getPageTimings().setOnLoad(new Date().getTime() - previousPage.getStartedDateTime().getTime());
+        previousPage.getPageTimings().setOnLoad(System.currentTimeMillis() - previousPage.getStartedDateTimeMillis());
+
+        // persist the page's entries, if the HAR persists ended pages
+        har.getLog().archivePage(previousPage.getId());
     }
 
     @Override
@@ -631,11 +1007,15 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
         newHeaders.putAll(headers);
 
         this.additionalHeaders = newHeaders;
+
+        compileFilterPlan();
     }
 
     @Override
     public void setLatency(long latency, TimeUnit timeUnit) {
         this.latencyMs = (int) TimeUnit.MILLISECONDS.convert(latency, timeUnit);
+
+        compileFilterPlan();
     }
 
     @Override
@@ -646,6 +1026,7 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
                 String base64EncodedCredentials = BrowserMobHttpUtil.base64EncodeBasicCredentials(username, password);
 
                 basicAuthCredentials.put(domain, base64EncodedCredentials);
+                compileFilterPlan();
                 break;
 
             default:
@@ -656,6 +1037,8 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
     @Override
     public void stopAutoAuthorization(String domain) {
         basicAuthCredentials.remove(domain);
+
+        compileFilterPlan();
     }
 
     @Override
@@ -709,6 +1092,8 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
     @Override
     public void rewriteUrl(String pattern, String replace) {
         rewriteRules.add(new RewriteRule(pattern, replace));
+
+        compileFilterPlan();
     }
 
     @Override
@@ -720,26 +1105,36 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
         }
 
         this.rewriteRules = new CopyOnWriteArrayList<>(newRules);
+
+        compileFilterPlan();
     }
 
     @Override
     public void clearRewriteRules() {
         rewriteRules.clear();
+
+        compileFilterPlan();
     }
 
     @Override
     public void blacklistRequests(String pattern, int responseCode) {
         blacklistEntries.add(new BlacklistEntry(pattern, responseCode));
+
+        compileFilterPlan();
     }
 
     @Override
     public void blacklistRequests(String pattern, int responseCode, String method) {
         blacklistEntries.add(new BlacklistEntry(pattern, responseCode, method));
+
+        compileFilterPlan();
     }
 
     @Override
     public void setBlacklist(Collection<BlacklistEntry> blacklist) {
         this.blacklistEntries = new CopyOnWriteArrayList<>(blacklist);
+
+        compileFilterPlan();
     }
 
     @Override
@@ -770,11 +1165,15 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
     @Override
     public void clearBlacklist() {
         blacklistEntries.clear();
+
+        compileFilterPlan();
     }
 
     @Override
     public void whitelistRequests(Collection<String> urlPatterns, int statusCode) {
         this.whitelist.set(new Whitelist(urlPatterns, statusCode));
+
+        compileFilterPlan();
     }
 
     @Override
@@ -824,26 +1223,36 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
     @Override
     public void enableEmptyWhitelist(int statusCode) {
         whitelist.set(new Whitelist(statusCode));
+
+        compileFilterPlan();
     }
 
     @Override
     public void disableWhitelist() {
         whitelist.set(Whitelist.WHITELIST_DISABLED);
+
+        compileFilterPlan();
     }
 
     @Override
     public void addHeader(String name, String value) {
         additionalHeaders.put(name, value);
+
+        compileFilterPlan();
     }
 
     @Override
     public void removeHeader(String name) {
         additionalHeaders.remove(name);
+
+        compileFilterPlan();
     }
 
     @Override
     public void removeAllHeaders() {
         additionalHeaders.clear();
+
+        compileFilterPlan();
     }
 
     @Override
@@ -920,11 +1329,15 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
     @Override
     public void addFirstHttpFilterFactory(HttpFiltersSource filterFactory) {
         filterFactories.add(0, filterFactory);
+
+        compileFilterPlan();
     }
 
     @Override
     public void addLastHttpFilterFactory(HttpFiltersSource filterFactory) {
         filterFactories.add(filterFactory);
+
+        compileFilterPlan();
     }
 
     /**
@@ -966,6 +1379,8 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
                 rewriteRules.remove(rewriteRule);
             }
         }
+
+        compileFilterPlan();
     }
 
     public boolean isStopped() {
@@ -978,10 +1393,132 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
 
     public void addHttpFilterFactory(HttpFiltersSource filterFactory) {
         filterFactories.add(filterFactory);
+
+        compileFilterPlan();
     }
 
+    /**
+     * Returns all filter factories added to this proxy, including built-in factories whose filters currently have no effect.
+     * Use {@link #addHttpFilterFactory(HttpFiltersSource)}, {@link #addFirstHttpFilterFactory(HttpFiltersSource)}, or
+     * {@link #addLastHttpFilterFactory(HttpFiltersSource)} to add factories.
+     *
+     * @return unmodifiable list of all filter factories, in filter chain order
+     */
     public List<HttpFiltersSource> getFilterFactories() {
-        return filterFactories;
+        return Collections.unmodifiableList(filterFactories);
+    }
+
+    /**
+     * @return the filter factories used to create the filters for new requests under the proxy's current configuration
+     */
+    public ActiveFilterPlan getActiveFilterPlan() {
+        return activeFilterPlan;
+    }
+
+    /**
+     * Enables or disables recording the latency, exceptions and allocations of each filter's callbacks. When enabled, the filters
+     * of new requests are wrapped so that every callback is timed and recorded in an HDR histogram for the filter's class.
+     * Requests already in progress are not affected. Disabling statistics does not discard the statistics recorded so far.
+     *
+     * @param filterStatisticsEnabled true to record filter statistics
+     */
+    public void setFilterStatisticsEnabled(boolean filterStatisticsEnabled) {
+        this.filterStatisticsEnabled = filterStatisticsEnabled;
+    }
+
+    public boolean isFilterStatisticsEnabled() {
+        return filterStatisticsEnabled;
+    }
+
+    /**
+     * @return the recorder of filter statistics, whether or not statistics are currently enabled
+     */
+    public FilterStatisticsRecorder getFilterStatisticsRecorder() {
+        return filterStatisticsRecorder;
+    }
+
+    /**
+     * Returns the statistics recorded for each filter class since statistics were first enabled or last reset. See
+     * {@link #setFilterStatisticsEnabled(boolean)}.
+     *
+     * @return statistics of each filter class, starting with the class that spent the most time in its callbacks
+     */
+    public List<FilterStatistics> getFilterStatistics() {
+        return filterStatisticsRecorder.getStatistics();
+    }
+
+    /**
+     * Discards the filter statistics recorded so far.
+     */
+    public void resetFilterStatistics() {
+        filterStatisticsRecorder.reset();
+    }
+
+    /**
+     * Adds an asynchronous request filter. Async request filters run before all other filters, in the order they were added, on requests
+     * received after they were added. While a filter's future is pending, the proxy stops reading from the client connection without
+     * blocking the event loop. Adding an async filter enables aggregation of requests of up to 2 MiB on new connections.
+     *
+     * @param filter async request filter to add
+     */
+    public void addAsyncRequestFilter(AsyncRequestFilter filter) {
+        asyncRequestFilters.add(filter);
+    }
+
+    /**
+     * Adds an asynchronous response filter. Async response filters run after all other filters, in the order they were added, on the
+     * responses to requests received after they were added. While a filter's future is pending, the response and any later writes to
+     * the client connection are held without blocking the event loop. Adding an async filter enables aggregation of responses of up to
+     * 2 MiB on new connections.
+     *
+     * @param filter async response filter to add
+     */
+    public void addAsyncResponseFilter(AsyncResponseFilter filter) {
+        asyncResponseFilters.add(filter);
+    }
+
+    /**
+     * @return unmodifiable list of the async request filters, in the order they run
+     */
+    public List<AsyncRequestFilter> getAsyncRequestFilters() {
+        return Collections.unmodifiableList(asyncRequestFilters);
+    }
+
+    /**
+     * @return unmodifiable list of the async response filters, in the order they run
+     */
+    public List<AsyncResponseFilter> getAsyncResponseFilters() {
+        return Collections.unmodifiableList(asyncResponseFilters);
+    }
+
+    /**
+     * Sets the maximum time to wait for each async filter's future to complete. When a future does not complete in time, it is
+     * cancelled and the message proceeds as if the filter had completed with null. The default is 30 seconds. A timeout of 0 waits
+     * indefinitely.
+     *
+     * @param timeout maximum time to wait for each async filter
+     * @param timeUnit unit of the timeout
+     */
+    public void setAsyncFilterTimeout(long timeout, TimeUnit timeUnit) {
+        this.asyncFilterTimeoutMs = TimeUnit.MILLISECONDS.convert(timeout, timeUnit);
+    }
+
+    /**
+     * @return maximum time to wait for each async filter's future to complete, in milliseconds
+     */
+    public long getAsyncFilterTimeoutMs() {
+        return asyncFilterTimeoutMs;
+    }
+
+    /**
+     * Recompiles the {@link ActiveFilterPlan} from the current filter factories and configuration. Must be called after
+     * changing any configuration that a {@link ConditionalFiltersSource} depends on. Compilation is synchronized so that the
+     * last plan compiled reflects all configuration changes made before it.
+     */
+    protected void compileFilterPlan() {
+        synchronized (filterFactories) {
+            activeFilterPlan = ActiveFilterPlan.compile(filterFactories);
+        }
     }
 
     @Override
@@ -1055,29 +1592,51 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
             }
         });
 
-        addHttpFilterFactory(new HttpFiltersSourceAdapter() {
+        // the blacklist, whitelist, authorization, rewrite, header and latency filters have no effect unless they are configured,
+        // so they are left out of the active filter plan until they are
+        addHttpFilterFactory(new ConditionalFiltersSource() {
+            @Override
+            public boolean isActive() {
+                return !blacklistEntries.isEmpty();
+            }
+
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
                 return new BlacklistFilter(originalRequest, ctx, getBlacklist());
             }
         });
 
-        addHttpFilterFactory(new HttpFiltersSourceAdapter() {
+        addHttpFilterFactory(new ConditionalFiltersSource() {
+            @Override
+            public boolean isActive() {
+                return isWhitelistEnabled();
+            }
+
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
                 Whitelist currentWhitelist = whitelist.get();
-                return new WhitelistFilter(originalRequest, ctx, isWhitelistEnabled(), currentWhitelist.getStatusCode(), currentWhitelist.getPatterns());
+                return new WhitelistFilter(originalRequest, ctx, currentWhitelist.isEnabled(), currentWhitelist.getStatusCode(), currentWhitelist.getPatterns());
             }
         });
 
-        addHttpFilterFactory(new HttpFiltersSourceAdapter() {
+        addHttpFilterFactory(new ConditionalFiltersSource() {
+            @Override
+            public boolean isActive() {
+                return !basicAuthCredentials.isEmpty();
+            }
+
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
                 return new AutoBasicAuthFilter(originalRequest, ctx, basicAuthCredentials);
             }
         });
 
-        addHttpFilterFactory(new HttpFiltersSourceAdapter() {
+        addHttpFilterFactory(new ConditionalFiltersSource() {
+            @Override
+            public boolean isActive() {
+                return !rewriteRules.isEmpty();
+            }
+
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
                 return new RewriteUrlFilter(originalRequest, ctx, rewriteRules);
@@ -1091,14 +1650,24 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
             }
         });
 
-        addHttpFilterFactory(new HttpFiltersSourceAdapter() {
+        addHttpFilterFactory(new ConditionalFiltersSource() {
+            @Override
+            public boolean isActive() {
+                return !additionalHeaders.isEmpty();
+            }
+
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest) {
                 return new AddHeadersFilter(originalRequest, additionalHeaders);
             }
         });
 
-        addHttpFilterFactory(new HttpFiltersSourceAdapter() {
+        addHttpFilterFactory(new ConditionalFiltersSource() {
+            @Override
+            public boolean isActive() {
+                return latencyMs > 0;
+            }
+
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest) {
                 return new LatencyFilter(originalRequest, latencyMs);
@@ -1114,7 +1683,7 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
     }
 
     private int getMaximumRequestBufferSize() {
-        int maxBufferSize = 0;
+        int maxBufferSize = asyncRequestFilters.isEmpty() ? 0 : ASYNC_FILTER_MAXIMUM_BUFFER_SIZE;
         for (HttpFiltersSource source : filterFactories) {
             int requestBufferSize = source.getMaximumRequestBufferSizeInBytes();
             if (requestBufferSize > maxBufferSize) {
@@ -1126,7 +1695,7 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
     }
 
     private int getMaximumResponseBufferSize() {
-        int maxBufferSize = 0;
+        int maxBufferSize = asyncResponseFilters.isEmpty() ? 0 : ASYNC_FILTER_MAXIMUM_BUFFER_SIZE;
         for (HttpFiltersSource source : filterFactories) {
             int requestBufferSize = source.getMaximumResponseBufferSizeInBytes();
             if (requestBufferSize > maxBufferSize) {
@@ -1151,7 +1720,7 @@ public class BrowserMobProxyServer implements BrowserMobProxy {
                 public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
                     Har har = getHar();
                     if (har != null && !ProxyUtils.isCONNECT(originalRequest)) {
-                        return new HarCaptureFilter(originalRequest, ctx, har, getCurrentHarPage() == null ? null : getCurrentHarPage().getId(), getHarCaptureTypes());
+                        return new HarCaptureFilter(originalRequest, ctx, har, getCurrentHarPage() == null ? null : getCurrentHarPage().getId(), getHarCaptureTypes(), getHarContentCapturePolicy());
                     } else {
                         return null;
                     }
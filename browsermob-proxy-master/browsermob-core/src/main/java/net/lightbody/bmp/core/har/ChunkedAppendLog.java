@@ -0,0 +1,324 @@
+package net.lightbody.bmp.core.har;
+
+import com.google.common.base.Predicate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An append-only log backed by a linked list of fixed-size chunks. Appends are lock-free and O(1): a writer reserves a slot in
+ * the tail chunk with a single atomic increment, and links a new chunk when the tail chunk is full. Unlike a
+ * {@link java.util.concurrent.CopyOnWriteArrayList}, existing elements are never copied when the log grows.
+ * <p/>
+ * Readers take a snapshot of the log by walking the chunks. A snapshot always contains a contiguous prefix of the appended
+ * elements: if a writer has reserved a slot but not yet published its element, the snapshot ends before that slot.
+ * <p/>
+ * Elements can be removed from the head of the log, so that the log can be used as a bounded FIFO, or from anywhere in the log
+ * by matching them against a predicate. Removals are serialized, but do not block appends or snapshots, and never wait for
+ * an append to complete.
+ *
+ * @param <E> type of element in the log
+ */
+class ChunkedAppendLog<E> {
+    /**
+     * Number of elements in each chunk.
+     */
+    static final int CHUNK_SIZE = 256;
+
+    /**
+     * Marker stored in a slot after its element has been removed from the log, to distinguish removed slots from slots that
+     * have been reserved but not yet published.
+     */
+    private static final Object REMOVED = new Object();
+
+    private static class Chunk {
+        /**
+         * The log-wide index of the first slot in this chunk.
+         */
+        final long baseIndex;
+
+        final AtomicReferenceArray<Object> slots = new AtomicReferenceArray<>(CHUNK_SIZE);
+
+        /**
+         * The number of slots reserved by writers. May exceed CHUNK_SIZE when writers race to append to a full chunk.
+         */
+        final AtomicInteger reserved = new AtomicInteger();
+
+        final AtomicReference<Chunk> next = new AtomicReference<>();
+
+        Chunk(long baseIndex) {
+            this.baseIndex = baseIndex;
+        }
+
+        int reservedSlots() {
+            return Math.min(reserved.get(), CHUNK_SIZE);
+        }
+    }
+
+    private volatile Chunk head;
+    private final AtomicReference<Chunk> tail;
+
+    /**
+     * The log-wide index of the first element that has not been removed. Only modified while holding the removal lock.
+     */
+    private volatile long firstIndex;
+
+    /**
+     * The number of elements after firstIndex that have been removed from the middle of the log. Only modified while holding
+     * the removal lock.
+     */
+    private volatile long removedAfterFirstIndex;
+
+    private final Object removalLock = new Object();
+
+    ChunkedAppendLog() {
+        Chunk chunk = new Chunk(0);
+        this.head = chunk;
+        this.tail = new AtomicReference<>(chunk);
+    }
+
+    /**
+     * Appends the element to the end of the log.
+     *
+     * @param element element to append; may not be null
+     * @return the log-wide index of the element
+     */
+    long append(E element) {
+        if (element == null) {
+            throw new NullPointerException("Cannot append a null element");
+        }
+
+        while (true) {
+            Chunk chunk = tail.get();
+
+            int slot = chunk.reserved.getAndIncrement();
+            if (slot < CHUNK_SIZE) {
+                chunk.slots.set(slot, element);
+
+                return chunk.baseIndex + slot;
+            }
+
+            // the tail chunk is full. link a new chunk (or use the chunk another writer already linked) and retry.
+            tail.compareAndSet(chunk, nextChunk(chunk));
+        }
+    }
+
+    /**
+     * Returns the chunk following the specified chunk, linking a new chunk if necessary.
+     */
+    private static Chunk nextChunk(Chunk chunk) {
+        Chunk next = chunk.next.get();
+        if (next != null) {
+            return next;
+        }
+
+        Chunk newChunk = new Chunk(chunk.baseIndex + CHUNK_SIZE);
+        if (chunk.next.compareAndSet(null, newChunk)) {
+            return newChunk;
+        } else {
+            return chunk.next.get();
+        }
+    }
+
+    /**
+     * Returns the number of elements in the log, including elements that are being appended concurrently.
+     */
+    int size() {
+        Chunk lastChunk = tail.get();
+
+        // if the tail moved after it was read, the tail chunk may be stale, so never return a negative size
+        return (int) Math.max(lastChunk.baseIndex + lastChunk.reservedSlots() - firstIndex - removedAfterFirstIndex, 0);
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Removes and returns the oldest element in the log. If the oldest element is still being appended by another thread, nothing
+     * is removed, so a descheduled writer never stalls removals.
+     *
+     * @return the removed element, or null if the log is empty or the oldest element has not yet been published
+     */
+    @SuppressWarnings("unchecked")
+    E removeFirst() {
+        synchronized (removalLock) {
+            skipRemovedElements();
+
+            if (isEmpty()) {
+                return null;
+            }
+
+            Chunk chunk = head;
+            int slot = (int) (firstIndex - chunk.baseIndex);
+
+            Object element = chunk.slots.get(slot);
+            if (element == null) {
+                // the slot has been reserved, but the writer has not yet published the element
+                return null;
+            }
+
+            chunk.slots.set(slot, REMOVED);
+            advanceFirstIndex(chunk, slot);
+
+            return (E) element;
+        }
+    }
+
+    /**
+     * Removes every published element that matches the predicate, wherever it is in the log, and adds the removed elements
+     * to the list, oldest first. Elements that are still being appended are not examined.
+     *
+     * @param predicate selects the elements to remove
+     * @param removed list to add the removed elements to
+     * @return number of elements removed
+     */
+    int remove(Predicate<? super E> predicate, List<E> removed) {
+        return remove(predicate, removed, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes the oldest published element that matches the predicate. Elements after the first match are not examined, so
+     * removing an element near the head of the log does not scan the entire log.
+     *
+     * @param predicate selects the element to remove
+     * @return the removed element, or null if no published element matches
+     */
+    E removeFirstMatch(Predicate<? super E> predicate) {
+        List<E> removed = new ArrayList<>(1);
+        remove(predicate, removed, 1);
+
+        return removed.isEmpty() ? null : removed.get(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private int remove(Predicate<? super E> predicate, List<E> removed, int maxRemovals) {
+        synchronized (removalLock) {
+            int removedCount = 0;
+
+            for (Chunk chunk = head; chunk != null; chunk = chunk.next.get()) {
+                int limit = chunk.reservedSlots();
+                for (int slot = (int) Math.max(firstIndex - chunk.baseIndex, 0); slot < limit; slot++) {
+                    Object element = chunk.slots.get(slot);
+                    if (element == null || element == REMOVED || !predicate.apply((E) element)) {
+                        continue;
+                    }
+
+                    chunk.slots.set(slot, REMOVED);
+                    removedAfterFirstIndex++;
+                    removedCount++;
+
+                    removed.add((E) element);
+
+                    if (removedCount == maxRemovals) {
+                        break;
+                    }
+                }
+
+                if (limit < CHUNK_SIZE || removedCount == maxRemovals) {
+                    break;
+                }
+            }
+
+            // release the chunks at the head of the log whose elements have all been removed
+            skipRemovedElements();
+
+            return removedCount;
+        }
+    }
+
+    /**
+     * Advances firstIndex past elements at the head of the log that were removed from the middle of the log. Must be called
+     * while holding the removal lock.
+     */
+    private void skipRemovedElements() {
+        while (removedAfterFirstIndex > 0) {
+            Chunk chunk = head;
+            int slot = (int) (firstIndex - chunk.baseIndex);
+            if (chunk.slots.get(slot) != REMOVED) {
+                return;
+            }
+
+            removedAfterFirstIndex--;
+            advanceFirstIndex(chunk, slot);
+        }
+    }
+
+    /**
+     * Advances firstIndex past the specified slot, which must be the slot at firstIndex. Must be called while holding the
+     * removal lock.
+     */
+    private void advanceFirstIndex(Chunk chunk, int slot) {
+        firstIndex++;
+
+        if (slot == CHUNK_SIZE - 1) {
+            // every element in the head chunk has been removed, so the head can move to the next chunk
+            head = nextChunk(chunk);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the elements in the log, oldest first.
+     */
+    List<E> snapshot() {
+        return snapshotFrom(0);
+    }
+
+    /**
+     * Returns a snapshot of the elements in the log whose log-wide index is greater than or equal to the specified index,
+     * oldest first. Elements that have already been removed from the log are not included.
+     *
+     * @param fromIndex log-wide index of the first element to include
+     */
+    List<E> snapshotFrom(long fromIndex) {
+        List<E> snapshot = new ArrayList<>(size());
+        snapshotFrom(fromIndex, snapshot);
+
+        return snapshot;
+    }
+
+    /**
+     * Adds the elements in the log whose log-wide index is greater than or equal to the specified index to the list, oldest
+     * first, and returns the log-wide index following the last element examined. Elements that have already been removed from
+     * the log are not added. Passing the returned index to a subsequent call will return only the elements appended since this
+     * call.
+     *
+     * @param fromIndex log-wide index of the first element to include
+     * @param snapshot list to add the elements to
+     * @return log-wide index following the last element examined, or fromIndex if no elements were examined
+     */
+    @SuppressWarnings("unchecked")
+    long snapshotFrom(long fromIndex, List<E> snapshot) {
+        long nextIndex = fromIndex;
+
+        for (Chunk chunk = head; chunk != null; chunk = chunk.next.get()) {
+            if (chunk.baseIndex + CHUNK_SIZE <= fromIndex) {
+                continue;
+            }
+
+            int limit = chunk.reservedSlots();
+            for (int slot = (int) Math.max(fromIndex - chunk.baseIndex, 0); slot < limit; slot++) {
+                Object element = chunk.slots.get(slot);
+                if (element == null) {
+                    // reached a slot that is still being appended to
+                    return nextIndex;
+                }
+
+                if (element != REMOVED) {
+                    snapshot.add((E) element);
+                }
+
+                nextIndex = chunk.baseIndex + slot + 1;
+            }
+
+            if (limit < CHUNK_SIZE) {
+                break;
+            }
+        }
+
+        return nextIndex;
+    }
+}
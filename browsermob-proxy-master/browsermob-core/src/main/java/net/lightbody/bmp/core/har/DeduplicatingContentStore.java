@@ -0,0 +1,241 @@
+package net.lightbody.bmp.core.har;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A content store that stores each unique body only once. Bodies are identified by their SHA-256 hash; when a body with the
+ * same hash as a previously stored body is captured, the entry shares the previously stored body instead of storing another
+ * copy. This significantly reduces memory use when a HAR contains many pages from the same site, since the same scripts,
+ * stylesheets and fonts are typically captured many times.
+ * <p/>
+ * Unique bodies are kept in a delegate store, so deduplication can be combined with a {@link SpillingContentStore}. Each unique
+ * body is reference counted, and is removed from this store and released from the delegate when the last entry that shares it
+ * is released.
+ * <p/>
+ * By default, every entry's content is serialized with its full text. If content references are enabled, each content object
+ * is also serialized with a custom {@code _contentRef} field identifying its text, and the text is only written with the first
+ * entry in each serialized HAR that has that {@code _contentRef}. Consumers of the HAR can resolve the text of the other entries
+ * by looking up the entry with the same {@code _contentRef} and a text field. The reference consists of the hash of the body and
+ * the charset the body was decoded with, or "base64" if the body was base64-encoded, since the same body has different text
+ * when it is decoded with a different charset. The mime type is not part of the reference, since it does not affect the text.
+ */
+public class DeduplicatingContentStore implements HarContentStore {
+    /**
+     * Prefix of content references, identifying the hash algorithm.
+     */
+    public static final String CONTENT_REF_PREFIX = "sha256:";
+
+    private final HarContentStore delegate;
+    private final boolean contentRefsEnabled;
+
+    /**
+     * The unique bodies in this store. Guarded by its own monitor, so that a body cannot be shared by a new entry while it is
+     * being released by the last entry that referenced it.
+     */
+    private final Map<HashCode, UniqueContent> contentByHash = new HashMap<>();
+
+    private final AtomicLong duplicateCount = new AtomicLong();
+    private final AtomicLong deduplicatedBytes = new AtomicLong();
+
+    /**
+     * Creates a deduplicating store that keeps unique bodies on the heap and serializes the full text of every entry.
+     */
+    public DeduplicatingContentStore() {
+        this(new HeapContentStore(), false);
+    }
+
+    /**
+     * Creates a deduplicating store that keeps unique bodies in the delegate store.
+     *
+     * @param delegate store for unique bodies
+     * @param contentRefsEnabled when true, serialize a {@code _contentRef} with each content object and omit the text of duplicate bodies
+     */
+    public DeduplicatingContentStore(HarContentStore delegate, boolean contentRefsEnabled) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate content store cannot be null");
+        }
+
+        this.delegate = delegate;
+        this.contentRefsEnabled = contentRefsEnabled;
+    }
+
+    /**
+     * Returns a factory that creates a new DeduplicatingContentStore for each HAR.
+     *
+     * @param delegateFactory factory for the store that will hold unique bodies, or null to keep unique bodies on the heap
+     * @param contentRefsEnabled when true, serialize a {@code _contentRef} with each content object and omit the text of duplicate bodies
+     */
+    public static HarContentStoreFactory newFactory(final HarContentStoreFactory delegateFactory, final boolean contentRefsEnabled) {
+        return new HarContentStoreFactory() {
+            @Override
+            public HarContentStore newContentStore() {
+                HarContentStore delegate = delegateFactory == null ? new HeapContentStore() : delegateFactory.newContentStore();
+
+                return new DeduplicatingContentStore(delegate, contentRefsEnabled);
+            }
+        };
+    }
+
+    @Override
+    public StoredContent store(byte[] content) {
+        HashCode hash = Hashing.sha256().hashBytes(content);
+
+        UniqueContent uniqueContent;
+        synchronized (contentByHash) {
+            uniqueContent = contentByHash.get(hash);
+            if (uniqueContent == null) {
+                uniqueContent = new UniqueContent(delegate.store(content), hash);
+                contentByHash.put(hash, uniqueContent);
+
+                return new ContentAddressedContent(uniqueContent, contentRefsEnabled, false);
+            }
+
+            uniqueContent.referenceCount++;
+        }
+
+        duplicateCount.incrementAndGet();
+        deduplicatedBytes.addAndGet(content.length);
+
+        return new ContentAddressedContent(uniqueContent, contentRefsEnabled, true);
+    }
+
+    @Override
+    public void release(StoredContent content) {
+        if (!(content instanceof ContentAddressedContent) || !((ContentAddressedContent) content).released.compareAndSet(false, true)) {
+            return;
+        }
+
+        UniqueContent uniqueContent = ((ContentAddressedContent) content).uniqueContent;
+        synchronized (contentByHash) {
+            if (contentByHash.get(uniqueContent.hash) != uniqueContent || --uniqueContent.referenceCount > 0) {
+                return;
+            }
+
+            contentByHash.remove(uniqueContent.hash);
+        }
+
+        delegate.release(uniqueContent.content);
+    }
+
+    /**
+     * @return number of captured bodies that were duplicates of previously stored bodies
+     */
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    /**
+     * @return total size of the duplicate bodies that were not stored, in bytes
+     */
+    public long getDeduplicatedBytes() {
+        return deduplicatedBytes.get();
+    }
+
+    /**
+     * @return number of unique bodies in this store
+     */
+    public int getUniqueContentCount() {
+        synchronized (contentByHash) {
+            return contentByHash.size();
+        }
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    /**
+     * A unique body, and the number of unreleased references to it.
+     */
+    private static class UniqueContent {
+        private final StoredContent content;
+        private final HashCode hash;
+
+        /**
+         * Guarded by the store's contentByHash monitor.
+         */
+        private int referenceCount = 1;
+
+        private UniqueContent(StoredContent content, HashCode hash) {
+            this.content = content;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * A reference to a body in a DeduplicatingContentStore.
+     */
+    public static class ContentAddressedContent implements StoredContent {
+        private final UniqueContent uniqueContent;
+        private final boolean contentRefEnabled;
+        private final boolean duplicate;
+
+        /**
+         * Set when this reference is released, so that releasing it again does not release another entry's reference.
+         */
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private ContentAddressedContent(UniqueContent uniqueContent, boolean contentRefEnabled, boolean duplicate) {
+            this.uniqueContent = uniqueContent;
+            this.contentRefEnabled = contentRefEnabled;
+            this.duplicate = duplicate;
+        }
+
+        @Override
+        public int getSize() {
+            return uniqueContent.content.getSize();
+        }
+
+        @Override
+        public byte[] getBytes() {
+            return uniqueContent.content.getBytes();
+        }
+
+        /**
+         * @return the stored content this reference points to
+         */
+        StoredContent getContent() {
+            return uniqueContent.content;
+        }
+
+        /**
+         * @return the content reference identifying this body, e.g. "sha256:9f86d0..."
+         */
+        public String getContentRef() {
+            return CONTENT_REF_PREFIX + uniqueContent.hash.toString();
+        }
+
+        /**
+         * Returns the content reference identifying the text of this body when it is decoded with the specified charset, e.g.
+         * "sha256:9f86d0...;charset=UTF-8", or "sha256:9f86d0...;base64" if the body is base64-encoded.
+         *
+         * @param charset charset the body is decoded with, or null if the body is base64-encoded
+         * @return the content reference identifying the text of this body
+         */
+        public String getContentRef(Charset charset) {
+            return getContentRef() + (charset == null ? ";base64" : ";charset=" + charset.name());
+        }
+
+        /**
+         * @return true if the {@code _contentRef} should be serialized with this content
+         */
+        public boolean isContentRefEnabled() {
+            return contentRefEnabled;
+        }
+
+        /**
+         * @return true if this body duplicates a body that was previously stored in the same store
+         */
+        public boolean isDuplicate() {
+            return duplicate;
+        }
+    }
+}
@@ -3,13 +3,30 @@ package net.lightbody.bmp.core.har;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.util.EnumMap;
+import java.util.Map;
 
 public class Har {
 
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final ObjectMapper OBJECT_MAPPER = HarFormat.JSON.newObjectMapper();
+
+    private static final HarStreamingWriter HAR_WRITER = new HarStreamingWriter(OBJECT_MAPPER);
+
+    private static final Map<HarFormat, HarStreamingWriter> FORMAT_WRITERS = new EnumMap<>(HarFormat.class);
+
+    static {
+        for (HarFormat format : HarFormat.values()) {
+            if (format == HarFormat.JSON) {
+                FORMAT_WRITERS.put(format, HAR_WRITER);
+            } else {
+                FORMAT_WRITERS.put(format, new HarStreamingWriter(format.newObjectMapper()));
+            }
+        }
+    }
 
     private volatile HarLog log;
 
@@ -28,15 +45,43 @@ public class Har {
         this.log = log;
     }
 
+    /**
+     * Writes this HAR as JSON to the specified writer. Pages and entries are serialized one at a time as they are written, so
+     * the entire HAR is never held in memory as a String. See {@link HarStreamingWriter}.
+     */
     public void writeTo(Writer writer) throws IOException {
-        OBJECT_MAPPER.writeValue(writer, this);
+        HAR_WRITER.write(this, writer);
     }
 
     public void writeTo(OutputStream os) throws IOException {
-        OBJECT_MAPPER.writeValue(os, this);
+        HAR_WRITER.write(this, os);
     }
 
+    /**
+     * Writes this HAR as JSON to the specified file. If the file name ends with a compressed file suffix (e.g. example.har.gz),
+     * the HAR is compressed as it is written. See {@link HarCompression}.
+     */
     public void writeTo(File file) throws IOException {
-        OBJECT_MAPPER.writeValue(file, this);
+        writeTo(file, HarFormat.JSON);
+    }
+
+    /**
+     * Writes this HAR to the stream in the specified format. Binary formats are streamed the same way as JSON.
+     * See {@link HarFormat}.
+     */
+    public void writeTo(OutputStream os, HarFormat format) throws IOException {
+        FORMAT_WRITERS.get(format).write(this, os);
+    }
+
+    public void writeTo(File file, HarFormat format) throws IOException {
+        HarCompression compression = HarCompression.forFile(file);
+        if (compression == HarCompression.NONE) {
+            FORMAT_WRITERS.get(format).write(this, file);
+        } else {
+            try (OutputStream fileStream = new FileOutputStream(file);
+                 OutputStream os = compression.compress(fileStream)) {
+                FORMAT_WRITERS.get(format).write(this, os);
+            }
+        }
     }
 }
@@ -0,0 +1,94 @@
+package net.lightbody.bmp.core.har;
+
+/**
+ * Limits on the amount of data a {@link HarLog} will retain. When a log exceeds its capacity, the oldest entries are evicted
+ * (or their captured content is dropped) according to the {@link EvictionPolicy}. This allows a HAR to be captured indefinitely,
+ * e.g. during a long soak test, without exhausting the heap.
+ * <p/>
+ * A limit of 0 indicates that the corresponding value is unlimited. HarCapacity objects are immutable.
+ */
+public class HarCapacity {
+    /**
+     * Default capacity for HarLogs: an unlimited number of entries and unlimited captured content.
+     */
+    public static final HarCapacity UNLIMITED = new HarCapacity(0, 0L, EvictionPolicy.EVICT_OLDEST_ENTRIES);
+
+    /**
+     * Determines how a HarLog reclaims space when the retained content size exceeds {@link #getMaxRetainedBytes()}.
+     * Regardless of the policy, entries are always evicted when the number of entries exceeds {@link #getMaxEntries()}.
+     */
+    public enum EvictionPolicy {
+        /**
+         * Remove the oldest entries from the log entirely.
+         */
+        EVICT_OLDEST_ENTRIES,
+
+        /**
+         * Keep the oldest entries in the log, but discard their captured request and response bodies.
+         */
+        DROP_OLDEST_CONTENT
+    }
+
+    private final int maxEntries;
+    private final long maxRetainedBytes;
+    private final EvictionPolicy evictionPolicy;
+
+    /**
+     * Creates a capacity that limits the number of entries in the log, evicting the oldest entries when necessary.
+     *
+     * @param maxEntries maximum number of entries to retain, or 0 for no limit
+     */
+    public HarCapacity(int maxEntries) {
+        this(maxEntries, 0L, EvictionPolicy.EVICT_OLDEST_ENTRIES);
+    }
+
+    /**
+     * Creates a capacity that limits the number of entries and the size of the captured request and response content.
+     *
+     * @param maxEntries maximum number of entries to retain, or 0 for no limit
+     * @param maxRetainedBytes maximum number of bytes of captured content to retain, or 0 for no limit
+     * @param evictionPolicy policy to use when the captured content exceeds maxRetainedBytes
+     */
+    public HarCapacity(int maxEntries, long maxRetainedBytes, EvictionPolicy evictionPolicy) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("Maximum number of HAR entries cannot be negative");
+        }
+
+        if (maxRetainedBytes < 0) {
+            throw new IllegalArgumentException("Maximum retained HAR content size cannot be negative");
+        }
+
+        if (evictionPolicy == null) {
+            throw new IllegalArgumentException("Eviction policy cannot be null");
+        }
+
+        this.maxEntries = maxEntries;
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    /**
+     * @return maximum number of entries the log will retain, or 0 if the number of entries is unlimited
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return maximum number of bytes of captured content the log will retain, or 0 if the content size is unlimited
+     */
+    public long getMaxRetainedBytes() {
+        return maxRetainedBytes;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * @return true if this capacity places any limit on the log
+     */
+    public boolean isBounded() {
+        return maxEntries > 0 || maxRetainedBytes > 0;
+    }
+}
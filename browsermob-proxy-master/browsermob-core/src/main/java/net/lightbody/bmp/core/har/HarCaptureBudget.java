@@ -0,0 +1,104 @@
+package net.lightbody.bmp.core.har;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of bytes of request and response content captured in a HAR. Unlike {@link HarCapacity}, which reclaims
+ * space after content has been captured, the budget is enforced as each chunk of content is received, so a body that exceeds
+ * the budget is never fully buffered. Bodies that exceed the budget are truncated, and bodies received after the budget is
+ * exhausted are not captured at all. Reserved bytes are returned to the budget when the content they were reserved for is
+ * discarded (e.g. compressed content that was decompressed, or a response that timed out), and when the entry that
+ * captured them is evicted or archived, so a budget limits the content held in memory at any one time rather than the
+ * content captured over the lifetime of the HAR.
+ * <p/>
+ * A limit of 0 indicates that the corresponding value is unlimited. A budget is shared by all requests captured in a single
+ * HAR, and is safe to use from multiple threads.
+ */
+public class HarCaptureBudget {
+    private final long maxContentSize;
+    private final long maxTotalContentSize;
+
+    /**
+     * Number of bytes reserved from this budget. Only maintained when the total content size is limited.
+     */
+    private final AtomicLong reservedBytes = new AtomicLong();
+
+    /**
+     * Creates a capture budget.
+     *
+     * @param maxContentSize maximum number of bytes to capture for each request or response body, or 0 for no limit
+     * @param maxTotalContentSize maximum number of bytes to capture for all bodies in the HAR, or 0 for no limit
+     */
+    public HarCaptureBudget(long maxContentSize, long maxTotalContentSize) {
+        if (maxContentSize < 0) {
+            throw new IllegalArgumentException("Maximum captured content size cannot be negative");
+        }
+
+        if (maxTotalContentSize < 0) {
+            throw new IllegalArgumentException("Maximum total captured content size cannot be negative");
+        }
+
+        this.maxContentSize = maxContentSize;
+        this.maxTotalContentSize = maxTotalContentSize;
+    }
+
+    /**
+     * @return maximum number of bytes to capture for each request or response body, or 0 if the size is unlimited
+     */
+    public long getMaxContentSize() {
+        return maxContentSize;
+    }
+
+    /**
+     * @return maximum number of bytes to capture for all bodies in the HAR, or 0 if the total size is unlimited
+     */
+    public long getMaxTotalContentSize() {
+        return maxTotalContentSize;
+    }
+
+    /**
+     * @return number of bytes reserved from the total budget, or 0 if the total content size is unlimited
+     */
+    public long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    /**
+     * Reserves up to the specified number of bytes from the total budget. The reserved bytes remain reserved until they are
+     * returned by {@link #release(long)}.
+     *
+     * @param bytes number of bytes to capture
+     * @return number of bytes that may be captured, between 0 and bytes
+     */
+    public long reserve(long bytes) {
+        if (maxTotalContentSize == 0L) {
+            return bytes;
+        }
+
+        while (true) {
+            long reserved = reservedBytes.get();
+            long granted = Math.min(bytes, maxTotalContentSize - reserved);
+            if (granted <= 0L) {
+                return 0L;
+            }
+
+            if (reservedBytes.compareAndSet(reserved, reserved + granted)) {
+                return granted;
+            }
+        }
+    }
+
+    /**
+     * Returns bytes previously granted by {@link #reserve(long)} to the total budget, once the content they were reserved for
+     * is no longer retained.
+     *
+     * @param bytes number of reserved bytes to return
+     */
+    public void release(long bytes) {
+        if (maxTotalContentSize == 0L || bytes <= 0L) {
+            return;
+        }
+
+        reservedBytes.addAndGet(-bytes);
+    }
+}
@@ -0,0 +1,182 @@
+package net.lightbody.bmp.core.har;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compression that can be applied to a {@link Har} as it is written. The compressing stream wraps the destination stream, so the
+ * HAR is compressed as each page and entry is serialized, and the uncompressed HAR is never held in memory.
+ * <p/>
+ * HARs are mostly repetitive text, so the fastest compression level is used: it produces output only slightly larger than the
+ * default level, and compresses considerably faster.
+ */
+public enum HarCompression {
+    NONE("identity", null) {
+        @Override
+        public OutputStream compress(OutputStream os) {
+            return os;
+        }
+
+        @Override
+        public InputStream decompress(InputStream is) {
+            return is;
+        }
+    },
+
+    GZIP("gzip", ".gz") {
+        @Override
+        public OutputStream compress(OutputStream os) throws IOException {
+            return new GZIPOutputStream(os, BUFFER_SIZE) {
+                {
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream is) throws IOException {
+            return new GZIPInputStream(is, BUFFER_SIZE);
+        }
+    },
+
+    /**
+     * The HTTP deflate content coding, which is zlib-wrapped deflate data (RFC 7230, section 4.2.2).
+     */
+    DEFLATE("deflate", null) {
+        @Override
+        public OutputStream compress(OutputStream os) {
+            return new DeflaterOutputStream(os, new Deflater(Deflater.BEST_SPEED), BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        // DeflaterOutputStream only releases its Deflater's native memory when it created the Deflater itself
+                        def.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream is) {
+            return new InflaterInputStream(is);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String contentEncoding;
+    private final String fileSuffix;
+
+    HarCompression(String contentEncoding, String fileSuffix) {
+        this.contentEncoding = contentEncoding;
+        this.fileSuffix = fileSuffix;
+    }
+
+    /**
+     * Returns a stream that compresses data and writes it to the specified stream. Closing the returned stream finishes the
+     * compressed data and closes the underlying stream.
+     *
+     * @param os stream to write compressed data to
+     * @return compressing stream
+     */
+    public abstract OutputStream compress(OutputStream os) throws IOException;
+
+    /**
+     * Returns a stream that decompresses data read from the specified stream.
+     *
+     * @param is stream to read compressed data from
+     * @return decompressing stream
+     */
+    public abstract InputStream decompress(InputStream is) throws IOException;
+
+    /**
+     * @return the value of the HTTP Content-Encoding header for this compression, e.g. gzip
+     */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    /**
+     * @return the file name suffix that selects this compression, e.g. .gz, or null if no suffix selects it
+     */
+    public String getFileSuffix() {
+        return fileSuffix;
+    }
+
+    /**
+     * Returns the compression indicated by the file's name, e.g. GZIP for a file named example.har.gz.
+     *
+     * @param file HAR file
+     * @return the compression for the file, or NONE if the name does not have a compressed file suffix
+     */
+    public static HarCompression forFile(File file) {
+        String fileName = file.getName().toLowerCase();
+
+        for (HarCompression compression : values()) {
+            if (compression.fileSuffix != null && fileName.endsWith(compression.fileSuffix)) {
+                return compression;
+            }
+        }
+
+        return NONE;
+    }
+
+    /**
+     * Selects the compression to respond with based on the value of an HTTP Accept-Encoding header. The supported encoding with
+     * the highest quality value is selected; when quality values are equal, gzip is preferred. Returns NONE if the header is
+     * null or does not accept a supported encoding.
+     *
+     * @param acceptEncodingHeader value of the Accept-Encoding header, may be null
+     * @return the preferred supported compression, or NONE
+     */
+    public static HarCompression fromAcceptEncodingHeader(String acceptEncodingHeader) {
+        if (acceptEncodingHeader == null) {
+            return NONE;
+        }
+
+        HarCompression preferredCompression = NONE;
+        double preferredQuality = 0;
+
+        for (String coding : acceptEncodingHeader.split(",")) {
+            String[] params = coding.split(";");
+            String encoding = params[0].trim();
+
+            double quality = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+
+            HarCompression compression;
+            if ("*".equals(encoding) || GZIP.contentEncoding.equalsIgnoreCase(encoding)) {
+                compression = GZIP;
+            } else if (DEFLATE.contentEncoding.equalsIgnoreCase(encoding)) {
+                compression = DEFLATE;
+            } else {
+                continue;
+            }
+
+            if (quality > preferredQuality || (quality > 0 && quality == preferredQuality && compression == GZIP)) {
+                preferredCompression = compression;
+                preferredQuality = quality;
+            }
+        }
+
+        return preferredCompression;
+    }
+}
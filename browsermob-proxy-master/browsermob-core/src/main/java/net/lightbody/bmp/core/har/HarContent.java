@@ -1,6 +1,10 @@
 package net.lightbody.bmp.core.har;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.nio.charset.Charset;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class HarContent {
@@ -15,6 +19,30 @@ public class HarContent {
     private volatile String encoding;
     private volatile String comment = "";
 
+    /**
+     * The raw captured body, if the text of this content is materialized on demand. See {@link #setStoredContent(StoredContent, Charset)}.
+     */
+    private volatile StoredContent storedContent;
+    private volatile Charset storedContentCharset;
+
+    /**
+     * A custom field identifying the text of the captured body by the body's hash and charset. Only populated when the body was captured in a
+     * {@link DeduplicatingContentStore} with content references enabled. When a HAR is serialized with {@link HarModule}, the text
+     * is only written with the first content object in the output that has this reference.
+     */
+    @JsonProperty("_contentRef")
+    private volatile String contentRef;
+
+    /**
+     * Custom fields indicating that the captured response body was truncated to stay within the HAR's {@link HarCaptureBudget},
+     * and the size of the body before it was truncated. Only populated when the body was truncated.
+     */
+    @JsonProperty("_truncated")
+    private volatile Boolean truncated;
+
+    @JsonProperty("_originalSize")
+    private volatile Long originalSize;
+
     public long getSize() {
         return size;
     }
@@ -40,11 +68,50 @@ public class HarContent {
     }
 
     public String getText() {
-        return text;
+        String text = this.text;
+        if (text != null) {
+            return text;
+        }
+
+        StoredContent storedContent = this.storedContent;
+        if (storedContent == null) {
+            return null;
+        }
+
+        return StoredContentText.toText(storedContent, storedContentCharset);
     }
 
     public void setText(String text) {
         this.text = text;
+        this.storedContent = null;
+    }
+
+    /**
+     * Sets the raw captured body of this content. The body is not converted to text until {@link #getText()} is called, typically
+     * when the HAR is serialized, and the converted text is not retained.
+     *
+     * @param storedContent the captured body
+     * @param charset charset to decode the body with, or null to encode the body as base64
+     */
+    public void setStoredContent(StoredContent storedContent, Charset charset) {
+        this.storedContentCharset = charset;
+        this.storedContent = storedContent;
+        this.text = null;
+
+        if (storedContent instanceof DeduplicatingContentStore.ContentAddressedContent
+                && ((DeduplicatingContentStore.ContentAddressedContent) storedContent).isContentRefEnabled()) {
+            this.contentRef = ((DeduplicatingContentStore.ContentAddressedContent) storedContent).getContentRef(charset);
+        } else {
+            this.contentRef = null;
+        }
+    }
+
+    /**
+     * @return the raw captured body, or null if the content's text was set directly
+     */
+    @JsonIgnore
+    public StoredContent getStoredContent() {
+        return storedContent;
     }
 
     public String getEncoding() {
@@ -55,6 +122,30 @@ public class HarContent {
         this.encoding = encoding;
     }
 
+    public String getContentRef() {
+        return contentRef;
+    }
+
+    public void setContentRef(String contentRef) {
+        this.contentRef = contentRef;
+    }
+
+    public Boolean getTruncated() {
+        return truncated;
+    }
+
+    public void setTruncated(Boolean truncated) {
+        this.truncated = truncated;
+    }
+
+    public Long getOriginalSize() {
+        return originalSize;
+    }
+
+    public void setOriginalSize(Long originalSize) {
+        this.originalSize = originalSize;
+    }
+
     public String getComment() {
         return comment;
     }
@@ -0,0 +1,38 @@
+package net.lightbody.bmp.core.har;
+
+import java.io.Closeable;
+
+/**
+ * Stores the request and response bodies captured for a single HAR. When a {@link HarLog} has a content store, captured bodies
+ * are kept in the store as raw bytes, and are only converted to text (or base64) when the HAR is read or serialized.
+ * <p/>
+ * A content store is closed when its HAR is ended or replaced by a new HAR. Closing the store releases any resources it holds,
+ * such as spill files. Content stored before the store was closed should remain readable for as long as the caller holds a
+ * reference to it, since the old HAR is returned to the caller by {@link net.lightbody.bmp.BrowserMobProxy#newHar()} and
+ * {@link net.lightbody.bmp.BrowserMobProxy#endHar()}.
+ */
+public interface HarContentStore extends Closeable {
+    /**
+     * Stores the captured content. The caller must not modify the content array after calling this method.
+     *
+     * @param content captured body
+     * @return a handle to the stored content
+     */
+    StoredContent store(byte[] content);
+
+    /**
+     * Releases content that is no longer part of the HAR, because its entry was evicted or archived, or its content was dropped.
+     * The content remains readable through the handle, since the entry may still be referenced by the caller, but the store no
+     * longer needs to keep track of it. Releasing a handle more than once, or releasing a handle this store did not return, has
+     * no effect.
+     *
+     * @param content handle returned by {@link #store(byte[])}
+     */
+    void release(StoredContent content);
+
+    /**
+     * Releases the resources held by this store. Content stored after the store is closed is kept on the heap.
+     */
+    @Override
+    void close();
+}
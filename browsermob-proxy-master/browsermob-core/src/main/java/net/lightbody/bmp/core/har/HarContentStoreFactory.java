@@ -0,0 +1,11 @@
+package net.lightbody.bmp.core.har;
+
+/**
+ * Creates a new {@link HarContentStore} for each HAR created by the proxy.
+ */
+public interface HarContentStoreFactory {
+    /**
+     * @return a new content store for a new HAR
+     */
+    HarContentStore newContentStore();
+}
@@ -2,16 +2,35 @@ package net.lightbody.bmp.core.har;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
 import java.util.Date;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonAutoDetect
 public class HarEntry {
+    /**
+     * The value of {@link #getStartedDateTimeMillis()} when the start time is not set. 0 cannot be used, since it is a valid time.
+     */
+    public static final long STARTED_DATE_TIME_NOT_SET = Long.MIN_VALUE;
+
+    /**
+     * The value of {@link #budgetedContentBytes} once the entry's reserved bytes have been returned to the capture budget.
+     */
+    private static final long BUDGET_RELEASED = -1L;
+
     private volatile String pageref;
-    private volatile Date startedDateTime;
+
+    /**
+     * The time this entry was started, in milliseconds since the epoch, or {@link #STARTED_DATE_TIME_NOT_SET} if the start time is not set.
+     * Stored as a primitive, so that a Date is only created when the entry is serialized.
+     */
+    private volatile long startedDateTimeMillis = STARTED_DATE_TIME_NOT_SET;
+
     private volatile HarRequest request;
     private volatile HarResponse response;
     private volatile HarCache cache = new HarCache();
@@ -20,6 +39,28 @@ public class HarEntry {
     private volatile String connection;
     private volatile String comment = "";
 
+    /**
+     * Set when this entry is completed, so that it is only added to its log's completed entries once.
+     */
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    /**
+     * The position of this entry in the order its log's entries were completed, starting at 1, or 0 if this entry has not
+     * been completed.
+     */
+    private volatile long sequence;
+
+    /**
+     * Set when this entry is evicted from its log to keep the log within its capacity.
+     */
+    private volatile boolean evicted;
+
+    /**
+     * The number of bytes of this entry's captured content that are reserved from its log's {@link HarCaptureBudget}, or
+     * {@link #BUDGET_RELEASED} once the entry has been removed from its log and its reserved bytes returned to the budget.
+     */
+    private final AtomicLong budgetedContentBytes = new AtomicLong();
+
     public HarEntry() {
     }
 
@@ -37,11 +78,25 @@ public class HarEntry {
 
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSSXXX")
     public Date getStartedDateTime() {
-        return startedDateTime;
+        long startedDateTimeMillis = this.startedDateTimeMillis;
+
+        return startedDateTimeMillis == STARTED_DATE_TIME_NOT_SET ? null : new Date(startedDateTimeMillis);
     }
 
     public void setStartedDateTime(Date startedDateTime) {
-        this.startedDateTime = startedDateTime;
+        this.startedDateTimeMillis = startedDateTime == null ? STARTED_DATE_TIME_NOT_SET : startedDateTime.getTime();
+    }
+
+    /**
+     * @return the time this entry was started, in milliseconds since the epoch, or {@link #STARTED_DATE_TIME_NOT_SET} if the start time is not set
+     */
+    @JsonIgnore
+    public long getStartedDateTimeMillis() {
+        return startedDateTimeMillis;
+    }
+
+    public void setStartedDateTimeMillis(long startedDateTimeMillis) {
+        this.startedDateTimeMillis = startedDateTimeMillis;
     }
 
     /**
@@ -157,4 +212,88 @@ public class HarEntry {
     public void setConnection(String connection) {
         this.connection = connection;
     }
+
+    /**
+     * Returns this entry's completion sequence number. Entries are numbered in the order they are completed (i.e. when the
+     * response is received or the request fails), starting at 1. See {@link HarLog#getEntriesSince(long)}.
+     *
+     * @return completion sequence number, or 0 if this entry has not been completed
+     */
+    @JsonIgnore
+    public long getSequence() {
+        return sequence;
+    }
+
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Marks this entry as completed.
+     *
+     * @return true if this entry was not already completed
+     */
+    boolean markCompleted() {
+        return completed.compareAndSet(false, true);
+    }
+
+    /**
+     * @return true if this entry has been completed
+     */
+    boolean isCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Marks this entry as evicted from its log.
+     */
+    void markEvicted() {
+        evicted = true;
+    }
+
+    /**
+     * @return true if this entry has been evicted from its log
+     */
+    boolean isEvicted() {
+        return evicted;
+    }
+
+    /**
+     * Adds captured content to the bytes this entry has reserved from its log's capture budget.
+     *
+     * @param contentBytes number of reserved bytes of captured content
+     * @return false if the entry has already been removed from its log, in which case the bytes were not added
+     */
+    boolean addBudgetedContentBytes(long contentBytes) {
+        while (true) {
+            long budgetedBytes = budgetedContentBytes.get();
+            if (budgetedBytes == BUDGET_RELEASED) {
+                return false;
+            }
+
+            if (budgetedContentBytes.compareAndSet(budgetedBytes, budgetedBytes + contentBytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Clears the bytes this entry has reserved from its log's capture budget, so that they can be returned to the budget.
+     *
+     * @param removedFromLog true if the entry has been removed from its log, so that content added later is not recorded
+     * @return number of reserved bytes that were cleared
+     */
+    long clearBudgetedContentBytes(boolean removedFromLog) {
+        while (true) {
+            long budgetedBytes = budgetedContentBytes.get();
+            if (budgetedBytes == BUDGET_RELEASED) {
+                // the bytes were already cleared when the entry was removed
+                return 0L;
+            }
+
+            if (budgetedContentBytes.compareAndSet(budgetedBytes, removedFromLog ? BUDGET_RELEASED : 0L)) {
+                return budgetedBytes;
+            }
+        }
+    }
 }
@@ -0,0 +1,35 @@
+package net.lightbody.bmp.core.har;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The entries completed after a cursor, and the cursor to use to retrieve the entries completed after them. See
+ * {@link HarLog#getEntriesSince(long)}.
+ */
+@JsonPropertyOrder({"cursor", "entries"})
+public class HarEntryBatch {
+    private final List<HarEntry> entries;
+    private final long cursor;
+
+    public HarEntryBatch(List<HarEntry> entries, long cursor) {
+        this.entries = Collections.unmodifiableList(entries);
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return the completed entries, in the order they were completed
+     */
+    public List<HarEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return the cursor to pass to the next poll, to retrieve only entries completed after these entries
+     */
+    public long getCursor() {
+        return cursor;
+    }
+}
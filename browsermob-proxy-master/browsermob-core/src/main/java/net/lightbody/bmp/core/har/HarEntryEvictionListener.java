@@ -0,0 +1,16 @@
+package net.lightbody.bmp.core.har;
+
+/**
+ * Receives the completed {@link HarEntry} objects that a {@link HarLog} evicts to stay within its {@link HarCapacity}, so that
+ * data derived from the entries can be released along with them. See {@link HarLog#setEvictionListener(HarEntryEvictionListener)}.
+ * <p/>
+ * Listeners are invoked while the log holds its capacity lock, so they must return quickly and must never call back into the log.
+ */
+public interface HarEntryEvictionListener {
+    /**
+     * Called when a completed entry has been evicted from the log.
+     *
+     * @param entry evicted entry
+     */
+    void entryEvicted(HarEntry entry);
+}
@@ -0,0 +1,593 @@
+package net.lightbody.bmp.core.har;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A columnar index of the completed entries in a HAR, which answers aggregate queries (e.g. total bytes by MIME type, or
+ * 95th percentile wait time by host) without serializing or traversing the entries themselves.
+ * <p/>
+ * Each indexed attribute is stored in its own primitive array, indexed by the order the entries were completed. Every
+ * {@link HarIndexMetric} is stored in nanoseconds or bytes. Hosts, MIME types, and pages are dictionary-encoded, so each row
+ * stores only an int for each of them, and criteria are resolved to dictionary ids once per query rather than compared as
+ * strings for each row.
+ * <p/>
+ * Entries are added when they are completed, by registering the index as a {@link HarEntryListener}, and removed when they
+ * are evicted from the HAR, by registering it as a {@link HarEntryEvictionListener}. Evicted rows are excluded from queries
+ * immediately, and their storage (including their URLs, and hosts, MIME types and pages no other row uses) is released once
+ * they make up half of the index. This class is thread-safe: entries are added and queries are answered while holding the
+ * index's lock, which is only held for the duration of a single append or a single scan. Matching values are copied out
+ * during the scan, and sorted after the lock is released, so a query never delays the entries being completed.
+ */
+public class HarEntryIndex implements HarEntryListener, HarEntryEvictionListener {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final HarIndexMetric[] METRICS = HarIndexMetric.values();
+
+    private final Object lock = new Object();
+
+    /* the columns of the index, guarded by lock */
+    private int size;
+    private int evictedCount;
+    private int firstUnevictedRow;
+    private long[] sequences = new long[INITIAL_CAPACITY];
+    private boolean[] evicted = new boolean[INITIAL_CAPACITY];
+    private String[] urls = new String[INITIAL_CAPACITY];
+    private int[] hostIds = new int[INITIAL_CAPACITY];
+    private int[] mimeTypeIds = new int[INITIAL_CAPACITY];
+    private int[] pageIds = new int[INITIAL_CAPACITY];
+    private int[] statuses = new int[INITIAL_CAPACITY];
+    private final long[][] metricColumns = new long[METRICS.length][INITIAL_CAPACITY];
+
+    private final Dictionary hosts = new Dictionary();
+    private final Dictionary mimeTypes = new Dictionary();
+    private final Dictionary pages = new Dictionary();
+
+    @Override
+    public void entryCompleted(HarEntry entry) {
+        // read the entry before taking the lock, so the lock is only held while appending
+        String url = entry.getRequest() == null ? null : entry.getRequest().getUrl();
+        String host = getHost(url);
+        String mimeType = entry.getResponse() == null ? "" : getBaseMimeType(entry.getResponse().getContent().getMimeType());
+        String pageRef = entry.getPageref() == null ? "" : entry.getPageref();
+        int status = entry.getResponse() == null ? 0 : entry.getResponse().getStatus();
+
+        long[] metricValues = new long[METRICS.length];
+        for (HarIndexMetric metric : METRICS) {
+            metricValues[metric.ordinal()] = metric.valueOf(entry);
+        }
+
+        synchronized (lock) {
+            if (size == urls.length) {
+                resize(urls.length * 2);
+            }
+
+            sequences[size] = entry.getSequence();
+            evicted[size] = false;
+            urls[size] = url;
+            hostIds[size] = hosts.encode(host);
+            mimeTypeIds[size] = mimeTypes.encode(mimeType);
+            pageIds[size] = pages.encode(pageRef);
+            statuses[size] = status;
+
+            for (int i = 0; i < metricValues.length; i++) {
+                metricColumns[i][size] = metricValues[i];
+            }
+
+            size++;
+        }
+    }
+
+    /**
+     * Removes the evicted entry from the index. Has no effect if the entry is not in the index.
+     *
+     * @param entry entry evicted from the HAR
+     */
+    @Override
+    public void entryEvicted(HarEntry entry) {
+        long sequence = entry.getSequence();
+        if (sequence == 0) {
+            return;
+        }
+
+        synchronized (lock) {
+            // rows are added in completion order and the oldest entries are evicted first, so the row is usually the first
+            // row that has not been evicted
+            for (int row = firstUnevictedRow; row < size; row++) {
+                if (sequences[row] == sequence && !evicted[row]) {
+                    evicted[row] = true;
+                    evictedCount++;
+                    break;
+                }
+            }
+
+            while (firstUnevictedRow < size && evicted[firstUnevictedRow]) {
+                firstUnevictedRow++;
+            }
+
+            if (evictedCount > size / 2) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * @return number of entries in the index
+     */
+    public int getEntryCount() {
+        synchronized (lock) {
+            return size - evictedCount;
+        }
+    }
+
+    /**
+     * Aggregates the metric over the entries matched by the query.
+     *
+     * @param query entries to aggregate
+     * @param metric metric to aggregate
+     * @return the aggregates of the metric
+     */
+    public HarIndexStats stats(HarIndexQuery query, HarIndexMetric metric) {
+        long[] values;
+        int count = 0;
+        synchronized (lock) {
+            RowFilter filter = new RowFilter(query);
+            long[] column = metricColumns[metric.ordinal()];
+
+            values = new long[size - evictedCount];
+            for (int row = 0; row < size; row++) {
+                if (filter.matches(row) && column[row] >= 0) {
+                    values[count++] = column[row];
+                }
+            }
+        }
+
+        // the stats sort the values, so they are computed after releasing the lock
+        return new HarIndexStats(metric, values, count);
+    }
+
+    /**
+     * Aggregates the metric over the entries matched by the query, separately for each value of the dimension. Groups are
+     * returned in the order their first entry was completed.
+     *
+     * @param query entries to aggregate
+     * @param metric metric to aggregate
+     * @param dimension dimension to group entries by
+     * @return the aggregates of the metric for each value of the dimension
+     */
+    public Map<String, HarIndexStats> statsBy(HarIndexQuery query, HarIndexMetric metric, HarIndexDimension dimension) {
+        Map<String, LongList> valuesByGroup;
+        synchronized (lock) {
+            RowFilter filter = new RowFilter(query);
+            long[] column = metricColumns[metric.ordinal()];
+
+            // group values by the dimension's encoded value: a dictionary id, or the status code
+            Map<Integer, LongList> groups = new LinkedHashMap<>();
+            for (int row = 0; row < size; row++) {
+                if (!filter.matches(row) || column[row] < 0) {
+                    continue;
+                }
+
+                int key = groupKey(dimension, row);
+                LongList values = groups.get(key);
+                if (values == null) {
+                    values = new LongList();
+                    groups.put(key, values);
+                }
+
+                values.add(column[row]);
+            }
+
+            // decode the group names while the dictionaries are guarded by the lock
+            valuesByGroup = new LinkedHashMap<>(groups.size() * 2);
+            for (Map.Entry<Integer, LongList> group : groups.entrySet()) {
+                valuesByGroup.put(groupName(dimension, group.getKey()), group.getValue());
+            }
+        }
+
+        // the stats sort the values, so they are computed after releasing the lock
+        Map<String, HarIndexStats> statsByGroup = new LinkedHashMap<>(valuesByGroup.size() * 2);
+        for (Map.Entry<String, LongList> group : valuesByGroup.entrySet()) {
+            LongList values = group.getValue();
+            statsByGroup.put(group.getKey(), new HarIndexStats(metric, values.values, values.size));
+        }
+
+        return statsByGroup;
+    }
+
+    /**
+     * Returns the entries matched by the query with the largest values of the metric, e.g. the slowest entries on a page.
+     *
+     * @param query entries to consider
+     * @param metric metric to order entries by
+     * @param limit maximum number of entries to return
+     * @return the matched entries, ordered from the largest value of the metric to the smallest
+     */
+    public List<HarIndexRow> top(HarIndexQuery query, HarIndexMetric metric, int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        final TopRows top;
+        List<HarIndexRow> topRows;
+        synchronized (lock) {
+            RowFilter filter = new RowFilter(query);
+            long[] column = metricColumns[metric.ordinal()];
+
+            // keep only the largest values seen so far, so the scan is O(n log limit) and nothing is sorted while holding the lock
+            top = new TopRows(Math.min(limit, size));
+            for (int row = 0; row < size; row++) {
+                if (filter.matches(row) && column[row] >= 0) {
+                    top.offer(row, column[row]);
+                }
+            }
+
+            topRows = new ArrayList<>(top.size);
+            for (int i = 0; i < top.size; i++) {
+                int row = top.rows[i];
+                topRows.add(new HarIndexRow(urls[row], hosts.decode(hostIds[row]), mimeTypes.decode(mimeTypeIds[row]),
+                        statuses[row], pages.decode(pageIds[row]), metric.toReportedValue(column[row])));
+            }
+        }
+
+        // order the rows from the largest value to the smallest, and entries with the same value in the order they were completed
+        Integer[] order = new Integer[top.size];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                return top.compare(second, first);
+            }
+        });
+
+        List<HarIndexRow> sortedRows = new ArrayList<>(order.length);
+        for (Integer i : order) {
+            sortedRows.add(topRows.get(i));
+        }
+
+        return sortedRows;
+    }
+
+    private int groupKey(HarIndexDimension dimension, int row) {
+        switch (dimension) {
+            case HOST:
+                return hostIds[row];
+            case MIME_TYPE:
+                return mimeTypeIds[row];
+            case STATUS:
+                return statuses[row];
+            case PAGE:
+                return pageIds[row];
+            default:
+                throw new IllegalArgumentException("Unsupported dimension: " + dimension);
+        }
+    }
+
+    private String groupName(HarIndexDimension dimension, int key) {
+        switch (dimension) {
+            case HOST:
+                return hosts.decode(key);
+            case MIME_TYPE:
+                return mimeTypes.decode(key);
+            case STATUS:
+                return Integer.toString(key);
+            case PAGE:
+                return pages.decode(key);
+            default:
+                throw new IllegalArgumentException("Unsupported dimension: " + dimension);
+        }
+    }
+
+    /**
+     * Removes the evicted rows, moving the remaining rows down, drops dictionary values that no remaining row uses, and releases
+     * unused capacity. Must be called while holding the lock.
+     */
+    private void compact() {
+        int retained = 0;
+        for (int row = 0; row < size; row++) {
+            if (evicted[row]) {
+                continue;
+            }
+
+            if (retained != row) {
+                sequences[retained] = sequences[row];
+                urls[retained] = urls[row];
+                hostIds[retained] = hostIds[row];
+                mimeTypeIds[retained] = mimeTypeIds[row];
+                pageIds[retained] = pageIds[row];
+                statuses[retained] = statuses[row];
+
+                for (long[] metricColumn : metricColumns) {
+                    metricColumn[retained] = metricColumn[row];
+                }
+            }
+
+            retained++;
+        }
+
+        Arrays.fill(urls, retained, size, null);
+        Arrays.fill(evicted, 0, size, false);
+        size = retained;
+        evictedCount = 0;
+        firstUnevictedRow = 0;
+
+        hosts.retainValuesOf(hostIds, size);
+        mimeTypes.retainValuesOf(mimeTypeIds, size);
+        pages.retainValuesOf(pageIds, size);
+
+        if (urls.length > INITIAL_CAPACITY && size < urls.length / 4) {
+            resize(Math.max(INITIAL_CAPACITY, urls.length / 2));
+        }
+    }
+
+    private void resize(int newCapacity) {
+        sequences = Arrays.copyOf(sequences, newCapacity);
+        evicted = Arrays.copyOf(evicted, newCapacity);
+        urls = Arrays.copyOf(urls, newCapacity);
+        hostIds = Arrays.copyOf(hostIds, newCapacity);
+        mimeTypeIds = Arrays.copyOf(mimeTypeIds, newCapacity);
+        pageIds = Arrays.copyOf(pageIds, newCapacity);
+        statuses = Arrays.copyOf(statuses, newCapacity);
+
+        for (int i = 0; i < metricColumns.length; i++) {
+            metricColumns[i] = Arrays.copyOf(metricColumns[i], newCapacity);
+        }
+    }
+
+    /**
+     * Returns the host of the URL, without the user info or port. Parsed by hand rather than with {@link java.net.URI}, since
+     * captured URLs are not always valid URIs.
+     */
+    static String getHost(String url) {
+        if (url == null) {
+            return "";
+        }
+
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+
+        int end = start;
+        while (end < url.length() && "/?#".indexOf(url.charAt(end)) < 0) {
+            end++;
+        }
+
+        String authority = url.substring(start, end);
+
+        int userInfoEnd = authority.lastIndexOf('@');
+        if (userInfoEnd >= 0) {
+            authority = authority.substring(userInfoEnd + 1);
+        }
+
+        // IPv6 addresses are enclosed in brackets, and contain colons
+        int portStart = authority.startsWith("[") ? authority.indexOf(':', authority.indexOf(']')) : authority.indexOf(':');
+        if (portStart >= 0) {
+            authority = authority.substring(0, portStart);
+        }
+
+        return authority.toLowerCase(Locale.US);
+    }
+
+    /**
+     * Returns the MIME type without parameters, in lower case, e.g. text/html for "text/html; charset=UTF-8".
+     */
+    static String getBaseMimeType(String mimeType) {
+        if (mimeType == null) {
+            return "";
+        }
+
+        int parametersStart = mimeType.indexOf(';');
+        if (parametersStart >= 0) {
+            mimeType = mimeType.substring(0, parametersStart);
+        }
+
+        return mimeType.trim().toLowerCase(Locale.US);
+    }
+
+    /**
+     * Matches rows against a query's criteria, after resolving them to dictionary ids. A criterion whose value is not in the
+     * dictionary cannot match any row.
+     */
+    private class RowFilter {
+        private final int hostId;
+        private final int mimeTypeId;
+        private final int pageId;
+        private final Integer status;
+
+        private final boolean matchesNothing;
+
+        RowFilter(HarIndexQuery query) {
+            this.hostId = query.getHost() == null ? Dictionary.ANY : hosts.lookup(query.getHost().toLowerCase(Locale.US));
+            this.mimeTypeId = query.getMimeType() == null ? Dictionary.ANY : mimeTypes.lookup(getBaseMimeType(query.getMimeType()));
+            this.pageId = query.getPageRef() == null ? Dictionary.ANY : pages.lookup(query.getPageRef());
+            this.status = query.getStatus();
+
+            this.matchesNothing = hostId == Dictionary.MISSING || mimeTypeId == Dictionary.MISSING || pageId == Dictionary.MISSING;
+        }
+
+        boolean matches(int row) {
+            return !matchesNothing
+                    && !evicted[row]
+                    && (hostId == Dictionary.ANY || hostIds[row] == hostId)
+                    && (mimeTypeId == Dictionary.ANY || mimeTypeIds[row] == mimeTypeId)
+                    && (pageId == Dictionary.ANY || pageIds[row] == pageId)
+                    && (status == null || statuses[row] == status);
+        }
+    }
+
+    /**
+     * Encodes strings as ids assigned in the order the strings are first seen. Guarded by the index's lock.
+     */
+    private static class Dictionary {
+        /** id of a criterion that matches any value */
+        static final int ANY = -1;
+
+        /** id of a value that is not in the dictionary */
+        static final int MISSING = -2;
+
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int encode(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+
+            return id;
+        }
+
+        int lookup(String value) {
+            Integer id = ids.get(value);
+
+            return id == null ? MISSING : id;
+        }
+
+        String decode(int id) {
+            return values.get(id);
+        }
+
+        /**
+         * @return number of values in the dictionary
+         */
+        int size() {
+            return values.size();
+        }
+
+        /**
+         * Drops the values that are not used by the first rowCount rows of the column, and re-encodes the column with the
+         * remaining values' new ids. Ids are reassigned in the order the values are first used by the column.
+         */
+        void retainValuesOf(int[] column, int rowCount) {
+            int[] newIds = new int[values.size()];
+            Arrays.fill(newIds, MISSING);
+
+            List<String> retainedValues = new ArrayList<>();
+            for (int row = 0; row < rowCount; row++) {
+                int id = column[row];
+                if (newIds[id] == MISSING) {
+                    newIds[id] = retainedValues.size();
+                    retainedValues.add(values.get(id));
+                }
+
+                column[row] = newIds[id];
+            }
+
+            values.clear();
+            ids.clear();
+            for (String value : retainedValues) {
+                encode(value);
+            }
+        }
+    }
+
+    /**
+     * The rows with the largest values offered so far, up to a fixed number of rows, kept in a binary min-heap so that the row
+     * with the smallest value can be replaced in O(log n). Of rows with the same value, the earliest rows are kept.
+     */
+    private static class TopRows {
+        private final int[] rows;
+        private final long[] values;
+        private int size;
+
+        TopRows(int capacity) {
+            this.rows = new int[capacity];
+            this.values = new long[capacity];
+        }
+
+        void offer(int row, long value) {
+            if (size < rows.length) {
+                rows[size] = row;
+                values[size] = value;
+                siftUp(size++);
+            } else if (size > 0 && value > values[0]) {
+                // rows are offered in order, so a later row with the same value as the smallest kept row is not kept
+                rows[0] = row;
+                values[0] = value;
+                siftDown(0);
+            }
+        }
+
+        /**
+         * Compares the rows at the specified positions: the row with the smaller value is smaller, and of rows with the same
+         * value, the later row is smaller.
+         */
+        int compare(int i, int j) {
+            int byValue = Long.compare(values[i], values[j]);
+
+            return byValue != 0 ? byValue : Integer.compare(rows[j], rows[i]);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (compare(i, parent) >= 0) {
+                    return;
+                }
+
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int smallest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+
+                if (left < size && compare(left, smallest) < 0) {
+                    smallest = left;
+                }
+
+                if (right < size && compare(right, smallest) < 0) {
+                    smallest = right;
+                }
+
+                if (smallest == i) {
+                    return;
+                }
+
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int row = rows[i];
+            rows[i] = rows[j];
+            rows[j] = row;
+
+            long value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+
+    /**
+     * A growable array of longs, used to collect the values of each group without boxing.
+     */
+    private static class LongList {
+        private long[] values = new long[16];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            values[size++] = value;
+        }
+    }
+}
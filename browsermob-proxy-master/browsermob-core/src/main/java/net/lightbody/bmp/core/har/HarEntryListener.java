@@ -0,0 +1,17 @@
+package net.lightbody.bmp.core.har;
+
+/**
+ * Receives {@link HarEntry} objects as they are completed, i.e. when the entry's response has been fully received or its
+ * request has failed or timed out. See {@link net.lightbody.bmp.BrowserMobProxyServer#addHarEntryListener(HarEntryListener)}.
+ * <p/>
+ * Listeners are invoked on the proxy's event loop threads, so they must return quickly and must never block. To process
+ * entries on another thread, use a {@link HarEntrySubscription}.
+ */
+public interface HarEntryListener {
+    /**
+     * Called when an entry has been completed. The entry will not be modified further by the proxy.
+     *
+     * @param entry completed entry
+     */
+    void entryCompleted(HarEntry entry);
+}
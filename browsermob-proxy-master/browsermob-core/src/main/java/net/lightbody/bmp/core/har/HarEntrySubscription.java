@@ -0,0 +1,64 @@
+package net.lightbody.bmp.core.har;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link HarEntryListener} that queues completed entries for a consumer on another thread. The queue is bounded, and entries
+ * are added to it without blocking: if the consumer falls behind and the queue is full, newly completed entries are dropped
+ * and counted, rather than stalling the proxy's event loop. Consumers can report the number of dropped entries to indicate
+ * that they are lagging.
+ */
+public class HarEntrySubscription implements HarEntryListener {
+    private final BlockingQueue<HarEntry> queue;
+
+    private final AtomicLong droppedEntryCount = new AtomicLong();
+
+    /**
+     * Creates a subscription that queues at most queueCapacity entries.
+     *
+     * @param queueCapacity maximum number of entries waiting to be consumed
+     */
+    public HarEntrySubscription(int queueCapacity) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Subscription queue capacity must be greater than 0");
+        }
+
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @Override
+    public void entryCompleted(HarEntry entry) {
+        if (!queue.offer(entry)) {
+            droppedEntryCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Retrieves and removes the next completed entry, waiting up to the specified time for an entry to be completed.
+     *
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return the next completed entry, or null if no entry was completed before the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public HarEntry poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return queue.poll(timeout, unit);
+    }
+
+    /**
+     * @return number of completed entries waiting to be consumed
+     */
+    public int getQueuedEntryCount() {
+        return queue.size();
+    }
+
+    /**
+     * @return total number of completed entries dropped because the queue was full
+     */
+    public long getDroppedEntryCount() {
+        return droppedEntryCount.get();
+    }
+}
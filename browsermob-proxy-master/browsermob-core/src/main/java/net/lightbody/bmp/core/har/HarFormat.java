@@ -0,0 +1,137 @@
+package net.lightbody.bmp.core.har;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * The serialization formats a {@link Har} can be written in and read from. JSON is the standard HAR format. Smile and CBOR are
+ * binary encodings of the same data model, which are smaller and faster to write and parse than JSON, but can only be read by
+ * tools that understand the binary format. All formats use the same field names, so a HAR can be converted from one format to
+ * another without loss.
+ */
+public enum HarFormat {
+    JSON("application/json") {
+        @Override
+        public JsonFactory newJsonFactory() {
+            return new JsonFactory();
+        }
+    },
+
+    SMILE("application/x-jackson-smile") {
+        @Override
+        public JsonFactory newJsonFactory() {
+            // the smile header is written by default, which allows the format to be detected when the HAR is read
+            return new SmileFactory();
+        }
+    },
+
+    CBOR("application/cbor") {
+        @Override
+        public JsonFactory newJsonFactory() {
+            // the self-describe tag is not written by default, but without it the format cannot be detected when the HAR is read
+            return new CBORFactory().enable(CBORGenerator.Feature.WRITE_TYPE_HEADER);
+        }
+    };
+
+    private final String mediaType;
+
+    HarFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * @return a new Jackson factory that reads and writes this format
+     */
+    public abstract JsonFactory newJsonFactory();
+
+    /**
+     * @return a new ObjectMapper that reads and writes this format, with the {@link HarModule} serializers registered
+     */
+    public ObjectMapper newObjectMapper() {
+        ObjectMapper objectMapper = new ObjectMapper(newJsonFactory());
+        objectMapper.registerModule(new HarModule());
+
+        return objectMapper;
+    }
+
+    /**
+     * @return the media type of this format, e.g. application/cbor
+     */
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Returns the format with the specified name (e.g. "json", "smile", "cbor") or media type, ignoring case.
+     *
+     * @param nameOrMediaType format name or media type
+     * @return the matching format, or null if no format matches
+     */
+    public static HarFormat forName(String nameOrMediaType) {
+        if (nameOrMediaType == null) {
+            return null;
+        }
+
+        String trimmed = nameOrMediaType.trim();
+
+        for (HarFormat format : values()) {
+            if (format.name().equalsIgnoreCase(trimmed) || format.mediaType.equalsIgnoreCase(trimmed)) {
+                return format;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Selects the format to respond with based on the value of an HTTP Accept header. The supported media type with the highest
+     * quality value is selected; when quality values are equal, the media type listed first is preferred. Returns JSON if the
+     * header is null or does not contain a supported media type.
+     *
+     * @param acceptHeader value of the Accept header, may be null
+     * @return the preferred supported format, or JSON
+     */
+    public static HarFormat fromAcceptHeader(String acceptHeader) {
+        if (acceptHeader == null) {
+            return JSON;
+        }
+
+        HarFormat preferredFormat = null;
+        double preferredQuality = 0;
+
+        for (String mediaRange : acceptHeader.split(",")) {
+            String[] params = mediaRange.split(";");
+
+            HarFormat format = forName(params[0]);
+            if (format == null) {
+                continue;
+            }
+
+            double quality = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+
+            if (quality > preferredQuality) {
+                preferredFormat = format;
+                preferredQuality = quality;
+            }
+        }
+
+        if (preferredFormat == null) {
+            return JSON;
+        }
+
+        return preferredFormat;
+    }
+}
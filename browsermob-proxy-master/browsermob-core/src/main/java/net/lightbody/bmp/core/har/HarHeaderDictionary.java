@@ -0,0 +1,141 @@
+package net.lightbody.bmp.core.har;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A bounded dictionary of header names and name/value pairs, shared by all entries in a {@link HarLog}. Most of the headers
+ * captured in a HAR are repeated many times (e.g. Accept-Encoding, Cache-Control, or the browser's User-Agent), so capturing
+ * each header as a single shared {@link HarNameValuePair} significantly reduces the heap used by large HARs.
+ * <p/>
+ * Header names are interned until the dictionary holds the maximum number of names. A name/value pair is only interned once it
+ * has been captured twice, so that values that are usually unique, like Date and ETag headers, do not fill the dictionary. Values
+ * longer than the maximum value length are never interned. Once the dictionary is full, new headers are captured without being
+ * interned, so the dictionary never grows beyond its bounds.
+ * <p/>
+ * This class is thread-safe.
+ */
+public class HarHeaderDictionary {
+    /**
+     * Default maximum number of header names, and of name/value pairs, in the dictionary.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+    /**
+     * Default maximum length of a header value that will be interned.
+     */
+    public static final int DEFAULT_MAX_VALUE_LENGTH = 256;
+
+    private final int maxEntries;
+    private final int maxValueLength;
+
+    private final ConcurrentMap<String, String> names = new ConcurrentHashMap<>();
+    private final ConcurrentMap<HarNameValuePair, HarNameValuePair> headers = new ConcurrentHashMap<>();
+
+    /**
+     * Headers that have been captured once, and will be interned if they are captured again. Cleared when it fills, so headers
+     * that are only seen once are not retained.
+     */
+    private final ConcurrentMap<HarNameValuePair, HarNameValuePair> candidates = new ConcurrentHashMap<>();
+
+    public HarHeaderDictionary() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_VALUE_LENGTH);
+    }
+
+    /**
+     * Creates a dictionary of at most maxEntries header names and maxEntries name/value pairs.
+     *
+     * @param maxEntries maximum number of names, and of name/value pairs, to intern
+     * @param maxValueLength maximum length of a header value to intern
+     */
+    public HarHeaderDictionary(int maxEntries, int maxValueLength) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("Maximum number of dictionary entries must be greater than or equal to 0");
+        }
+
+        if (maxValueLength < 0) {
+            throw new IllegalArgumentException("Maximum dictionary value length must be greater than or equal to 0");
+        }
+
+        this.maxEntries = maxEntries;
+        this.maxValueLength = maxValueLength;
+    }
+
+    /**
+     * Returns a header with the specified name and value. If an equal header has been interned, the interned header is returned.
+     *
+     * @param name header name
+     * @param value header value
+     * @return an equal header, which may be shared with other entries
+     */
+    public HarNameValuePair header(String name, String value) {
+        HarNameValuePair header = new HarNameValuePair(name(name), value);
+        if (value == null || value.length() > maxValueLength) {
+            return header;
+        }
+
+        HarNameValuePair interned = headers.get(header);
+        if (interned != null) {
+            return interned;
+        }
+
+        if (headers.size() >= maxEntries) {
+            return header;
+        }
+
+        // intern the first instance of the header, so the entry that captured it also shares it
+        HarNameValuePair firstCaptured = candidates.remove(header);
+        if (firstCaptured == null) {
+            if (candidates.size() >= maxEntries) {
+                candidates.clear();
+            }
+
+            candidates.putIfAbsent(header, header);
+
+            return header;
+        }
+
+        interned = headers.putIfAbsent(firstCaptured, firstCaptured);
+
+        return interned == null ? firstCaptured : interned;
+    }
+
+    /**
+     * Returns the interned instance of the header name, interning it if the dictionary is not full.
+     *
+     * @param name header name
+     * @return an equal header name, which may be shared with other entries
+     */
+    public String name(String name) {
+        if (name == null) {
+            return null;
+        }
+
+        String interned = names.get(name);
+        if (interned != null) {
+            return interned;
+        }
+
+        if (names.size() >= maxEntries || name.length() > maxValueLength) {
+            return name;
+        }
+
+        interned = names.putIfAbsent(name, name);
+
+        return interned == null ? name : interned;
+    }
+
+    /**
+     * @return number of name/value pairs interned in this dictionary
+     */
+    public int getHeaderCount() {
+        return headers.size();
+    }
+
+    /**
+     * @return number of header names interned in this dictionary
+     */
+    public int getNameCount() {
+        return names.size();
+    }
+}
@@ -0,0 +1,49 @@
+package net.lightbody.bmp.core.har;
+
+/**
+ * An attribute of each entry that the aggregates of a {@link HarEntryIndex} can be grouped by.
+ */
+public enum HarIndexDimension {
+    /**
+     * The host the request was sent to.
+     */
+    HOST,
+
+    /**
+     * The MIME type of the response, without parameters like charset.
+     */
+    MIME_TYPE,
+
+    /**
+     * The response status code, or 0 if no response was received.
+     */
+    STATUS,
+
+    /**
+     * The page the entry belongs to.
+     */
+    PAGE;
+
+    /**
+     * Returns the dimension with the specified name, ignoring case. Names can be given in camel case, e.g. "mimeType", or as
+     * constant names, e.g. "MIME_TYPE".
+     *
+     * @param name dimension name
+     * @return the dimension, or null if there is no dimension with that name
+     */
+    public static HarIndexDimension forName(String name) {
+        if (name == null) {
+            return null;
+        }
+
+        String normalizedName = name.replace("_", "");
+
+        for (HarIndexDimension dimension : values()) {
+            if (dimension.name().replace("_", "").equalsIgnoreCase(normalizedName)) {
+                return dimension;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,132 @@
+package net.lightbody.bmp.core.har;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A numeric value of each entry that can be aggregated by a {@link HarEntryIndex}. Timings are reported in milliseconds, with
+ * sub-millisecond precision, and sizes are reported in bytes. Entries for which a value does not apply (e.g. the DNS timing
+ * of a request on a reused connection) are not included in that value's aggregates.
+ */
+public enum HarIndexMetric {
+    /**
+     * The total time of the entry. See {@link HarEntry#getTime()}.
+     */
+    TIME(true) {
+        @Override
+        long valueOf(HarEntry entry) {
+            return entry.getTime(TimeUnit.NANOSECONDS);
+        }
+    },
+    BLOCKED(true) {
+        @Override
+        long valueOf(HarEntry entry) {
+            return entry.getTimings().getBlocked(TimeUnit.NANOSECONDS);
+        }
+    },
+    DNS(true) {
+        @Override
+        long valueOf(HarEntry entry) {
+            return entry.getTimings().getDns(TimeUnit.NANOSECONDS);
+        }
+    },
+    CONNECT(true) {
+        @Override
+        long valueOf(HarEntry entry) {
+            return entry.getTimings().getConnect(TimeUnit.NANOSECONDS);
+        }
+    },
+    SSL(true) {
+        @Override
+        long valueOf(HarEntry entry) {
+            return entry.getTimings().getSsl(TimeUnit.NANOSECONDS);
+        }
+    },
+    SEND(true) {
+        @Override
+        long valueOf(HarEntry entry) {
+            return entry.getTimings().getSend(TimeUnit.NANOSECONDS);
+        }
+    },
+    WAIT(true) {
+        @Override
+        long valueOf(HarEntry entry) {
+            return entry.getTimings().getWait(TimeUnit.NANOSECONDS);
+        }
+    },
+    RECEIVE(true) {
+        @Override
+        long valueOf(HarEntry entry) {
+            return entry.getTimings().getReceive(TimeUnit.NANOSECONDS);
+        }
+    },
+
+    /**
+     * The size of the response body as received, before it is decompressed.
+     */
+    BODY_SIZE(false) {
+        @Override
+        long valueOf(HarEntry entry) {
+            return entry.getResponse() == null ? -1 : entry.getResponse().getBodySize();
+        }
+    },
+
+    /**
+     * The size of the response content after it is decompressed.
+     */
+    CONTENT_SIZE(false) {
+        @Override
+        long valueOf(HarEntry entry) {
+            return entry.getResponse() == null ? -1 : entry.getResponse().getContent().getSize();
+        }
+    };
+
+    private final boolean timing;
+
+    HarIndexMetric(boolean timing) {
+        this.timing = timing;
+    }
+
+    /**
+     * Returns the value of this metric for the entry, as stored in the index: nanoseconds for timings, and bytes for sizes.
+     *
+     * @return the value, or a negative number if the value does not apply to the entry
+     */
+    abstract long valueOf(HarEntry entry);
+
+    /**
+     * Converts a value stored in the index into the unit the metric is reported in.
+     */
+    double toReportedValue(double value) {
+        return timing ? value / TimeUnit.MILLISECONDS.toNanos(1) : value;
+    }
+
+    /**
+     * @return true if this metric is a timing, reported in milliseconds; false if it is a size, reported in bytes
+     */
+    public boolean isTiming() {
+        return timing;
+    }
+
+    /**
+     * Returns the metric with the specified name, ignoring case. Names can be given as in the HAR, e.g. "bodySize", or as
+     * constant names, e.g. "BODY_SIZE".
+     *
+     * @param name metric name
+     * @return the metric, or null if there is no metric with that name
+     */
+    public static HarIndexMetric forName(String name) {
+        if (name == null) {
+            return null;
+        }
+
+        String normalizedName = name.replace("_", "");
+
+        for (HarIndexMetric metric : values()) {
+            if (metric.name().replace("_", "").equalsIgnoreCase(normalizedName)) {
+                return metric;
+            }
+        }
+
+        return null;
+    }
+}
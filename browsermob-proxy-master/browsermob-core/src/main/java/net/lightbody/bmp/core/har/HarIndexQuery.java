@@ -0,0 +1,60 @@
+package net.lightbody.bmp.core.har;
+
+/**
+ * Selects the entries in a {@link HarEntryIndex} to aggregate. Each criterion that is set must match; a query with no criteria
+ * matches every entry.
+ */
+public class HarIndexQuery {
+    private volatile String host;
+    private volatile String mimeType;
+    private volatile Integer status;
+    private volatile String pageRef;
+
+    /**
+     * Matches entries whose request was sent to the host.
+     */
+    public HarIndexQuery host(String host) {
+        this.host = host;
+        return this;
+    }
+
+    /**
+     * Matches entries whose response has the MIME type. Parameters like charset are ignored, and the comparison is case-insensitive.
+     */
+    public HarIndexQuery mimeType(String mimeType) {
+        this.mimeType = mimeType;
+        return this;
+    }
+
+    /**
+     * Matches entries whose response has the status code. Use 0 to match entries that did not receive a response.
+     */
+    public HarIndexQuery status(Integer status) {
+        this.status = status;
+        return this;
+    }
+
+    /**
+     * Matches entries on the page.
+     */
+    public HarIndexQuery pageRef(String pageRef) {
+        this.pageRef = pageRef;
+        return this;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+
+    public String getPageRef() {
+        return pageRef;
+    }
+}
@@ -0,0 +1,53 @@
+package net.lightbody.bmp.core.har;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * An entry in a {@link HarEntryIndex}, as returned by {@link HarEntryIndex#top(HarIndexQuery, HarIndexMetric, int)}: the
+ * indexed attributes of the entry and the value of the requested metric.
+ */
+@JsonPropertyOrder({"url", "host", "mimeType", "status", "pageref", "value"})
+public class HarIndexRow {
+    private final String url;
+    private final String host;
+    private final String mimeType;
+    private final int status;
+    private final String pageref;
+    private final double value;
+
+    HarIndexRow(String url, String host, String mimeType, int status, String pageref, double value) {
+        this.url = url;
+        this.host = host;
+        this.mimeType = mimeType;
+        this.status = status;
+        this.pageref = pageref;
+        this.value = value;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getPageref() {
+        return pageref;
+    }
+
+    /**
+     * @return value of the requested metric, in the metric's reported unit
+     */
+    public double getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,98 @@
+package net.lightbody.bmp.core.har;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.util.Arrays;
+
+/**
+ * Aggregates of a {@link HarIndexMetric} over the entries matched by a query. Values are in the metric's reported unit:
+ * milliseconds for timings, bytes for sizes. Percentiles are calculated using the nearest-rank method.
+ */
+@JsonPropertyOrder({"count", "sum", "min", "max", "mean", "p50", "p90", "p95", "p99"})
+public class HarIndexStats {
+    private final long count;
+    private final double sum;
+    private final double min;
+    private final double max;
+    private final double p50;
+    private final double p90;
+    private final double p95;
+    private final double p99;
+    private final HarIndexMetric metric;
+
+    /**
+     * Calculates the aggregates of the values. The values array is sorted in place.
+     *
+     * @param metric metric the values were taken from
+     * @param values values stored in the index, not including values that do not apply
+     * @param count number of values in the array to aggregate
+     */
+    HarIndexStats(HarIndexMetric metric, long[] values, int count) {
+        this.metric = metric;
+        this.count = count;
+
+        Arrays.sort(values, 0, count);
+
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += values[i];
+        }
+
+        this.sum = metric.toReportedValue(total);
+        this.min = count == 0 ? 0 : metric.toReportedValue(values[0]);
+        this.max = count == 0 ? 0 : metric.toReportedValue(values[count - 1]);
+        this.p50 = percentile(values, count, 50);
+        this.p90 = percentile(values, count, 90);
+        this.p95 = percentile(values, count, 95);
+        this.p99 = percentile(values, count, 99);
+    }
+
+    private double percentile(long[] sortedValues, int count, int percentile) {
+        if (count == 0) {
+            return 0;
+        }
+
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+
+        return metric.toReportedValue(sortedValues[Math.max(rank, 1) - 1]);
+    }
+
+    /**
+     * @return number of entries the metric was aggregated over
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP90() {
+        return p90;
+    }
+
+    public double getP95() {
+        return p95;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+}
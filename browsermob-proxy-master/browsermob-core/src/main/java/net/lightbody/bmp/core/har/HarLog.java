@@ -1,8 +1,24 @@
 package net.lightbody.bmp.core.har;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonSetter;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.UnmodifiableIterator;
 
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
@@ -11,14 +27,112 @@ public class HarLog {
     private volatile HarNameVersion creator;
     private volatile HarNameVersion browser;
     private final List<HarPage> pages = new CopyOnWriteArrayList<HarPage>();
-    private final List<HarEntry> entries = new CopyOnWriteArrayList<HarEntry>();
+
+    /**
+     * The entries in this log. New entries are appended in constant time, regardless of the number of entries in the log.
+     */
+    private final ChunkedAppendLog<HarEntry> entries = new ChunkedAppendLog<>();
+
+    /**
+     * The completed entries in this log, in the order they were completed. The log-wide index of each entry is one less
+     * than its sequence number, so a cursor into this log is simply the number of entries completed before it. Evicted entries
+     * are removed, and entries that are evicted before they complete are never added. Archived entries are removed too, but
+     * keep their index; {@link #getEntriesSince(long)} reads them back from the archive.
+     */
+    private final ChunkedAppendLog<HarEntry> completedEntries = new ChunkedAppendLog<>();
     private volatile String comment = "";
 
+    /**
+     * The limits on the number of entries and amount of captured content this log will retain.
+     */
+    private final HarCapacity capacity;
+
+    /**
+     * Guards all capacity bookkeeping. Only used when the capacity is bounded, so unbounded logs never contend on this lock.
+     */
+    private final Object capacityLock = new Object();
+
+    /**
+     * The number of bytes of captured content retained by each entry. Only populated when the capacity limits the retained bytes.
+     */
+    private final ConcurrentMap<HarEntry, Long> retainedBytesByEntry = new ConcurrentHashMap<>();
+
+    /**
+     * Entries with captured content, in the order the content was captured. Only populated when the eviction policy is
+     * {@link HarCapacity.EvictionPolicy#DROP_OLDEST_CONTENT}.
+     */
+    private final Queue<HarEntry> entriesWithContent = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The store for bodies captured in this log, or null if captured bodies are stored directly as text.
+     */
+    private volatile HarContentStore contentStore;
+
+    /**
+     * Limits the content captured in this log as it is received, or null if captured content is not limited.
+     */
+    private volatile HarCaptureBudget captureBudget;
+
+    /**
+     * Notified when entries in this log are completed, or null if no listener is notified.
+     */
+    private volatile HarEntryListener entryListener;
+
+    /**
+     * Notified when completed entries are evicted from this log, or null if no listener is notified.
+     */
+    private volatile HarEntryEvictionListener evictionListener;
+
+    /**
+     * Interns the headers captured in this log, or null if captured headers are not interned.
+     */
+    private volatile HarHeaderDictionary headerDictionary = new HarHeaderDictionary();
+
+    /**
+     * Persists the entries of ended pages to disk, or null if all entries are kept in memory.
+     */
+    private volatile HarPageArchive pageArchive;
+
+    /**
+     * Archived entries that belong to this log but are not in a page archive of its own, or null if there are none. Set
+     * on logs copied from a log with a page archive. See {@link #copyOfPages(Set)}.
+     */
+    private volatile HarPageArchive.Snapshot archivedEntries;
+
+    /**
+     * The pages whose entries have been archived. Entries of these pages that complete later are archived when they complete.
+     */
+    private final Set<String> archivedPageRefs = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Held while entries are moved to the page archive, so that a snapshot of the retained entries and the archived entries
+     * never omits or duplicates an entry being archived.
+     */
+    private final Object archiveLock = new Object();
+
+    /* capacity bookkeeping and eviction counters, guarded by capacityLock */
+    private volatile long retainedBytes;
+    private volatile long evictedEntryCount;
+    private volatile long evictedBytes;
+    private volatile long droppedContentCount;
+
     public HarLog() {
+        this(null, HarCapacity.UNLIMITED);
     }
 
     public HarLog(HarNameVersion creator) {
+        this(creator, HarCapacity.UNLIMITED);
+    }
+
+    /**
+     * Creates a HarLog that will retain at most the specified number of entries and amount of captured content.
+     *
+     * @param creator HAR creator
+     * @param capacity limits on the entries and content this log will retain
+     */
+    public HarLog(HarNameVersion creator, HarCapacity capacity) {
         this.creator = creator;
+        this.capacity = capacity == null ? HarCapacity.UNLIMITED : capacity;
     }
 
     public void addPage(HarPage page) {
@@ -26,7 +140,364 @@ public class HarLog {
     }
 
     public void addEntry(HarEntry entry) {
-        entries.add(entry);
+        if (!capacity.isBounded()) {
+            entries.append(entry);
+            return;
+        }
+
+        synchronized (capacityLock) {
+            entries.append(entry);
+
+            if (capacity.getMaxRetainedBytes() > 0) {
+                retainedBytesByEntry.put(entry, 0L);
+            }
+
+            enforceCapacity();
+        }
+    }
+
+    /**
+     * Records that the specified entry is complete, i.e. its response has been received or its request has failed, assigns
+     * the entry its sequence number, and notifies this log's entry listener. Completing an entry more than once has no effect.
+     * Entries that were evicted from this log before they completed are not recorded, and the listener is not notified.
+     *
+     * @param entry completed entry
+     */
+    public void completeEntry(final HarEntry entry) {
+        if (!entry.markCompleted()) {
+            return;
+        }
+
+        if (!capacity.isBounded()) {
+            entry.setSequence(completedEntries.append(entry) + 1);
+        } else {
+            synchronized (capacityLock) {
+                if (entry.isEvicted()) {
+                    // the entry was evicted while it was in flight, so it is no longer part of this log
+                    return;
+                }
+
+                entry.setSequence(completedEntries.append(entry) + 1);
+            }
+        }
+
+        HarEntryListener entryListener = this.entryListener;
+        if (entryListener != null) {
+            entryListener.entryCompleted(entry);
+        }
+
+        HarPageArchive pageArchive = this.pageArchive;
+        if (pageArchive != null && entry.getPageref() != null && archivedPageRefs.contains(entry.getPageref())) {
+            // the entry's page was archived before the entry completed
+            archiveEntries(pageArchive, new Predicate<HarEntry>() {
+                @Override
+                public boolean apply(HarEntry candidate) {
+                    return candidate == entry;
+                }
+            });
+        }
+    }
+
+    /**
+     * Moves the completed entries of the specified page to this log's page archive, releasing them from memory. Entries of the
+     * page that are completed later are archived as they complete. Has no effect if this log does not have a page archive.
+     * <p/>
+     * Archived entries are still returned by {@link #getEntries()} and {@link #getEntriesSince(long)}, which read them back
+     * from the archive.
+     *
+     * @param pageRef id of the page to archive
+     */
+    public void archivePage(final String pageRef) {
+        HarPageArchive pageArchive = this.pageArchive;
+        if (pageArchive == null || pageRef == null) {
+            return;
+        }
+
+        archivedPageRefs.add(pageRef);
+
+        archiveEntries(pageArchive, new Predicate<HarEntry>() {
+            @Override
+            public boolean apply(HarEntry entry) {
+                return entry.isCompleted() && pageRef.equals(entry.getPageref());
+            }
+        });
+    }
+
+    /**
+     * Removes the entries matching the predicate from this log and passes them to the page archive.
+     */
+    private void archiveEntries(HarPageArchive pageArchive, Predicate<HarEntry> predicate) {
+        List<HarEntry> archived = new ArrayList<>();
+
+        synchronized (archiveLock) {
+            if (!capacity.isBounded()) {
+                entries.remove(predicate, archived);
+                completedEntries.remove(predicate, new ArrayList<HarEntry>());
+            } else {
+                synchronized (capacityLock) {
+                    entries.remove(predicate, archived);
+                    completedEntries.remove(predicate, new ArrayList<HarEntry>());
+
+                    // archived entries no longer count against this log's capacity
+                    for (HarEntry entry : archived) {
+                        Long entryBytes = retainedBytesByEntry.remove(entry);
+                        if (entryBytes != null && entryBytes > 0) {
+                            retainedBytes -= entryBytes;
+
+                            entriesWithContent.remove(entry);
+                        }
+                    }
+                }
+            }
+
+            // archived entries are released from memory, so their content no longer counts against the capture budget
+            for (HarEntry entry : archived) {
+                releaseBudgetedContent(entry, true);
+            }
+
+            pageArchive.archive(archived);
+
+            // the archive has written the archived entries' content, so the content store no longer needs to keep it
+            for (HarEntry entry : archived) {
+                releaseStoredContent(entry);
+            }
+        }
+    }
+
+    /**
+     * Returns the entries completed after the specified cursor, in the order they were completed, and a cursor that can be
+     * passed to a subsequent call to retrieve only the entries completed since this call. Polling with cursors only serializes
+     * each entry once, rather than re-serializing the entire log on every poll.
+     * <p/>
+     * Entries that were evicted to keep this log within its capacity before they were retrieved may not be returned. Entries
+     * that are never completed (e.g. because the client disconnected) are not returned. Entries that have been archived are
+     * read back from the archive; only the archive files containing entries completed after the cursor are read.
+     *
+     * @param cursor cursor returned by a previous call, or 0 to retrieve all completed entries
+     * @return entries completed after the cursor, and the new cursor
+     * @throws net.lightbody.bmp.exception.HarArchiveException if the archived entries cannot be read
+     */
+    public HarEntryBatch getEntriesSince(long cursor) {
+        cursor = Math.max(cursor, 0L);
+
+        List<HarEntry> completed = new ArrayList<>();
+
+        HarPageArchive pageArchive = this.pageArchive;
+        if (pageArchive == null) {
+            long nextCursor = completedEntries.snapshotFrom(cursor, completed);
+
+            return new HarEntryBatch(completed, nextCursor);
+        }
+
+        long nextCursor;
+        HarPageArchive.Snapshot archived;
+        synchronized (archiveLock) {
+            // every entry completed before nextCursor is either still in completedEntries or in the archive snapshot
+            nextCursor = completedEntries.snapshotFrom(cursor, completed);
+            archived = pageArchive.snapshot();
+        }
+
+        int retainedCount = completed.size();
+        try (HarPageArchive.Snapshot.EntryIterator archivedEntries = archived.forSequences(cursor, nextCursor).iterator()) {
+            Iterators.addAll(completed, archivedEntries);
+        }
+
+        if (completed.size() > retainedCount) {
+            Collections.sort(completed, new Comparator<HarEntry>() {
+                @Override
+                public int compare(HarEntry first, HarEntry second) {
+                    return Long.compare(first.getSequence(), second.getSequence());
+                }
+            });
+        }
+
+        return new HarEntryBatch(completed, nextCursor);
+    }
+
+    /**
+     * Records that request or response content has been captured for the specified entry. If this log's capacity limits the
+     * amount of retained content, this may cause older entries to be evicted, or their content to be dropped.
+     * <p/>
+     * If this log has a {@link HarCaptureBudget}, the captured content must have been reserved from it. The reserved bytes are
+     * returned to the budget when the entry is evicted or archived, or when its content is dropped. If the entry is no longer
+     * in this log, they are returned immediately, and the content is released from this log's content store.
+     *
+     * @param entry entry the content was captured for
+     * @param contentBytes size of the captured content, in bytes
+     */
+    public void recordCapturedContent(HarEntry entry, long contentBytes) {
+        if (!entry.addBudgetedContentBytes(Math.max(0L, contentBytes))) {
+            // the entry was evicted or archived before its content was captured, so the content will not be retained
+            HarCaptureBudget captureBudget = this.captureBudget;
+            if (captureBudget != null) {
+                captureBudget.release(contentBytes);
+            }
+
+            releaseStoredContent(entry);
+
+            return;
+        }
+
+        if (capacity.getMaxRetainedBytes() <= 0 || contentBytes <= 0) {
+            return;
+        }
+
+        synchronized (capacityLock) {
+            Long entryBytes = retainedBytesByEntry.get(entry);
+            if (entryBytes == null) {
+                // the entry was already evicted
+                return;
+            }
+
+            retainedBytesByEntry.put(entry, entryBytes + contentBytes);
+            retainedBytes += contentBytes;
+
+            if (capacity.getEvictionPolicy() == HarCapacity.EvictionPolicy.DROP_OLDEST_CONTENT && entryBytes == 0L) {
+                entriesWithContent.add(entry);
+            }
+
+            enforceCapacity();
+        }
+    }
+
+    /**
+     * Evicts entries or drops content until this log is within its capacity. Must be called while holding the capacityLock.
+     */
+    private void enforceCapacity() {
+        int maxEntries = capacity.getMaxEntries();
+        if (maxEntries > 0) {
+            while (entries.size() > maxEntries) {
+                if (!evictOldestEntry()) {
+                    break;
+                }
+            }
+        }
+
+        long maxRetainedBytes = capacity.getMaxRetainedBytes();
+        if (maxRetainedBytes > 0) {
+            while (retainedBytes > maxRetainedBytes) {
+                if (capacity.getEvictionPolicy() == HarCapacity.EvictionPolicy.DROP_OLDEST_CONTENT) {
+                    HarEntry entry = entriesWithContent.poll();
+                    if (entry == null) {
+                        break;
+                    }
+
+                    dropContent(entry);
+                } else {
+                    if (!evictOldestEntry()) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Evicts the oldest entry in this log. Must be called while holding the capacityLock.
+     *
+     * @return true if an entry was evicted, false if the log is empty or its oldest entry is still being added
+     */
+    private boolean evictOldestEntry() {
+        final HarEntry evicted = entries.removeFirst();
+        if (evicted == null) {
+            return false;
+        }
+
+        evicted.markEvicted();
+        releaseBudgetedContent(evicted, true);
+        releaseStoredContent(evicted);
+
+        Long entryBytes = retainedBytesByEntry.remove(evicted);
+        if (entryBytes != null && entryBytes > 0) {
+            retainedBytes -= entryBytes;
+            evictedBytes += entryBytes;
+
+            entriesWithContent.remove(evicted);
+        }
+
+        evictedEntryCount++;
+
+        // entries are only added to the completed entries, and published to the entry listener, when they are assigned a
+        // sequence number. an entry that has been marked completed but not yet assigned a sequence will never be added.
+        if (evicted.getSequence() == 0L) {
+            return true;
+        }
+
+        // remove the evicted entry itself, rather than the oldest completed entry, since entries do not necessarily complete
+        // in the order they were added. the evicted entry is usually near the head of the completed entries.
+        completedEntries.removeFirstMatch(new Predicate<HarEntry>() {
+            @Override
+            public boolean apply(HarEntry entry) {
+                return entry == evicted;
+            }
+        });
+
+        HarEntryEvictionListener evictionListener = this.evictionListener;
+        if (evictionListener != null) {
+            evictionListener.entryEvicted(evicted);
+        }
+
+        return true;
+    }
+
+    private void dropContent(HarEntry entry) {
+        Long entryBytes = retainedBytesByEntry.put(entry, 0L);
+        if (entryBytes != null) {
+            retainedBytes -= entryBytes;
+            evictedBytes += entryBytes;
+        }
+
+        releaseBudgetedContent(entry, false);
+        releaseStoredContent(entry);
+
+        HarResponse response = entry.getResponse();
+        if (response != null) {
+            response.getContent().setText(null);
+            response.getContent().setEncoding(null);
+        }
+
+        HarRequest request = entry.getRequest();
+        if (request != null && request.getPostData() != null) {
+            request.getPostData().setText(null);
+            request.getPostData().setParams(null);
+        }
+
+        droppedContentCount++;
+    }
+
+    /**
+     * Returns the bytes of captured content the entry reserved from this log's capture budget to the budget.
+     *
+     * @param removedFromLog true if the entry was evicted or archived, so that content recorded later is returned immediately
+     */
+    private void releaseBudgetedContent(HarEntry entry, boolean removedFromLog) {
+        long budgetedBytes = entry.clearBudgetedContentBytes(removedFromLog);
+
+        HarCaptureBudget captureBudget = this.captureBudget;
+        if (captureBudget != null) {
+            captureBudget.release(budgetedBytes);
+        }
+    }
+
+    /**
+     * Releases the entry's captured content from this log's content store, once the content is no longer part of this log.
+     * Entries that are still referenced by the caller can still read their content.
+     */
+    private void releaseStoredContent(HarEntry entry) {
+        HarContentStore contentStore = this.contentStore;
+        if (contentStore == null) {
+            return;
+        }
+
+        HarResponse response = entry.getResponse();
+        if (response != null && response.getContent().getStoredContent() != null) {
+            contentStore.release(response.getContent().getStoredContent());
+        }
+
+        HarRequest request = entry.getRequest();
+        if (request != null && request.getPostData() != null && request.getPostData().getStoredContent() != null) {
+            contentStore.release(request.getPostData().getStoredContent());
+        }
     }
 
     public String getVersion() {
@@ -53,15 +524,262 @@ public class HarLog {
         return pages;
     }
 
+    /**
+     * Returns a snapshot of the entries in this log. The returned list is unmodifiable and will not reflect entries added
+     * to the log after this method returns. To add entries to the log, use {@link #addEntry(HarEntry)}. Earlier versions
+     * returned the log's own list; modifying the list returned by this method throws an {@link UnsupportedOperationException}.
+     * <p/>
+     * If this log has archived entries, they are read back from the archive and precede the entries retained in memory.
+     *
+     * @throws net.lightbody.bmp.exception.HarArchiveException if the archived entries cannot be read
+     */
     public List<HarEntry> getEntries() {
-        return entries;
+        if (pageArchive == null && archivedEntries == null) {
+            return Collections.unmodifiableList(entries.snapshot());
+        }
+
+        try (EntryIterator entries = iterateEntries()) {
+            return Collections.unmodifiableList(Lists.newArrayList(entries));
+        }
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the entries in this log, like {@link #getEntries()}, without reading the archived
+     * entries into a list. Archived entries are read from the archive one at a time as the iterator advances, so the iterator
+     * must be closed if it is not exhausted.
+     */
+    EntryIterator iterateEntries() {
+        HarPageArchive pageArchive = this.pageArchive;
+        HarPageArchive.Snapshot archived = this.archivedEntries;
+        if (pageArchive == null && archived == null) {
+            return new EntryIterator(null, entries.snapshot());
+        }
+
+        List<HarEntry> retained;
+        synchronized (archiveLock) {
+            retained = entries.snapshot();
+            if (pageArchive != null) {
+                archived = pageArchive.snapshot();
+            }
+        }
+
+        return new EntryIterator(archived.iterator(), retained);
     }
 
+    /**
+     * Returns a copy of this log containing only the specified pages and their entries. The copy shares the entry and page
+     * objects of this log. Entries that this log has archived are not read until the copy's entries are read.
+     *
+     * @param pageRefs ids of the pages to copy
+     * @return copy of the pages
+     */
+    public HarLog copyOfPages(Set<String> pageRefs) {
+        HarLog copy = new HarLog();
+
+        HarPageArchive pageArchive = this.pageArchive;
+        HarPageArchive.Snapshot archived = this.archivedEntries;
+
+        List<HarEntry> retained;
+        synchronized (archiveLock) {
+            retained = entries.snapshot();
+            if (pageArchive != null) {
+                archived = pageArchive.snapshot();
+            }
+        }
+
+        if (archived != null) {
+            copy.archivedEntries = archived.forPages(pageRefs);
+        }
+
+        for (HarEntry entry : retained) {
+            if (pageRefs.contains(entry.getPageref())) {
+                copy.addEntry(entry);
+            }
+        }
+
+        for (HarPage page : pages) {
+            if (pageRefs.contains(page.getId())) {
+                copy.addPage(page);
+            }
+        }
+
+        return copy;
+    }
+
+    /**
+     * Adds the specified entries to this log. Used by Jackson when deserializing a HarLog, since {@link #getEntries()}
+     * returns an unmodifiable snapshot.
+     */
+    @JsonSetter("entries")
+    private void addEntries(List<HarEntry> entries) {
+        for (HarEntry entry : entries) {
+            addEntry(entry);
+            completeEntry(entry);
+        }
+    }
+
+    /**
+     * Returns the comment on this log. If any entries were evicted or had their content dropped to keep the log within its
+     * capacity, a summary of the evictions is appended to the comment.
+     */
     public String getComment() {
-        return comment;
+        if (evictedEntryCount == 0 && droppedContentCount == 0) {
+            return comment;
+        }
+
+        StringBuilder commentWithEvictions = new StringBuilder();
+        if (comment != null && !comment.isEmpty()) {
+            commentWithEvictions.append(comment).append(' ');
+        }
+
+        commentWithEvictions.append("Evicted ").append(evictedEntryCount).append(" entries and dropped the content of ")
+                .append(droppedContentCount).append(" entries (").append(evictedBytes)
+                .append(" bytes of captured content) to stay within HAR capacity.");
+
+        return commentWithEvictions.toString();
     }
 
     public void setComment(String comment) {
         this.comment = comment;
     }
+
+    /**
+     * @return the store for bodies captured in this log, or null if captured bodies are stored directly as text
+     */
+    @JsonIgnore
+    public HarContentStore getContentStore() {
+        return contentStore;
+    }
+
+    public void setContentStore(HarContentStore contentStore) {
+        this.contentStore = contentStore;
+    }
+
+    /**
+     * @return the budget limiting the content captured in this log, or null if captured content is not limited
+     */
+    @JsonIgnore
+    public HarCaptureBudget getCaptureBudget() {
+        return captureBudget;
+    }
+
+    public void setCaptureBudget(HarCaptureBudget captureBudget) {
+        this.captureBudget = captureBudget;
+    }
+
+    /**
+     * @return the listener notified when entries in this log are completed, or null if no listener is notified
+     */
+    @JsonIgnore
+    public HarEntryListener getEntryListener() {
+        return entryListener;
+    }
+
+    public void setEntryListener(HarEntryListener entryListener) {
+        this.entryListener = entryListener;
+    }
+
+    /**
+     * @return the listener notified when completed entries are evicted from this log, or null if no listener is notified
+     */
+    @JsonIgnore
+    public HarEntryEvictionListener getEvictionListener() {
+        return evictionListener;
+    }
+
+    public void setEvictionListener(HarEntryEvictionListener evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * @return the dictionary used to intern the headers captured in this log, or null if captured headers are not interned
+     */
+    @JsonIgnore
+    public HarHeaderDictionary getHeaderDictionary() {
+        return headerDictionary;
+    }
+
+    public void setHeaderDictionary(HarHeaderDictionary headerDictionary) {
+        this.headerDictionary = headerDictionary;
+    }
+
+    /**
+     * @return the archive that persists the entries of ended pages, or null if all entries are kept in memory
+     */
+    @JsonIgnore
+    public HarPageArchive getPageArchive() {
+        return pageArchive;
+    }
+
+    public void setPageArchive(HarPageArchive pageArchive) {
+        this.pageArchive = pageArchive;
+    }
+
+    @JsonIgnore
+    public HarCapacity getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of bytes of captured content currently retained by this log, if the capacity limits retained bytes; otherwise 0
+     */
+    @JsonIgnore
+    public long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    /**
+     * @return number of entries evicted from this log to stay within its capacity
+     */
+    @JsonIgnore
+    public long getEvictedEntryCount() {
+        return evictedEntryCount;
+    }
+
+    /**
+     * @return number of entries whose captured content was dropped to stay within this log's capacity
+     */
+    @JsonIgnore
+    public long getDroppedContentCount() {
+        return droppedContentCount;
+    }
+
+    /**
+     * @return total number of bytes of captured content discarded by evicting entries or dropping their content
+     */
+    @JsonIgnore
+    public long getEvictedBytes() {
+        return evictedBytes;
+    }
+
+    /**
+     * Iterates the archived entries of a log, followed by its retained entries. Closing the iterator closes the archive file it
+     * is reading, if any.
+     */
+    static class EntryIterator extends UnmodifiableIterator<HarEntry> implements Closeable {
+        private final HarPageArchive.Snapshot.EntryIterator archived;
+        private final Iterator<HarEntry> entries;
+
+        private EntryIterator(HarPageArchive.Snapshot.EntryIterator archived, List<HarEntry> retained) {
+            this.archived = archived;
+            this.entries = archived == null ? retained.iterator() : Iterators.concat(archived, retained.iterator());
+        }
+
+        @Override
+        public boolean hasNext() {
+            return entries.hasNext();
+        }
+
+        @Override
+        public HarEntry next() {
+            return entries.next();
+        }
+
+        @Override
+        public void close() {
+            if (archived != null) {
+                archived.close();
+            }
+        }
+    }
 }
@@ -0,0 +1,417 @@
+package net.lightbody.bmp.core.har;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Jackson module containing hand-written serializers for the most frequently serialized HAR classes: {@link HarLog},
+ * {@link HarEntry}, {@link HarRequest}, {@link HarResponse} and {@link HarTimings}. The serializers write each field directly to
+ * the generator, rather than discovering and invoking the bean's getters through reflection, and read {@link HarTimings} values
+ * from their nanosecond fields without boxing. Less frequently serialized classes, such as {@link HarCookie}, are still serialized
+ * by Jackson's bean serializers. {@link HarContent} also has a serializer, which writes the text of each deduplicated body only
+ * once per output.
+ * <p/>
+ * The serializers produce the same fields and values as the bean serializers, following the inclusion rules declared on each
+ * class, and write the fields in the order they are listed in the HAR specification. The module is registered with every
+ * ObjectMapper created by {@link HarFormat#newObjectMapper()}. Deserialization is not affected.
+ */
+public class HarModule extends SimpleModule {
+    private static final long serialVersionUID = 5049342476425381626L;
+
+    private static final String DATE_FORMAT_PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSSXXX";
+
+    /**
+     * Dates before 1900 are formatted by SimpleDateFormat, which switches to the Julian calendar before 1582. Dates after
+     * 9999 are also formatted by SimpleDateFormat.
+     */
+    private static final long MIN_FAST_FORMAT_MILLIS = -2208988800000L;
+
+    private static final long MILLIS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Serialization attribute holding the {@link HarContent#getContentRef() content references} whose text has already been
+     * written to the current output. {@link HarStreamingWriter} shares one set across all the entries of a HAR; otherwise, the
+     * set is scoped to a single call to the ObjectMapper.
+     */
+    static final String WRITTEN_CONTENT_REFS_ATTRIBUTE = HarModule.class.getName() + ".writtenContentRefs";
+
+    public HarModule() {
+        super("HarModule", Version.unknownVersion());
+
+        HarEntrySerializer entrySerializer = new HarEntrySerializer();
+
+        addSerializer(HarLog.class, new HarLogSerializer(entrySerializer));
+        addSerializer(HarEntry.class, entrySerializer);
+        addSerializer(HarRequest.class, new HarRequestSerializer());
+        addSerializer(HarResponse.class, new HarResponseSerializer());
+        addSerializer(HarTimings.class, new HarTimingsSerializer());
+        addSerializer(HarContent.class, new HarContentSerializer());
+    }
+
+    static class HarLogSerializer extends StdSerializer<HarLog> {
+        private final HarEntrySerializer entrySerializer;
+
+        HarLogSerializer(HarEntrySerializer entrySerializer) {
+            super(HarLog.class);
+
+            this.entrySerializer = entrySerializer;
+        }
+
+        @Override
+        public void serialize(HarLog log, JsonGenerator gen, final SerializerProvider provider) throws IOException {
+            HarStreamingWriter.writeLog(log, gen, new HarStreamingWriter.ValueWriter() {
+                @Override
+                public void writeValue(JsonGenerator generator, Object value) throws IOException {
+                    if (value instanceof HarEntry) {
+                        entrySerializer.serialize((HarEntry) value, generator, provider);
+                    } else {
+                        provider.defaultSerializeValue(value, generator);
+                    }
+                }
+            });
+        }
+    }
+
+    static class HarEntrySerializer extends StdSerializer<HarEntry> {
+        private final HarRequestSerializer requestSerializer = new HarRequestSerializer();
+        private final HarResponseSerializer responseSerializer = new HarResponseSerializer();
+        private final HarTimingsSerializer timingsSerializer = new HarTimingsSerializer();
+
+        HarEntrySerializer() {
+            super(HarEntry.class);
+        }
+
+        @Override
+        public void serialize(HarEntry entry, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+
+            writeOptionalStringField(gen, "pageref", entry.getPageref());
+
+            long startedDateTimeMillis = entry.getStartedDateTimeMillis();
+            if (startedDateTimeMillis != HarEntry.STARTED_DATE_TIME_NOT_SET) {
+                gen.writeFieldName("startedDateTime");
+                writeDate(startedDateTimeMillis, gen, provider);
+            }
+
+            gen.writeNumberField("time", entry.getTime());
+
+            HarRequest request = entry.getRequest();
+            if (request != null) {
+                gen.writeFieldName("request");
+                requestSerializer.serialize(request, gen, provider);
+            }
+
+            HarResponse response = entry.getResponse();
+            if (response != null) {
+                gen.writeFieldName("response");
+                responseSerializer.serialize(response, gen, provider);
+            }
+
+            if (entry.getCache() != null) {
+                provider.defaultSerializeField("cache", entry.getCache(), gen);
+            }
+
+            HarTimings timings = entry.getTimings();
+            if (timings != null) {
+                gen.writeFieldName("timings");
+                timingsSerializer.serialize(timings, gen, provider);
+            }
+
+            writeOptionalStringField(gen, "serverIPAddress", entry.getServerIPAddress());
+            writeOptionalStringField(gen, "connection", entry.getConnection());
+            writeOptionalStringField(gen, "comment", entry.getComment());
+
+            gen.writeEndObject();
+        }
+    }
+
+    static class HarRequestSerializer extends StdSerializer<HarRequest> {
+        HarRequestSerializer() {
+            super(HarRequest.class);
+        }
+
+        @Override
+        public void serialize(HarRequest request, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+
+            writeOptionalStringField(gen, "method", request.getMethod());
+            writeOptionalStringField(gen, "url", request.getUrl());
+            writeOptionalStringField(gen, "httpVersion", request.getHttpVersion());
+
+            writeCookies(request.getCookies(), gen, provider);
+            writeNameValuePairs("headers", request.getHeaders(), gen);
+            writeNameValuePairs("queryString", request.getQueryString(), gen);
+
+            if (request.getPostData() != null) {
+                provider.defaultSerializeField("postData", request.getPostData(), gen);
+            }
+
+            gen.writeNumberField("headersSize", request.getHeadersSize());
+            gen.writeNumberField("bodySize", request.getBodySize());
+
+            writeOptionalStringField(gen, "comment", request.getComment());
+
+            gen.writeEndObject();
+        }
+    }
+
+    static class HarResponseSerializer extends StdSerializer<HarResponse> {
+        private final HarContentSerializer contentSerializer = new HarContentSerializer();
+
+        HarResponseSerializer() {
+            super(HarResponse.class);
+        }
+
+        @Override
+        public void serialize(HarResponse response, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+
+            gen.writeNumberField("status", response.getStatus());
+            writeOptionalStringField(gen, "statusText", response.getStatusText());
+            writeOptionalStringField(gen, "httpVersion", response.getHttpVersion());
+
+            writeCookies(response.getCookies(), gen, provider);
+            writeNameValuePairs("headers", response.getHeaders(), gen);
+
+            HarContent content = response.getContent();
+            if (content == null) {
+                gen.writeNullField("content");
+            } else {
+                gen.writeFieldName("content");
+                contentSerializer.serialize(content, gen, provider);
+            }
+
+            writeOptionalStringField(gen, "redirectURL", response.getRedirectURL());
+            gen.writeNumberField("headersSize", response.getHeadersSize());
+            gen.writeNumberField("bodySize", response.getBodySize());
+            writeOptionalStringField(gen, "comment", response.getComment());
+            writeOptionalStringField(gen, "_error", response.getError());
+
+            gen.writeEndObject();
+        }
+    }
+
+    /**
+     * Writes the content, omitting the text if a content object with the same content reference has already been written to the
+     * current output. The decision is made each time the content is serialized, so an entry is never written without text
+     * merely because its body was captured after an identical body.
+     */
+    static class HarContentSerializer extends StdSerializer<HarContent> {
+        HarContentSerializer() {
+            super(HarContent.class);
+        }
+
+        @Override
+        public void serialize(HarContent content, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+
+            gen.writeNumberField("size", content.getSize());
+            if (content.getCompression() != null) {
+                gen.writeNumberField("compression", content.getCompression());
+            }
+
+            // mimeType is required, so it is written even if it is null
+            gen.writeStringField("mimeType", content.getMimeType());
+
+            String contentRef = content.getContentRef();
+            Set<String> writtenContentRefs = contentRef == null ? null : getWrittenContentRefs(provider);
+            if (writtenContentRefs == null || !writtenContentRefs.contains(contentRef)) {
+                String text = content.getText();
+                if (text != null) {
+                    gen.writeStringField("text", text);
+
+                    if (writtenContentRefs != null) {
+                        writtenContentRefs.add(contentRef);
+                    }
+                }
+            }
+
+            writeOptionalStringField(gen, "encoding", content.getEncoding());
+            writeOptionalStringField(gen, "comment", content.getComment());
+            writeOptionalStringField(gen, "_contentRef", contentRef);
+
+            if (content.getTruncated() != null) {
+                gen.writeBooleanField("_truncated", content.getTruncated());
+            }
+
+            if (content.getOriginalSize() != null) {
+                gen.writeNumberField("_originalSize", content.getOriginalSize());
+            }
+
+            gen.writeEndObject();
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Set<String> getWrittenContentRefs(SerializerProvider provider) {
+            Set<String> writtenContentRefs = (Set<String>) provider.getAttribute(WRITTEN_CONTENT_REFS_ATTRIBUTE);
+            if (writtenContentRefs == null) {
+                writtenContentRefs = new HashSet<>();
+                provider.setAttribute(WRITTEN_CONTENT_REFS_ATTRIBUTE, writtenContentRefs);
+            }
+
+            return writtenContentRefs;
+        }
+    }
+
+    /**
+     * Writes the timings in milliseconds, converted directly from the nanosecond values. HarTimings does not exclude null
+     * values, so a null comment is written as null.
+     */
+    static class HarTimingsSerializer extends StdSerializer<HarTimings> {
+        HarTimingsSerializer() {
+            super(HarTimings.class);
+        }
+
+        @Override
+        public void serialize(HarTimings timings, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+
+            gen.writeNumberField("blocked", timings.getBlocked(TimeUnit.MILLISECONDS));
+            gen.writeNumberField("dns", timings.getDns(TimeUnit.MILLISECONDS));
+            gen.writeNumberField("connect", timings.getConnect(TimeUnit.MILLISECONDS));
+            gen.writeNumberField("send", timings.getSend(TimeUnit.MILLISECONDS));
+            gen.writeNumberField("wait", timings.getWait(TimeUnit.MILLISECONDS));
+            gen.writeNumberField("receive", timings.getReceive(TimeUnit.MILLISECONDS));
+            gen.writeNumberField("ssl", timings.getSsl(TimeUnit.MILLISECONDS));
+            gen.writeStringField("comment", timings.getComment());
+
+            gen.writeEndObject();
+        }
+    }
+
+    /**
+     * Writes the field if the value is not null, following the {@link com.fasterxml.jackson.annotation.JsonInclude.Include#NON_NULL}
+     * inclusion rule declared on the HAR classes.
+     */
+    private static void writeOptionalStringField(JsonGenerator gen, String fieldName, String value) throws IOException {
+        if (value != null) {
+            gen.writeStringField(fieldName, value);
+        }
+    }
+
+    private static void writeCookies(List<HarCookie> cookies, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeArrayFieldStart("cookies");
+        for (HarCookie cookie : cookies) {
+            provider.defaultSerializeValue(cookie, gen);
+        }
+        gen.writeEndArray();
+    }
+
+    /**
+     * Writes headers and query parameters. HarNameValuePair does not exclude null values, so null names and values are written
+     * as null.
+     */
+    private static void writeNameValuePairs(String fieldName, List<HarNameValuePair> pairs, JsonGenerator gen) throws IOException {
+        gen.writeArrayFieldStart(fieldName);
+        for (HarNameValuePair pair : pairs) {
+            if (pair == null) {
+                gen.writeNull();
+                continue;
+            }
+
+            gen.writeStartObject();
+            gen.writeStringField("name", pair.getName());
+            gen.writeStringField("value", pair.getValue());
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+    }
+
+    /**
+     * Writes the date in the format declared on {@link HarEntry#getStartedDateTime()}, yyyy-MM-dd'T'HH:mm:ss.SSSXXX, in the
+     * ObjectMapper's time zone. The fields are calculated directly from the epoch millis, rather than with a SimpleDateFormat.
+     */
+    static void writeDate(long millis, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        TimeZone timeZone = provider.getConfig().getTimeZone();
+
+        if (millis < MIN_FAST_FORMAT_MILLIS) {
+            writeFormattedDate(millis, timeZone, gen, provider);
+            return;
+        }
+
+        int offsetMillis = timeZone.getOffset(millis);
+        long localMillis = millis + offsetMillis;
+
+        long epochDay = localMillis / MILLIS_PER_DAY;
+        int millisOfDay = (int) (localMillis % MILLIS_PER_DAY);
+        if (millisOfDay < 0) {
+            // dates before 1970
+            millisOfDay += MILLIS_PER_DAY;
+            epochDay--;
+        }
+
+        // convert the epoch day to a year, month and day in the proleptic Gregorian calendar
+        long zeroDay = epochDay + 719468;
+        long era = zeroDay / 146097;
+        int dayOfEra = (int) (zeroDay - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        if (year > 9999) {
+            writeFormattedDate(millis, timeZone, gen, provider);
+            return;
+        }
+
+        char[] chars = new char[29];
+        int length = 0;
+
+        length = writeDigits(chars, length, (int) year, 4);
+        chars[length++] = '-';
+        length = writeDigits(chars, length, month, 2);
+        chars[length++] = '-';
+        length = writeDigits(chars, length, day, 2);
+        chars[length++] = 'T';
+        length = writeDigits(chars, length, millisOfDay / 3600000, 2);
+        chars[length++] = ':';
+        length = writeDigits(chars, length, millisOfDay / 60000 % 60, 2);
+        chars[length++] = ':';
+        length = writeDigits(chars, length, millisOfDay / 1000 % 60, 2);
+        chars[length++] = '.';
+        length = writeDigits(chars, length, millisOfDay % 1000, 3);
+
+        if (offsetMillis == 0) {
+            chars[length++] = 'Z';
+        } else {
+            int offsetMinutes = Math.abs(offsetMillis) / 60000;
+
+            chars[length++] = offsetMillis < 0 ? '-' : '+';
+            length = writeDigits(chars, length, offsetMinutes / 60, 2);
+            chars[length++] = ':';
+            length = writeDigits(chars, length, offsetMinutes % 60, 2);
+        }
+
+        gen.writeString(chars, 0, length);
+    }
+
+    private static void writeFormattedDate(long millis, TimeZone timeZone, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT_PATTERN, provider.getConfig().getLocale());
+        dateFormat.setTimeZone(timeZone);
+
+        gen.writeString(dateFormat.format(new Date(millis)));
+    }
+
+    private static int writeDigits(char[] chars, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+
+        return offset + width;
+    }
+}
@@ -1,10 +1,14 @@
 package net.lightbody.bmp.core.har;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 public final class HarNameValuePair {
     private final String name;
     private final String value;
 
-    public HarNameValuePair(String name, String value) {
+    @JsonCreator
+    public HarNameValuePair(@JsonProperty("name") String name, @JsonProperty("value") String value) {
         this.name = name;
         this.value = value;
     }
@@ -1,11 +1,15 @@
 package net.lightbody.bmp.core.har;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 public class HarNameVersion {
     private final String name;
     private final String version;
     private volatile String comment = "";
 
-    public HarNameVersion(String name, String version) {
+    @JsonCreator
+    public HarNameVersion(@JsonProperty("name") String name, @JsonProperty("version") String version) {
         this.name = name;
         this.version = version;
     }
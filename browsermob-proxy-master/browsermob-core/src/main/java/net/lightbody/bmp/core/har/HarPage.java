@@ -1,6 +1,7 @@
 package net.lightbody.bmp.core.har;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
 import java.util.Date;
@@ -8,7 +9,13 @@ import java.util.Date;
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class HarPage {
     private volatile String id;
-    private volatile Date startedDateTime;
+
+    /**
+     * The time this page was started, in milliseconds since the epoch, or {@link HarEntry#STARTED_DATE_TIME_NOT_SET} if the start time is not set.
+     * Stored as a primitive, so that a Date is only created when the page is serialized.
+     */
+    private volatile long startedDateTimeMillis = HarEntry.STARTED_DATE_TIME_NOT_SET;
+
     private volatile String title = "";
     private final HarPageTimings pageTimings = new HarPageTimings();
     private volatile String comment = "";
@@ -23,7 +30,7 @@ public class HarPage {
     public HarPage(String id, String title) {
         this.id = id;
         this.title = title;
-        startedDateTime = new Date();
+        startedDateTimeMillis = System.currentTimeMillis();
     }
 
     public String getId() {
@@ -36,11 +43,25 @@ public class HarPage {
 
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSSXXX")
     public Date getStartedDateTime() {
-        return startedDateTime;
+        long startedDateTimeMillis = this.startedDateTimeMillis;
+
+        return startedDateTimeMillis == HarEntry.STARTED_DATE_TIME_NOT_SET ? null : new Date(startedDateTimeMillis);
     }
 
     public void setStartedDateTime(Date startedDateTime) {
-        this.startedDateTime = startedDateTime;
+        this.startedDateTimeMillis = startedDateTime == null ? HarEntry.STARTED_DATE_TIME_NOT_SET : startedDateTime.getTime();
+    }
+
+    /**
+     * @return the time this page was started, in milliseconds since the epoch, or {@link HarEntry#STARTED_DATE_TIME_NOT_SET} if the start time is not set
+     */
+    @JsonIgnore
+    public long getStartedDateTimeMillis() {
+        return startedDateTimeMillis;
+    }
+
+    public void setStartedDateTimeMillis(long startedDateTimeMillis) {
+        this.startedDateTimeMillis = startedDateTimeMillis;
     }
 
     public String getTitle() {
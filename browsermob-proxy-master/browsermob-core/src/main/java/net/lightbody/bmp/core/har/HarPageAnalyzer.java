@@ -0,0 +1,204 @@
+package net.lightbody.bmp.core.har;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Computes the load times and sizes of each page in a HAR as entries are completed, so that a {@link HarPageSummary} can be
+ * returned without serializing or traversing the HAR. The metrics are the page metrics reported by the haralyzer library:
+ * <ul>
+ *     <li>The load time of a type of asset is the number of distinct milliseconds during which at least one response of that
+ *     type was loading, so responses loaded in parallel are only counted once. Each response is considered to be loading
+ *     from its start time through its start time plus its total time, inclusive.</li>
+ *     <li>The size of a type of asset is the sum of the body sizes of responses of that type. Responses with no body
+ *     size are not counted.</li>
+ *     <li>The type of a response is determined from its MIME type: types containing "html" are HTML, "css" are CSS,
+ *     "javascript" are JavaScript, "image" are images, and "text" are text. A response can have more than one type, e.g.
+ *     text/html is both HTML and text.</li>
+ * </ul>
+ * The main HTML document of a page is the earliest started HTML response with a 2xx status. Its size is the size of its
+ * content, or the size of its body if its content was not captured.
+ * <p/>
+ * This class is thread-safe.
+ */
+public class HarPageAnalyzer implements HarEntryListener {
+    private final Map<String, PageMetrics> metricsByPage = new HashMap<>();
+
+    @Override
+    public void entryCompleted(HarEntry entry) {
+        String pageRef = entry.getPageref();
+        if (pageRef == null) {
+            return;
+        }
+
+        HarResponse response = entry.getResponse();
+        String mimeType = response == null || response.getContent().getMimeType() == null
+                ? "" : response.getContent().getMimeType().toLowerCase(Locale.US);
+
+        long bodySize = response == null ? -1 : response.getBodySize();
+        // the content size is only known when content is captured; otherwise, use the size of the body as received
+        long contentSize = response == null ? -1 : response.getContent().getSize();
+        if (contentSize <= 0) {
+            contentSize = bodySize;
+        }
+        int status = response == null ? 0 : response.getStatus();
+
+        long start = entry.getStartedDateTimeMillis();
+        long end = start + entry.getTime();
+
+        synchronized (metricsByPage) {
+            PageMetrics metrics = metricsByPage.get(pageRef);
+            if (metrics == null) {
+                metrics = new PageMetrics();
+                metricsByPage.put(pageRef, metrics);
+            }
+
+            metrics.entryCount++;
+
+            boolean html = mimeType.contains("html");
+            boolean css = mimeType.contains("css");
+            boolean js = mimeType.contains("javascript");
+            boolean image = mimeType.contains("image");
+            boolean text = mimeType.contains("text");
+
+            // entries without a start time cannot be placed on a timeline
+            if (start != HarEntry.STARTED_DATE_TIME_NOT_SET) {
+                if (html) {
+                    metrics.htmlTimeline.add(start, end);
+                }
+
+                if (css) {
+                    metrics.cssTimeline.add(start, end);
+                }
+
+                if (js) {
+                    metrics.jsTimeline.add(start, end);
+                }
+
+                if (image) {
+                    metrics.imageTimeline.add(start, end);
+                }
+            }
+
+            if (bodySize > 0) {
+                metrics.pageSize += bodySize;
+
+                if (text) {
+                    metrics.textSize += bodySize;
+                }
+
+                if (js) {
+                    metrics.jsSize += bodySize;
+                }
+
+                if (image) {
+                    metrics.imageSize += bodySize;
+                }
+            }
+
+            if (html && status >= 200 && status < 300 && start < metrics.mainHtmlStart) {
+                metrics.mainHtmlStart = start;
+                metrics.mainHtmlSize = contentSize;
+            }
+        }
+    }
+
+    /**
+     * Returns the summary of each of the pages, in the order they are specified. Pages without completed entries are
+     * summarized with zero load times and sizes.
+     *
+     * @param pages pages to summarize
+     * @return summaries of the pages
+     */
+    public List<HarPageSummary> getPageSummaries(List<HarPage> pages) {
+        List<HarPageSummary> summaries = new ArrayList<>(pages.size());
+
+        synchronized (metricsByPage) {
+            for (HarPage page : pages) {
+                PageMetrics metrics = metricsByPage.get(page.getId());
+                if (metrics == null) {
+                    metrics = new PageMetrics();
+                }
+
+                summaries.add(new HarPageSummary(page.getId(), page.getTitle(), metrics.entryCount,
+                        metrics.htmlTimeline.getMillis(), metrics.cssTimeline.getMillis(),
+                        metrics.jsTimeline.getMillis(), metrics.imageTimeline.getMillis(),
+                        metrics.pageSize, metrics.textSize, metrics.jsSize, metrics.imageSize,
+                        metrics.mainHtmlSize));
+            }
+        }
+
+        return summaries;
+    }
+
+    /**
+     * The metrics of a single page, guarded by the analyzer's lock.
+     */
+    private static class PageMetrics {
+        int entryCount;
+
+        final Timeline htmlTimeline = new Timeline();
+        final Timeline cssTimeline = new Timeline();
+        final Timeline jsTimeline = new Timeline();
+        final Timeline imageTimeline = new Timeline();
+
+        long pageSize;
+        long textSize;
+        long jsSize;
+        long imageSize;
+
+        long mainHtmlStart = Long.MAX_VALUE;
+        long mainHtmlSize = -1;
+    }
+
+    /**
+     * The union of the millisecond intervals during which responses were loading, stored as disjoint intervals keyed by their
+     * start time. Responses usually complete in roughly the order they started, so each new interval typically merges with the
+     * last interval in the map.
+     */
+    private static class Timeline {
+        private final TreeMap<Long, Long> intervals = new TreeMap<>();
+
+        /** the number of distinct milliseconds covered by the intervals */
+        private long millis;
+
+        /**
+         * Adds the inclusive interval [start, end].
+         */
+        void add(long start, long end) {
+            Map.Entry<Long, Long> previous = intervals.floorEntry(start);
+            if (previous != null && previous.getValue() >= start - 1) {
+                if (previous.getValue() >= end) {
+                    return;
+                }
+
+                start = previous.getKey();
+                remove(previous.getKey(), previous.getValue());
+            }
+
+            Map.Entry<Long, Long> next = intervals.ceilingEntry(start);
+            while (next != null && next.getKey() <= end + 1) {
+                end = Math.max(end, next.getValue());
+                remove(next.getKey(), next.getValue());
+
+                next = intervals.ceilingEntry(start);
+            }
+
+            intervals.put(start, end);
+            millis += end - start + 1;
+        }
+
+        private void remove(long start, long end) {
+            intervals.remove(start);
+            millis -= end - start + 1;
+        }
+
+        long getMillis() {
+            return millis;
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package net.lightbody.bmp.core.har;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.lightbody.bmp.exception.HarArchiveException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists the entries of ended pages to disk, so that they do not remain on the heap for the life of the HAR. Entries passed
+ * to {@link #archive(List)} are written by a background thread to a series of rolling files in the archive's directory, each
+ * containing one JSON entry per line. A new file is started when the current file reaches the maximum file size.
+ * <p/>
+ * Archived entries are read back from disk when a {@link Snapshot} of the archive is iterated. Entries that have been archived
+ * but not yet written are held in memory until they are written, and are included in snapshots. If the entries cannot be
+ * written, they remain in memory.
+ * <p/>
+ * The archive keeps the {@link HarEntry#getSequence() sequence number} of each written entry in memory, so that entries read
+ * back from disk have their sequence numbers, and {@link HarLog#getEntriesSince(long)} can read archived entries by sequence.
+ * <p/>
+ * The archive files are not deleted when the archive is closed, so a HAR that has ended can still read its archived entries,
+ * and the files remain available as a record of the capture.
+ */
+public class HarPageArchive implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(HarPageArchive.class);
+
+    /**
+     * Default size at which a new archive file is started: 64 MB.
+     */
+    public static final long DEFAULT_MAX_FILE_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * Suffix of the archive files.
+     */
+    public static final String FILE_SUFFIX = ".jsonl";
+
+    private static final ObjectMapper OBJECT_MAPPER = HarFormat.JSON.newObjectMapper();
+
+    private static final ObjectWriter ENTRY_WRITER = OBJECT_MAPPER.writerFor(HarEntry.class);
+
+    private static final ObjectReader ENTRY_READER = OBJECT_MAPPER.readerFor(HarEntry.class)
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private final File directory;
+    private final String filePrefix;
+    private final long maxFileSize;
+
+    private final ExecutorService writer;
+
+    /**
+     * Guards the file list and the entries that have not been written. The writer thread never holds this lock while writing.
+     */
+    private final Object lock = new Object();
+
+    /* guarded by lock */
+    private final List<File> files = new ArrayList<>();
+    private final List<Long> fileLengths = new ArrayList<>();
+    private final List<Integer> fileFirstEntryIndexes = new ArrayList<>();
+    private List<HarEntry> pendingEntries = new ArrayList<>();
+    private List<HarEntry> writingEntries = Collections.emptyList();
+    private final List<HarEntry> failedEntries = new ArrayList<>();
+    private long writtenEntryCount;
+
+    /**
+     * The sequence numbers of the written entries, in the order they were written. Guarded by lock. Values are only appended,
+     * so snapshots share the array and read only the values written before the snapshot was taken.
+     */
+    private long[] writtenSequences = new long[ChunkedAppendLog.CHUNK_SIZE];
+
+    /* only accessed by the writer thread */
+    private File currentFile;
+    private long currentFileLength;
+
+    /**
+     * Creates an archive that writes files named filePrefix-00001.jsonl, filePrefix-00002.jsonl, etc. to the directory. The
+     * directory is created if it does not exist.
+     *
+     * @param directory directory to write the archive files to
+     * @param filePrefix prefix of the archive file names
+     * @param maxFileSize size in bytes at which a new file is started, or 0 to write all entries to a single file
+     */
+    public HarPageArchive(File directory, String filePrefix, long maxFileSize) {
+        if (maxFileSize < 0) {
+            throw new IllegalArgumentException("Maximum archive file size cannot be negative");
+        }
+
+        this.directory = directory;
+        this.filePrefix = filePrefix;
+        this.maxFileSize = maxFileSize;
+
+        this.writer = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("har-page-archive-" + filePrefix)
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * Queues the entries to be written to disk by the archive's writer thread. The caller should release its references to
+     * the entries once they are archived. Entries archived after the archive is closed are kept in memory.
+     *
+     * @param entries entries to archive
+     */
+    public void archive(List<HarEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        synchronized (lock) {
+            pendingEntries.addAll(entries);
+        }
+
+        try {
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    writePendingEntries();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("HAR page archive is closed. Archived entries will be kept in memory.");
+        }
+    }
+
+    /**
+     * Waits until all entries archived before this call have been written.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        try {
+            writer.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } catch (RejectedExecutionException e) {
+            // the archive is closed, so wait for the writer to finish the entries archived before it was closed
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to flush HAR page archive", e.getCause());
+        }
+    }
+
+    /**
+     * Returns a snapshot of the entries archived so far. Archived entries are read from disk each time the snapshot is
+     * iterated; entries archived after the snapshot is taken are not included.
+     *
+     * @return snapshot of the archived entries
+     */
+    public Snapshot snapshot() {
+        synchronized (lock) {
+            List<HarEntry> unwrittenEntries = new ArrayList<>(failedEntries.size() + writingEntries.size() + pendingEntries.size());
+            unwrittenEntries.addAll(failedEntries);
+            unwrittenEntries.addAll(writingEntries);
+            unwrittenEntries.addAll(pendingEntries);
+
+            return new Snapshot(ImmutableList.copyOf(files), ImmutableList.copyOf(fileLengths), ImmutableList.copyOf(fileFirstEntryIndexes),
+                    writtenSequences, (int) writtenEntryCount, unwrittenEntries, null, Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * @return the archive files written so far, oldest first
+     */
+    public List<File> getFiles() {
+        synchronized (lock) {
+            return ImmutableList.copyOf(files);
+        }
+    }
+
+    /**
+     * @return number of entries written to disk
+     */
+    public long getWrittenEntryCount() {
+        synchronized (lock) {
+            return writtenEntryCount;
+        }
+    }
+
+    /**
+     * Stops the writer thread once all archived entries have been written. Does not wait for the entries to be written, and
+     * does not delete the archive files.
+     */
+    @Override
+    public void close() {
+        writer.shutdown();
+    }
+
+    /**
+     * Writes the pending entries to the current archive file. Only called on the writer thread.
+     */
+    private void writePendingEntries() {
+        List<HarEntry> entries;
+        synchronized (lock) {
+            if (pendingEntries.isEmpty()) {
+                return;
+            }
+
+            entries = pendingEntries;
+            writingEntries = entries;
+            pendingEntries = new ArrayList<>();
+        }
+
+        // index of the first entry that has not been committed to an archive file
+        int committed = 0;
+        OutputStream os = null;
+        try {
+            try {
+                for (int i = 0; i < entries.size(); i++) {
+                    if (currentFile == null || (maxFileSize > 0 && currentFileLength >= maxFileSize)) {
+                        if (os != null) {
+                            os.close();
+                            os = null;
+
+                            commitWrittenEntries(entries, committed, i);
+                            committed = i;
+                        }
+
+                        startNewFile();
+                    }
+
+                    if (os == null) {
+                        os = new BufferedOutputStream(new FileOutputStream(currentFile, true), 64 * 1024);
+                    }
+
+                    byte[] json = ENTRY_WRITER.writeValueAsBytes(entries.get(i));
+                    os.write(json);
+                    os.write('\n');
+
+                    currentFileLength += json.length + 1;
+                }
+            } finally {
+                if (os != null) {
+                    os.close();
+                }
+            }
+
+            commitWrittenEntries(entries, committed, entries.size());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to write archived HAR entries to {}. Entries will be kept in memory.", currentFile, e);
+
+            // a partially written file cannot be appended to, so start a new file for the next entries
+            currentFile = null;
+
+            synchronized (lock) {
+                failedEntries.addAll(entries.subList(committed, entries.size()));
+                writingEntries = Collections.emptyList();
+            }
+        }
+    }
+
+    /**
+     * Makes the entries written to the current archive file visible to snapshots. Only called on the writer thread.
+     *
+     * @param entries the entries being written
+     * @param from index of the first entry written to the current file
+     * @param to index after the last entry written to the current file
+     */
+    private void commitWrittenEntries(List<HarEntry> entries, int from, int to) {
+        synchronized (lock) {
+            int writtenCount = (int) writtenEntryCount;
+            if (writtenCount + to - from > writtenSequences.length) {
+                writtenSequences = Arrays.copyOf(writtenSequences, Math.max(writtenSequences.length * 2, writtenCount + to - from));
+            }
+
+            for (int i = from; i < to; i++) {
+                writtenSequences[writtenCount++] = entries.get(i).getSequence();
+            }
+
+            fileLengths.set(fileLengths.size() - 1, currentFileLength);
+            writingEntries = entries.subList(to, entries.size());
+            writtenEntryCount += to - from;
+        }
+    }
+
+    private void startNewFile() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create HAR archive directory " + directory);
+        }
+
+        synchronized (lock) {
+            currentFile = new File(directory, String.format("%s-%05d%s", filePrefix, files.size() + 1, FILE_SUFFIX));
+
+            files.add(currentFile);
+            fileLengths.add(0L);
+            fileFirstEntryIndexes.add((int) writtenEntryCount);
+        }
+
+        currentFileLength = 0;
+    }
+
+    /**
+     * The entries in a {@link HarPageArchive} at a point in time, optionally restricted to the entries of certain pages or to a
+     * range of sequence numbers.
+     * Iterating a snapshot reads the archived entries from disk one at a time, so only a single archived entry is held in
+     * memory by the iterator. Iterators throw {@link HarArchiveException} if the archive files cannot be read.
+     * <p/>
+     * An iterator holds the archive file it is reading open until it has read all of the entries, throws an exception, or is
+     * closed. Callers that may stop iterating early must close the {@link EntryIterator}.
+     */
+    public static class Snapshot implements Iterable<HarEntry> {
+        private final List<File> files;
+        private final List<Long> fileLengths;
+        private final List<Integer> fileFirstEntryIndexes;
+        private final long[] writtenSequences;
+        private final int writtenEntryCount;
+        private final List<HarEntry> unwrittenEntries;
+        private final Set<String> pageRefs;
+
+        /* only entries with afterSequence < sequence <= throughSequence are included */
+        private final long afterSequence;
+        private final long throughSequence;
+
+        private Snapshot(List<File> files, List<Long> fileLengths, List<Integer> fileFirstEntryIndexes, long[] writtenSequences,
+                         int writtenEntryCount, List<HarEntry> unwrittenEntries, Set<String> pageRefs, long afterSequence,
+                         long throughSequence) {
+            this.files = files;
+            this.fileLengths = fileLengths;
+            this.fileFirstEntryIndexes = fileFirstEntryIndexes;
+            this.writtenSequences = writtenSequences;
+            this.writtenEntryCount = writtenEntryCount;
+            this.unwrittenEntries = unwrittenEntries;
+            this.pageRefs = pageRefs;
+            this.afterSequence = afterSequence;
+            this.throughSequence = throughSequence;
+        }
+
+        /**
+         * Returns a snapshot containing only the entries in this snapshot that belong to the specified pages.
+         *
+         * @param pageRefs ids of the pages whose entries to include
+         * @return snapshot of the entries of the pages
+         */
+        public Snapshot forPages(Set<String> pageRefs) {
+            List<HarEntry> unwrittenPageEntries = new ArrayList<>();
+            for (HarEntry entry : unwrittenEntries) {
+                if (pageRefs.contains(entry.getPageref())) {
+                    unwrittenPageEntries.add(entry);
+                }
+            }
+
+            return new Snapshot(files, fileLengths, fileFirstEntryIndexes, writtenSequences, writtenEntryCount, unwrittenPageEntries,
+                    ImmutableSet.copyOf(pageRefs), afterSequence, throughSequence);
+        }
+
+        /**
+         * Returns a snapshot containing only the entries in this snapshot whose sequence numbers are in the specified range.
+         * Archive files that contain no entries in the range are not read.
+         *
+         * @param afterSequence entries with this sequence number or lower are excluded
+         * @param throughSequence entries with a higher sequence number than this are excluded
+         * @return snapshot of the entries in the range
+         */
+        public Snapshot forSequences(long afterSequence, long throughSequence) {
+            return new Snapshot(files, fileLengths, fileFirstEntryIndexes, writtenSequences, writtenEntryCount, unwrittenEntries,
+                    pageRefs, Math.max(afterSequence, this.afterSequence), Math.min(throughSequence, this.throughSequence));
+        }
+
+        private boolean includesSequence(long sequence) {
+            return sequence > afterSequence && sequence <= throughSequence;
+        }
+
+        /**
+         * Returns the index of the first written entry after the entries in the specified file.
+         */
+        private int fileEndEntryIndex(int fileIndex) {
+            return fileIndex + 1 < fileFirstEntryIndexes.size() ? fileFirstEntryIndexes.get(fileIndex + 1) : writtenEntryCount;
+        }
+
+        /**
+         * @return true if any entry written to the specified file is in this snapshot's range of sequence numbers
+         */
+        private boolean fileIncludesSequences(int fileIndex) {
+            for (int i = fileFirstEntryIndexes.get(fileIndex); i < fileEndEntryIndex(fileIndex); i++) {
+                if (includesSequence(writtenSequences[i])) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        /**
+         * Returns an iterator that reads the entries in this snapshot. The iterator must be closed if it is not exhausted.
+         */
+        @Override
+        public EntryIterator iterator() {
+            return new EntryIterator();
+        }
+
+        /**
+         * Reads the entries in a snapshot from the archive files, one file at a time.
+         */
+        public class EntryIterator extends AbstractIterator<HarEntry> implements Closeable {
+            private int fileIndex;
+            private int entryIndex;
+            private InputStream fileStream;
+            private MappingIterator<HarEntry> fileEntries;
+            private final Iterator<HarEntry> unwritten = unwrittenEntries.iterator();
+            private boolean closed;
+
+            private EntryIterator() {
+            }
+
+            @Override
+            protected HarEntry computeNext() {
+                try {
+                    while (true) {
+                        if (closed) {
+                            return endOfData();
+                        }
+
+                        if (fileEntries != null && fileEntries.hasNextValue()) {
+                            HarEntry entry = fileEntries.nextValue();
+                            entry.setSequence(writtenSequences[entryIndex++]);
+
+                            if ((pageRefs == null || pageRefs.contains(entry.getPageref())) && includesSequence(entry.getSequence())) {
+                                return entry;
+                            }
+                        } else if (fileEntries != null) {
+                            closeFile();
+                        } else if (fileIndex < files.size()) {
+                            if (!fileIncludesSequences(fileIndex)) {
+                                fileIndex++;
+                                continue;
+                            }
+
+                            // only read the part of the file that was written when the snapshot was taken
+                            long length = fileLengths.get(fileIndex);
+                            entryIndex = fileFirstEntryIndexes.get(fileIndex);
+                            fileStream = ByteStreams.limit(new BufferedInputStream(new FileInputStream(files.get(fileIndex++))), length);
+                            fileEntries = ENTRY_READER.readValues(fileStream);
+                        } else if (unwritten.hasNext()) {
+                            HarEntry entry = unwritten.next();
+                            if (includesSequence(entry.getSequence())) {
+                                return entry;
+                            }
+                        } else {
+                            return endOfData();
+                        }
+                    }
+                } catch (IOException e) {
+                    File file = files.get(fileIndex - 1);
+                    close();
+
+                    throw new HarArchiveException("Unable to read archived HAR entries from " + file, e);
+                } catch (RuntimeException e) {
+                    close();
+
+                    throw e;
+                }
+            }
+
+            private void closeFile() throws IOException {
+                fileEntries = null;
+
+                InputStream stream = fileStream;
+                fileStream = null;
+                stream.close();
+            }
+
+            /**
+             * Closes the archive file this iterator is reading, if any. The iterator reads no more entries once it is closed.
+             */
+            @Override
+            public void close() {
+                closed = true;
+
+                if (fileStream != null) {
+                    try {
+                        closeFile();
+                    } catch (IOException e) {
+                        log.debug("Unable to close HAR archive file", e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package net.lightbody.bmp.core.har;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * Load times and sizes of the entries on a single page, as computed by a {@link HarPageAnalyzer}. Load times are in milliseconds,
+ * and sizes are in bytes.
+ */
+@JsonPropertyOrder({"pageref", "title", "entryCount", "htmlLoadTime", "cssLoadTime", "jsLoadTime", "imageLoadTime",
+        "pageSize", "textSize", "jsSize", "imageSize", "mainHtmlSize"})
+public class HarPageSummary {
+    private final String pageref;
+    private final String title;
+    private final int entryCount;
+    private final long htmlLoadTime;
+    private final long cssLoadTime;
+    private final long jsLoadTime;
+    private final long imageLoadTime;
+    private final long pageSize;
+    private final long textSize;
+    private final long jsSize;
+    private final long imageSize;
+    private final long mainHtmlSize;
+
+    HarPageSummary(String pageref, String title, int entryCount,
+                   long htmlLoadTime, long cssLoadTime, long jsLoadTime, long imageLoadTime,
+                   long pageSize, long textSize, long jsSize, long imageSize, long mainHtmlSize) {
+        this.pageref = pageref;
+        this.title = title;
+        this.entryCount = entryCount;
+        this.htmlLoadTime = htmlLoadTime;
+        this.cssLoadTime = cssLoadTime;
+        this.jsLoadTime = jsLoadTime;
+        this.imageLoadTime = imageLoadTime;
+        this.pageSize = pageSize;
+        this.textSize = textSize;
+        this.jsSize = jsSize;
+        this.imageSize = imageSize;
+        this.mainHtmlSize = mainHtmlSize;
+    }
+
+    public String getPageref() {
+        return pageref;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return number of completed entries on the page
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return number of milliseconds during which at least one HTML response was loading
+     */
+    public long getHtmlLoadTime() {
+        return htmlLoadTime;
+    }
+
+    /**
+     * @return number of milliseconds during which at least one CSS response was loading
+     */
+    public long getCssLoadTime() {
+        return cssLoadTime;
+    }
+
+    /**
+     * @return number of milliseconds during which at least one JavaScript response was loading
+     */
+    public long getJsLoadTime() {
+        return jsLoadTime;
+    }
+
+    /**
+     * @return number of milliseconds during which at least one image response was loading
+     */
+    public long getImageLoadTime() {
+        return imageLoadTime;
+    }
+
+    /**
+     * @return total body size of all responses on the page
+     */
+    public long getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return total body size of text responses, including HTML, CSS, and text/javascript responses
+     */
+    public long getTextSize() {
+        return textSize;
+    }
+
+    /**
+     * @return total body size of JavaScript responses
+     */
+    public long getJsSize() {
+        return jsSize;
+    }
+
+    /**
+     * @return total body size of image responses
+     */
+    public long getImageSize() {
+        return imageSize;
+    }
+
+    /**
+     * @return content size of the page's main HTML document, or its body size if its content was not captured, or -1 if the
+     *         page has no successful HTML response
+     */
+    public long getMainHtmlSize() {
+        return mainHtmlSize;
+    }
+}
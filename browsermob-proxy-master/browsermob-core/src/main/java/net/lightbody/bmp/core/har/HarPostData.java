@@ -1,7 +1,10 @@
 package net.lightbody.bmp.core.har;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.nio.charset.Charset;
 import java.util.List;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
@@ -11,6 +14,22 @@ public class HarPostData {
     private volatile String text;
     private volatile String comment = "";
 
+    /**
+     * The raw captured request body, if the text of this post data is materialized on demand. See {@link #setStoredContent(StoredContent, Charset)}.
+     */
+    private volatile StoredContent storedContent;
+    private volatile Charset storedContentCharset;
+
+    /**
+     * Custom fields indicating that the captured request body was truncated to stay within the HAR's {@link HarCaptureBudget},
+     * and the size of the body before it was truncated. Only populated when the body was truncated.
+     */
+    @JsonProperty("_truncated")
+    private volatile Boolean truncated;
+
+    @JsonProperty("_originalSize")
+    private volatile Long originalSize;
+
     public String getMimeType() {
         return mimeType;
     }
@@ -28,11 +47,59 @@ public class HarPostData {
     }
 
     public String getText() {
-        return text;
+        String text = this.text;
+        if (text != null) {
+            return text;
+        }
+
+        StoredContent storedContent = this.storedContent;
+        if (storedContent == null) {
+            return null;
+        }
+
+        return StoredContentText.toText(storedContent, storedContentCharset);
     }
 
     public void setText(String text) {
         this.text = text;
+        this.storedContent = null;
+    }
+
+    /**
+     * Sets the raw captured request body. The body is not converted to text until {@link #getText()} is called, typically
+     * when the HAR is serialized, and the converted text is not retained.
+     *
+     * @param storedContent the captured body
+     * @param charset charset to decode the body with, or null to encode the body as base64
+     */
+    public void setStoredContent(StoredContent storedContent, Charset charset) {
+        this.storedContentCharset = charset;
+        this.storedContent = storedContent;
+        this.text = null;
+    }
+
+    /**
+     * @return the raw captured request body, or null if the text was set directly
+     */
+    @JsonIgnore
+    public StoredContent getStoredContent() {
+        return storedContent;
+    }
+
+    public Boolean getTruncated() {
+        return truncated;
+    }
+
+    public void setTruncated(Boolean truncated) {
+        this.truncated = truncated;
+    }
+
+    public Long getOriginalSize() {
+        return originalSize;
+    }
+
+    public void setOriginalSize(Long originalSize) {
+        this.originalSize = originalSize;
     }
 
     public String getComment() {
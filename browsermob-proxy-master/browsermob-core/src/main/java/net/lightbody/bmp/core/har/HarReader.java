@@ -0,0 +1,179 @@
+package net.lightbody.bmp.core.har;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.format.DataFormatDetector;
+import com.fasterxml.jackson.core.format.DataFormatMatcher;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a {@link Har} written in any of the supported {@link HarFormat}s. When the format is not specified, it is detected from
+ * the first bytes of the input: Smile content begins with the Smile header, CBOR content begins with the CBOR self-describe tag,
+ * and anything else is parsed as JSON.
+ * <p/>
+ * Fields that are not part of the HAR model are ignored, so HARs containing custom fields written by other tools can be read,
+ * as can fields like {@link HarEntry#getTime()} that are calculated from other fields.
+ */
+public class HarReader {
+    private final Map<HarFormat, ObjectMapper> objectMappers = new EnumMap<>(HarFormat.class);
+
+    private final DataFormatDetector formatDetector;
+
+    public HarReader() {
+        for (HarFormat format : HarFormat.values()) {
+            ObjectMapper objectMapper = format.newObjectMapper();
+            objectMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+            objectMappers.put(format, objectMapper);
+        }
+
+        // CBOR is listed first since the smile factory can also report a match for CBOR content. JSON is listed last, so that
+        // it is only selected when neither binary format matches.
+        this.formatDetector = new DataFormatDetector(
+                objectMappers.get(HarFormat.CBOR).getFactory(),
+                objectMappers.get(HarFormat.SMILE).getFactory(),
+                objectMappers.get(HarFormat.JSON).getFactory());
+    }
+
+    /**
+     * Reads a HAR from the stream, detecting its format. The caller is responsible for closing the stream.
+     *
+     * @param in stream to read the HAR from
+     * @return the HAR
+     * @throws IOException if the HAR cannot be read, or is not in a supported format
+     */
+    public Har read(InputStream in) throws IOException {
+        DataFormatMatcher match = formatDetector.findFormat(in);
+        if (!match.hasMatch()) {
+            throw new IOException("Unable to read HAR: content is not JSON, Smile, or CBOR");
+        }
+
+        ObjectMapper objectMapper = objectMappers.get(formatFor(match.getMatch()));
+
+        try (JsonParser parser = match.createParserWithMatch()) {
+            return objectMapper.readValue(parser, Har.class);
+        }
+    }
+
+    /**
+     * Reads a HAR in the specified format from the stream. The caller is responsible for closing the stream.
+     *
+     * @param in stream to read the HAR from
+     * @param format format of the HAR
+     * @return the HAR
+     * @throws IOException if the HAR cannot be read
+     */
+    public Har read(InputStream in, HarFormat format) throws IOException {
+        return objectMappers.get(format).readValue(in, Har.class);
+    }
+
+    /**
+     * Reads a HAR from the file, detecting its format. If the file name ends with a compressed file suffix (e.g. example.har.gz),
+     * the file is decompressed as it is read. See {@link HarCompression}.
+     *
+     * @param file file to read the HAR from
+     * @return the HAR
+     * @throws IOException if the HAR cannot be read, or is not in a supported format
+     */
+    public Har read(File file) throws IOException {
+        try (InputStream fileStream = new FileInputStream(file);
+             InputStream in = new BufferedInputStream(HarCompression.forFile(file).decompress(fileStream))) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Reads a HAR from the stream one entry at a time, detecting its format, and passes each entry to the listener as soon as it
+     * is read. Only a single entry is held in memory at a time, so HARs of any size can be processed without reading the entire
+     * HAR into the model. All other fields of the HAR, except its pages, are skipped. The caller is responsible for closing
+     * the stream.
+     *
+     * @param in stream to read the HAR from
+     * @param listener listener to pass each entry to, in the order the entries appear in the HAR
+     * @return the pages of the HAR
+     * @throws IOException if the HAR cannot be read, or is not in a supported format
+     */
+    public List<HarPage> readEntries(InputStream in, HarEntryListener listener) throws IOException {
+        DataFormatMatcher match = formatDetector.findFormat(in);
+        if (!match.hasMatch()) {
+            throw new IOException("Unable to read HAR: content is not JSON, Smile, or CBOR");
+        }
+
+        ObjectMapper objectMapper = objectMappers.get(formatFor(match.getMatch()));
+
+        List<HarPage> pages = new ArrayList<>();
+
+        try (JsonParser parser = match.createParserWithMatch()) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Unable to read HAR: content is not a JSON object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+
+                if (!"log".equals(fieldName) || value != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String logFieldName = parser.getCurrentName();
+                    JsonToken logValue = parser.nextToken();
+
+                    if ("pages".equals(logFieldName) && logValue == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            pages.add(objectMapper.readValue(parser, HarPage.class));
+                        }
+                    } else if ("entries".equals(logFieldName) && logValue == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            listener.entryCompleted(objectMapper.readValue(parser, HarEntry.class));
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+
+        return pages;
+    }
+
+    /**
+     * Reads a HAR from the file one entry at a time, detecting its format and decompressing it according to its file name.
+     * See {@link #readEntries(InputStream, HarEntryListener)}.
+     *
+     * @param file file to read the HAR from
+     * @param listener listener to pass each entry to, in the order the entries appear in the HAR
+     * @return the pages of the HAR
+     * @throws IOException if the HAR cannot be read, or is not in a supported format
+     */
+    public List<HarPage> readEntries(File file, HarEntryListener listener) throws IOException {
+        try (InputStream fileStream = new FileInputStream(file);
+             InputStream in = new BufferedInputStream(HarCompression.forFile(file).decompress(fileStream))) {
+            return readEntries(in, listener);
+        }
+    }
+
+    private HarFormat formatFor(JsonFactory factory) {
+        for (Map.Entry<HarFormat, ObjectMapper> mapper : objectMappers.entrySet()) {
+            if (mapper.getValue().getFactory() == factory) {
+                return mapper.getKey();
+            }
+        }
+
+        return HarFormat.JSON;
+    }
+}
@@ -0,0 +1,151 @@
+package net.lightbody.bmp.core.har;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.HashSet;
+
+/**
+ * Serializes a {@link Har} incrementally using a Jackson {@link JsonGenerator}. Rather than handing the entire Har to the
+ * ObjectMapper in a single call, the writer walks the {@link HarLog#getPages()} and {@link HarLog#getEntries()} lists and serializes
+ * one page or entry at a time directly to the underlying stream. No intermediate JSON tree or String containing the entire HAR
+ * is ever created, so the amount of memory required to serialize a HAR does not depend on the size of the HAR. Entries the HAR
+ * has archived to disk are read back one at a time as they are written.
+ * <p/>
+ * The JSON produced by this writer is identical to the JSON produced by the ObjectMapper's own bean serialization of the Har.
+ */
+public class HarStreamingWriter {
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Individual pages and entries are written with this writer. The generator is not flushed after every entry, which allows the
+     * generator and the underlying stream to buffer data and write it out in reasonably-sized chunks.
+     */
+    private final ObjectWriter elementWriter;
+
+    /**
+     * Creates a new streaming writer that serializes pages and entries using the specified ObjectMapper's configuration
+     * (date formatting, time zone, etc.).
+     *
+     * @param objectMapper ObjectMapper to use when serializing individual pages and entries
+     */
+    public HarStreamingWriter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.elementWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    public void write(Har har, OutputStream os) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(os, JsonEncoding.UTF8)) {
+            write(har, generator);
+        }
+    }
+
+    public void write(Har har, Writer writer) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+            write(har, generator);
+        }
+    }
+
+    public void write(Har har, File file) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(file, JsonEncoding.UTF8)) {
+            write(har, generator);
+        }
+    }
+
+    /**
+     * Writes the specified har to the generator. The caller is responsible for closing the generator.
+     *
+     * @param har har to write
+     * @param generator generator to write the har to
+     * @throws IOException if the har cannot be written to the generator
+     */
+    public void write(Har har, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+
+        HarLog log = har.getLog();
+        if (log == null) {
+            generator.writeNullField("log");
+        } else {
+            generator.writeFieldName("log");
+            writeLog(log, generator);
+        }
+
+        generator.writeEndObject();
+        generator.flush();
+    }
+
+    /**
+     * Writes the HarLog object, writing pages and entries with this writer's ObjectMapper.
+     */
+    protected void writeLog(HarLog log, JsonGenerator generator) throws IOException {
+        // share one set of written content references across the entries, so that each deduplicated body's text is written once
+        final ObjectWriter logElementWriter = elementWriter.withAttribute(HarModule.WRITTEN_CONTENT_REFS_ATTRIBUTE, new HashSet<String>());
+
+        writeLog(log, generator, new ValueWriter() {
+            @Override
+            public void writeValue(JsonGenerator generator, Object value) throws IOException {
+                logElementWriter.writeValue(generator, value);
+            }
+        });
+    }
+
+    /**
+     * Writes the HarLog object field-by-field, streaming the pages and entries. Follows the {@link com.fasterxml.jackson.annotation.JsonInclude.Include#NON_NULL}
+     * inclusion rule declared on {@link HarLog}. This is the only definition of the log's layout: {@link HarModule}'s HarLog
+     * serializer writes the log with this method too.
+     *
+     * @param log log to write
+     * @param generator generator to write the log to
+     * @param valueWriter writes the log's creator, browser, pages and entries
+     */
+    static void writeLog(HarLog log, JsonGenerator generator, ValueWriter valueWriter) throws IOException {
+        generator.writeStartObject();
+
+        generator.writeStringField("version", log.getVersion());
+
+        if (log.getCreator() != null) {
+            generator.writeFieldName("creator");
+            valueWriter.writeValue(generator, log.getCreator());
+        }
+
+        if (log.getBrowser() != null) {
+            generator.writeFieldName("browser");
+            valueWriter.writeValue(generator, log.getBrowser());
+        }
+
+        generator.writeArrayFieldStart("pages");
+        for (HarPage page : log.getPages()) {
+            valueWriter.writeValue(generator, page);
+        }
+        generator.writeEndArray();
+
+        // entries are read from the log's archive one at a time, if it has one
+        generator.writeArrayFieldStart("entries");
+        try (HarLog.EntryIterator entries = log.iterateEntries()) {
+            while (entries.hasNext()) {
+                valueWriter.writeValue(generator, entries.next());
+            }
+        }
+        generator.writeEndArray();
+
+        if (log.getComment() != null) {
+            generator.writeStringField("comment", log.getComment());
+        }
+
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes a single value of the log to a generator.
+     */
+    interface ValueWriter {
+        void writeValue(JsonGenerator generator, Object value) throws IOException;
+    }
+}
@@ -0,0 +1,63 @@
+package net.lightbody.bmp.core.har;
+
+/**
+ * A content store that keeps captured bodies on the heap as byte arrays. This is the default content store, so that captured
+ * bodies are only converted to text when the HAR is read or serialized.
+ */
+public class HeapContentStore implements HarContentStore {
+    @Override
+    public StoredContent store(byte[] content) {
+        return new HeapStoredContent(content);
+    }
+
+    @Override
+    public void release(StoredContent content) {
+        // the content is garbage collected once the last handle to it is gone
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Returns a factory that creates a new heap content store for each HAR.
+     *
+     * @return heap content store factory
+     */
+    public static HarContentStoreFactory newFactory() {
+        return new HarContentStoreFactory() {
+            @Override
+            public HarContentStore newContentStore() {
+                return new HeapContentStore();
+            }
+        };
+    }
+
+    /**
+     * Stored content backed by a byte array.
+     */
+    static class HeapStoredContent implements StoredContent {
+        private final byte[] content;
+
+        HeapStoredContent(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public int getSize() {
+            return content.length;
+        }
+
+        @Override
+        public byte[] getBytes() {
+            return content.clone();
+        }
+
+        /**
+         * Returns the backing array without copying it, for classes in this package that only read the content.
+         */
+        byte[] getBytesWithoutCopy() {
+            return content;
+        }
+    }
+}
@@ -0,0 +1,510 @@
+package net.lightbody.bmp.core.har;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads individual entries and pages from a HAR file without reading the rest of the file. When the HAR is opened, a single
+ * streaming pass over the file records the byte offsets of each entry and page in a sidecar index file (example.har.idx for
+ * example.har). The index is reused as long as the HAR's size and last modified time do not change.
+ * <p/>
+ * Both the HAR and the entry records of the index are memory-mapped, so the heap used by a reader does not depend on the size
+ * of the HAR or the number of entries in it: each entry is deserialized directly from the mapped file when it is requested.
+ * Only the ids and offsets of the HAR's pages are held on the heap.
+ * <p/>
+ * Only uncompressed JSON HARs can be read. Instances of this class are thread-safe, and must be closed when no longer needed.
+ */
+public class IndexedHarReader implements Closeable {
+    /**
+     * Suffix appended to the HAR file name to name its index file.
+     */
+    public static final String INDEX_FILE_SUFFIX = ".idx";
+
+    private static final int INDEX_MAGIC = 0x48415249; // "HARI"
+    private static final int INDEX_VERSION = 1;
+
+    /* index header: magic, version, HAR size, HAR last modified, entry count, page count, offset of page records */
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 8;
+
+    /* entry record: offset of the entry in the HAR, length of the entry, index of the entry's page, hash of the entry's URL */
+    private static final int ENTRY_RECORD_SIZE = 8 + 4 + 4 + 8;
+
+    private static final int NO_PAGE = -1;
+
+    private final RandomAccessFile harRandomAccessFile;
+    private final RandomAccessFile indexRandomAccessFile;
+
+    /**
+     * The mapped HAR, or null if the HAR is too large to map in a single buffer, in which case each entry is mapped as it is read.
+     */
+    private final MappedByteBuffer harBuffer;
+    private final MappedByteBuffer entryRecords;
+    private final int entryCount;
+
+    /**
+     * The location of each page, keyed by page id, in the order the pages were first referenced in the HAR.
+     */
+    private final Map<String, PageRecord> pages;
+    private final List<String> pageIds;
+
+    private final ObjectMapper objectMapper;
+
+    private IndexedHarReader(File harFile, File indexFile) throws IOException {
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+        this.harRandomAccessFile = new RandomAccessFile(harFile, "r");
+        this.indexRandomAccessFile = new RandomAccessFile(indexFile, "r");
+
+        try {
+            FileChannel indexChannel = indexRandomAccessFile.getChannel();
+
+            // page records follow the fixed-size entry records, so both the header and the page records are read in one pass
+            try (DataInputStream index = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+                index.readInt();
+                index.readInt();
+                index.readLong();
+                index.readLong();
+                this.entryCount = index.readInt();
+                int pageCount = index.readInt();
+                long pagesOffset = index.readLong();
+
+                skipFully(index, pagesOffset - HEADER_SIZE);
+
+                this.pages = new LinkedHashMap<>();
+                for (int i = 0; i < pageCount; i++) {
+                    long offset = index.readLong();
+                    int length = index.readInt();
+                    String id = index.readUTF();
+
+                    pages.put(id, new PageRecord(i, offset, length));
+                }
+            }
+
+            this.entryRecords = indexChannel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) entryCount * ENTRY_RECORD_SIZE);
+            this.pageIds = Collections.unmodifiableList(new ArrayList<>(pages.keySet()));
+
+            long harSize = harRandomAccessFile.length();
+            this.harBuffer = harSize <= Integer.MAX_VALUE
+                    ? harRandomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, harSize)
+                    : null;
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the HAR file for random access, using the index file next to it. If the index does not exist or is out of date, the
+     * index is built first.
+     *
+     * @param harFile uncompressed JSON HAR file
+     * @return a reader for the HAR
+     * @throws IOException if the HAR cannot be read or indexed
+     */
+    public static IndexedHarReader open(File harFile) throws IOException {
+        return open(harFile, new File(harFile.getPath() + INDEX_FILE_SUFFIX));
+    }
+
+    /**
+     * Opens the HAR file for random access, using the specified index file. If the index does not exist or is out of date, the
+     * index is built first.
+     *
+     * @param harFile uncompressed JSON HAR file
+     * @param indexFile the HAR's index file
+     * @return a reader for the HAR
+     * @throws IOException if the HAR cannot be read or indexed
+     */
+    public static IndexedHarReader open(File harFile, File indexFile) throws IOException {
+        if (HarCompression.forFile(harFile) != HarCompression.NONE) {
+            throw new IOException("Compressed HAR files cannot be read randomly. Decompress the file first: " + harFile);
+        }
+
+        if (!isIndexCurrent(harFile, indexFile)) {
+            buildIndex(harFile, indexFile);
+        }
+
+        return new IndexedHarReader(harFile, indexFile);
+    }
+
+    /**
+     * @return number of entries in the HAR
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Reads the entry at the specified position in the HAR's entries.
+     *
+     * @param index position of the entry, starting at 0
+     * @return the entry
+     * @throws IOException if the entry cannot be read
+     */
+    public HarEntry getEntry(int index) throws IOException {
+        if (index < 0 || index >= entryCount) {
+            throw new IndexOutOfBoundsException("Entry index " + index + " is out of bounds. Number of entries: " + entryCount);
+        }
+
+        int record = index * ENTRY_RECORD_SIZE;
+
+        return read(entryRecords.getLong(record), entryRecords.getInt(record + 8), HarEntry.class);
+    }
+
+    /**
+     * @return ids of the pages in the HAR, including pages referenced by entries that are not in the HAR's pages
+     */
+    public List<String> getPageIds() {
+        return pageIds;
+    }
+
+    /**
+     * Reads the page with the specified id.
+     *
+     * @param pageId id of the page
+     * @return the page, or null if the HAR does not contain the page
+     * @throws IOException if the page cannot be read
+     */
+    public HarPage getPage(String pageId) throws IOException {
+        PageRecord page = pages.get(pageId);
+        if (page == null || page.offset < 0) {
+            return null;
+        }
+
+        return read(page.offset, page.length, HarPage.class);
+    }
+
+    /**
+     * Returns the positions of the entries on the specified page, without reading the entries.
+     *
+     * @param pageId id of the page
+     * @return positions of the page's entries, in the order they appear in the HAR
+     */
+    public List<Integer> findEntriesOnPage(String pageId) {
+        List<Integer> indexes = new ArrayList<>();
+
+        PageRecord page = pages.get(pageId);
+        if (page == null) {
+            return indexes;
+        }
+
+        for (int i = 0; i < entryCount; i++) {
+            if (entryRecords.getInt(i * ENTRY_RECORD_SIZE + 12) == page.index) {
+                indexes.add(i);
+            }
+        }
+
+        return indexes;
+    }
+
+    /**
+     * Reads the entries whose request URL is the specified URL. Only entries whose URL hashes to the same value as the URL
+     * are read.
+     *
+     * @param url request URL
+     * @return the entries for the URL, in the order they appear in the HAR
+     * @throws IOException if an entry cannot be read
+     */
+    public List<HarEntry> findEntriesByUrl(String url) throws IOException {
+        List<HarEntry> entries = new ArrayList<>();
+
+        long urlHash = hash(url);
+        for (int i = 0; i < entryCount; i++) {
+            if (entryRecords.getLong(i * ENTRY_RECORD_SIZE + 16) == urlHash) {
+                HarEntry entry = getEntry(i);
+                if (entry.getRequest() != null && url.equals(entry.getRequest().getUrl())) {
+                    entries.add(entry);
+                }
+            }
+        }
+
+        return entries;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            harRandomAccessFile.close();
+        } finally {
+            indexRandomAccessFile.close();
+        }
+    }
+
+    private <T> T read(long offset, int length, Class<T> type) throws IOException {
+        ByteBuffer buffer;
+        if (harBuffer != null) {
+            buffer = harBuffer.duplicate();
+            buffer.position((int) offset);
+            buffer.limit((int) offset + length);
+        } else {
+            buffer = harRandomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length);
+        }
+
+        try (InputStream in = new ByteBufferBackedInputStream(buffer)) {
+            return objectMapper.readValue(in, type);
+        }
+    }
+
+    /**
+     * Returns true if the index file exists and was built from the current contents of the HAR file.
+     */
+    private static boolean isIndexCurrent(File harFile, File indexFile) throws IOException {
+        if (!indexFile.isFile() || indexFile.length() < HEADER_SIZE) {
+            return false;
+        }
+
+        try (DataInputStream header = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            return header.readInt() == INDEX_MAGIC
+                    && header.readInt() == INDEX_VERSION
+                    && header.readLong() == harFile.length()
+                    && header.readLong() == harFile.lastModified();
+        }
+    }
+
+    /**
+     * Builds the index with a single streaming pass over the HAR. Entry records are written as entries are parsed, and page
+     * records are written after all entries, so no more than one entry is held in memory while the index is built. The index
+     * is written to a temporary file and moved into place when complete, so a partially written index is never used.
+     */
+    private static void buildIndex(File harFile, File indexFile) throws IOException {
+        File tempIndexFile = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getAbsoluteFile().getParentFile());
+
+        try {
+            long harSize = harFile.length();
+            long harLastModified = harFile.lastModified();
+
+            Map<String, Integer> pageIndexes = new HashMap<>();
+            List<String> pageIds = new ArrayList<>();
+            Map<String, long[]> pageLocations = new HashMap<>();
+            int entryCount = 0;
+
+            try (DataOutputStream index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempIndexFile), 64 * 1024));
+                 JsonParser parser = new JsonFactory().createParser(new BufferedInputStream(new FileInputStream(harFile), 64 * 1024))) {
+                // reserve space for the header, which is written when the counts are known
+                index.write(new byte[HEADER_SIZE]);
+
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new IOException("Unable to index HAR: content is not a JSON object. Only JSON HARs can be indexed.");
+                }
+
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String fieldName = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+
+                    if (!"log".equals(fieldName) || value != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        continue;
+                    }
+
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String logFieldName = parser.getCurrentName();
+                        JsonToken logValue = parser.nextToken();
+
+                        if ("entries".equals(logFieldName) && logValue == JsonToken.START_ARRAY) {
+                            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                                long start = parser.getTokenLocation().getByteOffset();
+
+                                String[] pageRefAndUrl = readPageRefAndUrl(parser);
+                                long end = parser.getCurrentLocation().getByteOffset();
+
+                                int pageIndex = NO_PAGE;
+                                if (pageRefAndUrl[0] != null) {
+                                    pageIndex = pageIndex(pageRefAndUrl[0], pageIndexes, pageIds);
+                                }
+
+                                index.writeLong(start);
+                                index.writeInt(toLength(start, end));
+                                index.writeInt(pageIndex);
+                                index.writeLong(hash(pageRefAndUrl[1]));
+
+                                entryCount++;
+                            }
+                        } else if ("pages".equals(logFieldName) && logValue == JsonToken.START_ARRAY) {
+                            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                                long start = parser.getTokenLocation().getByteOffset();
+
+                                String id = readPageId(parser);
+                                long end = parser.getCurrentLocation().getByteOffset();
+
+                                if (id != null) {
+                                    pageIndex(id, pageIndexes, pageIds);
+                                    pageLocations.put(id, new long[]{start, toLength(start, end)});
+                                }
+                            }
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+
+                for (String pageId : pageIds) {
+                    long[] location = pageLocations.get(pageId);
+
+                    index.writeLong(location == null ? -1 : location[0]);
+                    index.writeInt(location == null ? 0 : (int) location[1]);
+                    index.writeUTF(pageId);
+                }
+            }
+
+            try (RandomAccessFile index = new RandomAccessFile(tempIndexFile, "rw")) {
+                index.writeInt(INDEX_MAGIC);
+                index.writeInt(INDEX_VERSION);
+                index.writeLong(harSize);
+                index.writeLong(harLastModified);
+                index.writeInt(entryCount);
+                index.writeInt(pageIds.size());
+                index.writeLong(HEADER_SIZE + (long) entryCount * ENTRY_RECORD_SIZE);
+            }
+
+            Files.move(tempIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            if (tempIndexFile.exists()) {
+                tempIndexFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Reads the pageref and request URL of the entry the parser is positioned at, leaving the parser at the end of the entry.
+     *
+     * @return the pageref and URL, either of which may be null
+     */
+    private static String[] readPageRefAndUrl(JsonParser parser) throws IOException {
+        String[] pageRefAndUrl = new String[2];
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if ("pageref".equals(fieldName) && value == JsonToken.VALUE_STRING) {
+                pageRefAndUrl[0] = parser.getText();
+            } else if ("request".equals(fieldName) && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String requestFieldName = parser.getCurrentName();
+                    JsonToken requestValue = parser.nextToken();
+
+                    if ("url".equals(requestFieldName) && requestValue == JsonToken.VALUE_STRING) {
+                        pageRefAndUrl[1] = parser.getText();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        return pageRefAndUrl;
+    }
+
+    /**
+     * Reads the id of the page the parser is positioned at, leaving the parser at the end of the page.
+     */
+    private static String readPageId(JsonParser parser) throws IOException {
+        String id = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if ("id".equals(fieldName) && value == JsonToken.VALUE_STRING) {
+                id = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        return id;
+    }
+
+    private static int pageIndex(String pageId, Map<String, Integer> pageIndexes, List<String> pageIds) {
+        Integer pageIndex = pageIndexes.get(pageId);
+        if (pageIndex == null) {
+            pageIndex = pageIds.size();
+            pageIndexes.put(pageId, pageIndex);
+            pageIds.add(pageId);
+        }
+
+        return pageIndex;
+    }
+
+    private static int toLength(long start, long end) throws IOException {
+        long length = end - start;
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Unable to index HAR: an entry or page is larger than 2 GB");
+        }
+
+        return (int) length;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the URL, used to find the entries for a URL without storing the URLs in the index.
+     */
+    private static long hash(String url) {
+        if (url == null) {
+            return 0;
+        }
+
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
+    }
+
+    private static void skipFully(InputStream in, long bytes) throws IOException {
+        long remaining = bytes;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                throw new IOException("Unexpected end of HAR index");
+            }
+
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * The location of a page in the HAR. The offset is -1 if the page is referenced by entries but is not in the HAR's pages.
+     */
+    private static class PageRecord {
+        final int index;
+        final long offset;
+        final int length;
+
+        PageRecord(int index, long offset, int length) {
+            this.index = index;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package net.lightbody.bmp.core.har;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A content store that keeps small bodies on the heap, and moves bodies larger than a threshold off the Java heap, either into
+ * a memory-mapped spill file or into direct (off-heap) buffers. This allows large bodies, such as videos and downloads, to be
+ * captured without exhausting the heap.
+ * <p/>
+ * When the store is closed, the spill file is deleted. On most platforms, content already mapped from the spill file remains
+ * readable until it is garbage collected, so a HAR returned by {@link net.lightbody.bmp.BrowserMobProxy#newHar()} can still
+ * be serialized after its store is closed. If the platform does not allow a mapped file to be deleted, the file is deleted
+ * when the JVM exits.
+ */
+public class SpillingContentStore implements HarContentStore {
+    private static final Logger log = LoggerFactory.getLogger(SpillingContentStore.class);
+
+    /**
+     * Default size above which bodies are spilled: 64 KB.
+     */
+    public static final int DEFAULT_SPILL_THRESHOLD = 64 * 1024;
+
+    /**
+     * Where bodies larger than the spill threshold are stored.
+     */
+    public enum SpillTarget {
+        /**
+         * Store bodies in a temporary file which is memory-mapped, so the OS can page the content out to disk.
+         */
+        MEMORY_MAPPED_FILE,
+
+        /**
+         * Store bodies in direct ByteBuffers outside the Java heap. The memory is released when the HAR is garbage collected.
+         */
+        OFF_HEAP
+    }
+
+    private final int spillThreshold;
+    private final SpillTarget spillTarget;
+    private final File spillDirectory;
+
+    /**
+     * The file and channel that memory-mapped bodies are written to. Created when the first body is spilled.
+     */
+    private File spillFile;
+    private FileChannel spillChannel;
+    private long spillFilePosition;
+
+    private boolean closed;
+
+    private final AtomicLong spilledBytes = new AtomicLong();
+
+    /**
+     * Creates a store that spills bodies larger than {@link #DEFAULT_SPILL_THRESHOLD} to a memory-mapped file in the default
+     * temporary-file directory.
+     */
+    public SpillingContentStore() {
+        this(DEFAULT_SPILL_THRESHOLD, SpillTarget.MEMORY_MAPPED_FILE, null);
+    }
+
+    /**
+     * Creates a store that spills bodies larger than the spill threshold to the specified target.
+     *
+     * @param spillThreshold size in bytes above which bodies are spilled
+     * @param spillTarget where to store spilled bodies
+     * @param spillDirectory directory in which to create the spill file, or null to use the default temporary-file directory
+     */
+    public SpillingContentStore(int spillThreshold, SpillTarget spillTarget, File spillDirectory) {
+        if (spillThreshold < 0) {
+            throw new IllegalArgumentException("Spill threshold cannot be negative");
+        }
+
+        if (spillTarget == null) {
+            throw new IllegalArgumentException("Spill target cannot be null");
+        }
+
+        this.spillThreshold = spillThreshold;
+        this.spillTarget = spillTarget;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Returns a factory that creates a new SpillingContentStore with the specified settings for each HAR.
+     *
+     * @see #SpillingContentStore(int, SpillTarget, File)
+     */
+    public static HarContentStoreFactory newFactory(final int spillThreshold, final SpillTarget spillTarget, final File spillDirectory) {
+        return new HarContentStoreFactory() {
+            @Override
+            public HarContentStore newContentStore() {
+                return new SpillingContentStore(spillThreshold, spillTarget, spillDirectory);
+            }
+        };
+    }
+
+    @Override
+    public StoredContent store(byte[] content) {
+        if (content.length <= spillThreshold) {
+            return new HeapContentStore.HeapStoredContent(content);
+        }
+
+        if (spillTarget == SpillTarget.OFF_HEAP) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+            buffer.put(content);
+            buffer.flip();
+
+            spilledBytes.addAndGet(content.length);
+
+            return new BufferStoredContent(buffer);
+        }
+
+        try {
+            return spillToFile(content);
+        } catch (IOException e) {
+            log.warn("Unable to spill {} bytes of captured content to disk. Content will be stored on the heap.", content.length, e);
+
+            return new HeapContentStore.HeapStoredContent(content);
+        }
+    }
+
+    private synchronized StoredContent spillToFile(byte[] content) throws IOException {
+        if (closed) {
+            return new HeapContentStore.HeapStoredContent(content);
+        }
+
+        if (spillChannel == null) {
+            spillFile = File.createTempFile("har-content-", ".spill", spillDirectory);
+            spillChannel = new RandomAccessFile(spillFile, "rw").getChannel();
+        }
+
+        // mapping a region beyond the end of the file grows the file
+        MappedByteBuffer region = spillChannel.map(FileChannel.MapMode.READ_WRITE, spillFilePosition, content.length);
+        region.put(content);
+        region.flip();
+
+        spillFilePosition += content.length;
+        spilledBytes.addAndGet(content.length);
+
+        return new BufferStoredContent(region);
+    }
+
+    @Override
+    public void release(StoredContent content) {
+        // spilled regions are only reclaimed when the spill file is deleted, since the file is only appended to. off-heap
+        // buffers are freed when the last handle to them is garbage collected.
+    }
+
+    /**
+     * @return total number of bytes moved off the heap by this store
+     */
+    public long getSpilledBytes() {
+        return spilledBytes.get();
+    }
+
+    /**
+     * @return the spill file, or null if no content has been spilled to disk
+     */
+    public synchronized File getSpillFile() {
+        return spillFile;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        if (spillChannel != null) {
+            try {
+                spillChannel.close();
+            } catch (IOException e) {
+                log.warn("Unable to close HAR content spill file {}", spillFile, e);
+            }
+
+            if (!spillFile.delete()) {
+                log.debug("Unable to delete HAR content spill file {}. File will be deleted when the JVM exits.", spillFile);
+
+                spillFile.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Stored content backed by a direct or memory-mapped ByteBuffer.
+     */
+    private static class BufferStoredContent implements StoredContent {
+        private final ByteBuffer buffer;
+
+        BufferStoredContent(ByteBuffer buffer) {
+            this.buffer = buffer.asReadOnlyBuffer();
+        }
+
+        @Override
+        public int getSize() {
+            return buffer.limit();
+        }
+
+        @Override
+        public byte[] getBytes() {
+            // duplicate the buffer so concurrent readers do not share a position
+            ByteBuffer view = buffer.duplicate();
+
+            byte[] content = new byte[view.remaining()];
+            view.get(content);
+
+            return content;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package net.lightbody.bmp.core.har;
+
+/**
+ * A handle to a captured request or response body held by a {@link HarContentStore}. The body may be stored on the heap,
+ * off-heap, or in a memory-mapped file, depending on the store.
+ */
+public interface StoredContent {
+    /**
+     * @return size of the stored content, in bytes
+     */
+    int getSize();
+
+    /**
+     * Copies the stored content into a new byte array.
+     *
+     * @return the stored content
+     */
+    byte[] getBytes();
+}
@@ -0,0 +1,40 @@
+package net.lightbody.bmp.core.har;
+
+import com.google.common.io.BaseEncoding;
+
+import java.nio.charset.Charset;
+
+/**
+ * Converts stored content to the text that is written to the HAR.
+ */
+class StoredContentText {
+    private StoredContentText() {
+    }
+
+    /**
+     * Decodes the stored content with the specified charset, or encodes it as base64 if the charset is null.
+     *
+     * @param storedContent content to convert
+     * @param charset charset of the content, or null if the content is binary
+     * @return the text of the content
+     */
+    static String toText(StoredContent storedContent, Charset charset) {
+        if (storedContent instanceof DeduplicatingContentStore.ContentAddressedContent) {
+            storedContent = ((DeduplicatingContentStore.ContentAddressedContent) storedContent).getContent();
+        }
+
+        byte[] content;
+        if (storedContent instanceof HeapContentStore.HeapStoredContent) {
+            // the content is only read, so avoid copying it
+            content = ((HeapContentStore.HeapStoredContent) storedContent).getBytesWithoutCopy();
+        } else {
+            content = storedContent.getBytes();
+        }
+
+        if (charset == null) {
+            return BaseEncoding.base64().encode(content);
+        } else {
+            return new String(content, charset);
+        }
+    }
+}
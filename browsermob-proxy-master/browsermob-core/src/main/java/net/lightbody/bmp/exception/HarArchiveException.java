@@ -0,0 +1,23 @@
+package net.lightbody.bmp.exception;
+
+/**
+ * Indicates that the entries in a HAR page archive could not be read.
+ */
+public class HarArchiveException extends RuntimeException {
+    private static final long serialVersionUID = -3377384912618290470L;
+
+    public HarArchiveException() {
+    }
+
+    public HarArchiveException(String message) {
+        super(message);
+    }
+
+    public HarArchiveException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public HarArchiveException(Throwable cause) {
+        super(cause);
+    }
+}
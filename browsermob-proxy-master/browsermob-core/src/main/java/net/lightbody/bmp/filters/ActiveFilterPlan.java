@@ -0,0 +1,47 @@
+package net.lightbody.bmp.filters;
+
+import com.google.common.collect.ImmutableList;
+import org.littleshoot.proxy.HttpFiltersSource;
+
+import java.util.List;
+
+/**
+ * An immutable, ordered list of the filter factories whose filters can have an effect under the proxy's current configuration.
+ * The {@link BrowserMobHttpFilterChain} only creates filters using the factories in the plan, so inactive
+ * {@link ConditionalFiltersSource}s do not cost an allocation and a call per filter method on every request. The plan is
+ * compiled when the proxy's filter factories or configuration change, not when requests are filtered.
+ */
+public class ActiveFilterPlan {
+    public static final ActiveFilterPlan EMPTY = new ActiveFilterPlan(ImmutableList.<HttpFiltersSource>of());
+
+    private final List<HttpFiltersSource> filterFactories;
+
+    private ActiveFilterPlan(List<HttpFiltersSource> filterFactories) {
+        this.filterFactories = filterFactories;
+    }
+
+    /**
+     * Compiles a plan containing the filter factories that are not {@link ConditionalFiltersSource}s, and the conditional
+     * factories that are currently active, in their original order.
+     *
+     * @param filterFactories all filter factories, in filter chain order
+     * @return the plan
+     */
+    public static ActiveFilterPlan compile(Iterable<HttpFiltersSource> filterFactories) {
+        ImmutableList.Builder<HttpFiltersSource> activeFilterFactories = ImmutableList.builder();
+        for (HttpFiltersSource filterFactory : filterFactories) {
+            if (!(filterFactory instanceof ConditionalFiltersSource) || ((ConditionalFiltersSource) filterFactory).isActive()) {
+                activeFilterFactories.add(filterFactory);
+            }
+        }
+
+        return new ActiveFilterPlan(activeFilterFactories.build());
+    }
+
+    /**
+     * @return the active filter factories, in filter chain order
+     */
+    public List<HttpFiltersSource> getFilterFactories() {
+        return filterFactories;
+    }
+}
@@ -0,0 +1,706 @@
+package net.lightbody.bmp.filters;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.FullHttpMessage;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.EventExecutor;
+import net.lightbody.bmp.BrowserMobProxyServer;
+import net.lightbody.bmp.util.HttpMessageContents;
+import net.lightbody.bmp.util.HttpMessageInfo;
+import org.littleshoot.proxy.HttpProxyServer;
+import org.littleshoot.proxy.TransportProtocol;
+import org.littleshoot.proxy.impl.DefaultHttpProxyServer;
+import org.littleshoot.proxy.impl.ServerGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the proxy's {@link AsyncRequestFilter}s and {@link AsyncResponseFilter}s without blocking the event loop. The handler sits in
+ * the client connection's pipeline, immediately before LittleProxy's connection handler:
+ * <ul>
+ *     <li>When a request arrives, the handler turns off autoRead on the client channel and holds the request, and anything read
+ *     after it, until the async request filters have completed. The request is then passed on to LittleProxy and the
+ *     {@link BrowserMobHttpFilterChain}, which returns the short-circuit response of the async filters, if there is one.</li>
+ *     <li>When the filter chain marks a response from the server for filtering, the handler holds that response, and any writes,
+ *     flushes and closes after it, until the async response filters have completed.</li>
+ * </ul>
+ * Each filter's future is given the proxy's async filter timeout to complete. When it times out, the future is cancelled and the
+ * message proceeds as if the filter had completed with null.
+ * <p/>
+ * The handler is installed on every connection the proxy accepts, when the connection is registered, so it sees every request on
+ * the connection. While no async filters are registered, it passes all messages through.
+ */
+public class AsyncFilterHandler extends ChannelDuplexHandler {
+    private static final Logger log = LoggerFactory.getLogger(AsyncFilterHandler.class);
+
+    private static final String HANDLER_NAME = "asyncFilters";
+
+    private static final String ACCEPTED_CHANNEL_INSTALLER_NAME = "asyncFiltersInstaller";
+
+    /**
+     * Name of LittleProxy's ClientToProxyConnection handler in the client pipeline. Its context is the one filters receive, and
+     * the one {@link HttpsAwareFiltersAdapter} reads the HTTPS attributes from.
+     */
+    private static final String PROXY_CONNECTION_HANDLER_NAME = "handler";
+
+    private static final AttributeKey<FilteredRequest> FILTERED_REQUEST_ATTRIBUTE = AttributeKey.valueOf("asyncFilteredRequest");
+
+    private static final AttributeKey<ResponseToFilter> RESPONSE_TO_FILTER_ATTRIBUTE = AttributeKey.valueOf("asyncResponseToFilter");
+
+    private final BrowserMobProxyServer proxyServer;
+
+    /**
+     * Messages read from the client while a request is being filtered.
+     */
+    private final Queue<Object> pendingReads = new ArrayDeque<>();
+
+    /**
+     * Writes, flushes and closes requested while a response is being filtered.
+     */
+    private final Queue<PendingOperation> pendingOperations = new ArrayDeque<>();
+
+    private boolean filteringRequest;
+
+    private boolean filteringResponse;
+
+    /**
+     * True if autoRead was enabled when reading was suspended, and should be re-enabled when the request filters complete.
+     */
+    private boolean resumeAutoRead;
+
+    private boolean inactive;
+
+    private AsyncFilterHandler(BrowserMobProxyServer proxyServer) {
+        this.proxyServer = proxyServer;
+    }
+
+    /**
+     * Installs the handler on every connection the proxy accepts from now on. The handler passes messages through untouched while
+     * no async filters are registered. Must be called when the proxy starts, before any connections are accepted. When this
+     * method returns, the handler will be installed on every connection accepted afterwards.
+     *
+     * @param proxyServer proxy whose async filters the handler runs
+     * @param littleProxyServer the started LittleProxy server
+     */
+    public static void installOnAcceptedConnections(BrowserMobProxyServer proxyServer, HttpProxyServer littleProxyServer) {
+        // LittleProxy has no hook for the connections it accepts, and does not expose its server channel, so find the server
+        // channel in the server's channel group
+        ChannelGroup allChannels;
+        ServerGroup serverGroup;
+        try {
+            allChannels = (ChannelGroup) getLittleProxyField(littleProxyServer, "allChannels");
+            serverGroup = (ServerGroup) getLittleProxyField(littleProxyServer, "serverGroup");
+        } catch (NoSuchFieldException | IllegalAccessException | ClassCastException | IllegalArgumentException e) {
+            log.warn("Unable to find the proxy's server channel. Async filters will not be invoked.", e);
+            return;
+        }
+
+        // LittleProxy adds the server channel to the group in a bind listener, which runs on the acceptor event loop after the
+        // server's start() has been notified that the channel is bound. once every acceptor event loop has run a task submitted
+        // now, the listener has run.
+        for (EventExecutor acceptor : serverGroup.getClientToProxyAcceptorPoolForTransport(TransportProtocol.TCP)) {
+            acceptor.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).syncUninterruptibly();
+        }
+
+        final Channel serverChannel = findServerChannel(allChannels);
+        if (serverChannel == null) {
+            log.warn("Proxy's server channel was not registered. Async filters will not be invoked.");
+            return;
+        }
+
+        final AcceptedChannelInstaller installer = new AcceptedChannelInstaller(proxyServer);
+
+        // modify the pipeline on the server channel's event loop, so the installer sees every connection accepted after this method returns
+        serverChannel.eventLoop().submit(new Runnable() {
+            @Override
+            public void run() {
+                serverChannel.pipeline().addFirst(ACCEPTED_CHANNEL_INSTALLER_NAME, installer);
+            }
+        }).syncUninterruptibly();
+    }
+
+    private static Object getLittleProxyField(HttpProxyServer littleProxyServer, String fieldName) throws NoSuchFieldException, IllegalAccessException {
+        Field field = DefaultHttpProxyServer.class.getDeclaredField(fieldName);
+        field.setAccessible(true);
+
+        return field.get(littleProxyServer);
+    }
+
+    private static Channel findServerChannel(ChannelGroup allChannels) {
+        for (Channel channel : allChannels) {
+            if (channel instanceof ServerChannel) {
+                return channel;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the response the async request filters short-circuited the request with.
+     *
+     * @param request the request LittleProxy is filtering
+     * @param ctx the context of LittleProxy's connection handler, as passed to filters
+     * @return the short-circuit response, or null if the request should proceed
+     */
+    static HttpResponse getShortCircuitResponse(HttpRequest request, ChannelHandlerContext ctx) {
+        FilteredRequest filteredRequest = ctx.channel().attr(FILTERED_REQUEST_ATTRIBUTE).getAndSet(null);
+        if (filteredRequest != null && filteredRequest.request == request) {
+            return filteredRequest.shortCircuitResponse;
+        }
+
+        return null;
+    }
+
+    /**
+     * Marks the response for filtering by the async response filters when it is written to the client.
+     *
+     * @param ctx the context of LittleProxy's connection handler, as passed to filters
+     * @param response the response that will be written to the client
+     * @param originalRequest the original request, as passed to filters
+     * @param modifiedRequest the request as modified by the request filters
+     */
+    static void filterWhenWritten(ChannelHandlerContext ctx, HttpResponse response, HttpRequest originalRequest, HttpRequest modifiedRequest) {
+        HttpMessageInfo messageInfo = new MessageInfoFactory(originalRequest, ctx).create(modifiedRequest);
+
+        ctx.channel().attr(RESPONSE_TO_FILTER_ATTRIBUTE).set(new ResponseToFilter(response, messageInfo));
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        read(ctx, msg);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        inactive = true;
+
+        Object msg;
+        while ((msg = pendingReads.poll()) != null) {
+            ReferenceCountUtil.release(msg);
+        }
+
+        PendingOperation operation;
+        while ((operation = pendingOperations.poll()) != null) {
+            operation.abort(ctx);
+        }
+
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        ResponseToFilter responseToFilter = null;
+        if (msg instanceof HttpResponse) {
+            ResponseToFilter markedResponse = ctx.channel().attr(RESPONSE_TO_FILTER_ATTRIBUTE).getAndSet(null);
+            if (markedResponse != null && markedResponse.response == msg && !proxyServer.getAsyncResponseFilters().isEmpty()) {
+                responseToFilter = markedResponse;
+            }
+        }
+
+        if (filteringResponse && !inactive) {
+            pendingOperations.add(PendingOperation.write(msg, promise, responseToFilter));
+        } else if (responseToFilter != null) {
+            filterResponse(ctx, responseToFilter, promise);
+        } else {
+            ctx.write(msg, promise);
+        }
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (filteringResponse && !inactive) {
+            pendingOperations.add(PendingOperation.flush());
+        } else {
+            ctx.flush();
+        }
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        if (filteringResponse && !inactive) {
+            pendingOperations.add(PendingOperation.close(promise));
+        } else {
+            ctx.close(promise);
+        }
+    }
+
+    private void read(ChannelHandlerContext ctx, Object msg) {
+        if (filteringRequest) {
+            pendingReads.add(msg);
+        } else if (msg instanceof HttpRequest && !proxyServer.getAsyncRequestFilters().isEmpty()) {
+            filterRequest(ctx, (HttpRequest) msg);
+        } else {
+            ctx.fireChannelRead(msg);
+        }
+    }
+
+    private void filterRequest(ChannelHandlerContext ctx, HttpRequest request) {
+        filteringRequest = true;
+
+        ChannelConfig config = ctx.channel().config();
+        if (config.isAutoRead()) {
+            config.setAutoRead(false);
+            resumeAutoRead = true;
+        }
+
+        new RequestFilterSequence(ctx, request).run();
+    }
+
+    private void requestFiltered(ChannelHandlerContext ctx, HttpRequest request, HttpResponse shortCircuitResponse) {
+        ctx.channel().attr(FILTERED_REQUEST_ATTRIBUTE).set(new FilteredRequest(request, shortCircuitResponse));
+
+        filteringRequest = false;
+        ctx.fireChannelRead(request);
+
+        // replay everything read while the request was filtered. a pipelined request suspends reading again.
+        Object msg;
+        while (!filteringRequest && (msg = pendingReads.poll()) != null) {
+            read(ctx, msg);
+        }
+
+        if (!filteringRequest && resumeAutoRead) {
+            resumeAutoRead = false;
+            ctx.channel().config().setAutoRead(true);
+        }
+    }
+
+    private void filterResponse(ChannelHandlerContext ctx, ResponseToFilter responseToFilter, ChannelPromise promise) {
+        filteringResponse = true;
+
+        new ResponseFilterSequence(ctx, responseToFilter, promise).run();
+    }
+
+    private void responseFiltered(ChannelHandlerContext ctx, HttpResponse response, ChannelPromise promise) {
+        filteringResponse = false;
+        ctx.write(response, promise);
+
+        // replay everything written while the response was filtered. another response to filter holds writes again.
+        PendingOperation operation;
+        while (!filteringResponse && (operation = pendingOperations.poll()) != null) {
+            if (operation.responseToFilter != null) {
+                filterResponse(ctx, operation.responseToFilter, operation.promise);
+            } else {
+                operation.perform(ctx);
+            }
+        }
+    }
+
+    /**
+     * Cancels a filter's future that did not complete within the timeout.
+     */
+    private static void timeOut(Object filter, Future<?> future, long timeoutMs) {
+        if (!future.isDone()) {
+            log.warn("Async filter {} did not complete within {}ms. Continuing without it.", filter.getClass().getName(), timeoutMs);
+
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Returns the value of a filter's completed future, or null if the future failed or was cancelled.
+     */
+    private static <V> V getResult(Object filter, Future<V> future) {
+        try {
+            return Futures.getDone(future);
+        } catch (CancellationException e) {
+            log.debug("Future of async filter {} was cancelled", filter.getClass().getName());
+        } catch (ExecutionException e) {
+            log.warn("Async filter " + filter.getClass().getName() + " failed. Filter may have been aborted.", e.getCause());
+        } catch (IllegalStateException e) {
+            // timed out, and the future could not be cancelled
+        }
+
+        return null;
+    }
+
+    /**
+     * Invokes a list of async filters one at a time on the channel's event loop. Each filter is invoked once the previous filter's
+     * future has completed, failed or timed out.
+     */
+    private abstract class FilterSequence<F, V> implements Runnable {
+        protected final ChannelHandlerContext ctx;
+
+        private final Iterator<F> filters;
+
+        FilterSequence(ChannelHandlerContext ctx, Iterable<F> filters) {
+            this.ctx = ctx;
+            this.filters = filters.iterator();
+        }
+
+        @Override
+        public void run() {
+            while (filters.hasNext()) {
+                F filter = filters.next();
+
+                ListenableFuture<? extends V> future;
+                try {
+                    future = invoke(filter);
+                } catch (RuntimeException e) {
+                    log.warn("Async filter threw exception. Filter may have been aborted.", e);
+                    continue;
+                }
+
+                if (future == null) {
+                    continue;
+                }
+
+                if (!future.isDone()) {
+                    await(filter, future);
+                    return;
+                }
+
+                if (skipRemainingFilters(getResult(filter, future))) {
+                    break;
+                }
+            }
+
+            finish();
+        }
+
+        private void await(final F filter, final ListenableFuture<? extends V> future) {
+            final long timeoutMs = proxyServer.getAsyncFilterTimeoutMs();
+
+            final FilterCompletion completion = new FilterCompletion(filter, future);
+            if (timeoutMs > 0) {
+                completion.timeout = ctx.executor().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        timeOut(filter, future, timeoutMs);
+
+                        // continue even if the future could not be cancelled
+                        completion.run();
+                    }
+                }, timeoutMs, TimeUnit.MILLISECONDS);
+            }
+
+            future.addListener(completion, ctx.executor());
+        }
+
+        /**
+         * Continues the sequence once, when a filter's future completes or times out, whichever happens first. Always runs on
+         * the channel's event loop.
+         */
+        private class FilterCompletion implements Runnable {
+            private final F filter;
+            private final ListenableFuture<? extends V> future;
+
+            private ScheduledFuture<?> timeout;
+            private boolean completed;
+
+            FilterCompletion(F filter, ListenableFuture<? extends V> future) {
+                this.filter = filter;
+                this.future = future;
+            }
+
+            @Override
+            public void run() {
+                if (completed) {
+                    return;
+                }
+
+                completed = true;
+
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+
+                if (inactive) {
+                    abort();
+                } else if (skipRemainingFilters(getResult(filter, future))) {
+                    finish();
+                } else {
+                    FilterSequence.this.run();
+                }
+            }
+        }
+
+        protected abstract ListenableFuture<? extends V> invoke(F filter);
+
+        /**
+         * @return true if the filters after the filter that produced this result should not be invoked
+         */
+        protected boolean skipRemainingFilters(V result) {
+            return false;
+        }
+
+        /**
+         * Called when the filters have completed.
+         */
+        protected abstract void finish();
+
+        /**
+         * Called instead of {@link #finish()} when the client disconnected while the filters were running.
+         */
+        protected abstract void abort();
+    }
+
+    private class RequestFilterSequence extends FilterSequence<AsyncRequestFilter, HttpResponse> {
+        private final HttpRequest request;
+        private final HttpMessageContents contents;
+        private final MessageInfoFactory messageInfoFactory;
+
+        private HttpResponse shortCircuitResponse;
+
+        RequestFilterSequence(ChannelHandlerContext ctx, HttpRequest request) {
+            super(ctx, proxyServer.getAsyncRequestFilters());
+
+            this.request = request;
+            this.contents = request instanceof FullHttpMessage ? new HttpMessageContents((FullHttpMessage) request) : null;
+
+            // filters expect the context of LittleProxy's connection handler
+            ChannelHandlerContext proxyConnectionCtx = ctx.pipeline().context(PROXY_CONNECTION_HANDLER_NAME);
+            this.messageInfoFactory = new MessageInfoFactory(copy(request), proxyConnectionCtx != null ? proxyConnectionCtx : ctx);
+        }
+
+        @Override
+        protected ListenableFuture<HttpResponse> invoke(AsyncRequestFilter filter) {
+            return filter.filterRequest(request, contents, messageInfoFactory.create(request));
+        }
+
+        @Override
+        protected boolean skipRemainingFilters(HttpResponse result) {
+            shortCircuitResponse = result;
+
+            return result != null;
+        }
+
+        @Override
+        protected void finish() {
+            requestFiltered(ctx, request, shortCircuitResponse);
+        }
+
+        @Override
+        protected void abort() {
+            ReferenceCountUtil.release(request);
+        }
+
+        /**
+         * Copies the request line and headers, so that the original request is not affected by filters' modifications.
+         */
+        private HttpRequest copy(HttpRequest request) {
+            HttpRequest copy = new DefaultHttpRequest(request.getProtocolVersion(), request.getMethod(), request.getUri());
+            copy.headers().set(request.headers());
+
+            return copy;
+        }
+    }
+
+    private class ResponseFilterSequence extends FilterSequence<AsyncResponseFilter, Object> {
+        private final ResponseToFilter responseToFilter;
+        private final HttpMessageContents contents;
+        private final ChannelPromise promise;
+
+        ResponseFilterSequence(ChannelHandlerContext ctx, ResponseToFilter responseToFilter, ChannelPromise promise) {
+            super(ctx, proxyServer.getAsyncResponseFilters());
+
+            this.responseToFilter = responseToFilter;
+            this.contents = responseToFilter.response instanceof FullHttpMessage ? new HttpMessageContents((FullHttpMessage) responseToFilter.response) : null;
+            this.promise = promise;
+        }
+
+        @Override
+        protected ListenableFuture<?> invoke(AsyncResponseFilter filter) {
+            return filter.filterResponse(responseToFilter.response, contents, responseToFilter.messageInfo);
+        }
+
+        @Override
+        protected void finish() {
+            responseFiltered(ctx, responseToFilter.response, promise);
+        }
+
+        @Override
+        protected void abort() {
+            ReferenceCountUtil.release(responseToFilter.response);
+            promise.tryFailure(new ClosedChannelException());
+        }
+    }
+
+    /**
+     * Creates the {@link HttpMessageInfo} passed to async filters, the same way {@link RequestFilterAdapter} and
+     * {@link ResponseFilterAdapter} do for request and response filters.
+     */
+    private static class MessageInfoFactory extends HttpsAwareFiltersAdapter {
+        private final String originalUrl;
+
+        MessageInfoFactory(HttpRequest originalRequest, ChannelHandlerContext ctx) {
+            super(originalRequest, ctx);
+
+            this.originalUrl = getOriginalUrl();
+        }
+
+        HttpMessageInfo create(HttpRequest modifiedRequest) {
+            return new HttpMessageInfo(originalRequest, ctx, isHttps(), getFullUrl(modifiedRequest), originalUrl);
+        }
+    }
+
+    /**
+     * A request that passed through the handler, and the response the async request filters short-circuited it with, if any.
+     */
+    private static class FilteredRequest {
+        private final HttpRequest request;
+        private final HttpResponse shortCircuitResponse;
+
+        FilteredRequest(HttpRequest request, HttpResponse shortCircuitResponse) {
+            this.request = request;
+            this.shortCircuitResponse = shortCircuitResponse;
+        }
+    }
+
+    /**
+     * A response the filter chain marked for filtering by the async response filters.
+     */
+    private static class ResponseToFilter {
+        private final HttpResponse response;
+        private final HttpMessageInfo messageInfo;
+
+        ResponseToFilter(HttpResponse response, HttpMessageInfo messageInfo) {
+            this.response = response;
+            this.messageInfo = messageInfo;
+        }
+    }
+
+    /**
+     * A write, flush or close held while a response is being filtered.
+     */
+    private static class PendingOperation {
+        private enum Type {
+            WRITE, FLUSH, CLOSE
+        }
+
+        private final Type type;
+        private final Object msg;
+        private final ChannelPromise promise;
+        private final ResponseToFilter responseToFilter;
+
+        private PendingOperation(Type type, Object msg, ChannelPromise promise, ResponseToFilter responseToFilter) {
+            this.type = type;
+            this.msg = msg;
+            this.promise = promise;
+            this.responseToFilter = responseToFilter;
+        }
+
+        static PendingOperation write(Object msg, ChannelPromise promise, ResponseToFilter responseToFilter) {
+            return new PendingOperation(Type.WRITE, msg, promise, responseToFilter);
+        }
+
+        static PendingOperation flush() {
+            return new PendingOperation(Type.FLUSH, null, null, null);
+        }
+
+        static PendingOperation close(ChannelPromise promise) {
+            return new PendingOperation(Type.CLOSE, null, promise, null);
+        }
+
+        void perform(ChannelHandlerContext ctx) {
+            switch (type) {
+                case WRITE:
+                    ctx.write(msg, promise);
+                    break;
+
+                case FLUSH:
+                    ctx.flush();
+                    break;
+
+                case CLOSE:
+                    ctx.close(promise);
+                    break;
+            }
+        }
+
+        void abort(ChannelHandlerContext ctx) {
+            switch (type) {
+                case WRITE:
+                    ReferenceCountUtil.release(msg);
+                    promise.tryFailure(new ClosedChannelException());
+                    break;
+
+                case CLOSE:
+                    ctx.close(promise);
+                    break;
+
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Adds a {@link ConnectionInstaller} to each connection the proxy's server channel accepts.
+     */
+    private static class AcceptedChannelInstaller extends ChannelInboundHandlerAdapter {
+        private final BrowserMobProxyServer proxyServer;
+
+        AcceptedChannelInstaller(BrowserMobProxyServer proxyServer) {
+            this.proxyServer = proxyServer;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (msg instanceof Channel) {
+                // added before LittleProxy's channel initializer, which the server bootstrap adds after this handler
+                ((Channel) msg).pipeline().addLast(new ConnectionInstaller(proxyServer));
+            }
+
+            super.channelRead(ctx, msg);
+        }
+    }
+
+    /**
+     * Installs the handler on a newly accepted connection, once LittleProxy has initialized the connection's pipeline.
+     */
+    private static class ConnectionInstaller extends ChannelInboundHandlerAdapter {
+        private final BrowserMobProxyServer proxyServer;
+
+        ConnectionInstaller(BrowserMobProxyServer proxyServer) {
+            this.proxyServer = proxyServer;
+        }
+
+        @Override
+        public void channelRegistered(ChannelHandlerContext ctx) throws Exception {
+            // LittleProxy's channel initializer creates the connection's handlers when the channel is registered
+            super.channelRegistered(ctx);
+
+            // the initializer fires the registration again from the head of the pipeline, so this handler may already be gone
+            ChannelPipeline pipeline = ctx.pipeline();
+            if (pipeline.context(this) == null) {
+                return;
+            }
+
+            pipeline.remove(this);
+
+            if (pipeline.get(AsyncFilterHandler.class) == null && pipeline.get(PROXY_CONNECTION_HANDLER_NAME) != null) {
+                pipeline.addBefore(PROXY_CONNECTION_HANDLER_NAME, HANDLER_NAME, new AsyncFilterHandler(proxyServer));
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package net.lightbody.bmp.filters;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import net.lightbody.bmp.util.HttpMessageContents;
+import net.lightbody.bmp.util.HttpMessageInfo;
+
+/**
+ * An asynchronous version of {@link RequestFilter}, for filters that need to perform I/O or other slow work before deciding what
+ * to do with a request. While the returned future is pending, the proxy stops reading from the client connection, but the event
+ * loop remains free to serve other connections. If the future does not complete within the proxy's async filter timeout, the
+ * request proceeds as if the future had completed with null.
+ * <p/>
+ * Asynchronous request filters run before all other filters, including filters added with
+ * {@link net.lightbody.bmp.BrowserMobProxyServer#addRequestFilter(RequestFilter)}.
+ */
+public interface AsyncRequestFilter {
+    /**
+     * Implement this method to filter an HTTP request asynchronously. The request and its contents may be modified until the returned
+     * future completes, but not after. The request can be "short-circuited" by completing the future with a non-null response.
+     * Returning null, or a future that fails, lets the request proceed without a short-circuit response.
+     *
+     * @param request The request object, including method, URI, headers, etc. Modifications to the request object will be reflected in the request sent to the server.
+     * @param contents The request contents, or null if the request was not aggregated.
+     * @param messageInfo Additional information relating to the HTTP message.
+     * @return a future that completes when the filter is done with the request. if its value is non-null, the proxy will suppress the request
+     *         and send the specified response to the client immediately
+     */
+    ListenableFuture<HttpResponse> filterRequest(HttpRequest request, HttpMessageContents contents, HttpMessageInfo messageInfo);
+}
@@ -0,0 +1,28 @@
+package net.lightbody.bmp.filters;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.netty.handler.codec.http.HttpResponse;
+import net.lightbody.bmp.util.HttpMessageContents;
+import net.lightbody.bmp.util.HttpMessageInfo;
+
+/**
+ * An asynchronous version of {@link ResponseFilter}, for filters that need to perform I/O or other slow work before the response is
+ * sent to the client. While the returned future is pending, the response and any later writes to the client connection are held,
+ * but the event loop remains free to serve other connections. If the future does not complete within the proxy's async filter
+ * timeout, the response is sent as it is.
+ * <p/>
+ * Asynchronous response filters run after all other filters, immediately before the response is written to the client. As a result,
+ * their modifications are not reflected in the HAR.
+ */
+public interface AsyncResponseFilter {
+    /**
+     * Implement this method to filter an HTTP response asynchronously. The response and its contents may be modified until the
+     * returned future completes, but not after. Returning null, or a future that fails, lets the response proceed immediately.
+     *
+     * @param response The response object, including URI, headers, status line, etc. Modifications to the response object will be reflected in the client response.
+     * @param contents The response contents, or null if the response was not aggregated.
+     * @param messageInfo Additional information relating to the HTTP message.
+     * @return a future that completes when the filter is done with the response
+     */
+    ListenableFuture<?> filterResponse(HttpResponse response, HttpMessageContents contents, HttpMessageInfo messageInfo);
+}
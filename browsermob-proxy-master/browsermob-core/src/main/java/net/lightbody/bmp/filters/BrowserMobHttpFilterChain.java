@@ -8,6 +8,7 @@ import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import net.lightbody.bmp.BrowserMobProxyServer;
+import net.lightbody.bmp.filters.support.FilterStatisticsRecorder;
 import org.littleshoot.proxy.HttpFilters;
 import org.littleshoot.proxy.HttpFiltersAdapter;
 import org.littleshoot.proxy.HttpFiltersSource;
@@ -29,20 +30,39 @@ public class BrowserMobHttpFilterChain extends HttpFiltersAdapter {
 
     private final List<HttpFilters> filters;
 
+    /**
+     * The request after all request filters have processed it.
+     */
+    private volatile HttpRequest modifiedRequest;
+
+    /**
+     * True once the response to this request has been received from the server, as opposed to a response generated by the proxy.
+     */
+    private volatile boolean serverResponseReceived;
+
     public BrowserMobHttpFilterChain(BrowserMobProxyServer proxyServer, HttpRequest originalRequest, ChannelHandlerContext ctx) {
         super(originalRequest, ctx);
 
         this.proxyServer = proxyServer;
 
-        if (proxyServer.getFilterFactories() != null) {
-            filters = new ArrayList<>(proxyServer.getFilterFactories().size());
+        List<HttpFiltersSource> filterFactories = proxyServer.getActiveFilterPlan().getFilterFactories();
+        if (!filterFactories.isEmpty()) {
+            filters = new ArrayList<>(filterFactories.size());
+
+            // only wrap filters for instrumentation when filter statistics are enabled, so the chain is not slowed down otherwise
+            FilterStatisticsRecorder statisticsRecorder = proxyServer.isFilterStatisticsEnabled() ? proxyServer.getFilterStatisticsRecorder() : null;
 
-            // instantiate all HttpFilters using the proxy's filter factories
-            for (HttpFiltersSource filterFactory : proxyServer.getFilterFactories()) {
+            // instantiate HttpFilters using the proxy's active filter factories. factories whose filters would have no effect
+            // under the proxy's current configuration are not part of the plan.
+            for (HttpFiltersSource filterFactory : filterFactories) {
                 HttpFilters filter = filterFactory.filterRequest(originalRequest, ctx);
                 // allow filter factories to avoid adding a filter on a per-request basis by returning a null
                 // HttpFilters instance
                 if (filter != null) {
+                    if (statisticsRecorder != null) {
+                        filter = statisticsRecorder.instrument(filter);
+                    }
+
                     filters.add(filter);
                 }
             }
@@ -60,6 +80,16 @@ public class BrowserMobHttpFilterChain extends HttpFiltersAdapter {
             return abortedResponse;
         }
 
+        // async request filters run before all other filters, so their short-circuit response takes precedence
+        if (httpObject instanceof HttpRequest) {
+            HttpResponse asyncFilterResponse = AsyncFilterHandler.getShortCircuitResponse((HttpRequest) httpObject, ctx);
+            if (asyncFilterResponse != null) {
+                updateFiltersWithModifiedResponse((HttpRequest) httpObject);
+
+                return asyncFilterResponse;
+            }
+        }
+
         for (HttpFilters filter : filters) {
             try {
                 HttpResponse filterResponse = filter.clientToProxyRequest(httpObject);
@@ -116,6 +146,10 @@ public class BrowserMobHttpFilterChain extends HttpFiltersAdapter {
 
     @Override
     public HttpObject serverToProxyResponse(HttpObject httpObject) {
+        if (httpObject instanceof HttpResponse) {
+            serverResponseReceived = true;
+        }
+
         HttpObject processedHttpObject = httpObject;
 
         for (HttpFilters filter : filters) {
@@ -278,6 +312,13 @@ public class BrowserMobHttpFilterChain extends HttpFiltersAdapter {
             }
         }
 
+        // async response filters run after all other filters, when the response is written to the client. like response filters,
+        // they only see responses from the server.
+        if (serverResponseReceived && processedHttpObject instanceof HttpResponse && !proxyServer.getAsyncResponseFilters().isEmpty()) {
+            HttpRequest request = modifiedRequest != null ? modifiedRequest : originalRequest;
+            AsyncFilterHandler.filterWhenWritten(ctx, (HttpResponse) processedHttpObject, originalRequest, request);
+        }
+
         return processedHttpObject;
     }
 
@@ -299,6 +340,8 @@ public class BrowserMobHttpFilterChain extends HttpFiltersAdapter {
      * @param modifiedRequest the modified HttpRequest after all filters have finished processing it
      */
     private void updateFiltersWithModifiedResponse(HttpRequest modifiedRequest) {
+        this.modifiedRequest = modifiedRequest;
+
         for (HttpFilters filter : filters) {
             if (filter instanceof ModifiedRequestAwareFilter) {
                 ModifiedRequestAwareFilter requestCaptureFilter = (ModifiedRequestAwareFilter) filter;
@@ -1,6 +1,5 @@
 package net.lightbody.bmp.filters;
 
-import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpHeaders;
@@ -8,12 +7,10 @@ import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.LastHttpContent;
-import net.lightbody.bmp.util.BrowserMobHttpUtil;
+import net.lightbody.bmp.core.har.HarCaptureBudget;
+import net.lightbody.bmp.filters.util.CapturedContentBuffer;
 import org.littleshoot.proxy.HttpFiltersAdapter;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-
 /**
  * This filter captures requests from the client (headers and content).
  * <p/>
@@ -30,9 +27,15 @@ public class ClientRequestCaptureFilter extends HttpFiltersAdapter {
 
     /**
      * Populated by clientToProxyRequest() when processing the HttpContent objects. If the request is chunked,
-     * it will be populated across multiple calls to clientToProxyRequest().
+     * it will be populated across multiple calls to clientToProxyRequest(). Released when processing the LastHttpContent,
+     * after the contents are copied into fullRequestContents.
+     */
+    private final CapturedContentBuffer requestContentBuffer;
+
+    /**
+     * Populated by clientToProxyRequest() when processing the LastHttpContent.
      */
-    private final ByteArrayOutputStream requestContents = new ByteArrayOutputStream();
+    private volatile byte[] fullRequestContents;
 
     /**
      * Populated by clientToProxyRequest() when processing the LastHttpContent.
@@ -40,11 +43,29 @@ public class ClientRequestCaptureFilter extends HttpFiltersAdapter {
     private volatile HttpHeaders trailingHeaders;
 
     public ClientRequestCaptureFilter(HttpRequest originalRequest) {
-        super(originalRequest);
+        this(originalRequest, null, null);
     }
 
     public ClientRequestCaptureFilter(HttpRequest originalRequest, ChannelHandlerContext ctx) {
+        this(originalRequest, ctx, null);
+    }
+
+    /**
+     * Creates a filter that captures at most {@link HarCaptureBudget#getMaxContentSize()} bytes of the request, and reserves
+     * the bytes it captures from the budget.
+     *
+     * @param originalRequest the original HttpRequest from the HttpFiltersSource factory
+     * @param ctx channel handler context, or null
+     * @param captureBudget budget limiting the captured content, or null to capture the entire request
+     */
+    public ClientRequestCaptureFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, HarCaptureBudget captureBudget) {
         super(originalRequest, ctx);
+
+        if (captureBudget != null) {
+            this.requestContentBuffer = new CapturedContentBuffer(ctx, captureBudget.getMaxContentSize(), captureBudget);
+        } else {
+            this.requestContentBuffer = new CapturedContentBuffer(ctx);
+        }
     }
 
     @Override
@@ -61,6 +82,9 @@ public class ClientRequestCaptureFilter extends HttpFiltersAdapter {
             if (httpContent instanceof LastHttpContent) {
                 LastHttpContent lastHttpContent = (LastHttpContent) httpContent;
                 trailingHeaders = lastHttpContent .trailingHeaders();
+
+                // copy the contents out of the content buffer, so the buffer can release the request's netty buffers
+                fullRequestContents = requestContentBuffer.copyAndRelease();
             }
         }
 
@@ -68,14 +92,7 @@ public class ClientRequestCaptureFilter extends HttpFiltersAdapter {
     }
 
     protected void storeRequestContent(HttpContent httpContent) {
-        ByteBuf bufferedContent = httpContent.content();
-        byte[] content = BrowserMobHttpUtil.extractReadableBytes(bufferedContent);
-
-        try {
-            requestContents.write(content);
-        } catch (IOException e) {
-            // can't happen
-        }
+        requestContentBuffer.append(httpContent.content());
     }
 
     public HttpRequest getHttpRequest() {
@@ -83,11 +100,31 @@ public class ClientRequestCaptureFilter extends HttpFiltersAdapter {
     }
 
     public byte[] getFullRequestContents() {
-        return requestContents.toByteArray();
+        byte[] fullContents = fullRequestContents;
+        if (fullContents != null) {
+            return fullContents;
+        }
+
+        // the request is not yet complete, so return the contents received so far
+        return requestContentBuffer.toByteArray();
     }
 
     public HttpHeaders getTrailingHeaders() {
         return trailingHeaders;
     }
 
+    /**
+     * @return true if part of the request was not captured because it exceeded the capture budget
+     */
+    public boolean isContentTruncated() {
+        return requestContentBuffer.isTruncated();
+    }
+
+    /**
+     * @return size of the request content before it was truncated
+     */
+    public long getOriginalContentSize() {
+        return requestContentBuffer.getOriginalSize();
+    }
+
 }
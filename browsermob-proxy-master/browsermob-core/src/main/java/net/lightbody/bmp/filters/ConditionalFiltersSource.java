@@ -0,0 +1,18 @@
+package net.lightbody.bmp.filters;
+
+import org.littleshoot.proxy.HttpFiltersSourceAdapter;
+
+/**
+ * A filter source whose filters only have an effect under certain proxy configurations, such as when a blacklist or rewrite
+ * rules have been set. When the source is inactive, it is left out of the {@link ActiveFilterPlan}, so its filters are
+ * not created for requests.
+ * <p/>
+ * {@link #isActive()} is only evaluated when the plan is compiled, so the proxy must recompile its plan whenever the
+ * configuration the source depends on changes.
+ */
+public abstract class ConditionalFiltersSource extends HttpFiltersSourceAdapter {
+    /**
+     * @return true if filters created by this source can have an effect under the proxy's current configuration
+     */
+    public abstract boolean isActive();
+}
@@ -2,6 +2,9 @@ package net.lightbody.bmp.filters;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.HttpContent;
@@ -15,8 +18,11 @@ import io.netty.handler.codec.http.cookie.ClientCookieDecoder;
 import io.netty.handler.codec.http.cookie.Cookie;
 import io.netty.handler.codec.http.cookie.ServerCookieDecoder;
 import net.lightbody.bmp.core.har.Har;
+import net.lightbody.bmp.core.har.HarCaptureBudget;
+import net.lightbody.bmp.core.har.HarContentStore;
 import net.lightbody.bmp.core.har.HarCookie;
 import net.lightbody.bmp.core.har.HarEntry;
+import net.lightbody.bmp.core.har.HarHeaderDictionary;
 import net.lightbody.bmp.core.har.HarNameValuePair;
 import net.lightbody.bmp.core.har.HarPostData;
 import net.lightbody.bmp.core.har.HarPostDataParam;
@@ -26,6 +32,7 @@ import net.lightbody.bmp.exception.UnsupportedCharsetException;
 import net.lightbody.bmp.filters.support.HttpConnectTiming;
 import net.lightbody.bmp.filters.util.HarCaptureUtil;
 import net.lightbody.bmp.proxy.CaptureType;
+import net.lightbody.bmp.proxy.ContentCapturePolicy;
 import net.lightbody.bmp.util.BrowserMobHttpUtil;
 import org.littleshoot.proxy.impl.ProxyUtils;
 import org.slf4j.Logger;
@@ -36,7 +43,6 @@ import java.net.InetSocketAddress;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
@@ -67,9 +73,33 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
 
     /**
      * Like requestCaptureFilter above, HarCaptureFilter delegates to responseCaptureFilter to capture response contents. If content capture
-     * is not required for this request, the filter will not be instantiated or invoked.
+     * is not required for this request, the filter will not be instantiated or invoked. Since the content capture policy may
+     * select responses by their headers, the filter is instantiated when the HttpResponse is received.
      */
-    private final ServerResponseCaptureFilter responseCaptureFilter;
+    private volatile ServerResponseCaptureFilter responseCaptureFilter;
+
+    /**
+     * Completes when the content captured by the responseCaptureFilter has been added to the harEntry. Null until the entire
+     * response has been received, and if the response content is not captured.
+     */
+    private volatile ListenableFuture<?> responseContentCaptured;
+
+    /**
+     * Selects the requests and responses whose content is captured.
+     */
+    private final ContentCapturePolicy contentCapturePolicy;
+
+    /**
+     * True if the content capture policy selected this request for content capture, based on its URL, host, and sampling.
+     * The policy may still reject the response based on the response headers.
+     */
+    private final boolean contentCaptureSelected;
+
+    /**
+     * The full URL and host of the original request. Only populated when the content capture policy needs to match responses.
+     */
+    private final String capturePolicyUrl;
+    private final String capturePolicyHost;
 
     /**
      * The CaptureType data types to capture in this request.
@@ -135,6 +165,20 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
      *                      captured (see {@link net.lightbody.bmp.proxy.CaptureType} for information on data collected for each CaptureType)
      */
     public HarCaptureFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, Har har, String currentPageRef, Set<CaptureType> dataToCapture) {
+        this(originalRequest, ctx, har, currentPageRef, dataToCapture, ContentCapturePolicy.CAPTURE_ALL);
+    }
+
+    /**
+     * Create a new instance of the HarCaptureFilter that captures request and response content only when the specified policy
+     * selects it. See {@link #HarCaptureFilter(HttpRequest, ChannelHandlerContext, Har, String, Set)}.
+     *
+     * @param originalRequest the original HttpRequest from the HttpFiltersSource factory
+     * @param har a reference to the ProxyServer's current HAR file at the time this request is received (can be null if HAR capture is not required)
+     * @param currentPageRef the ProxyServer's currentPageRef at the time this request is received from the client
+     * @param dataToCapture the data types to capture for this request
+     * @param contentCapturePolicy policy selecting the request and response content to capture
+     */
+    public HarCaptureFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, Har har, String currentPageRef, Set<CaptureType> dataToCapture, ContentCapturePolicy contentCapturePolicy) {
         super(originalRequest, ctx);
 
         if (har == null) {
@@ -153,22 +197,32 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
             this.dataToCapture = EnumSet.noneOf(CaptureType.class);
         }
 
-        // we may need to capture both the request and the response, so set up the request/response filters and delegate to them when
-        // the corresponding filter methods are invoked. to save time and memory, only set up the capturing filters when
-        // we actually need to capture the data.
-        if (this.dataToCapture.contains(CaptureType.REQUEST_CONTENT) || this.dataToCapture.contains(CaptureType.REQUEST_BINARY_CONTENT)) {
-            requestCaptureFilter = new ClientRequestCaptureFilter(originalRequest);
+        this.har = har;
+
+        if (contentCapturePolicy == null) {
+            this.contentCapturePolicy = ContentCapturePolicy.CAPTURE_ALL;
         } else {
-            requestCaptureFilter = null;
+            this.contentCapturePolicy = contentCapturePolicy;
         }
 
-        if (this.dataToCapture.contains(CaptureType.RESPONSE_CONTENT) || this.dataToCapture.contains(CaptureType.RESPONSE_BINARY_CONTENT)) {
-            responseCaptureFilter = new ServerResponseCaptureFilter(originalRequest, true);
+        if (this.contentCapturePolicy.isCaptureAll()) {
+            contentCaptureSelected = true;
+            capturePolicyUrl = null;
+            capturePolicyHost = null;
         } else {
-            responseCaptureFilter = null;
+            capturePolicyUrl = getFullUrl(originalRequest);
+            capturePolicyHost = getHost(originalRequest);
+            contentCaptureSelected = this.contentCapturePolicy.sample() && this.contentCapturePolicy.matchesRequest(capturePolicyUrl, capturePolicyHost);
         }
 
-        this.har = har;
+        // we may need to capture both the request and the response, so set up the request/response filters and delegate to them when
+        // the corresponding filter methods are invoked. to save time and memory, only set up the capturing filters when
+        // we actually need to capture the data. the response capture filter is set up when the response is received.
+        if (contentCaptureSelected && (this.dataToCapture.contains(CaptureType.REQUEST_CONTENT) || this.dataToCapture.contains(CaptureType.REQUEST_BINARY_CONTENT))) {
+            requestCaptureFilter = new ClientRequestCaptureFilter(originalRequest, ctx, har.getLog().getCaptureBudget());
+        } else {
+            requestCaptureFilter = null;
+        }
 
         this.harEntry = new HarEntry(currentPageRef);
     }
@@ -184,7 +238,7 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
         if (httpObject instanceof HttpRequest) {
             // link the object up now, before we make the request, so that if we get cut off (ie: favicon.ico request and browser shuts down)
             // we still have the attempt associated, even if we never got a response
-            harEntry.setStartedDateTime(new Date());
+            harEntry.setStartedDateTimeMillis(System.currentTimeMillis());
             har.getLog().addEntry(harEntry);
 
             HttpRequest httpRequest = (HttpRequest) httpObject;
@@ -232,8 +286,17 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
                 captureTrailingHeaders(lastHttpContent);
             }
 
-            if (dataToCapture.contains(CaptureType.REQUEST_CONTENT)) {
-                captureRequestContent(requestCaptureFilter.getHttpRequest(), requestCaptureFilter.getFullRequestContents());
+            if (requestCaptureFilter != null && dataToCapture.contains(CaptureType.REQUEST_CONTENT)) {
+                byte[] fullRequestContents = requestCaptureFilter.getFullRequestContents();
+                captureRequestContent(requestCaptureFilter.getHttpRequest(), fullRequestContents);
+
+                if (requestCaptureFilter.isContentTruncated()) {
+                    captureRequestContentTruncated(requestCaptureFilter.getHttpRequest(), requestCaptureFilter.getOriginalContentSize());
+                }
+
+                har.getLog().recordCapturedContent(harEntry, fullRequestContents.length);
+            } else if (requestCaptureFilter != null) {
+                releaseUncapturedContent(requestCaptureFilter.getFullRequestContents());
             }
 
             harEntry.getRequest().setBodySize(requestBodySize.get());
@@ -244,8 +307,13 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
 
     @Override
     public HttpObject serverToProxyResponse(HttpObject httpObject) {
+        if (httpObject instanceof HttpResponse) {
+            createResponseCaptureFilter((HttpResponse) httpObject);
+        }
+
         // if a ServerResponseCaptureFilter is configured, delegate to it to collect the server's response. if it is not
         // configured, we still need to capture basic information (timings, HTTP status, etc.), just not content.
+        ServerResponseCaptureFilter responseCaptureFilter = this.responseCaptureFilter;
         if (responseCaptureFilter != null) {
             responseCaptureFilter.serverToProxyResponse(httpObject);
         }
@@ -263,8 +331,8 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
         }
 
         if (httpObject instanceof LastHttpContent) {
-            if (dataToCapture.contains(CaptureType.RESPONSE_CONTENT)) {
-                captureResponseContent(responseCaptureFilter.getHttpResponse(), responseCaptureFilter.getFullResponseContents());
+            if (responseCaptureFilter != null) {
+                captureResponseContentWhenCaptured(responseCaptureFilter);
             }
 
             harEntry.getResponse().setBodySize(responseBodySize.get());
@@ -273,8 +341,83 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
         return super.serverToProxyResponse(httpObject);
     }
 
+    /**
+     * Creates the filter that captures the response content, if response content capture is enabled and the content capture
+     * policy selects the response. Responses that are not selected are never buffered.
+     */
+    private void createResponseCaptureFilter(HttpResponse httpResponse) {
+        if (!contentCaptureSelected
+                || !(dataToCapture.contains(CaptureType.RESPONSE_CONTENT) || dataToCapture.contains(CaptureType.RESPONSE_BINARY_CONTENT))) {
+            return;
+        }
+
+        // informational responses (e.g. 100 Continue) have no content, and their headers do not describe the final response
+        if (responseCaptureFilter != null || httpResponse.getStatus().code() < 200) {
+            return;
+        }
+
+        if (!contentCapturePolicy.isCaptureAll()) {
+            String contentType = HttpHeaders.getHeader(httpResponse, HttpHeaders.Names.CONTENT_TYPE);
+            long contentLength = HttpHeaders.getContentLength(httpResponse, -1L);
+
+            if (!contentCapturePolicy.matchesResponse(capturePolicyUrl, capturePolicyHost, contentType, contentLength)) {
+                return;
+            }
+        }
+
+        responseCaptureFilter = new ServerResponseCaptureFilter(originalRequest, ctx, true, har.getLog().getCaptureBudget());
+    }
+
+    /**
+     * Adds the response content to the HAR entry once the response capture filter has captured it, which may be after the
+     * response has been received if the response is decompressed on a decoding thread. The entry is not completed until the
+     * content has been added.
+     */
+    private void captureResponseContentWhenCaptured(final ServerResponseCaptureFilter responseCaptureFilter) {
+        final SettableFuture<Void> contentCaptured = SettableFuture.create();
+        responseContentCaptured = contentCaptured;
+
+        responseCaptureFilter.getResponseContentsCaptured().addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    byte[] fullResponseContents = responseCaptureFilter.getFullResponseContents();
+
+                    if (dataToCapture.contains(CaptureType.RESPONSE_CONTENT)) {
+                        captureResponseContent(responseCaptureFilter.getHttpResponse(), fullResponseContents);
+
+                        if (responseCaptureFilter.isContentTruncated()) {
+                            captureResponseContentTruncated(responseCaptureFilter.getOriginalContentSize());
+                        }
+
+                        har.getLog().recordCapturedContent(harEntry, fullResponseContents.length);
+                    } else {
+                        releaseUncapturedContent(fullResponseContents);
+                    }
+                } finally {
+                    contentCaptured.set(null);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Returns the bytes of content that was buffered but is not added to the HAR entry to the HAR's capture budget.
+     */
+    private void releaseUncapturedContent(byte[] contents) {
+        HarCaptureBudget captureBudget = har.getLog().getCaptureBudget();
+        if (captureBudget != null) {
+            captureBudget.release(contents.length);
+        }
+    }
+
     @Override
     public void serverToProxyResponseTimedOut() {
+        ServerResponseCaptureFilter responseCaptureFilter = this.responseCaptureFilter;
+        if (responseCaptureFilter != null) {
+            responseCaptureFilter.serverToProxyResponseTimedOut();
+        }
+
         // replace any existing HarResponse that was created if the server sent a partial response
         HarResponse response = HarCaptureUtil.createHarResponseForFailure();
         harEntry.setResponse(response);
@@ -297,6 +440,8 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
         else if (responseReceiveStartedNanos > 0L) {
             harEntry.getTimings().setReceive(timeoutTimestampNanos - responseReceiveStartedNanos, TimeUnit.NANOSECONDS);
         }
+
+        har.getLog().completeEntry(harEntry);
     }
 
     /**
@@ -379,10 +524,22 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
 
     protected void captureHeaders(HttpHeaders headers) {
         for (Map.Entry<String, String> header : headers.entries()) {
-            harEntry.getRequest().getHeaders().add(new HarNameValuePair(header.getKey(), header.getValue()));
+            harEntry.getRequest().getHeaders().add(createHeader(header.getKey(), header.getValue()));
         }
     }
 
+    /**
+     * Creates a captured header, sharing an equal header from the HAR's header dictionary when possible.
+     */
+    private HarNameValuePair createHeader(String name, String value) {
+        HarHeaderDictionary headerDictionary = har.getLog().getHeaderDictionary();
+        if (headerDictionary == null) {
+            return new HarNameValuePair(name, value);
+        }
+
+        return headerDictionary.header(name, value);
+    }
+
     protected void captureRequestContent(HttpRequest httpRequest, byte[] fullMessage) {
         if (fullMessage.length == 0) {
             return;
@@ -437,9 +594,15 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
         } else {
             //TODO: implement capture of files and multipart form data
 
-            // not URL encoded, so let's grab the body of the POST and capture that
-            String postBody = BrowserMobHttpUtil.getContentAsString(fullMessage, charset);
-            harEntry.getRequest().getPostData().setText(postBody);
+            // not URL encoded, so let's grab the body of the POST and capture that. if the HAR has a content store, keep the
+            // raw body in the store and only convert it to text when the HAR is read.
+            HarContentStore contentStore = har.getLog().getContentStore();
+            if (contentStore != null) {
+                harEntry.getRequest().getPostData().setStoredContent(contentStore.store(fullMessage), charset);
+            } else {
+                String postBody = BrowserMobHttpUtil.getContentAsString(fullMessage, charset);
+                harEntry.getRequest().getPostData().setText(postBody);
+            }
         }
     }
 
@@ -473,17 +636,55 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
             log.debug("No charset specified; using charset {} to decode contents from {}", charset, originalRequest.getUri());
         }
 
+        // if the HAR has a content store, keep the raw body in the store and only convert it to text when the HAR is read
+        HarContentStore contentStore = har.getLog().getContentStore();
+
         if (!forceBinary && BrowserMobHttpUtil.hasTextualContent(contentType)) {
-            String text = BrowserMobHttpUtil.getContentAsString(fullMessage, charset);
-            harEntry.getResponse().getContent().setText(text);
+            if (contentStore != null) {
+                harEntry.getResponse().getContent().setStoredContent(contentStore.store(fullMessage), charset);
+            } else {
+                String text = BrowserMobHttpUtil.getContentAsString(fullMessage, charset);
+                harEntry.getResponse().getContent().setText(text);
+            }
         } else if (dataToCapture.contains(CaptureType.RESPONSE_BINARY_CONTENT)) {
-            harEntry.getResponse().getContent().setText(BaseEncoding.base64().encode(fullMessage));
+            if (contentStore != null) {
+                harEntry.getResponse().getContent().setStoredContent(contentStore.store(fullMessage), null);
+            } else {
+                harEntry.getResponse().getContent().setText(BaseEncoding.base64().encode(fullMessage));
+            }
+
             harEntry.getResponse().getContent().setEncoding("base64");
         }
 
         harEntry.getResponse().getContent().setSize(fullMessage.length);
     }
 
+    /**
+     * Marks the request's post data as truncated. If no request content was captured because the HAR's capture budget was
+     * exhausted, creates the post data so that the truncation is recorded.
+     */
+    protected void captureRequestContentTruncated(HttpRequest httpRequest, long originalContentSize) {
+        HarPostData postData = harEntry.getRequest().getPostData();
+        if (postData == null) {
+            String contentType = HttpHeaders.getHeader(httpRequest, HttpHeaders.Names.CONTENT_TYPE);
+            if (contentType == null) {
+                contentType = BrowserMobHttpUtil.UNKNOWN_CONTENT_TYPE;
+            }
+
+            postData = new HarPostData();
+            postData.setMimeType(contentType);
+            harEntry.getRequest().setPostData(postData);
+        }
+
+        postData.setTruncated(true);
+        postData.setOriginalSize(originalContentSize);
+    }
+
+    protected void captureResponseContentTruncated(long originalContentSize) {
+        harEntry.getResponse().getContent().setTruncated(true);
+        harEntry.getResponse().getContent().setOriginalSize(originalContentSize);
+    }
+
     protected void captureResponse(HttpResponse httpResponse) {
         HarResponse response = new HarResponse(httpResponse.getStatus().code(), httpResponse.getStatus().reasonPhrase(), httpResponse.getProtocolVersion().text());
         harEntry.setResponse(response);
@@ -564,7 +765,7 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
     protected void captureResponseHeaders(HttpResponse httpResponse) {
         HttpHeaders headers = httpResponse.headers();
         for (Map.Entry<String, String> header : headers.entries()) {
-            harEntry.getResponse().getHeaders().add(new HarNameValuePair(header.getKey(), header.getValue()));
+            harEntry.getResponse().getHeaders().add(createHeader(header.getKey(), header.getValue()));
         }
     }
 
@@ -658,6 +859,8 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
         if (dnsResolutionStartedNanos > 0L) {
             harEntry.getTimings().setDns(System.nanoTime() - dnsResolutionStartedNanos, TimeUnit.NANOSECONDS);
         }
+
+        har.getLog().completeEntry(harEntry);
     }
 
     @Override
@@ -700,6 +903,8 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
         if (connectionStartedNanos > 0L) {
             harEntry.getTimings().setConnect(System.nanoTime() - connectionStartedNanos, TimeUnit.NANOSECONDS);
         }
+
+        har.getLog().completeEntry(harEntry);
     }
 
     @Override
@@ -762,5 +967,18 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
         } else {
             harEntry.getTimings().setReceive(0L, TimeUnit.NANOSECONDS);
         }
+
+        ListenableFuture<?> contentCaptured = responseContentCaptured;
+        if (contentCaptured == null) {
+            har.getLog().completeEntry(harEntry);
+        } else {
+            // the entry is complete once its response content has been added
+            contentCaptured.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    har.getLog().completeEntry(harEntry);
+                }
+            }, MoreExecutors.directExecutor());
+        }
     }
 }
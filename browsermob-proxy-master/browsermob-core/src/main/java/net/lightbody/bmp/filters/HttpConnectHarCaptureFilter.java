@@ -19,7 +19,6 @@ import org.slf4j.LoggerFactory;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.util.Date;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
@@ -49,7 +48,7 @@ public class HttpConnectHarCaptureFilter extends HttpsAwareFiltersAdapter implem
     /**
      * The time this CONNECT began. Used to populate the HAR entry in case of failure.
      */
-    private volatile Date requestStartTime;
+    private volatile long requestStartTimeMillis;
 
     /**
      * True if this filter instance processed a {@link #proxyToServerResolutionSucceeded(String, java.net.InetSocketAddress)} call, indicating
@@ -141,7 +140,7 @@ public class HttpConnectHarCaptureFilter extends HttpsAwareFiltersAdapter implem
     public HttpResponse clientToProxyRequest(HttpObject httpObject) {
         if (httpObject instanceof HttpRequest) {
             // store the CONNECT start time in case of failure, so we can populate the HarEntry with it
-            requestStartTime = new Date();
+            requestStartTimeMillis = System.currentTimeMillis();
         }
 
         return null;
@@ -159,6 +158,8 @@ public class HttpConnectHarCaptureFilter extends HttpsAwareFiltersAdapter implem
             harEntry.getTimings().setDns(System.nanoTime() - dnsResolutionStartedNanos, TimeUnit.NANOSECONDS);
         }
 
+        har.getLog().completeEntry(harEntry);
+
         httpConnectTimes.remove(clientAddress);
     }
 
@@ -174,6 +175,8 @@ public class HttpConnectHarCaptureFilter extends HttpsAwareFiltersAdapter implem
             harEntry.getTimings().setConnect(System.nanoTime() - connectionStartedNanos, TimeUnit.NANOSECONDS);
         }
 
+        har.getLog().completeEntry(harEntry);
+
         httpConnectTimes.remove(clientAddress);
     }
 
@@ -219,6 +222,8 @@ public class HttpConnectHarCaptureFilter extends HttpsAwareFiltersAdapter implem
         else if (responseReceiveStartedNanos > 0L) {
             harEntry.getTimings().setReceive(timeoutTimestampNanos - responseReceiveStartedNanos, TimeUnit.NANOSECONDS);
         }
+
+        har.getLog().completeEntry(harEntry);
     }
 
     @Override
@@ -323,7 +328,7 @@ public class HttpConnectHarCaptureFilter extends HttpsAwareFiltersAdapter implem
      */
     private HarEntry createHarEntryForFailedCONNECT(String errorMessage) {
         HarEntry harEntry = new HarEntry(currentPageRef);
-        harEntry.setStartedDateTime(requestStartTime);
+        harEntry.setStartedDateTimeMillis(requestStartTimeMillis);
 
         HarRequest request = createRequestForFailedConnect(originalRequest);
         harEntry.setRequest(request);
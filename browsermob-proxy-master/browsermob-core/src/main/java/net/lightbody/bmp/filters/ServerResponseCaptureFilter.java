@@ -1,5 +1,10 @@
 package net.lightbody.bmp.filters;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.HttpContent;
@@ -8,13 +13,16 @@ import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.LastHttpContent;
+import net.lightbody.bmp.core.har.HarCaptureBudget;
+import net.lightbody.bmp.exception.DecompressionException;
+import net.lightbody.bmp.filters.util.CapturedContentBuffer;
+import net.lightbody.bmp.filters.util.StreamingContentDecoder;
 import net.lightbody.bmp.util.BrowserMobHttpUtil;
 import org.littleshoot.proxy.HttpFiltersAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * This filter captures responses from the server (headers and content). The filter can also decompress contents if desired.
@@ -26,6 +34,12 @@ import java.io.IOException;
 public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
     private static final Logger log = LoggerFactory.getLogger(ServerResponseCaptureFilter.class);
 
+    /**
+     * Maximum number of leading raw bytes retained while a response is decompressed as it is received, so that the raw
+     * response can be captured if it cannot be decompressed.
+     */
+    private static final long DECOMPRESSION_FALLBACK_WINDOW_SIZE = 64 * 1024;
+
     /**
      * Populated by serverToProxyResponse() when processing the HttpResponse object
      */
@@ -33,13 +47,29 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
 
     /**
      * Populated by serverToProxyResponse() as it receives HttpContent responses. If the response is chunked, it will
-     * be populated across multiple calls to proxyToServerResponse().
+     * be populated across multiple calls to proxyToServerResponse(). Released when processing the LastHttpContent, after
+     * the contents are decompressed or copied into rawResponseContents. If the response is decompressed as it is received,
+     * this is replaced by a buffer that only retains the leading {@link #DECOMPRESSION_FALLBACK_WINDOW_SIZE} raw bytes.
+     */
+    private volatile CapturedContentBuffer responseContentBuffer;
+
+    /**
+     * Created when processing the HttpResponse if the response is compressed with a supported encoding and decompression is
+     * requested. Decompresses the response content as each chunk is received. Set to null if decompression fails.
+     */
+    private volatile StreamingContentDecoder contentDecoder;
+
+    /**
+     * Populated when processing the LastHttpContent, unless the response was decompressed as it was received. Contains the
+     * entire raw (possibly compressed) response, or the leading bytes of the response if it could not be decompressed as it
+     * was received.
      */
-    private final ByteArrayOutputStream rawResponseContents = new ByteArrayOutputStream();
+    private volatile byte[] rawResponseContents;
 
     /**
-     * Populated when processing the LastHttpContent. If the response is compressed and decompression is requested,
-     * this contains the entire decompressed response. Otherwise it contains the raw response.
+     * Populated when processing the LastHttpContent, or when the decoder finishes if the response is decompressed on a decoding
+     * thread. If the response is compressed and decompression is requested, this contains the entire decompressed response.
+     * Otherwise it contains the raw response.
      */
     private volatile byte[] fullResponseContents;
 
@@ -48,6 +78,12 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
      */
     private volatile HttpHeaders trailingHeaders;
 
+    /**
+     * Completes once the contents of the entire response have been captured. If the response is decompressed on a decoding
+     * thread, this may complete after the LastHttpContent has been processed.
+     */
+    private final SettableFuture<Void> responseContentsCaptured = SettableFuture.create();
+
     /**
      * Set to true when processing the LastHttpContent if the server indicates there is a content encoding.
      */
@@ -58,26 +94,74 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
      */
     private volatile boolean decompressionSuccessful;
 
+    /**
+     * Set to true if the response content could not be decompressed as it was received.
+     */
+    private volatile boolean decompressionFailed;
+
     /**
      * Populated when processing the LastHttpContent.
      */
     private volatile String contentEncoding;
 
+    /**
+     * Set to true when processing the LastHttpContent if part of the response was not captured because it exceeded the capture budget.
+     */
+    private volatile boolean contentTruncated;
+
+    /**
+     * Populated when processing the LastHttpContent. The size of the response before it was truncated.
+     */
+    private volatile long originalContentSize;
+
     /**
      * User option indicating compressed content should be uncompressed.
      */
     private final boolean decompressEncodedContent;
 
-    public ServerResponseCaptureFilter(HttpRequest originalRequest, boolean decompressEncodedContent) {
-        super(originalRequest);
+    /**
+     * Maximum number of bytes of the response to capture, or 0 for no limit.
+     */
+    private final long maxContentSize;
 
-        this.decompressEncodedContent = decompressEncodedContent;
+    /**
+     * Budget that both the raw and the decompressed response contents are reserved from, or null if the contents are not limited
+     * by a budget.
+     */
+    private final HarCaptureBudget captureBudget;
+
+    public ServerResponseCaptureFilter(HttpRequest originalRequest, boolean decompressEncodedContent) {
+        this(originalRequest, null, decompressEncodedContent, null);
     }
 
     public ServerResponseCaptureFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, boolean decompressEncodedContent) {
+        this(originalRequest, ctx, decompressEncodedContent, null);
+    }
+
+    /**
+     * Creates a filter that captures at most {@link HarCaptureBudget#getMaxContentSize()} bytes of the response, and reserves
+     * the bytes it captures from the budget. If the response is decompressed, the decompressed content is also limited to the
+     * maximum content size, and is reserved from the budget as it is decompressed. While the response is decompressed, only
+     * a bounded window of the raw response is retained, in case it cannot be decompressed.
+     *
+     * @param originalRequest the original HttpRequest from the HttpFiltersSource factory
+     * @param ctx channel handler context, or null
+     * @param decompressEncodedContent true to decompress compressed responses
+     * @param captureBudget budget limiting the captured content, or null to capture the entire response
+     */
+    public ServerResponseCaptureFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, boolean decompressEncodedContent, HarCaptureBudget captureBudget) {
         super(originalRequest, ctx);
 
         this.decompressEncodedContent = decompressEncodedContent;
+        this.captureBudget = captureBudget;
+
+        if (captureBudget != null) {
+            this.maxContentSize = captureBudget.getMaxContentSize();
+        } else {
+            this.maxContentSize = 0L;
+        }
+
+        this.responseContentBuffer = new CapturedContentBuffer(ctx, maxContentSize, captureBudget);
     }
 
     @Override
@@ -103,19 +187,36 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
         return super.serverToProxyResponse(httpObject);
     }
 
+    @Override
+    public void serverToProxyResponseTimedOut() {
+        // the response will never complete, so release the partial response content and return its bytes to the capture budget
+        responseContentBuffer.release();
+        releaseContentDecoder();
+    }
+
     protected void captureFullResponseContents() {
-        // start by setting fullResponseContent to the raw, (possibly) compressed byte stream. replace it
-        // with the decompressed bytes if decompression is successful.
-        fullResponseContents = getRawResponseContents();
+        contentTruncated = responseContentBuffer.isTruncated();
+        originalContentSize = responseContentBuffer.getOriginalSize();
 
         // if the content is compressed, we need to decompress it. but don't use
         // the netty HttpContentCompressor/Decompressor in the pipeline because we don't actually want it to
         // change the message sent to the client
+        boolean decompressAfterCapture = false;
         if (contentEncoding != null) {
             responseCompressed = true;
 
             if (decompressEncodedContent) {
-                decompressContents();
+                StreamingContentDecoder decoder = contentDecoder;
+                if (decoder != null) {
+                    // the decoder may still be decoding on a decoding thread, so the contents are captured when it finishes
+                    finishDecompression(decoder);
+
+                    return;
+                } else if (!decompressionFailed) {
+                    // the response was not decompressed as it was received (e.g. if the content encoding was only
+                    // specified in a trailing header), so decompress the raw contents once they are captured
+                    decompressAfterCapture = true;
+                }
             }  else {
                 // will not decompress response
             }
@@ -123,13 +224,70 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
             // no compression
             responseCompressed = false;
         }
+
+        captureRawResponseContents(decompressAfterCapture);
+    }
+
+    /**
+     * Captures the raw contents as the full response contents, decompressing them first if requested, and completes the
+     * capture of the response.
+     */
+    private void captureRawResponseContents(boolean decompressAfterCapture) {
+        rawResponseContents = responseContentBuffer.copyAndRelease();
+
+        // start by setting fullResponseContent to the raw, (possibly) compressed byte stream. replace it
+        // with the decompressed bytes if decompression is successful.
+        fullResponseContents = rawResponseContents;
+
+        if (decompressAfterCapture) {
+            decompressContents();
+
+            // only the decompressed contents are captured, so the raw bytes no longer count against the budget
+            if (decompressionSuccessful && captureBudget != null) {
+                captureBudget.release(rawResponseContents.length);
+            }
+        }
+
+        releaseContentDecoder();
+        responseContentsCaptured.set(null);
+    }
+
+    /**
+     * Captures the decompressed contents once the decoder has decoded the remaining content, without waiting for the decoder.
+     * If the contents cannot be decompressed, captures the raw contents instead.
+     */
+    protected void finishDecompression(final StreamingContentDecoder decoder) {
+        // the decoder receives the entire compressed response, even if the raw fallback window was truncated
+        Futures.addCallback(decoder.finishAsync(), new FutureCallback<byte[]>() {
+            @Override
+            public void onSuccess(byte[] decompressedContents) {
+                fullResponseContents = decompressedContents;
+                decompressionSuccessful = true;
+
+                contentTruncated = decoder.isTruncated();
+                originalContentSize = decoder.getDecodedSize();
+
+                // the raw contents are not needed, so releasing the buffer returns the raw bytes to the capture budget
+                responseContentBuffer.release();
+                responseContentsCaptured.set(null);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                log.warn("Failed to decompress response with encoding type " + contentEncoding + " when decoding request from " + originalRequest.getUri(), t);
+
+                captureRawResponseContents(false);
+            }
+        }, MoreExecutors.directExecutor());
     }
 
     protected void decompressContents() {
         if (contentEncoding.equals(HttpHeaders.Values.GZIP)) {
             try {
-                fullResponseContents = BrowserMobHttpUtil.decompressContents(getRawResponseContents());
+                byte[] decompressedContents = BrowserMobHttpUtil.decompressContents(rawResponseContents);
                 decompressionSuccessful = true;
+
+                fullResponseContents = truncateDecompressedContents(decompressedContents);
             } catch (RuntimeException e) {
                 log.warn("Failed to decompress response with encoding type " + contentEncoding + " when decoding request from " + originalRequest.getUri(), e);
             }
@@ -138,8 +296,50 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
         }
     }
 
+    /**
+     * Limits contents that were decompressed after the response was complete to the maximum content size, and reserves the
+     * retained bytes from the capture budget.
+     */
+    private byte[] truncateDecompressedContents(byte[] decompressedContents) {
+        long retainedBytes = decompressedContents.length;
+        if (maxContentSize > 0L) {
+            retainedBytes = Math.min(retainedBytes, maxContentSize);
+        }
+
+        if (captureBudget != null && retainedBytes > 0L) {
+            retainedBytes = captureBudget.reserve(retainedBytes);
+        }
+
+        if (retainedBytes == decompressedContents.length) {
+            return decompressedContents;
+        }
+
+        if (!contentTruncated) {
+            originalContentSize = decompressedContents.length;
+        }
+
+        contentTruncated = true;
+
+        return Arrays.copyOf(decompressedContents, (int) retainedBytes);
+    }
+
     protected void captureContentEncoding(HttpResponse httpResponse) {
         contentEncoding = HttpHeaders.getHeader(httpResponse, HttpHeaders.Names.CONTENT_ENCODING);
+
+        if (decompressEncodedContent && contentEncoding != null) {
+            contentDecoder = StreamingContentDecoder.forContentEncoding(contentEncoding, ctx, maxContentSize, captureBudget);
+
+            if (contentDecoder != null) {
+                // the raw response is only needed if it cannot be decompressed, so only retain its leading bytes
+                long fallbackWindowSize = DECOMPRESSION_FALLBACK_WINDOW_SIZE;
+                if (maxContentSize > 0L) {
+                    fallbackWindowSize = Math.min(fallbackWindowSize, maxContentSize);
+                }
+
+                responseContentBuffer.release();
+                responseContentBuffer = new CapturedContentBuffer(ctx, fallbackWindowSize, captureBudget);
+            }
+        }
     }
 
     protected void captureTrailingHeaders(LastHttpContent lastContent) {
@@ -156,13 +356,29 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
     }
 
     protected void storeResponseContent(HttpContent httpContent) {
-        ByteBuf bufferedContent = httpContent.content();
-        byte[] content = BrowserMobHttpUtil.extractReadableBytes(bufferedContent);
+        ByteBuf content = httpContent.content();
+        responseContentBuffer.append(content);
+
+        // the decoder limits the decompressed content it retains, so it can decode the entire response
+        StreamingContentDecoder decoder = contentDecoder;
+        if (decoder != null && content.isReadable()) {
+            try {
+                decoder.decode(content);
+            } catch (DecompressionException e) {
+                log.warn("Failed to decompress response with encoding type " + contentEncoding + " when decoding request from " + originalRequest.getUri(), e);
 
-        try {
-            rawResponseContents.write(content);
-        } catch (IOException e) {
-            // can't happen
+                // the raw contents are still captured, but will not be decompressed
+                releaseContentDecoder();
+                decompressionFailed = true;
+            }
+        }
+    }
+
+    private void releaseContentDecoder() {
+        StreamingContentDecoder decoder = contentDecoder;
+        if (decoder != null) {
+            decoder.release();
+            contentDecoder = null;
         }
     }
 
@@ -170,6 +386,18 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
         return httpResponse;
     }
 
+    /**
+     * Returns a future that completes once the contents of the entire response have been captured, after which
+     * {@link #getFullResponseContents()} returns the entire response. Unless the response is decompressed on a decoding thread,
+     * the future completes when the LastHttpContent is processed. Listeners that do not specify an executor may run on the
+     * decoding thread.
+     *
+     * @return future that completes when the response contents have been captured
+     */
+    public ListenableFuture<Void> getResponseContentsCaptured() {
+        return responseContentsCaptured;
+    }
+
     /**
      * Returns the contents of the entire response. If the contents were compressed, <code>decompressEncodedContent</code> is true, and
      * decompression was successful, this method returns the decompressed contents.
@@ -181,12 +409,21 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
     }
 
     /**
-     * Returns the raw contents of the entire response, without decompression.
+     * Returns the raw contents of the entire response, without decompression. To avoid retaining a second copy of the response,
+     * only the leading {@link #DECOMPRESSION_FALLBACK_WINDOW_SIZE} raw bytes are retained while the response is decompressed
+     * as it is received, and none are retained once it has been decompressed, in which case this method returns null once the
+     * response is complete.
      *
-     * @return entire response contents, without decompression
+     * @return entire response contents, without decompression, or null if the response was decompressed as it was received
      */
     public byte[] getRawResponseContents() {
-        return rawResponseContents.toByteArray();
+        byte[] rawContents = rawResponseContents;
+        if (rawContents != null || decompressionSuccessful) {
+            return rawContents;
+        }
+
+        // the response is not yet complete, so return the contents received so far
+        return responseContentBuffer.toByteArray();
     }
 
     public HttpHeaders getTrailingHeaders() {
@@ -212,4 +449,21 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
         return contentEncoding;
     }
 
+    /**
+     * @return true if part of the response was not captured because it exceeded the capture budget
+     */
+    public boolean isContentTruncated() {
+        return contentTruncated;
+    }
+
+    /**
+     * Returns the size of the response before it was truncated. If the response was decompressed, this is the decompressed size,
+     * unless the compressed response itself was truncated, in which case it is the size of the compressed response.
+     *
+     * @return size of the response before it was truncated
+     */
+    public long getOriginalContentSize() {
+        return originalContentSize;
+    }
+
 }
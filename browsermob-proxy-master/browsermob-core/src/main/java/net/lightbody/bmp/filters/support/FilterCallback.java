@@ -0,0 +1,37 @@
+package net.lightbody.bmp.filters.support;
+
+/**
+ * The {@link org.littleshoot.proxy.HttpFilters} callbacks timed by the {@link FilterStatisticsRecorder}.
+ */
+public enum FilterCallback {
+    CLIENT_TO_PROXY_REQUEST("clientToProxyRequest"),
+    PROXY_TO_SERVER_REQUEST("proxyToServerRequest"),
+    PROXY_TO_SERVER_REQUEST_SENDING("proxyToServerRequestSending"),
+    PROXY_TO_SERVER_REQUEST_SENT("proxyToServerRequestSent"),
+    SERVER_TO_PROXY_RESPONSE("serverToProxyResponse"),
+    SERVER_TO_PROXY_RESPONSE_TIMED_OUT("serverToProxyResponseTimedOut"),
+    SERVER_TO_PROXY_RESPONSE_RECEIVING("serverToProxyResponseReceiving"),
+    SERVER_TO_PROXY_RESPONSE_RECEIVED("serverToProxyResponseReceived"),
+    PROXY_TO_CLIENT_RESPONSE("proxyToClientResponse"),
+    PROXY_TO_SERVER_CONNECTION_QUEUED("proxyToServerConnectionQueued"),
+    PROXY_TO_SERVER_RESOLUTION_STARTED("proxyToServerResolutionStarted"),
+    PROXY_TO_SERVER_RESOLUTION_FAILED("proxyToServerResolutionFailed"),
+    PROXY_TO_SERVER_RESOLUTION_SUCCEEDED("proxyToServerResolutionSucceeded"),
+    PROXY_TO_SERVER_CONNECTION_STARTED("proxyToServerConnectionStarted"),
+    PROXY_TO_SERVER_CONNECTION_SSL_HANDSHAKE_STARTED("proxyToServerConnectionSSLHandshakeStarted"),
+    PROXY_TO_SERVER_CONNECTION_FAILED("proxyToServerConnectionFailed"),
+    PROXY_TO_SERVER_CONNECTION_SUCCEEDED("proxyToServerConnectionSucceeded");
+
+    private final String methodName;
+
+    FilterCallback(String methodName) {
+        this.methodName = methodName;
+    }
+
+    /**
+     * @return name of the HttpFilters method
+     */
+    public String getMethodName() {
+        return methodName;
+    }
+}
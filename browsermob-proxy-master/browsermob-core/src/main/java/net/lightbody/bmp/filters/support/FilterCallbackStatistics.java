@@ -0,0 +1,85 @@
+package net.lightbody.bmp.filters.support;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * The latency distribution, exception count and allocations of one callback of a filter class, as recorded by a
+ * {@link FilterStatisticsRecorder}. Times are in microseconds, and allocations are in bytes.
+ */
+@JsonPropertyOrder({"count", "exceptions", "min", "mean", "p50", "p90", "p99", "p999", "max", "allocatedBytes"})
+public class FilterCallbackStatistics {
+    private final long count;
+    private final long exceptions;
+    private final double min;
+    private final double mean;
+    private final double p50;
+    private final double p90;
+    private final double p99;
+    private final double p999;
+    private final double max;
+    private final long allocatedBytes;
+
+    FilterCallbackStatistics(long count, long exceptions, double min, double mean, double p50, double p90, double p99, double p999,
+                             double max, long allocatedBytes) {
+        this.count = count;
+        this.exceptions = exceptions;
+        this.min = min;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * @return number of times the callback was invoked
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return number of times the callback threw an exception
+     */
+    public long getExceptions() {
+        return exceptions;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP90() {
+        return p90;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public double getP999() {
+        return p999;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @return total number of bytes allocated by the callback's thread while the callback ran, or -1 if the JVM does not
+     *         support measuring thread allocations
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+}
@@ -0,0 +1,62 @@
+package net.lightbody.bmp.filters.support;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The statistics recorded for every filter of a single class by a {@link FilterStatisticsRecorder}, broken down by
+ * {@link FilterCallback}. Times are in microseconds.
+ */
+@JsonPropertyOrder({"filter", "count", "exceptions", "totalTime", "callbacks"})
+public class FilterStatistics {
+    private final String filter;
+    private final long count;
+    private final long exceptions;
+    private final double totalTime;
+    private final Map<String, FilterCallbackStatistics> callbacks;
+
+    FilterStatistics(String filter, long count, long exceptions, double totalTime, Map<String, FilterCallbackStatistics> callbacks) {
+        this.filter = filter;
+        this.count = count;
+        this.exceptions = exceptions;
+        this.totalTime = totalTime;
+        this.callbacks = Collections.unmodifiableMap(callbacks);
+    }
+
+    /**
+     * @return fully qualified class name of the filter
+     */
+    public String getFilter() {
+        return filter;
+    }
+
+    /**
+     * @return number of callbacks invoked on filters of this class
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return number of callbacks on filters of this class that threw an exception
+     */
+    public long getExceptions() {
+        return exceptions;
+    }
+
+    /**
+     * @return total time spent in callbacks on filters of this class, in microseconds
+     */
+    public double getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * @return statistics of each callback that was invoked, keyed by the callback's method name, in filter chain order
+     */
+    public Map<String, FilterCallbackStatistics> getCallbacks() {
+        return callbacks;
+    }
+}
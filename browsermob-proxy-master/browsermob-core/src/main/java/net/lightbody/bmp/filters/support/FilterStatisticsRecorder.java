@@ -0,0 +1,243 @@
+package net.lightbody.bmp.filters.support;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.littleshoot.proxy.HttpFilters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records the latency of each filter callback in an HDR histogram per filter class and callback, along with the number of
+ * exceptions the callbacks threw and the bytes they allocated. Filters are instrumented by wrapping them with
+ * {@link #instrument(HttpFilters)}, so filters that are not wrapped cost nothing. Recording is thread safe and does not block,
+ * so filters can be instrumented on any number of event loop threads.
+ * <p/>
+ * Allocations are measured with the HotSpot thread allocation counter. On JVMs that do not support it, allocations are
+ * reported as -1.
+ */
+public class FilterStatisticsRecorder {
+    private static final Logger log = LoggerFactory.getLogger(FilterStatisticsRecorder.class);
+
+    /**
+     * Number of significant decimal digits kept by the latency histograms.
+     */
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private static final com.sun.management.ThreadMXBean ALLOCATION_COUNTER = getAllocationCounter();
+
+    private final ConcurrentMap<Class<?>, FilterRecorder> filterRecorders = new ConcurrentHashMap<>();
+
+    /**
+     * Wraps the filter so that each of its callbacks is recorded under the filter's class.
+     *
+     * @param filter filter to instrument
+     * @return a filter that delegates to the specified filter and records its callbacks
+     */
+    public HttpFilters instrument(HttpFilters filter) {
+        Class<?> filterClass = filter.getClass();
+
+        FilterRecorder filterRecorder = filterRecorders.get(filterClass);
+        if (filterRecorder == null) {
+            FilterRecorder newRecorder = new FilterRecorder();
+            filterRecorder = filterRecorders.putIfAbsent(filterClass, newRecorder);
+            if (filterRecorder == null) {
+                filterRecorder = newRecorder;
+            }
+        }
+
+        return new InstrumentedHttpFilters(filter, filterRecorder);
+    }
+
+    /**
+     * Returns the statistics recorded so far for each filter class, starting with the filter class that spent the most time in
+     * its callbacks.
+     *
+     * @return statistics of each filter class
+     */
+    public List<FilterStatistics> getStatistics() {
+        List<FilterStatistics> statistics = new ArrayList<>(filterRecorders.size());
+        for (Map.Entry<Class<?>, FilterRecorder> filterRecorder : filterRecorders.entrySet()) {
+            statistics.add(filterRecorder.getValue().getStatistics(filterRecorder.getKey().getName()));
+        }
+
+        Collections.sort(statistics, new Comparator<FilterStatistics>() {
+            @Override
+            public int compare(FilterStatistics o1, FilterStatistics o2) {
+                return Double.compare(o2.getTotalTime(), o1.getTotalTime());
+            }
+        });
+
+        return statistics;
+    }
+
+    /**
+     * Discards the statistics recorded so far. Callbacks of filters instrumented before the reset are no longer recorded.
+     */
+    public void reset() {
+        filterRecorders.clear();
+    }
+
+    /**
+     * @return number of bytes allocated by the current thread so far, or 0 if thread allocations cannot be measured
+     */
+    private static long currentThreadAllocatedBytes() {
+        if (ALLOCATION_COUNTER == null) {
+            return 0;
+        }
+
+        return ALLOCATION_COUNTER.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean getAllocationCounter() {
+        try {
+            ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+            if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean allocationCounter = (com.sun.management.ThreadMXBean) threadMXBean;
+                if (allocationCounter.isThreadAllocatedMemorySupported() && allocationCounter.isThreadAllocatedMemoryEnabled()) {
+                    return allocationCounter;
+                }
+            }
+        } catch (RuntimeException | LinkageError e) {
+            log.debug("Unable to measure thread allocations. Filter allocations will not be recorded.", e);
+        }
+
+        return null;
+    }
+
+    /**
+     * The callback recorders of a single filter class. Callback recorders are created the first time the callback is invoked.
+     */
+    static class FilterRecorder {
+        private final AtomicReferenceArray<CallbackRecorder> callbackRecorders = new AtomicReferenceArray<>(FilterCallback.values().length);
+
+        CallbackRecorder forCallback(FilterCallback callback) {
+            CallbackRecorder callbackRecorder = callbackRecorders.get(callback.ordinal());
+            if (callbackRecorder == null) {
+                callbackRecorders.compareAndSet(callback.ordinal(), null, new CallbackRecorder());
+                callbackRecorder = callbackRecorders.get(callback.ordinal());
+            }
+
+            return callbackRecorder;
+        }
+
+        FilterStatistics getStatistics(String filterClassName) {
+            Map<String, FilterCallbackStatistics> callbackStatistics = new LinkedHashMap<>();
+            long count = 0;
+            long exceptions = 0;
+            long totalNanos = 0;
+
+            for (FilterCallback callback : FilterCallback.values()) {
+                CallbackRecorder callbackRecorder = callbackRecorders.get(callback.ordinal());
+                if (callbackRecorder == null) {
+                    continue;
+                }
+
+                FilterCallbackStatistics statistics = callbackRecorder.getStatistics();
+                callbackStatistics.put(callback.getMethodName(), statistics);
+
+                count += statistics.getCount();
+                exceptions += statistics.getExceptions();
+                totalNanos += callbackRecorder.totalNanos.get();
+            }
+
+            return new FilterStatistics(filterClassName, count, exceptions, toMicros(totalNanos), callbackStatistics);
+        }
+    }
+
+    /**
+     * The latency histogram and counters of a single callback of a filter class.
+     */
+    static class CallbackRecorder {
+        private final Histogram latencyNanos = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong exceptions = new AtomicLong();
+        private final AtomicLong allocatedBytes = new AtomicLong();
+
+        /**
+         * Starts timing an invocation of the callback. The returned timer must be stopped in a finally block.
+         */
+        CallbackTimer start() {
+            return new CallbackTimer(this);
+        }
+
+        private void record(long elapsedNanos, long allocated, boolean completed) {
+            latencyNanos.recordValue(Math.max(0, elapsedNanos));
+            totalNanos.addAndGet(elapsedNanos);
+            allocatedBytes.addAndGet(allocated);
+
+            if (!completed) {
+                exceptions.incrementAndGet();
+            }
+        }
+
+        FilterCallbackStatistics getStatistics() {
+            Histogram histogram = latencyNanos.copy();
+
+            return new FilterCallbackStatistics(
+                    histogram.getTotalCount(),
+                    exceptions.get(),
+                    toMicros(histogram.getMinValue()),
+                    histogram.getMean() / 1000.0,
+                    toMicros(histogram.getValueAtPercentile(50)),
+                    toMicros(histogram.getValueAtPercentile(90)),
+                    toMicros(histogram.getValueAtPercentile(99)),
+                    toMicros(histogram.getValueAtPercentile(99.9)),
+                    toMicros(histogram.getMaxValue()),
+                    ALLOCATION_COUNTER == null ? -1 : allocatedBytes.get());
+        }
+    }
+
+    /**
+     * Times a single invocation of a callback. The callback is wrapped in a try/finally block: the try block marks the invocation
+     * {@link #completed()} after the callback returns, and the finally block calls {@link #stop()}, which records the invocation as
+     * an exception if the callback did not complete.
+     */
+    static class CallbackTimer {
+        private final CallbackRecorder callbackRecorder;
+        private final long allocatedBefore;
+        private final long start;
+
+        private boolean completed;
+
+        private CallbackTimer(CallbackRecorder callbackRecorder) {
+            this.callbackRecorder = callbackRecorder;
+            this.allocatedBefore = currentThreadAllocatedBytes();
+            this.start = System.nanoTime();
+        }
+
+        void completed() {
+            completed = true;
+        }
+
+        /**
+         * Marks the invocation completed and returns the callback's return value.
+         */
+        <T> T completed(T returnValue) {
+            completed = true;
+
+            return returnValue;
+        }
+
+        void stop() {
+            long elapsed = System.nanoTime() - start;
+            callbackRecorder.record(elapsed, currentThreadAllocatedBytes() - allocatedBefore, completed);
+        }
+    }
+
+    private static double toMicros(long nanos) {
+        return nanos / 1000.0;
+    }
+}
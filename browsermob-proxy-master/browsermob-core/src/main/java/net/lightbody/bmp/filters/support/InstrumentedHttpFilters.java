@@ -0,0 +1,214 @@
+package net.lightbody.bmp.filters.support;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import net.lightbody.bmp.filters.ModifiedRequestAwareFilter;
+import org.littleshoot.proxy.HttpFilters;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Delegates every callback to a filter, recording the callback's latency, exceptions and allocations with the filter class's
+ * {@link FilterStatisticsRecorder.FilterRecorder}. Exceptions are rethrown after they are counted. Created by
+ * {@link FilterStatisticsRecorder#instrument(HttpFilters)}.
+ */
+class InstrumentedHttpFilters implements HttpFilters, ModifiedRequestAwareFilter {
+    private final HttpFilters filter;
+    private final FilterStatisticsRecorder.FilterRecorder filterRecorder;
+
+    InstrumentedHttpFilters(HttpFilters filter, FilterStatisticsRecorder.FilterRecorder filterRecorder) {
+        this.filter = filter;
+        this.filterRecorder = filterRecorder;
+    }
+
+    @Override
+    public HttpResponse clientToProxyRequest(HttpObject httpObject) {
+        FilterStatisticsRecorder.CallbackTimer timer = filterRecorder.forCallback(FilterCallback.CLIENT_TO_PROXY_REQUEST).start();
+        try {
+            return timer.completed(filter.clientToProxyRequest(httpObject));
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public HttpResponse proxyToServerRequest(HttpObject httpObject) {
+        FilterStatisticsRecorder.CallbackTimer timer = filterRecorder.forCallback(FilterCallback.PROXY_TO_SERVER_REQUEST).start();
+        try {
+            return timer.completed(filter.proxyToServerRequest(httpObject));
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public void proxyToServerRequestSending() {
+        FilterStatisticsRecorder.CallbackTimer timer = filterRecorder.forCallback(FilterCallback.PROXY_TO_SERVER_REQUEST_SENDING).start();
+        try {
+            filter.proxyToServerRequestSending();
+            timer.completed();
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public void proxyToServerRequestSent() {
+        FilterStatisticsRecorder.CallbackTimer timer = filterRecorder.forCallback(FilterCallback.PROXY_TO_SERVER_REQUEST_SENT).start();
+        try {
+            filter.proxyToServerRequestSent();
+            timer.completed();
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public HttpObject serverToProxyResponse(HttpObject httpObject) {
+        FilterStatisticsRecorder.CallbackTimer timer = filterRecorder.forCallback(FilterCallback.SERVER_TO_PROXY_RESPONSE).start();
+        try {
+            return timer.completed(filter.serverToProxyResponse(httpObject));
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public void serverToProxyResponseTimedOut() {
+        FilterStatisticsRecorder.CallbackTimer timer = filterRecorder.forCallback(FilterCallback.SERVER_TO_PROXY_RESPONSE_TIMED_OUT).start();
+        try {
+            filter.serverToProxyResponseTimedOut();
+            timer.completed();
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public void serverToProxyResponseReceiving() {
+        FilterStatisticsRecorder.CallbackTimer timer = filterRecorder.forCallback(FilterCallback.SERVER_TO_PROXY_RESPONSE_RECEIVING).start();
+        try {
+            filter.serverToProxyResponseReceiving();
+            timer.completed();
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public void serverToProxyResponseReceived() {
+        FilterStatisticsRecorder.CallbackTimer timer = filterRecorder.forCallback(FilterCallback.SERVER_TO_PROXY_RESPONSE_RECEIVED).start();
+        try {
+            filter.serverToProxyResponseReceived();
+            timer.completed();
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public HttpObject proxyToClientResponse(HttpObject httpObject) {
+        FilterStatisticsRecorder.CallbackTimer timer = filterRecorder.forCallback(FilterCallback.PROXY_TO_CLIENT_RESPONSE).start();
+        try {
+            return timer.completed(filter.proxyToClientResponse(httpObject));
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public void proxyToServerConnectionQueued() {
+        FilterStatisticsRecorder.CallbackTimer timer = filterRecorder.forCallback(FilterCallback.PROXY_TO_SERVER_CONNECTION_QUEUED).start();
+        try {
+            filter.proxyToServerConnectionQueued();
+            timer.completed();
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public InetSocketAddress proxyToServerResolutionStarted(String resolvingServerHostAndPort) {
+        FilterStatisticsRecorder.CallbackTimer timer = filterRecorder.forCallback(FilterCallback.PROXY_TO_SERVER_RESOLUTION_STARTED).start();
+        try {
+            return timer.completed(filter.proxyToServerResolutionStarted(resolvingServerHostAndPort));
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public void proxyToServerResolutionFailed(String hostAndPort) {
+        FilterStatisticsRecorder.CallbackTimer timer = filterRecorder.forCallback(FilterCallback.PROXY_TO_SERVER_RESOLUTION_FAILED).start();
+        try {
+            filter.proxyToServerResolutionFailed(hostAndPort);
+            timer.completed();
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public void proxyToServerResolutionSucceeded(String serverHostAndPort, InetSocketAddress resolvedRemoteAddress) {
+        FilterStatisticsRecorder.CallbackTimer timer = filterRecorder.forCallback(FilterCallback.PROXY_TO_SERVER_RESOLUTION_SUCCEEDED).start();
+        try {
+            filter.proxyToServerResolutionSucceeded(serverHostAndPort, resolvedRemoteAddress);
+            timer.completed();
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public void proxyToServerConnectionStarted() {
+        FilterStatisticsRecorder.CallbackTimer timer = filterRecorder.forCallback(FilterCallback.PROXY_TO_SERVER_CONNECTION_STARTED).start();
+        try {
+            filter.proxyToServerConnectionStarted();
+            timer.completed();
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public void proxyToServerConnectionSSLHandshakeStarted() {
+        FilterStatisticsRecorder.CallbackTimer timer = filterRecorder.forCallback(FilterCallback.PROXY_TO_SERVER_CONNECTION_SSL_HANDSHAKE_STARTED).start();
+        try {
+            filter.proxyToServerConnectionSSLHandshakeStarted();
+            timer.completed();
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public void proxyToServerConnectionFailed() {
+        FilterStatisticsRecorder.CallbackTimer timer = filterRecorder.forCallback(FilterCallback.PROXY_TO_SERVER_CONNECTION_FAILED).start();
+        try {
+            filter.proxyToServerConnectionFailed();
+            timer.completed();
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public void proxyToServerConnectionSucceeded(ChannelHandlerContext serverCtx) {
+        FilterStatisticsRecorder.CallbackTimer timer = filterRecorder.forCallback(FilterCallback.PROXY_TO_SERVER_CONNECTION_SUCCEEDED).start();
+        try {
+            filter.proxyToServerConnectionSucceeded(serverCtx);
+            timer.completed();
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public void setModifiedHttpRequest(HttpRequest modifiedHttpRequest) {
+        if (filter instanceof ModifiedRequestAwareFilter) {
+            ((ModifiedRequestAwareFilter) filter).setModifiedHttpRequest(modifiedHttpRequest);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package net.lightbody.bmp.filters.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import net.lightbody.bmp.core.har.HarCaptureBudget;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * Accumulates the content of an HTTP message as it is received, for {@link net.lightbody.bmp.filters.ClientRequestCaptureFilter}
+ * and {@link net.lightbody.bmp.filters.ServerResponseCaptureFilter}. Rather than copying each chunk of content as it arrives,
+ * the buffer retains a slice of each chunk in a {@link CompositeByteBuf}, so the content is copied exactly once, when
+ * {@link #toByteArray()} is called.
+ * <p/>
+ * Since the buffer holds references to Netty buffers, it must be released when the message is complete or abandoned. If a
+ * channel is specified, the buffer will also be released when the channel closes, in case the message never completes.
+ * <p/>
+ * The buffer can limit the number of bytes it captures, and reserve the bytes it captures from a {@link HarCaptureBudget}.
+ * Content beyond the limit is not retained, so a large message is never fully buffered. The reserved bytes are returned to
+ * the budget when the buffer is released, unless its content was copied out by {@link #copyAndRelease()}, in which case the
+ * caller is responsible for the reservation.
+ */
+public class CapturedContentBuffer {
+    /**
+     * Retained slices of the message content. Never consolidated, since consolidation would copy the content.
+     */
+    private final CompositeByteBuf contents = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+
+    /**
+     * The channel whose closure will release this buffer, or null if the buffer is only released explicitly.
+     */
+    private final Channel channel;
+
+    private final ChannelFutureListener releaseOnClose = new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) throws Exception {
+            release();
+        }
+    };
+
+    /**
+     * Maximum number of bytes to capture, or 0 for no limit.
+     */
+    private final long maxSize;
+
+    /**
+     * Budget to reserve captured bytes from, or null if the captured bytes are not reserved from a budget.
+     */
+    private final HarCaptureBudget captureBudget;
+
+    private boolean closeListenerRegistered;
+
+    /**
+     * Number of captured bytes reserved from the budget that have not been returned or handed over to the caller.
+     */
+    private long reservedBytes;
+
+    private boolean released;
+
+    /**
+     * Number of bytes passed to {@link #append(ByteBuf)}, including bytes that were not captured.
+     */
+    private long originalSize;
+
+    private boolean truncated;
+
+    /**
+     * Creates a buffer that will be released when the channel of the specified context closes.
+     *
+     * @param ctx channel handler context, or null if the buffer will only be released explicitly
+     */
+    public CapturedContentBuffer(ChannelHandlerContext ctx) {
+        this(ctx, 0L, null);
+    }
+
+    /**
+     * Creates a buffer that captures at most maxSize bytes, and reserves the bytes it captures from the specified budget.
+     *
+     * @param ctx channel handler context, or null if the buffer will only be released explicitly
+     * @param maxSize maximum number of bytes to capture, or 0 for no limit
+     * @param captureBudget budget to reserve captured bytes from, or null to capture bytes without reserving them
+     */
+    public CapturedContentBuffer(ChannelHandlerContext ctx, long maxSize, HarCaptureBudget captureBudget) {
+        if (ctx != null) {
+            this.channel = ctx.channel();
+        } else {
+            this.channel = null;
+        }
+
+        this.maxSize = maxSize;
+        this.captureBudget = captureBudget;
+    }
+
+    /**
+     * Adds the readable bytes of the specified buffer to this buffer, without copying them. If capturing all of the bytes would
+     * exceed this buffer's maximum size or budget, only the leading bytes that fit are captured. The reader index of the content
+     * buffer is not modified.
+     *
+     * @param content content to add
+     * @return number of leading bytes of the content that were captured
+     */
+    public synchronized int append(ByteBuf content) {
+        int readableBytes = content.readableBytes();
+        if (released || readableBytes == 0) {
+            return 0;
+        }
+
+        originalSize += readableBytes;
+
+        long capturedBytes = readableBytes;
+        if (maxSize > 0L) {
+            capturedBytes = Math.max(0L, Math.min(capturedBytes, maxSize - contents.readableBytes()));
+        }
+
+        if (captureBudget != null && capturedBytes > 0L) {
+            capturedBytes = captureBudget.reserve(capturedBytes);
+            reservedBytes += capturedBytes;
+        }
+
+        if (capturedBytes < readableBytes) {
+            truncated = true;
+        }
+
+        if (capturedBytes == 0L) {
+            return 0;
+        }
+
+        if (!closeListenerRegistered && channel != null) {
+            channel.closeFuture().addListener(releaseOnClose);
+            closeListenerRegistered = true;
+        }
+
+        contents.addComponent(true, content.slice(content.readerIndex(), (int) capturedBytes).retain());
+
+        return (int) capturedBytes;
+    }
+
+    /**
+     * @return number of bytes in this buffer
+     */
+    public synchronized int size() {
+        if (released) {
+            return 0;
+        }
+
+        return contents.readableBytes();
+    }
+
+    /**
+     * @return number of bytes passed to {@link #append(ByteBuf)} before this buffer was released, including bytes that were
+     *         not captured because of the buffer's size limit or budget
+     */
+    public synchronized long getOriginalSize() {
+        return originalSize;
+    }
+
+    /**
+     * @return true if any bytes were not captured because of the buffer's size limit or budget
+     */
+    public synchronized boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Copies the content of this buffer into a new byte array.
+     *
+     * @return content of this buffer, or an empty array if the buffer has been released
+     */
+    public synchronized byte[] toByteArray() {
+        if (released) {
+            return new byte[0];
+        }
+
+        byte[] bytes = new byte[contents.readableBytes()];
+        contents.getBytes(contents.readerIndex(), bytes);
+
+        return bytes;
+    }
+
+    /**
+     * Copies the content of this buffer into a new byte array, and releases this buffer. Unlike {@link #release()}, the bytes
+     * reserved from the budget are not returned to the budget, since the returned array retains them.
+     *
+     * @return content of this buffer, or an empty array if the buffer had already been released
+     */
+    public synchronized byte[] copyAndRelease() {
+        byte[] bytes = toByteArray();
+
+        reservedBytes = 0L;
+        release();
+
+        return bytes;
+    }
+
+    /**
+     * Returns a stream that reads the content of this buffer without copying it. The stream is only valid until this buffer
+     * is released.
+     *
+     * @return stream over the content of this buffer
+     */
+    public synchronized InputStream newInputStream() {
+        if (released) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        return new ByteBufInputStream(contents.duplicate());
+    }
+
+    /**
+     * Releases the Netty buffers retained by this buffer, and returns the bytes reserved for them to the budget. Subsequent
+     * calls to {@link #append(ByteBuf)} will be ignored. Calling this method more than once has no effect.
+     */
+    public synchronized void release() {
+        if (released) {
+            return;
+        }
+
+        released = true;
+
+        contents.release();
+
+        if (captureBudget != null) {
+            captureBudget.release(reservedBytes);
+            reservedBytes = 0L;
+        }
+
+        if (closeListenerRegistered) {
+            channel.closeFuture().removeListener(releaseOnClose);
+        }
+    }
+
+    /**
+     * @return true if this buffer has been released
+     */
+    public synchronized boolean isReleased() {
+        return released;
+    }
+}
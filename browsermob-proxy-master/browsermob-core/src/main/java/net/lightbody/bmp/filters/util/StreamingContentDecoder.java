@@ -0,0 +1,688 @@
+package net.lightbody.bmp.filters.util;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.compression.ZlibDecoder;
+import io.netty.handler.codec.compression.ZlibWrapper;
+import io.netty.handler.codec.http.HttpHeaders;
+import net.lightbody.bmp.core.har.HarCaptureBudget;
+import net.lightbody.bmp.exception.DecompressionException;
+import net.lightbody.bmp.util.BrowserMobHttpUtil;
+import org.brotli.dec.BrotliInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decompresses HTTP message content as it is received, so that the decompressed content is available as soon as the message
+ * is complete, without first buffering and then decompressing the entire compressed message. Supports the gzip, deflate, and
+ * br (brotli) content encodings.
+ * <p/>
+ * gzip and deflate content is inflated chunk by chunk as each chunk is passed to {@link #decode(ByteBuf)}. Since the brotli
+ * decoder can only read from a blocking stream, brotli content is queued (without copying) as it arrives, and is decoded on a
+ * separate decoding thread as each chunk is queued. Callers on an event loop should finish decoding with {@link #finishAsync()},
+ * which never waits for a decoding thread.
+ * <p/>
+ * The decoder can limit the number of decompressed bytes it retains, so that a small compressed message cannot exhaust the heap
+ * when it is decompressed, and can reserve the decompressed bytes it retains from a {@link HarCaptureBudget} as they are produced.
+ * A decoder must be released by calling either {@link #finish()} or {@link #release()}. The reserved bytes are handed over to
+ * the caller along with the decompressed content returned by {@link #finish()}; if the decoder is released without returning
+ * its content, they are returned to the budget.
+ */
+public abstract class StreamingContentDecoder {
+    private static final Logger log = LoggerFactory.getLogger(StreamingContentDecoder.class);
+
+    /**
+     * The brotli content encoding, which is not defined in netty's {@link HttpHeaders.Values}.
+     */
+    public static final String BROTLI = "br";
+
+    /**
+     * Legacy aliases for gzip and deflate (RFC 7230, section 4.2), which are not defined in netty 4.0.
+     */
+    private static final String X_GZIP = "x-gzip";
+    private static final String X_DEFLATE = "x-deflate";
+
+    /**
+     * Maximum number of decompressed bytes to retain, or 0 for no limit.
+     */
+    protected final long maxDecodedSize;
+
+    /**
+     * Budget to reserve retained decompressed bytes from, or null if the decompressed bytes are not reserved from a budget.
+     */
+    protected final HarCaptureBudget captureBudget;
+
+    protected StreamingContentDecoder(long maxDecodedSize, HarCaptureBudget captureBudget) {
+        this.maxDecodedSize = maxDecodedSize;
+        this.captureBudget = captureBudget;
+    }
+
+    /**
+     * Returns a decoder for the specified content encoding, or null if the encoding is not supported.
+     *
+     * @param contentEncoding value of the Content-Encoding header
+     * @param ctx channel handler context; if not null, the decoder's buffers will be released when the channel closes
+     * @return a new decoder, or null if the content encoding is not supported, or if every brotli decoding thread is busy
+     */
+    public static StreamingContentDecoder forContentEncoding(String contentEncoding, ChannelHandlerContext ctx) {
+        return forContentEncoding(contentEncoding, ctx, 0L);
+    }
+
+    /**
+     * Returns a decoder for the specified content encoding that retains at most maxDecodedSize decompressed bytes, or null if
+     * the encoding is not supported.
+     *
+     * @param contentEncoding value of the Content-Encoding header
+     * @param ctx channel handler context; if not null, the decoder's buffers will be released when the channel closes
+     * @param maxDecodedSize maximum number of decompressed bytes to retain, or 0 for no limit
+     * @return a new decoder, or null if the content encoding is not supported, or if every brotli decoding thread is busy
+     */
+    public static StreamingContentDecoder forContentEncoding(String contentEncoding, ChannelHandlerContext ctx, long maxDecodedSize) {
+        return forContentEncoding(contentEncoding, ctx, maxDecodedSize, null);
+    }
+
+    /**
+     * Returns a decoder for the specified content encoding that retains at most maxDecodedSize decompressed bytes, and reserves
+     * the decompressed bytes it retains from the specified budget, or null if the encoding is not supported.
+     *
+     * @param contentEncoding value of the Content-Encoding header
+     * @param ctx channel handler context; if not null, the decoder's buffers will be released when the channel closes
+     * @param maxDecodedSize maximum number of decompressed bytes to retain, or 0 for no limit
+     * @param captureBudget budget to reserve retained decompressed bytes from, or null to retain bytes without reserving them
+     * @return a new decoder, or null if the content encoding is not supported, or if every brotli decoding thread is busy
+     */
+    public static StreamingContentDecoder forContentEncoding(String contentEncoding, ChannelHandlerContext ctx, long maxDecodedSize, HarCaptureBudget captureBudget) {
+        if (contentEncoding == null) {
+            return null;
+        }
+
+        String encoding = contentEncoding.trim();
+
+        if (HttpHeaders.Values.GZIP.equalsIgnoreCase(encoding) || X_GZIP.equalsIgnoreCase(encoding)) {
+            return new ZlibStreamingContentDecoder(ZlibWrapper.GZIP, ctx, maxDecodedSize, captureBudget);
+        }
+
+        if (HttpHeaders.Values.DEFLATE.equalsIgnoreCase(encoding) || X_DEFLATE.equalsIgnoreCase(encoding)) {
+            // many servers send raw deflate content without the zlib header, so accept either
+            return new ZlibStreamingContentDecoder(ZlibWrapper.ZLIB_OR_NONE, ctx, maxDecodedSize, captureBudget);
+        }
+
+        if (BROTLI.equalsIgnoreCase(encoding)) {
+            return BrotliStreamingContentDecoder.start(ctx, maxDecodedSize, captureBudget);
+        }
+
+        return null;
+    }
+
+    /**
+     * Decodes the readable bytes in the specified chunk of compressed content. The reader index of the chunk is not modified.
+     *
+     * @param compressedContent chunk of compressed content
+     * @throws DecompressionException if the content cannot be decompressed
+     */
+    public abstract void decode(ByteBuf compressedContent) throws DecompressionException;
+
+    /**
+     * Decodes any remaining content and returns the entire decompressed content, waiting for the decoding thread if the content
+     * is decoded on a separate thread. Releases this decoder.
+     *
+     * @return decompressed content
+     * @throws DecompressionException if the content cannot be decompressed
+     */
+    public byte[] finish() throws DecompressionException {
+        return finish(true);
+    }
+
+    /**
+     * Decodes any remaining content and returns the decompressed content. If the compressed content is not complete (e.g. because
+     * it was truncated when it was captured), returns the content that could be decompressed. Releases this decoder.
+     *
+     * @param contentComplete true if all of the compressed content was passed to {@link #decode(ByteBuf)}
+     * @return decompressed content
+     * @throws DecompressionException if the content cannot be decompressed
+     */
+    public abstract byte[] finish(boolean contentComplete) throws DecompressionException;
+
+    /**
+     * Decodes any remaining content without waiting for a decoding thread, and returns a future that completes with the entire
+     * decompressed content. Decoders that decode on the caller's thread return a completed future. Releases this decoder once
+     * the future completes.
+     *
+     * @return future that completes with the decompressed content, or fails with a {@link DecompressionException} if the content
+     *         cannot be decompressed
+     */
+    public ListenableFuture<byte[]> finishAsync() {
+        try {
+            return Futures.immediateFuture(finish());
+        } catch (DecompressionException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    /**
+     * @return true if decompressed bytes were discarded because they exceeded the maximum decoded size or the capture budget
+     */
+    public abstract boolean isTruncated();
+
+    /**
+     * @return number of bytes decompressed so far, including bytes discarded because they exceeded the maximum decoded size
+     */
+    public abstract long getDecodedSize();
+
+    /**
+     * Releases the buffers held by this decoder, and returns the bytes reserved for decompressed content that was not returned
+     * by {@link #finish()} to the budget. Calling this method more than once has no effect.
+     */
+    public abstract void release();
+
+    /**
+     * Decodes gzip and deflate content using netty's zlib decoder in an {@link EmbeddedChannel}.
+     */
+    private static class ZlibStreamingContentDecoder extends StreamingContentDecoder {
+        private final ZlibDecoder zlibDecoder;
+        private final EmbeddedChannel decoder;
+
+        /**
+         * The decompressed content. Released when the channel closes, in case the decoder is never finished.
+         */
+        private final CapturedContentBuffer decompressedContents;
+
+        private boolean contentReceived;
+
+        private ZlibStreamingContentDecoder(ZlibWrapper wrapper, ChannelHandlerContext ctx, long maxDecodedSize, HarCaptureBudget captureBudget) {
+            super(maxDecodedSize, captureBudget);
+
+            this.decompressedContents = new CapturedContentBuffer(ctx, maxDecodedSize, captureBudget);
+            this.zlibDecoder = ZlibCodecFactory.newZlibDecoder(wrapper);
+            this.decoder = new EmbeddedChannel(zlibDecoder);
+        }
+
+        @Override
+        public void decode(ByteBuf compressedContent) throws DecompressionException {
+            if (!compressedContent.isReadable()) {
+                return;
+            }
+
+            contentReceived = true;
+
+            try {
+                // the decoder releases its input, so give it a retained duplicate to preserve the caller's reference and reader index
+                decoder.writeInbound(compressedContent.duplicate().retain());
+            } catch (RuntimeException e) {
+                throw new DecompressionException("Unable to decompress content", e);
+            }
+
+            readDecodedContent();
+        }
+
+        @Override
+        public byte[] finish(boolean contentComplete) throws DecompressionException {
+            try {
+                decoder.finish();
+                readDecodedContent();
+
+                // the zlib decoder is closed when it reaches the end of the compressed stream
+                if (contentComplete && contentReceived && !zlibDecoder.isClosed()) {
+                    throw new DecompressionException("Compressed content ended unexpectedly");
+                }
+
+                return decompressedContents.copyAndRelease();
+            } catch (RuntimeException e) {
+                throw new DecompressionException("Unable to decompress content", e);
+            } finally {
+                release();
+            }
+        }
+
+        @Override
+        public boolean isTruncated() {
+            return decompressedContents.isTruncated();
+        }
+
+        @Override
+        public long getDecodedSize() {
+            return decompressedContents.getOriginalSize();
+        }
+
+        @Override
+        public void release() {
+            decompressedContents.release();
+
+            // discard any content remaining in the decoder
+            try {
+                decoder.finish();
+            } catch (RuntimeException e) {
+                // the embedded channel rethrows any earlier decompression failure, which has already been reported
+            }
+
+            ByteBuf decoded;
+            while ((decoded = (ByteBuf) decoder.readInbound()) != null) {
+                decoded.release();
+            }
+        }
+
+        private void readDecodedContent() {
+            ByteBuf decoded;
+            while ((decoded = (ByteBuf) decoder.readInbound()) != null) {
+                decompressedContents.append(decoded);
+                decoded.release();
+            }
+        }
+    }
+
+    /**
+     * Decodes brotli content. Since the brotli decoder reads its input from a blocking stream, and treats a short read as the
+     * end of the content, the decoder runs on a thread from a bounded pool of decoding threads for the lifetime of the content,
+     * and reads the compressed chunks from a bounded queue as they are received. The caller's thread never waits for the
+     * decoder: {@link #finishAsync()} returns a future that completes when the decoding thread has read the remaining content.
+     * <p/>
+     * If every decoding thread is busy, the decoder is not created, and if the decoding thread falls too far behind the
+     * received content, decoding fails, so that the caller can capture the raw content instead.
+     */
+    private static class BrotliStreamingContentDecoder extends StreamingContentDecoder {
+        /**
+         * Marks the end of the compressed content in the chunk queue. Never added to the queue as content, since empty chunks
+         * are not queued.
+         */
+        private static final ByteBuf END_OF_CONTENT = Unpooled.EMPTY_BUFFER;
+
+        /**
+         * Maximum number of compressed chunks waiting to be read by the decoding thread.
+         */
+        private static final int MAX_QUEUED_CHUNKS = 1024;
+
+        /**
+         * Retained duplicates of the compressed chunks that have not yet been read by the decoding thread. Has room for the
+         * end-of-content marker in addition to {@link #MAX_QUEUED_CHUNKS} chunks.
+         */
+        private final BlockingQueue<ByteBuf> compressedChunks = new LinkedBlockingQueue<>(MAX_QUEUED_CHUNKS + 1);
+
+        /**
+         * The decompressed content. Written by the decoding thread while holding this decoder's monitor, and only read once the
+         * decoding task completes.
+         */
+        private final ByteArrayOutputStream decompressedContents = new ByteArrayOutputStream();
+
+        /**
+         * Set to true when the decompressed content has been returned by {@link #finishAsync()} or discarded by
+         * {@link #release()}, after which the decoding thread no longer retains decompressed bytes. Guarded by this decoder's monitor.
+         */
+        private boolean contentsReleased;
+
+        private final Channel channel;
+
+        private final ChannelFutureListener releaseOnClose = new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                release();
+            }
+        };
+
+        /**
+         * Completes when the decoding thread has read all of the compressed content, or fails if the content cannot be decoded.
+         * Set by {@link #start(ChannelHandlerContext, long, HarCaptureBudget)}.
+         */
+        private ListenableFuture<?> decodingTask;
+
+        /**
+         * Set to true when no more chunks will be read from the queue, either because the content is complete or because the
+         * decoder was released. Guarded by this decoder's monitor.
+         */
+        private boolean inputClosed;
+
+        private volatile long decodedSize;
+
+        private volatile boolean truncated;
+
+        private BrotliStreamingContentDecoder(ChannelHandlerContext ctx, long maxDecodedSize, HarCaptureBudget captureBudget) {
+            super(maxDecodedSize, captureBudget);
+
+            if (ctx != null) {
+                this.channel = ctx.channel();
+            } else {
+                this.channel = null;
+            }
+        }
+
+        /**
+         * Creates a decoder and starts its decoding task.
+         *
+         * @return the new decoder, or null if every decoding thread is busy
+         */
+        private static BrotliStreamingContentDecoder start(ChannelHandlerContext ctx, long maxDecodedSize, HarCaptureBudget captureBudget) {
+            final BrotliStreamingContentDecoder decoder = new BrotliStreamingContentDecoder(ctx, maxDecodedSize, captureBudget);
+
+            try {
+                decoder.decodingTask = DecodingExecutorHolder.DECODING_EXECUTOR.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        decoder.decodeQueuedChunks();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                log.warn("Unable to decompress brotli content: all {} decoding threads are busy", DecodingExecutorHolder.MAX_DECODING_THREADS);
+
+                return null;
+            }
+
+            if (decoder.channel != null) {
+                decoder.channel.closeFuture().addListener(decoder.releaseOnClose);
+            }
+
+            return decoder;
+        }
+
+        @Override
+        public void decode(ByteBuf compressedContent) throws DecompressionException {
+            if (!compressedContent.isReadable()) {
+                return;
+            }
+
+            boolean queueFull = false;
+            synchronized (this) {
+                if (!inputClosed) {
+                    // only this thread adds chunks, so the queue cannot fill up between checking its size and adding the chunk
+                    if (compressedChunks.size() >= MAX_QUEUED_CHUNKS) {
+                        queueFull = true;
+                    } else {
+                        // the decoding thread releases each chunk after reading it, so queue a retained duplicate to preserve the
+                        // caller's reference and reader index
+                        compressedChunks.add(compressedContent.duplicate().retain());
+                    }
+                }
+            }
+
+            if (queueFull) {
+                release();
+
+                throw new DecompressionException("Brotli decoding thread fell more than " + MAX_QUEUED_CHUNKS + " chunks behind the received content");
+            }
+
+            // report a decoding failure as soon as it happens, so the caller can stop passing content to the decoder
+            if (decodingTask.isDone()) {
+                try {
+                    Uninterruptibles.getUninterruptibly(decodingTask);
+                } catch (ExecutionException e) {
+                    release();
+
+                    throw new DecompressionException("Unable to decompress brotli content", e.getCause());
+                }
+            }
+        }
+
+        @Override
+        public ListenableFuture<byte[]> finishAsync() {
+            return finishAsync(true);
+        }
+
+        /**
+         * Waits for the decoding thread to decode the remaining content. Callers on an event loop should use
+         * {@link #finishAsync()} instead.
+         */
+        @Override
+        public byte[] finish(boolean contentComplete) throws DecompressionException {
+            try {
+                return Uninterruptibles.getUninterruptibly(finishAsync(contentComplete));
+            } catch (ExecutionException e) {
+                throw (DecompressionException) e.getCause();
+            }
+        }
+
+        private ListenableFuture<byte[]> finishAsync(final boolean contentComplete) {
+            synchronized (this) {
+                if (!inputClosed) {
+                    compressedChunks.add(END_OF_CONTENT);
+                }
+            }
+
+            final SettableFuture<byte[]> decoded = SettableFuture.create();
+
+            decodingTask.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Uninterruptibles.getUninterruptibly(decodingTask);
+
+                        decoded.set(takeDecompressedContents());
+                    } catch (ExecutionException e) {
+                        if (contentComplete) {
+                            decoded.setException(new DecompressionException("Unable to decompress brotli content", e.getCause()));
+                        } else {
+                            // the compressed content ended early, so return the content decoded so far
+                            decoded.set(takeDecompressedContents());
+                        }
+                    } catch (DecompressionException e) {
+                        decoded.setException(e);
+                    } finally {
+                        release();
+                    }
+                }
+            }, MoreExecutors.directExecutor());
+
+            return decoded;
+        }
+
+        @Override
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        @Override
+        public long getDecodedSize() {
+            return decodedSize;
+        }
+
+        @Override
+        public void release() {
+            synchronized (this) {
+                if (!inputClosed) {
+                    closeInput();
+
+                    // end the content, so the decoding thread stops waiting for chunks and releases the chunk it is reading
+                    compressedChunks.add(END_OF_CONTENT);
+                }
+
+                if (!contentsReleased) {
+                    contentsReleased = true;
+
+                    if (captureBudget != null) {
+                        captureBudget.release(decompressedContents.size());
+                    }
+
+                    decompressedContents.reset();
+                }
+            }
+
+            if (channel != null) {
+                channel.closeFuture().removeListener(releaseOnClose);
+            }
+        }
+
+        /**
+         * Decodes the queued chunks until the end of the content. Runs on the decoding thread.
+         */
+        private void decodeQueuedChunks() {
+            try (InputStream chunkStream = new ChunkQueueInputStream(compressedChunks, END_OF_CONTENT);
+                 InputStream brotliStream = new BrotliInputStream(chunkStream)) {
+                byte[] readBuffer = new byte[BrowserMobHttpUtil.DECOMPRESS_BUFFER_SIZE];
+                int bytesRead;
+                while ((bytesRead = brotliStream.read(readBuffer)) > -1) {
+                    synchronized (this) {
+                        if (contentsReleased) {
+                            // the decoder was released, so nothing more will be retained
+                            break;
+                        }
+
+                        // keep decoding past the maximum size, to determine the full decoded size
+                        int retainedBytes = bytesRead;
+                        if (maxDecodedSize > 0L) {
+                            retainedBytes = (int) Math.max(0L, Math.min(bytesRead, maxDecodedSize - decompressedContents.size()));
+                        }
+
+                        if (captureBudget != null && retainedBytes > 0) {
+                            retainedBytes = (int) captureBudget.reserve(retainedBytes);
+                        }
+
+                        if (retainedBytes < bytesRead) {
+                            truncated = true;
+                        }
+
+                        decompressedContents.write(readBuffer, 0, retainedBytes);
+                        decodedSize += bytesRead;
+                    }
+                }
+            } catch (IOException e) {
+                throw new DecompressionException("Unable to decompress brotli content", e);
+            } finally {
+                synchronized (this) {
+                    closeInput();
+                }
+            }
+        }
+
+        /**
+         * Returns the decompressed content, handing the bytes reserved for it over to the caller.
+         *
+         * @throws DecompressionException if the decoder was released before the content was decoded
+         */
+        private synchronized byte[] takeDecompressedContents() {
+            if (contentsReleased) {
+                throw new DecompressionException("Brotli decoder was released before the content was decoded");
+            }
+
+            contentsReleased = true;
+
+            return decompressedContents.toByteArray();
+        }
+
+        /**
+         * Stops accepting chunks and releases the chunks remaining in the queue. Must be called while holding this decoder's monitor.
+         */
+        private void closeInput() {
+            inputClosed = true;
+
+            ByteBuf chunk;
+            while ((chunk = compressedChunks.poll()) != null) {
+                if (chunk != END_OF_CONTENT) {
+                    chunk.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the chunks in a queue as a single stream, waiting for more chunks when the queue is empty. The stream ends when the
+     * end-of-content marker is read from the queue. Each chunk is released once it has been read.
+     */
+    private static class ChunkQueueInputStream extends InputStream {
+        private final BlockingQueue<ByteBuf> chunks;
+        private final ByteBuf endOfContent;
+
+        private ByteBuf currentChunk;
+        private boolean ended;
+
+        private ChunkQueueInputStream(BlockingQueue<ByteBuf> chunks, ByteBuf endOfContent) {
+            this.chunks = chunks;
+            this.endOfContent = endOfContent;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] singleByte = new byte[1];
+            if (read(singleByte, 0, 1) == -1) {
+                return -1;
+            }
+
+            return singleByte[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            while (currentChunk == null || !currentChunk.isReadable()) {
+                if (currentChunk != null) {
+                    currentChunk.release();
+                    currentChunk = null;
+                }
+
+                if (ended) {
+                    return -1;
+                }
+
+                ByteBuf chunk;
+                try {
+                    chunk = chunks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+
+                    throw new InterruptedIOException("Interrupted while waiting for compressed content");
+                }
+
+                if (chunk == endOfContent) {
+                    ended = true;
+                } else {
+                    currentChunk = chunk;
+                }
+            }
+
+            int bytesRead = Math.min(len, currentChunk.readableBytes());
+            currentChunk.readBytes(b, off, bytesRead);
+
+            return bytesRead;
+        }
+
+        @Override
+        public void close() {
+            if (currentChunk != null) {
+                currentChunk.release();
+                currentChunk = null;
+            }
+        }
+    }
+
+    /**
+     * Lazily creates the threads that decode brotli content, which are only needed if a brotli response is decompressed. Since
+     * a decoding thread is occupied for as long as its content is being received, the number of threads is bounded, and content
+     * received while every thread is busy is not decompressed.
+     */
+    private static class DecodingExecutorHolder {
+        private static final int MAX_DECODING_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+        private static final ListeningExecutorService DECODING_EXECUTOR = MoreExecutors.listeningDecorator(new ThreadPoolExecutor(
+                0, MAX_DECODING_THREADS,
+                60L, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("brotli-decoder-%d")
+                        .setDaemon(true)
+                        .build()));
+    }
+}
@@ -0,0 +1,127 @@
+package net.lightbody.bmp.proxy;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Selects the requests and responses whose content is captured in the HAR, when content capture is enabled by the HAR
+ * {@link CaptureType}s. Content is captured only for a sample of requests, and only if at least one of the policy's
+ * {@link ContentCaptureRule}s matches; a policy without rules matches all requests. Responses that the policy does not select
+ * are never buffered.
+ * <p/>
+ * Response content is selected by all of a rule's criteria, including the response's Content-Type and Content-Length. Since
+ * those criteria describe the response, request content is selected only by the rules' URL and host criteria.
+ * <p/>
+ * This object is immutable. Modifying the policy can be safely accomplished by replacing the policy with a new policy.
+ */
+public class ContentCapturePolicy {
+    /**
+     * A policy that captures the content of all requests and responses.
+     */
+    public static final ContentCapturePolicy CAPTURE_ALL = new ContentCapturePolicy(Collections.<ContentCaptureRule>emptyList(), 100);
+
+    private final List<ContentCaptureRule> rules;
+    private final int samplePercentage;
+
+    /**
+     * Creates a policy that captures content matching any of the specified rules.
+     *
+     * @param rules rules selecting the content to capture; null or empty to capture all content
+     */
+    public ContentCapturePolicy(Collection<ContentCaptureRule> rules) {
+        this(rules, 100);
+    }
+
+    /**
+     * Creates a policy that captures content matching any of the specified rules, for the specified percentage of requests.
+     *
+     * @param rules rules selecting the content to capture; null or empty to capture all content
+     * @param samplePercentage percentage of requests, from 0 to 100, to consider for content capture
+     */
+    public ContentCapturePolicy(Collection<ContentCaptureRule> rules, int samplePercentage) {
+        if (samplePercentage < 0 || samplePercentage > 100) {
+            throw new IllegalArgumentException("Sample percentage must be between 0 and 100");
+        }
+
+        if (rules == null) {
+            this.rules = Collections.emptyList();
+        } else {
+            this.rules = ImmutableList.copyOf(rules);
+        }
+
+        this.samplePercentage = samplePercentage;
+    }
+
+    /**
+     * Randomly determines if a request is included in the sample of requests whose content may be captured. Should be called
+     * once per request.
+     *
+     * @return true if the request is sampled
+     */
+    public boolean sample() {
+        if (samplePercentage >= 100) {
+            return true;
+        }
+
+        return ThreadLocalRandom.current().nextInt(100) < samplePercentage;
+    }
+
+    /**
+     * @param url full URL of the request
+     * @param host host the request is sent to
+     * @return true if any rule's URL and host criteria match the request, or if the policy has no rules
+     */
+    public boolean matchesRequest(String url, String host) {
+        if (rules.isEmpty()) {
+            return true;
+        }
+
+        for (ContentCaptureRule rule : rules) {
+            if (rule.matchesRequest(url, host)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param url full URL of the request
+     * @param host host the request is sent to
+     * @param contentType value of the response's Content-Type header, or null if the header is not present
+     * @param contentLength value of the response's Content-Length header, or -1 if the header is not present
+     * @return true if any rule matches the response, or if the policy has no rules
+     */
+    public boolean matchesResponse(String url, String host, String contentType, long contentLength) {
+        if (rules.isEmpty()) {
+            return true;
+        }
+
+        for (ContentCaptureRule rule : rules) {
+            if (rule.matchesResponse(url, host, contentType, contentLength)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return true if this policy captures all content, i.e. it has no rules and samples all requests
+     */
+    public boolean isCaptureAll() {
+        return rules.isEmpty() && samplePercentage >= 100;
+    }
+
+    public List<ContentCaptureRule> getRules() {
+        return rules;
+    }
+
+    public int getSamplePercentage() {
+        return samplePercentage;
+    }
+}
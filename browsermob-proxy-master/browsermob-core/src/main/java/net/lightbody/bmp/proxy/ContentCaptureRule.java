@@ -0,0 +1,126 @@
+package net.lightbody.bmp.proxy;
+
+import java.util.regex.Pattern;
+
+/**
+ * A rule in a {@link ContentCapturePolicy}, identifying requests and responses whose content should be captured in the HAR.
+ * A rule consists of a regular expression to match the URL, a host name, a regular expression to match the response's
+ * Content-Type, and bounds on the response's Content-Length. Criteria that are not specified match all requests and responses.
+ * A rule matches only if all of its specified criteria match. ContentCaptureRules are immutable.
+ * <p/>
+ * For example, to capture the content of HTML documents and scripts smaller than 1 MB:
+ * <pre>
+ *     new ContentCaptureRule(null, null, "text/html.*", 0, 1024 * 1024);
+ *     new ContentCaptureRule(null, null, ".*javascript.*", 0, 1024 * 1024);
+ * </pre>
+ */
+public class ContentCaptureRule {
+    private final Pattern urlPattern;
+    private final String host;
+    private final Pattern contentTypePattern;
+    private final long minContentLength;
+    private final long maxContentLength;
+
+    /**
+     * Creates a rule that matches URLs and response Content-Types.
+     *
+     * @param urlPattern regular expression to match the URL, or null to match all URLs
+     * @param contentTypePattern regular expression to match the response's Content-Type header, or null to match all content types
+     */
+    public ContentCaptureRule(String urlPattern, String contentTypePattern) {
+        this(urlPattern, null, contentTypePattern, 0L, 0L);
+    }
+
+    /**
+     * Creates a new ContentCaptureRule.
+     *
+     * @param urlPattern regular expression to match the URL, or null to match all URLs
+     * @param host host name to match (case-insensitive), or null to match all hosts
+     * @param contentTypePattern regular expression to match the response's Content-Type header (case-insensitive), or null to match all content types
+     * @param minContentLength minimum response Content-Length to match
+     * @param maxContentLength maximum response Content-Length to match, or 0 for no maximum
+     */
+    public ContentCaptureRule(String urlPattern, String host, String contentTypePattern, long minContentLength, long maxContentLength) {
+        if (minContentLength < 0 || maxContentLength < 0) {
+            throw new IllegalArgumentException("Content length bounds cannot be negative");
+        }
+
+        if (maxContentLength > 0 && minContentLength > maxContentLength) {
+            throw new IllegalArgumentException("Minimum content length cannot be greater than maximum content length");
+        }
+
+        this.urlPattern = urlPattern == null ? null : Pattern.compile(urlPattern);
+        this.host = host;
+        this.contentTypePattern = contentTypePattern == null ? null : Pattern.compile(contentTypePattern, Pattern.CASE_INSENSITIVE);
+        this.minContentLength = minContentLength;
+        this.maxContentLength = maxContentLength;
+    }
+
+    /**
+     * Determines if the URL and host criteria of this rule match the request. Only requests that match these criteria may
+     * have their content captured.
+     *
+     * @param url full URL of the request
+     * @param host host the request is sent to
+     * @return true if the request matches this rule's URL and host criteria
+     */
+    public boolean matchesRequest(String url, String host) {
+        if (this.host != null && !this.host.equalsIgnoreCase(host)) {
+            return false;
+        }
+
+        return urlPattern == null || urlPattern.matcher(url).matches();
+    }
+
+    /**
+     * Determines if this rule matches the response. Responses without a Content-Length header (e.g. chunked responses) match
+     * any Content-Length bounds, since their length is not known until the entire response has been received.
+     *
+     * @param url full URL of the request
+     * @param host host the request is sent to
+     * @param contentType value of the response's Content-Type header, or null if the header is not present
+     * @param contentLength value of the response's Content-Length header, or -1 if the header is not present
+     * @return true if all of this rule's criteria match the response
+     */
+    public boolean matchesResponse(String url, String host, String contentType, long contentLength) {
+        if (!matchesRequest(url, host)) {
+            return false;
+        }
+
+        if (contentTypePattern != null && (contentType == null || !contentTypePattern.matcher(contentType).matches())) {
+            return false;
+        }
+
+        if (contentLength >= 0) {
+            if (contentLength < minContentLength) {
+                return false;
+            }
+
+            if (maxContentLength > 0 && contentLength > maxContentLength) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public Pattern getUrlPattern() {
+        return urlPattern;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public Pattern getContentTypePattern() {
+        return contentTypePattern;
+    }
+
+    public long getMinContentLength() {
+        return minContentLength;
+    }
+
+    public long getMaxContentLength() {
+        return maxContentLength;
+    }
+}
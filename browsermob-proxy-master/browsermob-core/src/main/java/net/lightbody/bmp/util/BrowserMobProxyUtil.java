@@ -69,21 +69,9 @@ public class BrowserMobProxyUtil {
             }
         }
 
-        HarLog logCopy = new HarLog();
-
-        // copy every entry and page in the HarLog that matches a pageRefToCopy. since getEntries() and getPages() return
-        // lists, we are guaranteed that we will iterate through the pages and entries in the proper order
-        for (HarEntry entry : har.getLog().getEntries()) {
-            if (pageRefsToCopy.contains(entry.getPageref())) {
-                logCopy.addEntry(entry);
-            }
-        }
-
-        for (HarPage page : har.getLog().getPages()) {
-            if (pageRefsToCopy.contains(page.getId())) {
-                logCopy.addPage(page);
-            }
-        }
+        // copy every entry and page in the HarLog that matches a pageRefToCopy. the copy reads any archived entries of those
+        // pages lazily, so copying a HAR whose ended pages have been archived does not read them back from disk.
+        HarLog logCopy = har.getLog().copyOfPages(pageRefsToCopy);
 
         Har harCopy = new Har();
         harCopy.setLog(logCopy);
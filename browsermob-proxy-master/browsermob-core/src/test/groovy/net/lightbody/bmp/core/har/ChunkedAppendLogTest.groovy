@@ -0,0 +1,170 @@
+package net.lightbody.bmp.core.har
+
+import com.google.common.base.Predicate
+import org.junit.Test
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertNull
+import static org.junit.Assert.assertTrue
+
+class ChunkedAppendLogTest {
+    @Test
+    void testAppendAcrossChunks() {
+        ChunkedAppendLog<Integer> log = new ChunkedAppendLog<>()
+
+        int numElements = ChunkedAppendLog.CHUNK_SIZE * 3 + 17
+        numElements.times { assertEquals((long) it, log.append(it)) }
+
+        assertEquals(numElements, log.size())
+        assertEquals((0..<numElements).toList(), log.snapshot())
+    }
+
+    @Test
+    void testSnapshotFromIndex() {
+        ChunkedAppendLog<Integer> log = new ChunkedAppendLog<>()
+
+        600.times { log.append(it) }
+
+        assertEquals((550..<600).toList(), log.snapshotFrom(550))
+        assertEquals([], log.snapshotFrom(600))
+    }
+
+    @Test
+    void testSnapshotFromIndexReturnsNextIndex() {
+        ChunkedAppendLog<Integer> log = new ChunkedAppendLog<>()
+
+        300.times { log.append(it) }
+
+        List<Integer> first = []
+        long nextIndex = log.snapshotFrom(0, first)
+        assertEquals(300L, nextIndex)
+        assertEquals((0..<300).toList(), first)
+
+        // removed elements are skipped, but still advance the index
+        10.times { log.removeFirst() }
+        log.append(300)
+
+        List<Integer> second = []
+        assertEquals(301L, log.snapshotFrom(nextIndex, second))
+        assertEquals([300], second)
+
+        List<Integer> none = []
+        assertEquals(301L, log.snapshotFrom(301L, none))
+        assertEquals([], none)
+    }
+
+    @Test
+    void testRemoveFirstAcrossChunks() {
+        ChunkedAppendLog<Integer> log = new ChunkedAppendLog<>()
+
+        int numElements = ChunkedAppendLog.CHUNK_SIZE * 2
+        numElements.times { log.append(it) }
+
+        (ChunkedAppendLog.CHUNK_SIZE + 10).times { assertEquals(it, log.removeFirst()) }
+
+        assertEquals(ChunkedAppendLog.CHUNK_SIZE - 10, log.size())
+        assertEquals(((ChunkedAppendLog.CHUNK_SIZE + 10)..<numElements).toList(), log.snapshot())
+
+        // drain the log completely, then make sure it can still be appended to
+        (ChunkedAppendLog.CHUNK_SIZE - 10).times { log.removeFirst() }
+        assertTrue(log.isEmpty())
+        assertNull(log.removeFirst())
+
+        log.append(-1)
+        assertEquals([-1], log.snapshot())
+    }
+
+    @Test
+    void testRemoveMatchingElements() {
+        ChunkedAppendLog<Integer> log = new ChunkedAppendLog<>()
+
+        int numElements = ChunkedAppendLog.CHUNK_SIZE * 2 + 5
+        numElements.times { log.append(it) }
+
+        // remove every element of the first chunk, and the odd elements after it
+        List<Integer> removed = []
+        int removedCount = log.remove({ Integer element -> element < ChunkedAppendLog.CHUNK_SIZE || element % 2 == 1 } as Predicate<Integer>, removed)
+
+        List<Integer> expectedRemaining = (ChunkedAppendLog.CHUNK_SIZE..<numElements).findAll { it % 2 == 0 }
+        assertEquals(numElements - expectedRemaining.size(), removedCount)
+        assertEquals((0..<numElements).findAll { !expectedRemaining.contains(it) }, removed)
+        assertEquals(expectedRemaining.size(), log.size())
+        assertEquals(expectedRemaining, log.snapshot())
+
+        // removed elements are skipped when removing from the head of the log
+        assertEquals(expectedRemaining[0], log.removeFirst())
+        assertEquals(expectedRemaining[1], log.removeFirst())
+        assertEquals(expectedRemaining.size() - 2, log.size())
+
+        log.append(numElements)
+        assertEquals(expectedRemaining.drop(2) + [numElements], log.snapshot())
+        assertEquals(0, log.remove({ false } as Predicate<Integer>, []))
+
+        while (log.removeFirst() != null) {}
+        assertTrue(log.isEmpty())
+    }
+
+    @Test
+    void testRemoveFirstDoesNotWaitForUnpublishedElement() {
+        ChunkedAppendLog<Integer> log = new ChunkedAppendLog<>()
+        log.append(0)
+
+        // reserve the next slot without publishing an element, as a descheduled writer would
+        log.tail.get().reserved.getAndIncrement()
+
+        assertEquals(0, log.removeFirst())
+        assertNull("Expected removal to return instead of waiting for the writer", log.removeFirst())
+        assertEquals(1, log.size())
+    }
+
+    @Test
+    void testRemoveFirstMatch() {
+        ChunkedAppendLog<Integer> log = new ChunkedAppendLog<>()
+
+        int numElements = ChunkedAppendLog.CHUNK_SIZE + 5
+        numElements.times { log.append(it % 10) }
+
+        // only the oldest matching element is removed
+        assertEquals(3, log.removeFirstMatch({ Integer element -> element == 3 } as Predicate<Integer>))
+        assertEquals(numElements - 1, log.size())
+        assertEquals([0, 1, 2, 4, 5], log.snapshot().take(5))
+
+        assertNull(log.removeFirstMatch({ Integer element -> element > 9 } as Predicate<Integer>))
+        assertEquals(numElements - 1, log.size())
+    }
+
+    @Test
+    void testConcurrentAppends() {
+        ChunkedAppendLog<Integer> log = new ChunkedAppendLog<>()
+
+        int numThreads = 8
+        int appendsPerThread = 5000
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads)
+        CountDownLatch start = new CountDownLatch(1)
+        try {
+            numThreads.times { thread ->
+                executor.submit {
+                    start.await()
+                    appendsPerThread.times { log.append(thread * appendsPerThread + it) }
+                }
+            }
+
+            start.countDown()
+            executor.shutdown()
+            assertTrue("Timed out waiting for appends to complete", executor.awaitTermination(30, TimeUnit.SECONDS))
+        } finally {
+            executor.shutdownNow()
+        }
+
+        List<Integer> snapshot = log.snapshot()
+
+        assertEquals(numThreads * appendsPerThread, log.size())
+        assertEquals((0..<(numThreads * appendsPerThread)).toList(), snapshot.sort(false))
+    }
+}
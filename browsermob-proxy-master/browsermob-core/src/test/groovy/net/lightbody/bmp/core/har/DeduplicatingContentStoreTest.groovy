@@ -0,0 +1,194 @@
+package net.lightbody.bmp.core.har
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.junit.Test
+
+import java.nio.charset.StandardCharsets
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertNull
+import static org.junit.Assert.assertTrue
+
+class DeduplicatingContentStoreTest {
+    @Test
+    void testDuplicateContentIsStoredOnce() {
+        int delegateStores = 0
+        HarContentStore delegate = new HeapContentStore() {
+            @Override
+            StoredContent store(byte[] content) {
+                delegateStores++
+                return super.store(content)
+            }
+        }
+
+        DeduplicatingContentStore store = new DeduplicatingContentStore(delegate, false)
+
+        StoredContent first = store.store("function() {}".getBytes(StandardCharsets.UTF_8))
+        StoredContent second = store.store("function() {}".getBytes(StandardCharsets.UTF_8))
+        StoredContent different = store.store("body { }".getBytes(StandardCharsets.UTF_8))
+
+        assertEquals(2, delegateStores)
+        assertEquals(2, store.uniqueContentCount)
+        assertEquals(1L, store.duplicateCount)
+        assertEquals(13L, store.deduplicatedBytes)
+
+        assertFalse(first.duplicate)
+        assertTrue(second.duplicate)
+        assertEquals(first.contentRef, second.contentRef)
+        assertFalse(first.contentRef == different.contentRef)
+        assertTrue(first.contentRef.startsWith(DeduplicatingContentStore.CONTENT_REF_PREFIX))
+
+        assertEquals("function() {}", new String(second.bytes, StandardCharsets.UTF_8))
+    }
+
+    @Test
+    void testUniqueContentReleasedWithLastReference() {
+        List<StoredContent> delegateReleases = []
+        HarContentStore delegate = new HeapContentStore() {
+            @Override
+            void release(StoredContent content) {
+                delegateReleases.add(content)
+            }
+        }
+
+        DeduplicatingContentStore store = new DeduplicatingContentStore(delegate, false)
+
+        StoredContent first = store.store("function() {}".getBytes(StandardCharsets.UTF_8))
+        StoredContent second = store.store("function() {}".getBytes(StandardCharsets.UTF_8))
+
+        // releasing the same reference twice only releases it once
+        2.times { store.release(first) }
+
+        assertEquals(1, store.uniqueContentCount)
+        assertEquals([], delegateReleases)
+
+        store.release(second)
+
+        assertEquals(0, store.uniqueContentCount)
+        assertEquals([first.content], delegateReleases)
+        assertEquals("function() {}", new String(second.bytes, StandardCharsets.UTF_8))
+
+        // the body is stored again once it has been released
+        assertFalse(store.store("function() {}".getBytes(StandardCharsets.UTF_8)).duplicate)
+        assertEquals(1, store.uniqueContentCount)
+    }
+
+    @Test
+    void testContentRefIdentifiesCharset() {
+        DeduplicatingContentStore store = new DeduplicatingContentStore(new HeapContentStore(), true)
+        byte[] body = "shared".getBytes(StandardCharsets.UTF_8)
+
+        HarContent text = new HarContent()
+        text.setStoredContent(store.store(body), StandardCharsets.UTF_8)
+        HarContent binary = new HarContent()
+        binary.setStoredContent(store.store(body), null)
+        binary.encoding = "base64"
+
+        assertEquals(1, store.uniqueContentCount)
+        assertFalse("Expected bodies with different text to have different references", text.contentRef == binary.contentRef)
+
+        // both bodies are written, since their text differs
+        ObjectMapper mapper = HarFormat.JSON.newObjectMapper()
+        assertEquals("shared", mapper.valueToTree(text).get("text").asText())
+        assertEquals("c2hhcmVk", mapper.valueToTree(binary).get("text").asText())
+    }
+
+    @Test
+    void testContentRefsNotSerializedByDefault() {
+        DeduplicatingContentStore store = new DeduplicatingContentStore()
+
+        HarContent first = new HarContent()
+        first.setStoredContent(store.store("shared".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8)
+        HarContent second = new HarContent()
+        second.setStoredContent(store.store("shared".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8)
+
+        ObjectMapper mapper = new ObjectMapper()
+        JsonNode secondJson = mapper.valueToTree(second)
+
+        assertEquals("shared", secondJson.get("text").asText())
+        assertNull(secondJson.get("_contentRef"))
+    }
+
+    @Test
+    void testDuplicateTextSerializedByReference() {
+        DeduplicatingContentStore store = new DeduplicatingContentStore(new HeapContentStore(), true)
+        Har har = createHarWithSharedBody(store)
+        HarContent first = har.log.entries[0].response.content
+        HarContent second = har.log.entries[1].response.content
+
+        ObjectMapper mapper = HarFormat.JSON.newObjectMapper()
+        JsonNode entries = mapper.readTree(mapper.writeValueAsString(har)).get("log").get("entries")
+
+        assertEquals("shared", entries.get(0).get("response").get("content").get("text").asText())
+        assertEquals(first.contentRef, entries.get(0).get("response").get("content").get("_contentRef").asText())
+
+        assertNull("Expected text of duplicate body to be omitted", entries.get(1).get("response").get("content").get("text"))
+        assertEquals(first.contentRef, entries.get(1).get("response").get("content").get("_contentRef").asText())
+
+        // the text is still available through the Java API
+        assertEquals("shared", second.text)
+    }
+
+    @Test
+    void testTextWrittenOncePerOutput() {
+        DeduplicatingContentStore store = new DeduplicatingContentStore(new HeapContentStore(), true)
+        Har har = createHarWithSharedBody(store)
+
+        ObjectMapper mapper = HarFormat.JSON.newObjectMapper()
+
+        // each output contains the text once, however many times the HAR is written
+        2.times {
+            JsonNode entries = mapper.readTree(mapper.writeValueAsString(har)).get("log").get("entries")
+            assertEquals(1, entries.findValues("text").size())
+        }
+
+        StringWriter streamed = new StringWriter()
+        new HarStreamingWriter(mapper).write(har, streamed)
+        assertEquals(1, mapper.readTree(streamed.toString()).get("log").get("entries").findValues("text").size())
+
+        // an entry written on its own, e.g. after the first entry was evicted or to an entry stream, includes its text
+        JsonNode secondEntry = mapper.readTree(mapper.writeValueAsString(har.log.entries[1]))
+        assertEquals("shared", secondEntry.get("response").get("content").get("text").asText())
+    }
+
+    @Test
+    void testHarContentDeserialized() {
+        HarContent content = new ObjectMapper().readValue('{"mimeType":"text/plain","text":"body","_contentRef":"sha256:abc"}', HarContent)
+
+        assertEquals("body", content.text)
+        assertEquals("sha256:abc", content.contentRef)
+    }
+
+    @Test
+    void testConcurrentStoresShareContent() {
+        DeduplicatingContentStore store = new DeduplicatingContentStore()
+
+        List<StoredContent> stored = Collections.synchronizedList([])
+        List<Thread> threads = (1..8).collect {
+            Thread.start {
+                100.times { stored.add(store.store("same body".getBytes(StandardCharsets.UTF_8))) }
+            }
+        }
+        threads*.join()
+
+        assertEquals(1, store.uniqueContentCount)
+        assertEquals(799L, store.duplicateCount)
+        assertEquals(1, stored*.contentRef.unique().size())
+    }
+
+    private static Har createHarWithSharedBody(DeduplicatingContentStore store) {
+        HarLog log = new HarLog()
+
+        2.times { i ->
+            HarEntry entry = new HarEntry()
+            entry.request = new HarRequest("GET", "http://www.example.com/script${i}.js", "HTTP/1.1")
+            entry.response = new HarResponse(200, "OK", "HTTP/1.1")
+            entry.response.content.setStoredContent(store.store("shared".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8)
+            log.addEntry(entry)
+        }
+
+        return new Har(log)
+    }
+}
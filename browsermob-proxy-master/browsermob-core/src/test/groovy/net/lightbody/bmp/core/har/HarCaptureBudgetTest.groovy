@@ -0,0 +1,60 @@
+package net.lightbody.bmp.core.har
+
+import org.junit.Test
+
+import java.util.concurrent.atomic.AtomicLong
+
+import static org.junit.Assert.assertEquals
+
+class HarCaptureBudgetTest {
+    @Test
+    void testReservationsLimitedToBudget() {
+        HarCaptureBudget budget = new HarCaptureBudget(0L, 100L)
+
+        assertEquals(60L, budget.reserve(60L))
+        assertEquals(40L, budget.reserve(60L))
+        assertEquals(0L, budget.reserve(1L))
+        assertEquals(100L, budget.reservedBytes)
+    }
+
+    @Test
+    void testReleasedBytesCanBeReservedAgain() {
+        HarCaptureBudget budget = new HarCaptureBudget(0L, 100L)
+
+        assertEquals(100L, budget.reserve(100L))
+        budget.release(40L)
+
+        assertEquals(60L, budget.reservedBytes)
+        assertEquals(40L, budget.reserve(60L))
+        assertEquals(100L, budget.reservedBytes)
+    }
+
+    @Test
+    void testUnlimitedBudgetGrantsAllReservations() {
+        HarCaptureBudget budget = new HarCaptureBudget(1024L, 0L)
+
+        assertEquals(Long.MAX_VALUE, budget.reserve(Long.MAX_VALUE))
+        assertEquals(0L, budget.reservedBytes)
+    }
+
+    @Test
+    void testConcurrentReservationsNeverExceedBudget() {
+        HarCaptureBudget budget = new HarCaptureBudget(0L, 10000L)
+        AtomicLong granted = new AtomicLong()
+
+        List<Thread> threads = (1..8).collect {
+            Thread.start {
+                1000.times { granted.addAndGet(budget.reserve(3L)) }
+            }
+        }
+        threads*.join()
+
+        assertEquals(10000L, granted.get())
+        assertEquals(10000L, budget.reservedBytes)
+    }
+
+    @Test(expected = IllegalArgumentException)
+    void testNegativeLimitRejected() {
+        new HarCaptureBudget(-1L, 0L)
+    }
+}
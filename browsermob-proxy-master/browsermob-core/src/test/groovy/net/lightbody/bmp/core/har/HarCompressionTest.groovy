@@ -0,0 +1,80 @@
+package net.lightbody.bmp.core.har
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+import java.util.zip.GZIPInputStream
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+
+class HarCompressionTest {
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder()
+
+    @Test
+    void testHarFileCompressedWhenNameHasGzipSuffix() {
+        Har har = new HarFixtureBuilder().entries(50).build()
+
+        File compressedFile = tmpDir.newFile("test.har.gz")
+        har.writeTo(compressedFile)
+
+        File uncompressedFile = tmpDir.newFile("test.har")
+        har.writeTo(uncompressedFile)
+
+        assertTrue("Expected compressed HAR to be smaller than uncompressed HAR", compressedFile.length() < uncompressedFile.length())
+
+        String decompressed = new GZIPInputStream(new FileInputStream(compressedFile)).getText("UTF-8")
+        assertEquals(uncompressedFile.getText("UTF-8"), decompressed)
+    }
+
+    @Test
+    void testCompressedHarFileRead() {
+        Har har = new HarFixtureBuilder().entries(5).build()
+
+        File compressedFile = tmpDir.newFile("test.har.gz")
+        har.writeTo(compressedFile, HarFormat.SMILE)
+
+        Har read = new HarReader().read(compressedFile)
+
+        ObjectMapper mapper = new ObjectMapper()
+        assertEquals(mapper.readTree(mapper.writeValueAsString(har)), mapper.readTree(mapper.writeValueAsString(read)))
+    }
+
+    @Test
+    void testEachCompressionRoundTrips() {
+        byte[] content = "HAR content ".multiply(1000).getBytes("UTF-8")
+
+        HarCompression.values().each { compression ->
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream()
+            OutputStream os = compression.compress(compressed)
+            os.write(content)
+            os.close()
+
+            byte[] decompressed = compression.decompress(new ByteArrayInputStream(compressed.toByteArray())).bytes
+
+            assertEquals("${compression} did not round trip", new String(content, "UTF-8"), new String(decompressed, "UTF-8"))
+        }
+    }
+
+    @Test
+    void testCompressionSelectedFromAcceptEncodingHeader() {
+        assertEquals(HarCompression.NONE, HarCompression.fromAcceptEncodingHeader(null))
+        assertEquals(HarCompression.NONE, HarCompression.fromAcceptEncodingHeader("identity"))
+        assertEquals(HarCompression.NONE, HarCompression.fromAcceptEncodingHeader("br"))
+        assertEquals(HarCompression.GZIP, HarCompression.fromAcceptEncodingHeader("gzip, deflate"))
+        assertEquals(HarCompression.GZIP, HarCompression.fromAcceptEncodingHeader("deflate, gzip"))
+        assertEquals(HarCompression.GZIP, HarCompression.fromAcceptEncodingHeader("*"))
+        assertEquals(HarCompression.DEFLATE, HarCompression.fromAcceptEncodingHeader("gzip;q=0.5, deflate"))
+        assertEquals(HarCompression.NONE, HarCompression.fromAcceptEncodingHeader("gzip;q=0"))
+    }
+
+    @Test
+    void testCompressionForFile() {
+        assertEquals(HarCompression.GZIP, HarCompression.forFile(new File("example.har.gz")))
+        assertEquals(HarCompression.GZIP, HarCompression.forFile(new File("EXAMPLE.HAR.GZ")))
+        assertEquals(HarCompression.NONE, HarCompression.forFile(new File("example.har")))
+    }
+}
@@ -0,0 +1,55 @@
+package net.lightbody.bmp.core.har
+
+import org.junit.Test
+
+import java.util.concurrent.TimeUnit
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertNull
+import static org.junit.Assert.assertSame
+
+class HarEntrySubscriptionTest {
+    @Test
+    void testCompletedEntriesDeliveredToListener() {
+        HarLog log = new HarLog()
+        HarEntrySubscription subscription = new HarEntrySubscription(10)
+        log.entryListener = subscription
+
+        HarEntry first = new HarEntry("page 1")
+        HarEntry second = new HarEntry("page 1")
+        log.addEntry(first)
+        log.addEntry(second)
+
+        log.completeEntry(second)
+        log.completeEntry(first)
+        log.completeEntry(first)
+
+        assertEquals("Expected each completed entry to be delivered once", 2, subscription.queuedEntryCount)
+        assertSame(second, subscription.poll(0, TimeUnit.MILLISECONDS))
+        assertSame(first, subscription.poll(0, TimeUnit.MILLISECONDS))
+        assertNull(subscription.poll(0, TimeUnit.MILLISECONDS))
+    }
+
+    @Test
+    void testEntriesDroppedWhenQueueIsFull() {
+        HarEntrySubscription subscription = new HarEntrySubscription(2)
+
+        5.times {
+            subscription.entryCompleted(new HarEntry("page 1"))
+        }
+
+        assertEquals(2, subscription.queuedEntryCount)
+        assertEquals(3L, subscription.droppedEntryCount)
+
+        subscription.poll(0, TimeUnit.MILLISECONDS)
+        subscription.entryCompleted(new HarEntry("page 1"))
+
+        assertEquals(2, subscription.queuedEntryCount)
+        assertEquals("Expected entry to be queued once the consumer caught up", 3L, subscription.droppedEntryCount)
+    }
+
+    @Test(expected = IllegalArgumentException)
+    void testQueueCapacityMustBePositive() {
+        new HarEntrySubscription(0)
+    }
+}
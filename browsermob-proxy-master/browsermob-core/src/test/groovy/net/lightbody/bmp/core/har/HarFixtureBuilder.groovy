@@ -0,0 +1,163 @@
+package net.lightbody.bmp.core.har
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * Builds HARs with predictable contents for tests. Entry i requests http://www.example.com/resource/i, starts at
+ * 1500000000000 + i ms, and is assigned to the pages in turn. Individual entries can be built with {@link #entry(int)}.
+ */
+class HarFixtureBuilder {
+    private int numEntries = 3
+    private int numPages = 1
+    private boolean detailed
+
+    HarFixtureBuilder entries(int numEntries) {
+        this.numEntries = numEntries
+        return this
+    }
+
+    HarFixtureBuilder pages(int numPages) {
+        this.numPages = numPages
+        return this
+    }
+
+    /**
+     * Populates every optional field of the log and its entries: browser, page timings, post data, cookies, sizes, errors, cache and timings.
+     */
+    HarFixtureBuilder detailed() {
+        this.detailed = true
+        return this
+    }
+
+    Har build() {
+        HarLog log = new HarLog(new HarNameVersion("BrowserMob Proxy", "test"))
+        if (detailed) {
+            log.browser = new HarNameVersion("Firefox", "52.0")
+        }
+
+        (1..numPages).each { pageNum ->
+            HarPage page = new HarPage("page ${pageNum}", "Page ${pageNum} Title")
+            if (detailed) {
+                page.pageTimings.onLoad = 1234L
+            }
+            log.addPage(page)
+        }
+
+        numEntries.times { i ->
+            log.addEntry(detailed ? createDetailedEntry(i) : entry(i).pageRef("page ${(i % numPages) + 1}").build())
+        }
+
+        return new Har(log)
+    }
+
+    /**
+     * Returns a builder for entry i of a HAR built by this class, on page "page 1". The entry's response is a "text/plain" body
+     * with the text "response body i", and its wait time is i ms.
+     */
+    static EntryBuilder entry(int i) {
+        return new EntryBuilder(i)
+    }
+
+    private HarEntry createDetailedEntry(int i) {
+        HarEntry entry = new HarEntry("page ${(i % numPages) + 1}")
+        entry.startedDateTimeMillis = 1500000000000L + i
+        entry.serverIPAddress = "127.0.0.1"
+        entry.connection = "443"
+
+        entry.request = new HarRequest("POST", "http://www.example.com/resource/${i}?q=${i}", "HTTP/1.1")
+        entry.request.headers.add(new HarNameValuePair("Accept", "*/*"))
+        entry.request.queryString.add(new HarNameValuePair("q", "${i}"))
+        entry.request.postData = new HarPostData()
+        entry.request.postData.mimeType = "application/x-www-form-urlencoded"
+        entry.request.postData.params = [new HarPostDataParam("param", "value ${i}")]
+        entry.request.headersSize = 120
+        entry.request.bodySize = 13
+
+        HarCookie cookie = new HarCookie()
+        cookie.name = "session"
+        cookie.value = "abc${i}"
+        cookie.expires = new Date(1600000000000L)
+        entry.request.cookies.add(cookie)
+
+        entry.response = new HarResponse(200, "OK", "HTTP/1.1")
+        entry.response.headers.add(new HarNameValuePair("Content-Type", "text/plain"))
+        entry.response.cookies.add(cookie)
+        entry.response.content.mimeType = "text/plain"
+        entry.response.content.text = "response body ${i}"
+        entry.response.content.size = 15L
+        entry.response.error = i == 2 ? "Unable to connect" : null
+
+        entry.cache.beforeRequest = new HarCacheStatus()
+        entry.cache.beforeRequest.hitCount = 1
+
+        entry.timings.setBlocked(1, TimeUnit.MILLISECONDS)
+        entry.timings.setSsl(2500, TimeUnit.MICROSECONDS)
+        entry.timings.setWait(i, TimeUnit.MILLISECONDS)
+        entry.timings.setReceive(2, TimeUnit.MILLISECONDS)
+
+        return entry
+    }
+
+    static class EntryBuilder {
+        private final HarEntry entry = new HarEntry("page 1")
+
+        private EntryBuilder(int i) {
+            entry.startedDateTimeMillis = 1500000000000L + i
+            entry.request = new HarRequest("GET", "http://www.example.com/resource/${i}", "HTTP/1.1")
+            entry.request.headers.add(new HarNameValuePair("Accept", "*/*"))
+
+            entry.response = new HarResponse(200, "OK", "HTTP/1.1")
+            entry.response.content.mimeType = "text/plain"
+            entry.response.content.text = "response body ${i}"
+            entry.timings.setWait(i, TimeUnit.MILLISECONDS)
+        }
+
+        EntryBuilder pageRef(String pageRef) {
+            entry.pageref = pageRef
+            return this
+        }
+
+        EntryBuilder startedDateTimeMillis(long startedDateTimeMillis) {
+            entry.startedDateTimeMillis = startedDateTimeMillis
+            return this
+        }
+
+        EntryBuilder url(String url) {
+            entry.request.url = url
+            return this
+        }
+
+        EntryBuilder status(int status) {
+            entry.response.status = status
+            return this
+        }
+
+        EntryBuilder mimeType(String mimeType) {
+            entry.response.content.mimeType = mimeType
+            return this
+        }
+
+        /**
+         * Sets the response's body size, and the size of its content, which can be overridden with {@link #contentSize(long)}.
+         */
+        EntryBuilder bodySize(long bodySize) {
+            entry.response.bodySize = bodySize
+            entry.response.content.size = bodySize
+            return this
+        }
+
+        EntryBuilder contentSize(long contentSize) {
+            entry.response.content.size = contentSize
+            return this
+        }
+
+        EntryBuilder waitMillis(long waitMillis) {
+            entry.timings.setWait(waitMillis, TimeUnit.MILLISECONDS)
+            return this
+        }
+
+        HarEntry build() {
+            return entry
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package net.lightbody.bmp.core.har
+
+import com.fasterxml.jackson.databind.DeserializationFeature
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.junit.Test
+
+import java.util.concurrent.TimeUnit
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertNull
+import static org.junit.Assert.assertTrue
+
+class HarFormatTest {
+    private final ObjectMapper mapper = new ObjectMapper()
+
+    @Test
+    void testRoundTripInEachFormat() {
+        Har har = new HarFixtureBuilder().detailed().build()
+        JsonNode expected = mapper.readTree(mapper.writeValueAsString(har))
+
+        HarFormat.values().each { format ->
+            ByteArrayOutputStream os = new ByteArrayOutputStream()
+            har.writeTo(os, format)
+
+            Har read = new HarReader().read(new ByteArrayInputStream(os.toByteArray()), format)
+
+            assertEquals("HAR read from ${format} did not match the original HAR", expected, mapper.readTree(mapper.writeValueAsString(read)))
+        }
+    }
+
+    @Test
+    void testFormatDetectedWhenReading() {
+        Har har = new HarFixtureBuilder().detailed().build()
+        JsonNode expected = mapper.readTree(mapper.writeValueAsString(har))
+
+        HarFormat.values().each { format ->
+            ByteArrayOutputStream os = new ByteArrayOutputStream()
+            har.writeTo(os, format)
+
+            Har read = new HarReader().read(new ByteArrayInputStream(os.toByteArray()))
+
+            assertEquals("HAR read from detected ${format} did not match the original HAR", expected, mapper.readTree(mapper.writeValueAsString(read)))
+        }
+    }
+
+    @Test
+    void testBinaryFormatsAreSmallerThanJson() {
+        Har har = new HarFixtureBuilder().detailed().build()
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream()
+        har.writeTo(json, HarFormat.JSON)
+
+        [HarFormat.SMILE, HarFormat.CBOR].each { format ->
+            ByteArrayOutputStream binary = new ByteArrayOutputStream()
+            har.writeTo(binary, format)
+
+            assertTrue("Expected ${format} HAR to be smaller than JSON HAR", binary.size() < json.size())
+        }
+    }
+
+    @Test
+    void testEntriesReadIncrementally() {
+        Har har = new HarFixtureBuilder().detailed().build()
+
+        HarFormat.values().each { format ->
+            ByteArrayOutputStream os = new ByteArrayOutputStream()
+            har.writeTo(os, format)
+
+            List<HarEntry> entries = []
+            List<HarPage> pages = new HarReader().readEntries(new ByteArrayInputStream(os.toByteArray()), { HarEntry entry -> entries.add(entry) } as HarEntryListener)
+
+            assertEquals(["page 1"], pages*.id)
+            assertEquals(1234L, pages[0].pageTimings.onLoad)
+            assertEquals("Expected every entry in ${format} HAR to be read", har.log.entries*.request*.url, entries*.request*.url)
+            assertEquals(har.log.entries[2].startedDateTimeMillis, entries[2].startedDateTimeMillis)
+            assertEquals(har.log.entries[2].getTime(TimeUnit.NANOSECONDS), entries[2].getTime(TimeUnit.NANOSECONDS))
+        }
+    }
+
+    @Test
+    void testFormatSelectedFromAcceptHeader() {
+        assertEquals(HarFormat.JSON, HarFormat.fromAcceptHeader(null))
+        assertEquals(HarFormat.JSON, HarFormat.fromAcceptHeader("*/*"))
+        assertEquals(HarFormat.SMILE, HarFormat.fromAcceptHeader("application/x-jackson-smile"))
+        assertEquals(HarFormat.CBOR, HarFormat.fromAcceptHeader("text/html, application/cbor;q=0.9, application/json;q=0.5"))
+        assertEquals(HarFormat.JSON, HarFormat.fromAcceptHeader("application/cbor;q=0.5, application/json"))
+        assertEquals(HarFormat.JSON, HarFormat.fromAcceptHeader("application/cbor;q=0"))
+    }
+
+    @Test
+    void testFormatForName() {
+        assertEquals(HarFormat.CBOR, HarFormat.forName("cbor"))
+        assertEquals(HarFormat.SMILE, HarFormat.forName("SMILE"))
+        assertEquals(HarFormat.JSON, HarFormat.forName("application/json"))
+        assertNull(HarFormat.forName("xml"))
+    }
+
+    @Test
+    void testStartedDateTimeSerializedFromMillis() {
+        HarEntry entry = new HarEntry("page 1")
+        assertNull(entry.startedDateTime)
+        assertTrue("Expected no startedDateTime when the start time is not set", !mapper.readTree(mapper.writeValueAsString(entry)).has("startedDateTime"))
+
+        entry.startedDateTimeMillis = 1500000000123L
+
+        JsonNode json = mapper.readTree(mapper.writeValueAsString(entry))
+        assertEquals("2017-07-14T02:40:00.123Z", json.get("startedDateTime").asText())
+        assertTrue(!json.has("startedDateTimeMillis"))
+
+        HarEntry read = mapper.readerFor(HarEntry).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES).readValue(mapper.writeValueAsString(entry))
+        assertEquals(1500000000123L, read.startedDateTimeMillis)
+    }
+
+    @Test
+    void testStartedDateTimeAtEpochSerialized() {
+        HarEntry entry = new HarEntry("page 1")
+        entry.startedDateTimeMillis = 0L
+        assertEquals(new Date(0L), entry.startedDateTime)
+        assertEquals("1970-01-01T00:00:00.000Z", mapper.readTree(mapper.writeValueAsString(entry)).get("startedDateTime").asText())
+
+        HarPage page = new HarPage()
+        assertNull(page.startedDateTime)
+        page.startedDateTimeMillis = 0L
+        assertEquals(new Date(0L), page.startedDateTime)
+    }
+}
@@ -0,0 +1,152 @@
+package net.lightbody.bmp.core.har
+
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertNotSame
+import static org.junit.Assert.assertSame
+import static org.junit.Assert.assertTrue
+
+class HarHeaderDictionaryTest {
+    @Test
+    void testHeaderInternedWhenCapturedTwice() {
+        HarHeaderDictionary dictionary = new HarHeaderDictionary()
+
+        HarNameValuePair first = dictionary.header(new String("Cache-Control"), new String("no-cache"))
+        HarNameValuePair second = dictionary.header(new String("Cache-Control"), new String("no-cache"))
+        HarNameValuePair third = dictionary.header(new String("Cache-Control"), new String("no-cache"))
+
+        assertSame("Expected the first captured header to be interned", first, second)
+        assertSame(first, third)
+        assertEquals(1, dictionary.headerCount)
+    }
+
+    @Test
+    void testNamesInternedForUniqueValues() {
+        HarHeaderDictionary dictionary = new HarHeaderDictionary()
+
+        HarNameValuePair first = dictionary.header(new String("ETag"), "\"abc\"")
+        HarNameValuePair second = dictionary.header(new String("ETag"), "\"def\"")
+
+        assertSame("Expected header names to be shared", first.name, second.name)
+        assertEquals(0, dictionary.headerCount)
+        assertEquals(1, dictionary.nameCount)
+    }
+
+    @Test
+    void testLongValuesNotInterned() {
+        HarHeaderDictionary dictionary = new HarHeaderDictionary(100, 10)
+
+        String longValue = "x" * 11
+        HarNameValuePair first = dictionary.header("Cookie", longValue)
+        HarNameValuePair second = dictionary.header("Cookie", longValue)
+
+        assertNotSame(first, second)
+        assertEquals(first, second)
+        assertEquals(0, dictionary.headerCount)
+    }
+
+    @Test
+    void testDictionaryIsBounded() {
+        HarHeaderDictionary dictionary = new HarHeaderDictionary(10, 100)
+
+        2.times {
+            100.times { i ->
+                dictionary.header("Header-${i}".toString(), "value")
+            }
+        }
+
+        assertEquals(10, dictionary.nameCount)
+        assertTrue("Expected at most 10 interned headers", dictionary.headerCount <= 10)
+
+        HarNameValuePair header = dictionary.header("Header-99", "value")
+        assertEquals(new HarNameValuePair("Header-99", "value"), header)
+    }
+
+    @Test
+    void testInterningReducesHeapFootprintOfLargeHar() {
+        int numEntries = 50000
+
+        HarLog withoutDictionary = new HarLog()
+        withoutDictionary.headerDictionary = null
+        long uninternedFootprint = estimateHeaderFootprint(createHarLog(withoutDictionary, numEntries))
+        withoutDictionary = null
+
+        HarLog withDictionary = new HarLog()
+        long internedFootprint = estimateHeaderFootprint(createHarLog(withDictionary, numEntries))
+
+        assertTrue("Expected interned headers to use less than a third of the heap used by uninterned headers. Interned: ${internedFootprint} bytes; uninterned: ${uninternedFootprint} bytes",
+                internedFootprint * 3 < uninternedFootprint)
+        assertTrue(withDictionary.headerDictionary.headerCount <= HarHeaderDictionary.DEFAULT_MAX_ENTRIES)
+    }
+
+    /**
+     * Populates the log with entries whose headers resemble those of a browsing session: most headers are repeated in every
+     * entry, and a few (Cookie, ETag, Date, Content-Length) are unique or nearly unique. Every header is created from new
+     * Strings, as they would be when decoded from the network.
+     */
+    private static HarLog createHarLog(HarLog log, int numEntries) {
+        HarHeaderDictionary dictionary = log.headerDictionary
+
+        def header = { String name, String value ->
+            dictionary == null ? new HarNameValuePair(new String(name), new String(value)) : dictionary.header(new String(name), new String(value))
+        }
+
+        numEntries.times { i ->
+            HarEntry entry = new HarEntry("page 1")
+            entry.request = new HarRequest("GET", "http://www${i % 5}.example.com/resource/${i}", "HTTP/1.1")
+            entry.request.headers.add(header("Host", "www${i % 5}.example.com"))
+            entry.request.headers.add(header("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/58.0.3029.110 Safari/537.36"))
+            entry.request.headers.add(header("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,*/*;q=0.8"))
+            entry.request.headers.add(header("Accept-Encoding", "gzip, deflate, sdch, br"))
+            entry.request.headers.add(header("Accept-Language", "en-US,en;q=0.8"))
+            entry.request.headers.add(header("Connection", "keep-alive"))
+            entry.request.headers.add(header("Cookie", "session=${UUID.randomUUID()}"))
+
+            entry.response = new HarResponse(200, "OK", "HTTP/1.1")
+            entry.response.headers.add(header("Content-Type", i % 3 == 0 ? "text/html; charset=utf-8" : "image/png"))
+            entry.response.headers.add(header("Cache-Control", "public, max-age=31536000"))
+            entry.response.headers.add(header("Date", "Tue, 18 Jul 2017 12:${(i / 1000) as int}:00 GMT"))
+            entry.response.headers.add(header("ETag", "\"${Integer.toHexString(i)}\""))
+            entry.response.headers.add(header("Content-Length", "${i % 2000}"))
+            entry.response.headers.add(header("Server", "nginx"))
+            entry.response.headers.add(header("Connection", "keep-alive"))
+
+            log.addEntry(entry)
+        }
+
+        return log
+    }
+
+    /**
+     * Estimates the heap retained by the header objects in the log, counting each header, name, and value object once
+     * regardless of how many entries share it. Uses the object sizes of a 64-bit JVM with compressed oops.
+     */
+    private static long estimateHeaderFootprint(HarLog log) {
+        Set<Object> counted = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>())
+        long footprint = 0
+
+        def countString = { String s ->
+            if (counted.add(s)) {
+                // String object, plus its char array
+                footprint += 24 + align(16 + 2 * s.length())
+            }
+        }
+
+        log.entries.each { entry ->
+            (entry.request.headers + entry.response.headers).each { HarNameValuePair pair ->
+                if (counted.add(pair)) {
+                    footprint += 24
+                    countString(pair.name)
+                    countString(pair.value)
+                }
+            }
+        }
+
+        return footprint
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L
+    }
+}
@@ -0,0 +1,226 @@
+package net.lightbody.bmp.core.har
+
+import org.junit.Test
+
+import java.nio.charset.StandardCharsets
+
+import static net.lightbody.bmp.core.har.HarFixtureBuilder.entry
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertNotNull
+import static org.junit.Assert.assertNull
+import static org.junit.Assert.assertThat
+import static org.hamcrest.Matchers.containsString
+
+class HarLogCapacityTest {
+    @Test
+    void testUnboundedLogRetainsAllEntries() {
+        HarLog log = new HarLog()
+
+        100.times { log.addEntry(entry(it).build()) }
+
+        assertEquals(100, log.entries.size())
+        assertEquals(0L, log.evictedEntryCount)
+        assertEquals("", log.comment)
+    }
+
+    @Test
+    void testMaxEntriesEvictsOldestEntries() {
+        HarLog log = new HarLog(null, new HarCapacity(10))
+
+        25.times { log.addEntry(entry(it).build()) }
+
+        assertEquals(10, log.entries.size())
+        assertEquals("http://www.example.com/resource/15", log.entries[0].request.url)
+        assertEquals("http://www.example.com/resource/24", log.entries[9].request.url)
+        assertEquals(15L, log.evictedEntryCount)
+        assertThat(log.comment, containsString("Evicted 15 entries"))
+    }
+
+    @Test
+    void testMaxRetainedBytesEvictsOldestEntries() {
+        HarLog log = new HarLog(null, new HarCapacity(0, 1000L, HarCapacity.EvictionPolicy.EVICT_OLDEST_ENTRIES))
+
+        5.times {
+            HarEntry entry = entry(it).build()
+            log.addEntry(entry)
+            log.recordCapturedContent(entry, 300L)
+        }
+
+        assertEquals(3, log.entries.size())
+        assertEquals("http://www.example.com/resource/2", log.entries[0].request.url)
+        assertEquals(900L, log.retainedBytes)
+        assertEquals(2L, log.evictedEntryCount)
+        assertEquals(600L, log.evictedBytes)
+    }
+
+    @Test
+    void testMaxRetainedBytesDropsOldestContent() {
+        HarLog log = new HarLog(null, new HarCapacity(0, 1000L, HarCapacity.EvictionPolicy.DROP_OLDEST_CONTENT))
+
+        5.times {
+            HarEntry entry = entry(it).build()
+            log.addEntry(entry)
+            log.recordCapturedContent(entry, 300L)
+        }
+
+        assertEquals(5, log.entries.size())
+        assertNull(log.entries[0].response.content.text)
+        assertNull(log.entries[1].response.content.text)
+        assertNotNull(log.entries[2].response.content.text)
+        assertEquals(900L, log.retainedBytes)
+        assertEquals(0L, log.evictedEntryCount)
+        assertEquals(2L, log.droppedContentCount)
+        assertThat(log.comment, containsString("dropped the content of 2 entries"))
+    }
+
+    @Test
+    void testContentRecordedForEvictedEntryIsIgnored() {
+        HarLog log = new HarLog(null, new HarCapacity(1, 1000L, HarCapacity.EvictionPolicy.EVICT_OLDEST_ENTRIES))
+
+        HarEntry first = entry(0).build()
+        log.addEntry(first)
+        log.addEntry(entry(1).build())
+
+        log.recordCapturedContent(first, 500L)
+
+        assertEquals(1, log.entries.size())
+        assertEquals(0L, log.retainedBytes)
+    }
+
+    @Test
+    void testEvictionSummaryIsAppendedToComment() {
+        HarLog log = new HarLog(null, new HarCapacity(1))
+        log.comment = "soak test"
+
+        2.times { log.addEntry(entry(it).build()) }
+
+        assertThat(log.comment, containsString("soak test Evicted 1 entries"))
+    }
+
+    @Test
+    void testEntryEvictedInFlightIsNotCompleted() {
+        HarLog log = new HarLog(null, new HarCapacity(2))
+
+        List<HarEntry> completed = []
+        List<HarEntry> evicted = []
+        log.entryListener = { HarEntry entry -> completed.add(entry) } as HarEntryListener
+        log.evictionListener = { HarEntry entry -> evicted.add(entry) } as HarEntryEvictionListener
+
+        HarEntry a = entry(0).build()
+        HarEntry b = entry(1).build()
+        HarEntry c = entry(2).build()
+
+        log.addEntry(a)
+        log.addEntry(b)
+        log.completeEntry(b)
+
+        // evicts a while it is still in flight
+        log.addEntry(c)
+
+        // entries complete out of order, and the evicted entry completes last
+        log.completeEntry(c)
+        log.completeEntry(a)
+
+        assertEquals([b, c], log.entries)
+        assertEquals("Expected only retained entries to be returned to cursor polls", [b, c], log.getEntriesSince(0L).entries)
+        assertEquals("Expected evicted entry not to be published", [b, c], completed)
+        assertEquals("Expected in-flight entry to be evicted without notifying the eviction listener", [], evicted)
+        assertEquals(0L, a.sequence)
+
+        // evicting a completed entry removes that entry, even though it was not the first entry to complete
+        HarEntry d = entry(3).build()
+        log.addEntry(d)
+        log.completeEntry(d)
+
+        assertEquals([c, d], log.entries)
+        assertEquals([c, d], log.getEntriesSince(0L).entries)
+        assertEquals([b], evicted)
+    }
+
+    @Test
+    void testCaptureBudgetReleasedWhenEntriesEvicted() {
+        HarLog log = new HarLog(null, new HarCapacity(5))
+        HarCaptureBudget budget = new HarCaptureBudget(0L, 1000L)
+        log.captureBudget = budget
+
+        // capture ten times the budget, in entries that are evicted as new entries are added
+        100.times {
+            HarEntry entry = entry(it).build()
+            log.addEntry(entry)
+
+            assertEquals("Expected evicted entries to return their content to the budget", 100L, budget.reserve(100L))
+            log.recordCapturedContent(entry, 100L)
+            log.completeEntry(entry)
+        }
+
+        assertEquals(500L, budget.reservedBytes)
+
+        // content recorded for an entry that was evicted while in flight is returned immediately
+        HarEntry evictedInFlight = entry(100).build()
+        log.addEntry(evictedInFlight)
+        5.times { log.addEntry(entry(101 + it).build()) }
+
+        assertEquals(100L, budget.reserve(100L))
+        log.recordCapturedContent(evictedInFlight, 100L)
+
+        assertEquals(0L, budget.reservedBytes)
+    }
+
+    @Test
+    void testCaptureBudgetReleasedWhenContentDropped() {
+        HarLog log = new HarLog(null, new HarCapacity(0, 1000L, HarCapacity.EvictionPolicy.DROP_OLDEST_CONTENT))
+        HarCaptureBudget budget = new HarCaptureBudget(0L, 2000L)
+        log.captureBudget = budget
+
+        5.times {
+            HarEntry entry = entry(it).build()
+            log.addEntry(entry)
+
+            assertEquals(300L, budget.reserve(300L))
+            log.recordCapturedContent(entry, 300L)
+        }
+
+        assertEquals(2L, log.droppedContentCount)
+        assertEquals(900L, budget.reservedBytes)
+    }
+
+    @Test
+    void testContentReleasedFromContentStoreWhenEntriesEvicted() {
+        HarLog log = new HarLog(null, new HarCapacity(5))
+        DeduplicatingContentStore store = new DeduplicatingContentStore()
+        log.contentStore = store
+
+        // each body is captured by two entries, so it is released from the store once both entries have been evicted
+        20.times {
+            HarEntry entry = entry(it).build()
+            log.addEntry(entry)
+
+            byte[] body = "shared body ${it.intdiv(2)}".getBytes(StandardCharsets.UTF_8)
+            entry.response.content.setStoredContent(store.store(body), StandardCharsets.UTF_8)
+            log.recordCapturedContent(entry, body.length)
+            log.completeEntry(entry)
+        }
+
+        // entries 15 to 19 remain, and share bodies 7, 8 and 9
+        assertEquals(3, store.uniqueContentCount)
+
+        // content stored for an entry that was evicted while in flight is released when it is recorded
+        HarEntry evictedInFlight = entry(20).build()
+        log.addEntry(evictedInFlight)
+        5.times { log.addEntry(entry(21 + it).build()) }
+
+        byte[] body = "in flight".getBytes(StandardCharsets.UTF_8)
+        evictedInFlight.response.content.setStoredContent(store.store(body), StandardCharsets.UTF_8)
+        log.recordCapturedContent(evictedInFlight, body.length)
+
+        assertEquals(0, store.uniqueContentCount)
+
+        // evicted entries can still read their content
+        assertEquals("in flight", evictedInFlight.response.content.text)
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    void testNegativeCapacityRejected() {
+        new HarCapacity(-1)
+    }
+}
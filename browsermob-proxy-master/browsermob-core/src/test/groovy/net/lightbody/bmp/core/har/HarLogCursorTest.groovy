@@ -0,0 +1,102 @@
+package net.lightbody.bmp.core.har
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+
+class HarLogCursorTest {
+    @Test
+    void testEntriesReturnedInCompletionOrder() {
+        HarLog log = new HarLog()
+
+        HarEntry first = new HarEntry("page")
+        HarEntry second = new HarEntry("page")
+        log.addEntry(first)
+        log.addEntry(second)
+
+        assertTrue("Expected no entries before any entry is completed", log.getEntriesSince(0).entries.isEmpty())
+
+        log.completeEntry(second)
+        log.completeEntry(first)
+
+        HarEntryBatch batch = log.getEntriesSince(0)
+        assertEquals([second, first], batch.entries)
+        assertEquals(2L, batch.cursor)
+        assertEquals(1L, second.sequence)
+        assertEquals(2L, first.sequence)
+
+        assertEquals([first], log.getEntriesSince(1).entries)
+    }
+
+    @Test
+    void testEntryCompletedOnlyOnce() {
+        HarLog log = new HarLog()
+
+        HarEntry entry = new HarEntry("page")
+        log.addEntry(entry)
+
+        log.completeEntry(entry)
+        log.completeEntry(entry)
+
+        HarEntryBatch batch = log.getEntriesSince(0)
+        assertEquals([entry], batch.entries)
+        assertEquals(1L, batch.cursor)
+    }
+
+    @Test
+    void testPollingReturnsOnlyNewEntries() {
+        HarLog log = new HarLog()
+
+        long cursor = 0
+        List<HarEntry> polled = []
+
+        1000.times {
+            HarEntry entry = new HarEntry("page")
+            log.addEntry(entry)
+            log.completeEntry(entry)
+
+            if (it % 100 == 99) {
+                HarEntryBatch batch = log.getEntriesSince(cursor)
+                assertEquals(100, batch.entries.size())
+
+                polled.addAll(batch.entries)
+                cursor = batch.cursor
+            }
+        }
+
+        assertEquals(log.entries, polled)
+        assertEquals(1000L, cursor)
+    }
+
+    @Test
+    void testEvictedEntriesAreNotRetainedForPolling() {
+        HarLog log = new HarLog(null, new HarCapacity(10, 0L, HarCapacity.EvictionPolicy.EVICT_OLDEST_ENTRIES))
+
+        100.times {
+            HarEntry entry = new HarEntry("page")
+            log.addEntry(entry)
+            log.completeEntry(entry)
+        }
+
+        HarEntryBatch batch = log.getEntriesSince(0)
+        assertEquals(log.entries, batch.entries)
+        assertEquals(100L, batch.cursor)
+    }
+
+    @Test
+    void testDeserializedEntriesAreCompleted() {
+        HarLog log = new HarLog()
+        2.times {
+            HarEntry entry = new HarEntry("page")
+            log.addEntry(entry)
+            log.completeEntry(entry)
+        }
+
+        ObjectMapper mapper = new ObjectMapper()
+        Har read = new HarReader().read(new ByteArrayInputStream(mapper.writeValueAsBytes(new Har(log))))
+
+        assertEquals(2, read.log.getEntriesSince(0).entries.size())
+    }
+}
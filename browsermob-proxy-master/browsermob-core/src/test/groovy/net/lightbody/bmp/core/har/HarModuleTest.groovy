@@ -0,0 +1,73 @@
+package net.lightbody.bmp.core.har
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+
+class HarModuleTest {
+    /**
+     * Serializes with Jackson's bean serializers, for comparison with the HarModule serializers.
+     */
+    private final ObjectMapper beanMapper = new ObjectMapper()
+
+    private final ObjectMapper moduleMapper = new ObjectMapper().registerModule(new HarModule())
+
+    @Test
+    void testSerializedHarMatchesBeanSerialization() {
+        Har har = new HarFixtureBuilder().detailed().build()
+
+        assertEquals(beanMapper.readTree(beanMapper.writeValueAsString(har)), beanMapper.readTree(moduleMapper.writeValueAsString(har)))
+    }
+
+    @Test
+    void testEmptyAndNullFieldsMatchBeanSerialization() {
+        HarEntry entry = new HarEntry()
+        entry.request = new HarRequest()
+        entry.request.comment = null
+        entry.request.headers.add(new HarNameValuePair("name", null))
+        entry.response = new HarResponse()
+        entry.response.redirectURL = null
+        entry.timings.comment = null
+        entry.cache = null
+        entry.comment = null
+
+        assertEquals(beanMapper.readTree(beanMapper.writeValueAsString(entry)), beanMapper.readTree(moduleMapper.writeValueAsString(entry)))
+
+        HarLog log = new HarLog()
+        log.comment = null
+        assertEquals(beanMapper.readTree(beanMapper.writeValueAsString(log)), beanMapper.readTree(moduleMapper.writeValueAsString(log)))
+    }
+
+    @Test
+    void testStartedDateTimeMatchesBeanSerializationInEachTimeZone() {
+        ["UTC", "America/New_York", "Asia/Kolkata", "Pacific/Chatham"].each { timeZoneId ->
+            ObjectMapper zonedBeanMapper = new ObjectMapper().setTimeZone(TimeZone.getTimeZone(timeZoneId))
+            ObjectMapper zonedModuleMapper = new ObjectMapper().registerModule(new HarModule()).setTimeZone(TimeZone.getTimeZone(timeZoneId))
+
+            // includes dates before 1970, before 1900, during daylight saving time, and just before midnight
+            [1500000000123L, 1483228799999L, 951825600000L, -1000000000000L, -5000000000000L, 1L].each { millis ->
+                HarEntry entry = new HarEntry()
+                entry.startedDateTimeMillis = millis
+
+                assertEquals("Date ${millis} in ${timeZoneId} did not match bean serialization",
+                        zonedBeanMapper.readTree(zonedBeanMapper.writeValueAsString(entry)).get("startedDateTime"),
+                        zonedModuleMapper.readTree(zonedModuleMapper.writeValueAsString(entry)).get("startedDateTime"))
+            }
+        }
+    }
+
+    @Test
+    void testModuleRegisteredForEachFormat() {
+        Har har = new HarFixtureBuilder().detailed().build()
+        JsonNode expected = beanMapper.readTree(beanMapper.writeValueAsString(har))
+
+        HarFormat.values().each { format ->
+            ObjectMapper mapper = format.newObjectMapper()
+
+            JsonNode serialized = mapper.readTree(mapper.writeValueAsBytes(har))
+            assertEquals("HAR serialized as ${format} did not match bean serialization", expected, beanMapper.readTree(beanMapper.writeValueAsString(serialized)))
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package net.lightbody.bmp.core.har
+
+import org.junit.Test
+
+import static net.lightbody.bmp.core.har.HarFixtureBuilder.entry
+import static org.junit.Assert.assertEquals
+
+class HarPageAnalyzerTest {
+    private static final long START = 1500000000000L
+
+    @Test
+    void testLoadTimesCountOverlappingResponsesOnce() {
+        HarPageAnalyzer analyzer = new HarPageAnalyzer()
+
+        // two overlapping scripts, loading from 0-100 and 50-200, and one loading separately from 300-309
+        analyzer.entryCompleted(entry(0).pageRef("page 1").startedDateTimeMillis(START).mimeType("application/javascript").status(200).waitMillis(100).bodySize(10).build())
+        analyzer.entryCompleted(entry(0).pageRef("page 1").startedDateTimeMillis(START + 50).mimeType("text/javascript").status(200).waitMillis(150).bodySize(10).build())
+        analyzer.entryCompleted(entry(0).pageRef("page 1").startedDateTimeMillis(START + 300).mimeType("application/javascript").status(200).waitMillis(9).bodySize(10).build())
+
+        HarPageSummary summary = summarize(analyzer, "page 1")
+
+        // each response is loading from its start through its start plus its time, inclusive
+        assertEquals(201 + 10, summary.jsLoadTime)
+        assertEquals(0, summary.cssLoadTime)
+        assertEquals(3, summary.entryCount)
+    }
+
+    @Test
+    void testTimelineMergesResponsesCompletedOutOfOrder() {
+        HarPageAnalyzer analyzer = new HarPageAnalyzer()
+
+        analyzer.entryCompleted(entry(0).pageRef("page 1").startedDateTimeMillis(START + 500).mimeType("image/png").status(200).waitMillis(100).bodySize(10).build())
+        analyzer.entryCompleted(entry(0).pageRef("page 1").startedDateTimeMillis(START).mimeType("image/png").status(200).waitMillis(100).bodySize(10).build())
+        analyzer.entryCompleted(entry(0).pageRef("page 1").startedDateTimeMillis(START + 101).mimeType("image/gif").status(200).waitMillis(398).bodySize(10).build())
+        analyzer.entryCompleted(entry(0).pageRef("page 1").startedDateTimeMillis(START + 20).mimeType("image/gif").status(200).waitMillis(30).bodySize(10).build())
+
+        assertEquals(601, summarize(analyzer, "page 1").imageLoadTime)
+    }
+
+    @Test
+    void testSizesByType() {
+        HarPageAnalyzer analyzer = new HarPageAnalyzer()
+
+        analyzer.entryCompleted(entry(0).pageRef("page 1").startedDateTimeMillis(START).mimeType("text/html; charset=utf-8").status(200).waitMillis(10).bodySize(1000).build())
+        analyzer.entryCompleted(entry(0).pageRef("page 1").startedDateTimeMillis(START).mimeType("text/css").status(200).waitMillis(10).bodySize(200).build())
+        analyzer.entryCompleted(entry(0).pageRef("page 1").startedDateTimeMillis(START).mimeType("text/javascript").status(200).waitMillis(10).bodySize(300).build())
+        analyzer.entryCompleted(entry(0).pageRef("page 1").startedDateTimeMillis(START).mimeType("application/javascript").status(200).waitMillis(10).bodySize(400).build())
+        analyzer.entryCompleted(entry(0).pageRef("page 1").startedDateTimeMillis(START).mimeType("image/jpeg").status(200).waitMillis(10).bodySize(5000).build())
+        analyzer.entryCompleted(entry(0).pageRef("page 1").startedDateTimeMillis(START).mimeType("image/jpeg").status(304).waitMillis(10).bodySize(0).build())
+        analyzer.entryCompleted(entry(0).pageRef("page 2").startedDateTimeMillis(START).mimeType("image/jpeg").status(200).waitMillis(10).bodySize(7000).build())
+
+        HarPageSummary summary = summarize(analyzer, "page 1")
+
+        assertEquals(6900, summary.pageSize)
+        assertEquals(1500, summary.textSize)
+        assertEquals(700, summary.jsSize)
+        assertEquals(5000, summary.imageSize)
+    }
+
+    @Test
+    void testMainHtmlIsEarliestSuccessfulHtmlResponse() {
+        HarPageAnalyzer analyzer = new HarPageAnalyzer()
+
+        analyzer.entryCompleted(entry(0).pageRef("page 1").startedDateTimeMillis(START + 100).mimeType("text/html").status(200).waitMillis(10).bodySize(300).contentSize(250).build())
+        analyzer.entryCompleted(entry(0).pageRef("page 1").startedDateTimeMillis(START).mimeType("text/html").status(301).waitMillis(10).bodySize(0).contentSize(0).build())
+        analyzer.entryCompleted(entry(0).pageRef("page 1").startedDateTimeMillis(START + 10).mimeType("text/html").status(200).waitMillis(10).bodySize(400).contentSize(1200).build())
+
+        assertEquals(1200, summarize(analyzer, "page 1").mainHtmlSize)
+    }
+
+    @Test
+    void testSummariesFollowPageOrder() {
+        HarPageAnalyzer analyzer = new HarPageAnalyzer()
+        analyzer.entryCompleted(entry(0).pageRef("page 2").startedDateTimeMillis(START).mimeType("text/html").status(200).waitMillis(10).bodySize(100).build())
+
+        List<HarPageSummary> summaries = analyzer.getPageSummaries([new HarPage("page 1", "First"), new HarPage("page 2", "Second")])
+
+        assertEquals(["page 1", "page 2"], summaries*.pageref)
+        assertEquals("First", summaries[0].title)
+        assertEquals(0, summaries[0].entryCount)
+        assertEquals(-1, summaries[0].mainHtmlSize)
+        assertEquals(100, summaries[1].mainHtmlSize)
+    }
+
+    private static HarPageSummary summarize(HarPageAnalyzer analyzer, String pageRef) {
+        return analyzer.getPageSummaries([new HarPage(pageRef)])[0]
+    }
+}
@@ -0,0 +1,209 @@
+package net.lightbody.bmp.core.har
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import net.lightbody.bmp.exception.HarArchiveException
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+import static net.lightbody.bmp.core.har.HarFixtureBuilder.entry
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertNotNull
+import static org.junit.Assert.assertNull
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
+
+class HarPageArchiveTest {
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder()
+
+    @Test
+    void testArchivedEntriesReadFromRollingFiles() {
+        HarPageArchive archive = new HarPageArchive(tmpDir.root, "test", 1024)
+        try {
+            archive.archive((0..<20).collect { entry(it).pageRef("page 1").build() })
+            archive.archive((20..<40).collect { entry(it).pageRef("page 2").build() })
+            archive.flush()
+
+            assertEquals(40L, archive.writtenEntryCount)
+            assertTrue("Expected entries to roll over to a new file", archive.files.size() > 1)
+            assertTrue(archive.files.every { it.name.startsWith("test-") && it.name.endsWith(HarPageArchive.FILE_SUFFIX) })
+
+            HarPageArchive.Snapshot snapshot = archive.snapshot()
+            assertEquals((0..<40).collect { "http://www.example.com/resource/${it}".toString() }, snapshot.collect { it.request.url })
+            assertEquals(1500000000007L, snapshot.find { it.request.url.endsWith("/7") }.startedDateTimeMillis)
+
+            assertEquals((20..<40).collect { "http://www.example.com/resource/${it}".toString() }, snapshot.forPages(["page 2"] as Set).collect { it.request.url })
+
+            // entries archived after the snapshot are not part of it
+            archive.archive([entry(40).pageRef("page 3").build()])
+            archive.flush()
+            assertEquals(40, snapshot.collect().size())
+            assertEquals(41, archive.snapshot().collect().size())
+        } finally {
+            archive.close()
+        }
+    }
+
+    @Test
+    void testSingleBatchRollsOverFiles() {
+        HarPageArchive archive = new HarPageArchive(tmpDir.root, "test", 1024)
+        try {
+            archive.archive((0..<40).collect { entry(it).pageRef("page 1").build() })
+            archive.flush()
+
+            assertTrue("Expected entries in a single batch to roll over to a new file", archive.files.size() > 1)
+            assertEquals((0..<40).collect { "http://www.example.com/resource/${it}".toString() }, archive.snapshot().collect { it.request.url })
+        } finally {
+            archive.close()
+        }
+    }
+
+    @Test
+    void testClosingIteratorClosesArchiveFile() {
+        HarPageArchive archive = new HarPageArchive(tmpDir.root, "test", 0)
+        try {
+            archive.archive((0..<10).collect { entry(it).pageRef("page 1").build() })
+            archive.flush()
+
+            // stop reading after the first entry
+            HarPageArchive.Snapshot.EntryIterator iterator = archive.snapshot().iterator()
+            assertEquals("http://www.example.com/resource/0", iterator.next().request.url)
+            assertNotNull(iterator.fileStream)
+
+            iterator.close()
+
+            assertNull(iterator.fileStream)
+            assertFalse(iterator.hasNext())
+        } finally {
+            archive.close()
+        }
+    }
+
+    @Test
+    void testUnreadableArchiveFileIsClosed() {
+        HarPageArchive archive = new HarPageArchive(tmpDir.root, "test", 0)
+        try {
+            archive.archive((0..<10).collect { entry(it).pageRef("page 1").build() })
+            archive.flush()
+
+            File file = archive.files[0]
+            file.text = "not a HAR entry\n" * (file.length().intdiv(16) + 1)
+
+            HarPageArchive.Snapshot.EntryIterator iterator = archive.snapshot().iterator()
+            try {
+                iterator.next()
+                fail("Expected unreadable archive file to fail")
+            } catch (HarArchiveException expected) {
+            }
+
+            assertNull("Expected iterator to close the unreadable file", iterator.fileStream)
+        } finally {
+            archive.close()
+        }
+    }
+
+    @Test
+    void testEndedPagesArchivedAndStitchedIntoHar() {
+        HarLog log = new HarLog(new HarNameVersion("BrowserMob Proxy", "test"))
+        HarPageArchive archive = new HarPageArchive(tmpDir.root, "test", 0)
+        log.pageArchive = archive
+
+        log.addPage(new HarPage("page 1", "Page 1"))
+        HarEntry straggler = entry(0).pageRef("page 1").build()
+        log.addEntry(straggler)
+        (1..<5).each { addCompletedEntry(log, entry(it).pageRef("page 1").build()) }
+
+        log.archivePage("page 1")
+
+        log.addPage(new HarPage("page 2", "Page 2"))
+        (5..<8).each { addCompletedEntry(log, entry(it).pageRef("page 2").build()) }
+
+        // the entry still in progress when its page was archived is archived when it completes
+        log.completeEntry(straggler)
+
+        archive.flush()
+        assertEquals(5L, archive.writtenEntryCount)
+
+        List<String> expectedUrls = ([1, 2, 3, 4, 0] + (5..<8).toList()).collect { "http://www.example.com/resource/${it}".toString() }
+        assertEquals(expectedUrls, log.entries*.request*.url)
+
+        // the cursor returns entries in the order they completed, including archived entries
+        List<String> completionOrderUrls = (1..<8).collect { "http://www.example.com/resource/${it}".toString() } + "http://www.example.com/resource/0"
+        HarEntryBatch batch = log.getEntriesSince(0)
+        assertEquals(completionOrderUrls, batch.entries*.request*.url)
+        assertEquals((1L..8L).toList(), batch.entries*.sequence)
+        assertEquals(8L, batch.cursor)
+
+        ObjectMapper mapper = new ObjectMapper()
+        StringWriter json = new StringWriter()
+        new Har(log).writeTo(json)
+        assertEquals(expectedUrls, mapper.readTree(json.toString()).get("log").get("entries")*.get("request")*.get("url")*.asText())
+
+        HarLog copy = log.copyOfPages(["page 1"] as Set)
+        assertEquals(["page 1"], copy.pages*.id)
+        assertEquals(expectedUrls.take(5), copy.entries*.request*.url)
+
+        archive.close()
+    }
+
+    @Test
+    void testCursorPollingReturnsEntriesArchivedBetweenPolls() {
+        HarLog log = new HarLog(new HarNameVersion("BrowserMob Proxy", "test"))
+        HarPageArchive archive = new HarPageArchive(tmpDir.root, "test", 200)
+        log.pageArchive = archive
+
+        (0..<3).each { addCompletedEntry(log, entry(it).pageRef("page 1").build()) }
+
+        HarEntryBatch first = log.getEntriesSince(0)
+        assertEquals(3, first.entries.size())
+
+        (3..<6).each { addCompletedEntry(log, entry(it).pageRef("page 1").build()) }
+        log.archivePage("page 1")
+        archive.flush()
+        assertTrue("Expected the archived entries to roll over to several files", archive.files.size() > 1)
+
+        (6..<8).each { addCompletedEntry(log, entry(it).pageRef("page 2").build()) }
+
+        // the entries completed since the first poll were archived before this poll, and are read back from the archive
+        HarEntryBatch second = log.getEntriesSince(first.cursor)
+        assertEquals((3..<8).collect { "http://www.example.com/resource/${it}".toString() }, second.entries*.request*.url)
+        assertEquals((4L..8L).toList(), second.entries*.sequence)
+
+        assertEquals([], log.getEntriesSince(second.cursor).entries)
+
+        archive.close()
+    }
+
+    @Test
+    void testArchivedEntriesReturnContentToCaptureBudget() {
+        HarLog log = new HarLog(new HarNameVersion("BrowserMob Proxy", "test"))
+        HarPageArchive archive = new HarPageArchive(tmpDir.root, "test", 0)
+        log.pageArchive = archive
+
+        HarCaptureBudget budget = new HarCaptureBudget(0L, 1000L)
+        log.captureBudget = budget
+
+        (0..<5).each {
+            HarEntry entry = entry(it).pageRef(it < 3 ? "page 1" : "page 2").build()
+            log.addEntry(entry)
+            budget.reserve(100L)
+            log.recordCapturedContent(entry, 100L)
+            log.completeEntry(entry)
+        }
+
+        assertEquals(500L, budget.reservedBytes)
+
+        log.archivePage("page 1")
+
+        assertEquals("Expected archived entries to return their content to the budget", 200L, budget.reservedBytes)
+
+        archive.close()
+    }
+
+    private static void addCompletedEntry(HarLog log, HarEntry entry) {
+        log.addEntry(entry)
+        log.completeEntry(entry)
+    }
+}
@@ -0,0 +1,46 @@
+package net.lightbody.bmp.core.har
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+
+class HarStreamingWriterTest {
+    @Test
+    void testStreamingOutputMatchesObjectMapperOutput() {
+        Har har = new HarFixtureBuilder().entries(25).build()
+
+        ObjectMapper mapper = new ObjectMapper()
+
+        StringWriter streamed = new StringWriter()
+        new HarStreamingWriter(mapper).write(har, streamed)
+
+        JsonNode expected = mapper.readTree(mapper.writeValueAsString(har))
+        JsonNode actual = mapper.readTree(streamed.toString())
+
+        assertEquals("Streamed HAR JSON did not match HAR JSON serialized by ObjectMapper", expected, actual)
+    }
+
+    @Test
+    void testWriteToOutputStream() {
+        Har har = new HarFixtureBuilder().entries(3).build()
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream()
+        har.writeTo(os)
+
+        JsonNode log = new ObjectMapper().readTree(os.toByteArray()).get("log")
+
+        assertEquals(3, log.get("entries").size())
+        assertEquals(1, log.get("pages").size())
+        assertEquals("http://www.example.com/resource/2", log.get("entries").get(2).get("request").get("url").asText())
+    }
+
+    @Test
+    void testNullLogIsWritten() {
+        StringWriter streamed = new StringWriter()
+        new Har().writeTo(streamed)
+
+        assertEquals('{"log":null}', streamed.toString())
+    }
+}
@@ -0,0 +1,102 @@
+package net.lightbody.bmp.core.har
+
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertNull
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
+
+class IndexedHarReaderTest {
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder()
+
+    @Test
+    void testEntriesReadByIndex() {
+        File harFile = tmpDir.newFile("test.har")
+        new HarFixtureBuilder().entries(100).pages(2).build().writeTo(harFile)
+
+        IndexedHarReader reader = IndexedHarReader.open(harFile)
+        try {
+            assertEquals(100, reader.entryCount)
+            assertEquals("http://www.example.com/resource/0", reader.getEntry(0).request.url)
+            assertEquals("http://www.example.com/resource/57", reader.getEntry(57).request.url)
+            assertEquals("response body 99", reader.getEntry(99).response.content.text)
+            assertEquals(1500000000042L, reader.getEntry(42).startedDateTimeMillis)
+
+            try {
+                reader.getEntry(100)
+                fail("Expected an exception when reading an entry past the end of the HAR")
+            } catch (IndexOutOfBoundsException expected) {
+            }
+        } finally {
+            reader.close()
+        }
+
+        assertTrue("Expected the index file to be written next to the HAR", new File(harFile.path + IndexedHarReader.INDEX_FILE_SUFFIX).isFile())
+    }
+
+    @Test
+    void testEntriesFoundByPageAndUrl() {
+        File harFile = tmpDir.newFile("test.har")
+        new HarFixtureBuilder().entries(10).pages(2).build().writeTo(harFile)
+
+        IndexedHarReader reader = IndexedHarReader.open(harFile)
+        try {
+            assertEquals(["page 1", "page 2"], reader.pageIds)
+            assertEquals("Page 2 Title", reader.getPage("page 2").title)
+            assertNull(reader.getPage("page 3"))
+
+            assertEquals([1, 3, 5, 7, 9], reader.findEntriesOnPage("page 2"))
+            assertEquals([], reader.findEntriesOnPage("page 3"))
+
+            List<HarEntry> entries = reader.findEntriesByUrl("http://www.example.com/resource/4")
+            assertEquals(1, entries.size())
+            assertEquals("response body 4", entries[0].response.content.text)
+            assertEquals([], reader.findEntriesByUrl("http://www.example.com/missing"))
+        } finally {
+            reader.close()
+        }
+    }
+
+    @Test
+    void testIndexReusedUntilHarChanges() {
+        File harFile = tmpDir.newFile("test.har")
+        File indexFile = tmpDir.newFile("test.idx")
+        indexFile.delete()
+
+        new HarFixtureBuilder().entries(5).pages(2).build().writeTo(harFile)
+        IndexedHarReader.open(harFile, indexFile).close()
+
+        byte[] index = indexFile.bytes
+        long indexLastModified = indexFile.lastModified()
+        IndexedHarReader.open(harFile, indexFile).close()
+        assertEquals("Expected the index to be reused when the HAR has not changed", indexLastModified, indexFile.lastModified())
+        assertTrue(Arrays.equals(index, indexFile.bytes))
+
+        new HarFixtureBuilder().entries(8).pages(2).build().writeTo(harFile)
+        harFile.setLastModified(harFile.lastModified() + 2000)
+
+        IndexedHarReader reader = IndexedHarReader.open(harFile, indexFile)
+        try {
+            assertEquals("Expected the index to be rebuilt when the HAR changed", 8, reader.entryCount)
+            assertEquals("http://www.example.com/resource/7", reader.getEntry(7).request.url)
+        } finally {
+            reader.close()
+        }
+    }
+
+    @Test
+    void testCompressedHarRejected() {
+        File harFile = tmpDir.newFile("test.har.gz")
+        new HarFixtureBuilder().entries(1).pages(2).build().writeTo(harFile)
+
+        try {
+            IndexedHarReader.open(harFile)
+            fail("Expected compressed HAR to be rejected")
+        } catch (IOException expected) {
+        }
+    }
+}
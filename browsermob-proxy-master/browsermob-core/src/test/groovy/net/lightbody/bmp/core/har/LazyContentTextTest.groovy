@@ -0,0 +1,55 @@
+package net.lightbody.bmp.core.har
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.junit.Test
+
+import java.nio.charset.StandardCharsets
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertNull
+
+class LazyContentTextTest {
+    @Test
+    void testPostDataTextDecodedOnAccess() {
+        byte[] body = "café".getBytes(StandardCharsets.ISO_8859_1)
+
+        HarPostData postData = new HarPostData()
+        postData.setStoredContent(new HeapContentStore().store(body), StandardCharsets.ISO_8859_1)
+
+        assertEquals("café", postData.text)
+
+        JsonNode json = new ObjectMapper().valueToTree(postData)
+        assertEquals("café", json.get("text").asText())
+        assertNull("Expected stored content not to be serialized", json.get("storedContent"))
+    }
+
+    @Test
+    void testBinaryContentEncodedAsBase64OnAccess() {
+        HarContent content = new HarContent()
+        content.setStoredContent(new HeapContentStore().store([0, 1, 2, -1] as byte[]), null)
+
+        assertEquals("AAEC/w==", content.text)
+    }
+
+    @Test
+    void testSetTextReplacesStoredContent() {
+        HarPostData postData = new HarPostData()
+        postData.setStoredContent(new HeapContentStore().store("stored".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8)
+
+        postData.setText("replaced")
+
+        assertEquals("replaced", postData.text)
+        assertNull(postData.storedContent)
+    }
+
+    @Test
+    void testDeduplicatedHeapContentDecoded() {
+        DeduplicatingContentStore store = new DeduplicatingContentStore(new HeapContentStore(), true)
+
+        HarContent content = new HarContent()
+        content.setStoredContent(store.store("shared".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8)
+
+        assertEquals("shared", content.text)
+    }
+}
@@ -0,0 +1,108 @@
+package net.lightbody.bmp.core.har
+
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+import java.nio.charset.StandardCharsets
+
+import static org.junit.Assert.assertArrayEquals
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertNull
+import static org.junit.Assert.assertTrue
+
+class SpillingContentStoreTest {
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder()
+
+    @Test
+    void testSmallContentIsNotSpilled() {
+        SpillingContentStore store = new SpillingContentStore(100, SpillingContentStore.SpillTarget.MEMORY_MAPPED_FILE, tmpDir.root)
+
+        byte[] content = new byte[100]
+        StoredContent stored = store.store(content)
+
+        assertArrayEquals(content, stored.bytes)
+        assertEquals(0L, store.spilledBytes)
+        assertNull(store.spillFile)
+
+        store.close()
+    }
+
+    @Test
+    void testContentSpilledToMemoryMappedFile() {
+        SpillingContentStore store = new SpillingContentStore(10, SpillingContentStore.SpillTarget.MEMORY_MAPPED_FILE, tmpDir.root)
+
+        byte[] first = createContent(1000, 1)
+        byte[] second = createContent(5000, 2)
+
+        StoredContent storedFirst = store.store(first)
+        StoredContent storedSecond = store.store(second)
+
+        assertEquals(6000L, store.spilledBytes)
+        assertTrue(store.spillFile.exists())
+        assertEquals(6000L, store.spillFile.length())
+
+        assertEquals(1000, storedFirst.size)
+        assertArrayEquals(first, storedFirst.bytes)
+        assertArrayEquals(second, storedSecond.bytes)
+
+        store.close()
+
+        assertFalse("Expected spill file to be deleted when store was closed", store.spillFile.exists())
+
+        // content that was already spilled remains readable after the spill file is deleted
+        assertArrayEquals(second, storedSecond.bytes)
+    }
+
+    @Test
+    void testContentSpilledOffHeap() {
+        SpillingContentStore store = new SpillingContentStore(10, SpillingContentStore.SpillTarget.OFF_HEAP, tmpDir.root)
+
+        byte[] content = createContent(1000, 3)
+        StoredContent stored = store.store(content)
+
+        assertArrayEquals(content, stored.bytes)
+        assertEquals(1000L, store.spilledBytes)
+        assertNull(store.spillFile)
+
+        store.close()
+    }
+
+    @Test
+    void testContentStoredAfterCloseIsKeptOnHeap() {
+        SpillingContentStore store = new SpillingContentStore(10, SpillingContentStore.SpillTarget.MEMORY_MAPPED_FILE, tmpDir.root)
+        store.close()
+
+        byte[] content = createContent(1000, 4)
+        StoredContent stored = store.store(content)
+
+        assertArrayEquals(content, stored.bytes)
+        assertEquals(0L, store.spilledBytes)
+    }
+
+    @Test
+    void testHarContentMaterializesStoredContent() {
+        SpillingContentStore store = new SpillingContentStore(0, SpillingContentStore.SpillTarget.OFF_HEAP, null)
+
+        HarContent textContent = new HarContent()
+        textContent.setStoredContent(store.store("response body".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8)
+        assertEquals("response body", textContent.text)
+
+        HarContent binaryContent = new HarContent()
+        binaryContent.setStoredContent(store.store([0, 1, 2, 3] as byte[]), null)
+        assertEquals("AAECAw==", binaryContent.text)
+
+        binaryContent.text = null
+        assertNull(binaryContent.text)
+        assertNull(binaryContent.storedContent)
+    }
+
+    private static byte[] createContent(int length, int seed) {
+        byte[] content = new byte[length]
+        new Random(seed).nextBytes(content)
+
+        return content
+    }
+}
@@ -0,0 +1,309 @@
+package net.lightbody.bmp.filters
+
+import io.netty.buffer.ByteBuf
+import io.netty.buffer.Unpooled
+import io.netty.channel.ChannelHandlerContext
+import io.netty.channel.embedded.EmbeddedChannel
+import io.netty.handler.codec.http.DefaultFullHttpRequest
+import io.netty.handler.codec.http.DefaultHttpContent
+import io.netty.handler.codec.http.DefaultHttpResponse
+import io.netty.handler.codec.http.DefaultLastHttpContent
+import io.netty.handler.codec.http.HttpHeaders
+import io.netty.handler.codec.http.HttpMethod
+import io.netty.handler.codec.http.HttpRequest
+import io.netty.handler.codec.http.HttpResponseStatus
+import io.netty.handler.codec.http.HttpVersion
+import net.lightbody.bmp.core.har.HarCaptureBudget
+import net.lightbody.bmp.filters.util.StreamingContentDecoderTest
+import org.junit.Test
+
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.TimeUnit
+
+import static org.junit.Assert.assertArrayEquals
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertNull
+import static org.junit.Assert.assertTrue
+import static org.mockito.Mockito.mock
+import static org.mockito.Mockito.when
+
+class ServerResponseCaptureFilterTest {
+    private final HttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "http://www.example.com/")
+
+    @Test
+    void testChunkedResponseCapturedAndBuffersReleased() {
+        ByteBuf first = Unpooled.copiedBuffer("first ", StandardCharsets.UTF_8)
+        ByteBuf second = Unpooled.copiedBuffer("second ", StandardCharsets.UTF_8)
+        ByteBuf last = Unpooled.copiedBuffer("last", StandardCharsets.UTF_8)
+
+        ServerResponseCaptureFilter filter = new ServerResponseCaptureFilter(request, false)
+
+        filter.serverToProxyResponse(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK))
+        filter.serverToProxyResponse(new DefaultHttpContent(first))
+        filter.serverToProxyResponse(new DefaultHttpContent(second))
+
+        // the filter retains the content until the response is complete, without modifying the reader index
+        assertEquals(2, first.refCnt())
+        assertEquals(0, first.readerIndex())
+        assertEquals("first second ", new String(filter.rawResponseContents, StandardCharsets.UTF_8))
+
+        filter.serverToProxyResponse(new DefaultLastHttpContent(last))
+
+        assertEquals("first second last", new String(filter.fullResponseContents, StandardCharsets.UTF_8))
+        assertEquals("first second last", new String(filter.rawResponseContents, StandardCharsets.UTF_8))
+
+        [first, second, last].each { assertEquals("Expected capture filter to release content", 1, it.refCnt()) }
+    }
+
+    @Test
+    void testBuffersReleasedWhenResponseTimesOut() {
+        ByteBuf partial = Unpooled.copiedBuffer("partial", StandardCharsets.UTF_8)
+
+        HarCaptureBudget budget = new HarCaptureBudget(0L, 100L)
+        ServerResponseCaptureFilter filter = new ServerResponseCaptureFilter(request, null, false, budget)
+
+        filter.serverToProxyResponse(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK))
+        filter.serverToProxyResponse(new DefaultHttpContent(partial))
+        assertEquals(2, partial.refCnt())
+        assertEquals(7L, budget.reservedBytes)
+
+        filter.serverToProxyResponseTimedOut()
+        assertEquals(1, partial.refCnt())
+        assertEquals("Expected the partial response to be returned to the budget", 0L, budget.reservedBytes)
+    }
+
+    @Test
+    void testBuffersReleasedWhenChannelCloses() {
+        EmbeddedChannel channel = new EmbeddedChannel()
+        ChannelHandlerContext mockCtx = mock(ChannelHandlerContext)
+        when(mockCtx.channel()).thenReturn(channel)
+
+        ByteBuf partial = Unpooled.copiedBuffer("partial", StandardCharsets.UTF_8)
+
+        HarCaptureBudget budget = new HarCaptureBudget(0L, 100L)
+        ServerResponseCaptureFilter filter = new ServerResponseCaptureFilter(request, mockCtx, false, budget)
+
+        filter.serverToProxyResponse(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK))
+        filter.serverToProxyResponse(new DefaultHttpContent(partial))
+        assertEquals(2, partial.refCnt())
+        assertEquals(7L, budget.reservedBytes)
+
+        channel.close()
+        assertEquals(1, partial.refCnt())
+        assertEquals("Expected the partial response to be returned to the budget", 0L, budget.reservedBytes)
+    }
+
+    @Test
+    void testCompressedResponseDecompressedAsChunksArrive() {
+        byte[] compressed = StreamingContentDecoderTest.gzip("compressed response ".multiply(100).getBytes(StandardCharsets.UTF_8))
+        ByteBuf first = Unpooled.wrappedBuffer(compressed, 0, 50)
+        ByteBuf last = Unpooled.wrappedBuffer(compressed, 50, compressed.length - 50)
+
+        DefaultHttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK)
+        response.headers().set(HttpHeaders.Names.CONTENT_ENCODING, HttpHeaders.Values.GZIP)
+
+        ServerResponseCaptureFilter filter = new ServerResponseCaptureFilter(request, true)
+
+        filter.serverToProxyResponse(response)
+        filter.serverToProxyResponse(new DefaultHttpContent(first))
+        filter.serverToProxyResponse(new DefaultLastHttpContent(last))
+
+        assertTrue(filter.responseCompressed)
+        assertTrue(filter.decompressionSuccessful)
+        assertEquals("compressed response ".multiply(100), new String(filter.fullResponseContents, StandardCharsets.UTF_8))
+
+        // the raw response is not retained once it has been decompressed
+        assertNull(filter.rawResponseContents)
+
+        [first, last].each { assertEquals("Expected capture filter to release content", 1, it.refCnt()) }
+    }
+
+    @Test
+    void testBrotliResponseCapturedWhenDecodingThreadFinishes() {
+        byte[] content = "brotli response ".multiply(100).getBytes(StandardCharsets.UTF_8)
+        byte[] compressed = StreamingContentDecoderTest.brotliUncompressed(content)
+        ByteBuf last = Unpooled.wrappedBuffer(compressed)
+
+        DefaultHttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK)
+        response.headers().set(HttpHeaders.Names.CONTENT_ENCODING, "br")
+
+        ServerResponseCaptureFilter filter = new ServerResponseCaptureFilter(request, true)
+
+        filter.serverToProxyResponse(response)
+        filter.serverToProxyResponse(new DefaultLastHttpContent(last))
+
+        // the content is decoded on a decoding thread, so it is only available once the capture completes
+        filter.responseContentsCaptured.get(5, TimeUnit.SECONDS)
+
+        assertTrue(filter.decompressionSuccessful)
+        assertArrayEquals(content, filter.fullResponseContents)
+        assertEquals("Expected capture filter to release content", 1, last.refCnt())
+    }
+
+    @Test
+    void testCorruptCompressedResponseCapturedRaw() {
+        byte[] corrupt = "not gzip content".getBytes(StandardCharsets.UTF_8)
+
+        DefaultHttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK)
+        response.headers().set(HttpHeaders.Names.CONTENT_ENCODING, HttpHeaders.Values.GZIP)
+
+        ServerResponseCaptureFilter filter = new ServerResponseCaptureFilter(request, true)
+
+        filter.serverToProxyResponse(response)
+        filter.serverToProxyResponse(new DefaultLastHttpContent(Unpooled.wrappedBuffer(corrupt)))
+
+        assertTrue(filter.responseCompressed)
+        assertFalse(filter.decompressionSuccessful)
+        assertArrayEquals(corrupt, filter.fullResponseContents)
+    }
+
+    @Test
+    void testOnlyFallbackWindowOfRawResponseRetainedWhileDecompressing() {
+        // random content does not compress, so the compressed response is larger than the fallback window
+        byte[] body = new byte[200 * 1024]
+        new Random(0).nextBytes(body)
+        byte[] compressed = StreamingContentDecoderTest.gzip(body)
+
+        int chunkSize = 16 * 1024
+        List<ByteBuf> chunks = (0..<compressed.length).step(chunkSize).collect {
+            Unpooled.wrappedBuffer(compressed, it, Math.min(chunkSize, compressed.length - it))
+        }
+
+        DefaultHttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK)
+        response.headers().set(HttpHeaders.Names.CONTENT_ENCODING, HttpHeaders.Values.GZIP)
+
+        HarCaptureBudget budget = new HarCaptureBudget(0L, 1024L * 1024L)
+        ServerResponseCaptureFilter filter = new ServerResponseCaptureFilter(request, null, true, budget)
+
+        filter.serverToProxyResponse(response)
+        chunks.init().each { filter.serverToProxyResponse(new DefaultHttpContent(it)) }
+
+        assertEquals("Expected the leading chunks to be retained", 2, chunks[0].refCnt())
+        assertEquals("Expected chunks beyond the fallback window not to be retained", 1, chunks[5].refCnt())
+
+        filter.serverToProxyResponse(new DefaultLastHttpContent(chunks.last()))
+
+        assertTrue(filter.decompressionSuccessful)
+        assertArrayEquals(body, filter.fullResponseContents)
+        assertFalse(filter.contentTruncated)
+        assertEquals("Expected only the decompressed response to remain reserved", (long) body.length, budget.reservedBytes)
+
+        chunks.each { assertEquals("Expected capture filter to release content", 1, it.refCnt()) }
+    }
+
+    @Test
+    void testFallbackWindowCapturedWhenResponseCannotBeDecompressed() {
+        byte[] corrupt = new byte[100 * 1024]
+        Arrays.fill(corrupt, (byte) 'x')
+
+        DefaultHttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK)
+        response.headers().set(HttpHeaders.Names.CONTENT_ENCODING, HttpHeaders.Values.GZIP)
+
+        ServerResponseCaptureFilter filter = new ServerResponseCaptureFilter(request, true)
+
+        filter.serverToProxyResponse(response)
+        filter.serverToProxyResponse(new DefaultLastHttpContent(Unpooled.wrappedBuffer(corrupt)))
+
+        assertFalse(filter.decompressionSuccessful)
+        assertArrayEquals(Arrays.copyOf(corrupt, 64 * 1024), filter.fullResponseContents)
+        assertTrue(filter.contentTruncated)
+        assertEquals((long) corrupt.length, filter.originalContentSize)
+    }
+
+    @Test
+    void testResponseTruncatedAtMaxContentSize() {
+        ByteBuf first = Unpooled.copiedBuffer("0123456789", StandardCharsets.UTF_8)
+        ByteBuf last = Unpooled.copiedBuffer("abcdefghij", StandardCharsets.UTF_8)
+
+        ServerResponseCaptureFilter filter = new ServerResponseCaptureFilter(request, null, false, new HarCaptureBudget(15L, 0L))
+
+        filter.serverToProxyResponse(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK))
+        filter.serverToProxyResponse(new DefaultHttpContent(first))
+        filter.serverToProxyResponse(new DefaultLastHttpContent(last))
+
+        assertEquals("0123456789abcde", new String(filter.fullResponseContents, StandardCharsets.UTF_8))
+        assertTrue(filter.contentTruncated)
+        assertEquals(20L, filter.originalContentSize)
+
+        [first, last].each { assertEquals("Expected capture filter to release content", 1, it.refCnt()) }
+    }
+
+    @Test
+    void testBudgetSharedAcrossResponses() {
+        HarCaptureBudget budget = new HarCaptureBudget(0L, 12L)
+
+        ServerResponseCaptureFilter firstFilter = new ServerResponseCaptureFilter(request, null, false, budget)
+        firstFilter.serverToProxyResponse(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK))
+        firstFilter.serverToProxyResponse(new DefaultLastHttpContent(Unpooled.copiedBuffer("first body", StandardCharsets.UTF_8)))
+
+        ServerResponseCaptureFilter secondFilter = new ServerResponseCaptureFilter(request, null, false, budget)
+        secondFilter.serverToProxyResponse(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK))
+        secondFilter.serverToProxyResponse(new DefaultLastHttpContent(Unpooled.copiedBuffer("second body", StandardCharsets.UTF_8)))
+
+        assertEquals("first body", new String(firstFilter.fullResponseContents, StandardCharsets.UTF_8))
+        assertFalse(firstFilter.contentTruncated)
+
+        assertEquals("se", new String(secondFilter.fullResponseContents, StandardCharsets.UTF_8))
+        assertTrue(secondFilter.contentTruncated)
+        assertEquals(11L, secondFilter.originalContentSize)
+    }
+
+    @Test
+    void testDecompressedResponseTruncatedAtMaxContentSize() {
+        String body = "compressed response ".multiply(100)
+        byte[] compressed = StreamingContentDecoderTest.gzip(body.getBytes(StandardCharsets.UTF_8))
+
+        DefaultHttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK)
+        response.headers().set(HttpHeaders.Names.CONTENT_ENCODING, HttpHeaders.Values.GZIP)
+
+        ServerResponseCaptureFilter filter = new ServerResponseCaptureFilter(request, null, true, new HarCaptureBudget(100L, 0L))
+
+        filter.serverToProxyResponse(response)
+        filter.serverToProxyResponse(new DefaultLastHttpContent(Unpooled.wrappedBuffer(compressed)))
+
+        assertTrue(filter.decompressionSuccessful)
+        assertEquals(body.substring(0, 100), new String(filter.fullResponseContents, StandardCharsets.UTF_8))
+        assertTrue(filter.contentTruncated)
+        assertEquals((long) body.length(), filter.originalContentSize)
+    }
+
+    @Test
+    void testDecompressedResponseReservedFromBudget() {
+        String body = "compressed response ".multiply(100)
+        byte[] compressed = StreamingContentDecoderTest.gzip(body.getBytes(StandardCharsets.UTF_8))
+
+        DefaultHttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK)
+        response.headers().set(HttpHeaders.Names.CONTENT_ENCODING, HttpHeaders.Values.GZIP)
+
+        HarCaptureBudget budget = new HarCaptureBudget(0L, 500L)
+        ServerResponseCaptureFilter filter = new ServerResponseCaptureFilter(request, null, true, budget)
+
+        filter.serverToProxyResponse(response)
+        filter.serverToProxyResponse(new DefaultLastHttpContent(Unpooled.wrappedBuffer(compressed)))
+
+        // the compressed bytes are reserved as they are received, and the decompressed bytes as they are produced. once the
+        // response is decompressed, only the decompressed bytes remain reserved.
+        int decompressedBytes = 500 - compressed.length
+        assertTrue(filter.decompressionSuccessful)
+        assertEquals(body.substring(0, decompressedBytes), new String(filter.fullResponseContents, StandardCharsets.UTF_8))
+        assertTrue(filter.contentTruncated)
+        assertEquals((long) body.length(), filter.originalContentSize)
+        assertEquals((long) decompressedBytes, budget.reservedBytes)
+    }
+
+    @Test
+    void testRequestCaptureReleasesBuffers() {
+        ByteBuf body = Unpooled.copiedBuffer("request body", StandardCharsets.UTF_8)
+
+        ClientRequestCaptureFilter filter = new ClientRequestCaptureFilter(request)
+
+        filter.clientToProxyRequest(new DefaultHttpContent(body))
+        assertEquals(2, body.refCnt())
+
+        filter.clientToProxyRequest(new DefaultLastHttpContent())
+
+        assertEquals("request body", new String(filter.fullRequestContents, StandardCharsets.UTF_8))
+        assertEquals(1, body.refCnt())
+    }
+}
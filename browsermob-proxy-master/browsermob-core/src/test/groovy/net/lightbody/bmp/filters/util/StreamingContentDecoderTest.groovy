@@ -0,0 +1,296 @@
+package net.lightbody.bmp.filters.util
+
+import com.google.common.util.concurrent.ListenableFuture
+import io.netty.buffer.ByteBuf
+import io.netty.buffer.Unpooled
+import io.netty.buffer.UnpooledByteBufAllocator
+import io.netty.buffer.UnpooledHeapByteBuf
+import net.lightbody.bmp.core.har.HarCaptureBudget
+import net.lightbody.bmp.exception.DecompressionException
+import org.junit.Test
+
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.GZIPOutputStream
+
+import static org.junit.Assert.assertArrayEquals
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertNull
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
+
+class StreamingContentDecoderTest {
+    private static final byte[] CONTENT = ("streaming decompression " * 1000).getBytes(StandardCharsets.UTF_8)
+
+    @Test
+    void testGzipDecodedInChunks() {
+        assertDecodedInChunks("gzip", gzip(CONTENT))
+    }
+
+    @Test
+    void testDeflateDecodedInChunks() {
+        assertDecodedInChunks("deflate", deflate(CONTENT))
+    }
+
+    @Test
+    void testBrotliDecodedInChunks() {
+        assertDecodedInChunks("br", brotliUncompressed(CONTENT))
+    }
+
+    @Test
+    void testUnsupportedEncodingReturnsNull() {
+        assertNull(StreamingContentDecoder.forContentEncoding("compress", null))
+        assertNull(StreamingContentDecoder.forContentEncoding(null, null))
+    }
+
+    @Test
+    void testTruncatedGzipContentFails() {
+        byte[] compressed = gzip(CONTENT)
+
+        StreamingContentDecoder decoder = StreamingContentDecoder.forContentEncoding("gzip", null)
+        ByteBuf chunk = Unpooled.wrappedBuffer(compressed, 0, compressed.length - 20)
+        decoder.decode(chunk)
+
+        try {
+            decoder.finish()
+            fail("Expected truncated content to fail to decompress")
+        } catch (DecompressionException expected) {
+        }
+
+        assertEquals(1, chunk.refCnt())
+    }
+
+    @Test
+    void testReleaseReleasesRetainedChunks() {
+        byte[] compressed = brotliUncompressed(CONTENT)
+
+        StreamingContentDecoder decoder = StreamingContentDecoder.forContentEncoding("br", null)
+
+        // the content is incomplete, so the decoding thread waits for more chunks until the decoder is released
+        List<ByteBuf> chunks = [Unpooled.wrappedBuffer(compressed, 0, 100), Unpooled.wrappedBuffer(compressed, 100, 100)]
+        chunks.each { decoder.decode(it) }
+
+        decoder.release()
+
+        // a chunk may still be in use by the decoding thread, which releases it once the decoder is released
+        chunks.each {
+            waitForRefCnt(it, 1)
+            assertEquals("Expected decoder to release content", 1, it.refCnt())
+        }
+    }
+
+    @Test
+    void testBrotliDecodedBeforeContentComplete() {
+        // the brotli decoder only returns decoded content when its 64 KB window is full, so the first chunk must fill the window
+        byte[] content = ("streaming decompression " * 8000).getBytes(StandardCharsets.UTF_8)
+        byte[] compressed = brotliUncompressed(content)
+        int firstChunkSize = compressed.length.intdiv(2)
+
+        StreamingContentDecoder decoder = StreamingContentDecoder.forContentEncoding("br", null)
+        decoder.decode(Unpooled.wrappedBuffer(compressed, 0, firstChunkSize))
+
+        // the decoding thread decodes the first chunk without waiting for the rest of the content
+        long deadline = System.currentTimeMillis() + 5000
+        while (decoder.decodedSize == 0L && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+
+        assertTrue("Expected first chunk to be decoded before the content is complete", decoder.decodedSize > 0L)
+
+        decoder.decode(Unpooled.wrappedBuffer(compressed, firstChunkSize, compressed.length - firstChunkSize))
+
+        assertArrayEquals(content, decoder.finish())
+    }
+
+    @Test
+    void testBrotliFinishAsyncDoesNotWaitForDecodingThread() {
+        byte[] content = ("streaming decompression " * 8000).getBytes(StandardCharsets.UTF_8)
+        BlockingByteBuf chunk = new BlockingByteBuf(brotliUncompressed(content))
+
+        StreamingContentDecoder decoder = StreamingContentDecoder.forContentEncoding("br", null)
+        decoder.decode(chunk)
+
+        assertTrue(chunk.reading.await(5, TimeUnit.SECONDS))
+
+        ListenableFuture<byte[]> decoded = decoder.finishAsync()
+        assertFalse("Expected content to be decoded after the decoding thread finishes", decoded.isDone())
+
+        chunk.unblock.countDown()
+
+        assertArrayEquals(content, decoded.get(5, TimeUnit.SECONDS))
+        assertEquals("Expected decoder to release content", 1, chunk.refCnt())
+    }
+
+    @Test
+    void testBrotliDecodingFailsWhenDecodingThreadFallsBehind() {
+        byte[] content = ("streaming decompression " * 8000).getBytes(StandardCharsets.UTF_8)
+        byte[] compressed = brotliUncompressed(content)
+        int firstChunkSize = compressed.length.intdiv(2)
+        BlockingByteBuf firstChunk = new BlockingByteBuf(Arrays.copyOf(compressed, firstChunkSize))
+
+        StreamingContentDecoder decoder = StreamingContentDecoder.forContentEncoding("br", null)
+        decoder.decode(firstChunk)
+
+        // the decoding thread is blocked reading the first chunk, so the remaining chunks are queued until the queue is full
+        assertTrue(firstChunk.reading.await(5, TimeUnit.SECONDS))
+
+        List<ByteBuf> chunks = []
+        try {
+            for (int offset = firstChunkSize; offset < compressed.length; offset++) {
+                ByteBuf chunk = Unpooled.wrappedBuffer(compressed, offset, 1)
+                chunks.add(chunk)
+
+                decoder.decode(chunk)
+            }
+
+            fail("Expected decoding to fail when the decoding thread falls behind")
+        } catch (DecompressionException expected) {
+        } finally {
+            firstChunk.unblock.countDown()
+        }
+
+        assertTrue(chunks.size() < compressed.length - firstChunkSize)
+
+        (chunks + firstChunk).each {
+            waitForRefCnt(it, 1)
+            assertEquals("Expected decoder to release content", 1, it.refCnt())
+        }
+    }
+
+    @Test
+    void testTruncatedBrotliContent() {
+        byte[] compressed = brotliUncompressed(CONTENT)
+
+        StreamingContentDecoder incompleteDecoder = StreamingContentDecoder.forContentEncoding("br", null)
+        ByteBuf chunk = Unpooled.wrappedBuffer(compressed, 0, compressed.length - 100)
+        incompleteDecoder.decode(chunk)
+
+        byte[] decoded = incompleteDecoder.finish(false)
+        assertArrayEquals(Arrays.copyOf(CONTENT, decoded.length), decoded)
+
+        StreamingContentDecoder completeDecoder = StreamingContentDecoder.forContentEncoding("br", null)
+        completeDecoder.decode(Unpooled.wrappedBuffer(compressed, 0, compressed.length - 100))
+
+        try {
+            completeDecoder.finish(true)
+            fail("Expected truncated content to fail to decompress")
+        } catch (DecompressionException expected) {
+        }
+
+        assertEquals(1, chunk.refCnt())
+    }
+
+    @Test
+    void testGzipDecodedBytesReservedFromBudget() {
+        assertDecodedBytesReservedFromBudget("gzip", gzip(CONTENT))
+    }
+
+    @Test
+    void testBrotliDecodedBytesReservedFromBudget() {
+        assertDecodedBytesReservedFromBudget("br", brotliUncompressed(CONTENT))
+    }
+
+    private static void assertDecodedBytesReservedFromBudget(String encoding, byte[] compressed) {
+        HarCaptureBudget budget = new HarCaptureBudget(0L, 1000L)
+
+        StreamingContentDecoder decoder = StreamingContentDecoder.forContentEncoding(encoding, null, 0L, budget)
+        decoder.decode(Unpooled.wrappedBuffer(compressed))
+
+        byte[] decoded = decoder.finish()
+
+        assertArrayEquals(Arrays.copyOf(CONTENT, 1000), decoded)
+        assertTrue(decoder.truncated)
+        assertEquals((long) CONTENT.length, decoder.decodedSize)
+        assertEquals(1000L, budget.reservedBytes)
+    }
+
+    private static void assertDecodedInChunks(String encoding, byte[] compressed) {
+        StreamingContentDecoder decoder = StreamingContentDecoder.forContentEncoding(encoding, null)
+
+        List<ByteBuf> chunks = []
+        for (int offset = 0; offset < compressed.length; offset += 100) {
+            ByteBuf chunk = Unpooled.wrappedBuffer(compressed, offset, Math.min(100, compressed.length - offset))
+            chunks.add(chunk)
+
+            decoder.decode(chunk)
+            assertEquals("Expected decoder not to modify the chunk's reader index", 0, chunk.readerIndex())
+        }
+
+        assertArrayEquals(CONTENT, decoder.finish())
+
+        chunks.each { assertEquals("Expected decoder to release content", 1, it.refCnt()) }
+    }
+
+    private static void waitForRefCnt(ByteBuf buffer, int refCnt) {
+        long deadline = System.currentTimeMillis() + 5000
+        while (buffer.refCnt() != refCnt && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+    }
+
+    static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream()
+        new GZIPOutputStream(compressed).withStream { it.write(content) }
+        return compressed.toByteArray()
+    }
+
+    static byte[] deflate(byte[] content) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream()
+        new DeflaterOutputStream(compressed).withStream { it.write(content) }
+        return compressed.toByteArray()
+    }
+
+    /**
+     * Encodes the content as a brotli stream of uncompressed meta-blocks of up to 64 KB each (RFC 7932, section 9.2), since
+     * there is no brotli encoder available to the tests.
+     */
+    static byte[] brotliUncompressed(byte[] content) {
+        assert content.length > 0
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream()
+
+        for (int offset = 0; offset < content.length; offset += 65536) {
+            int length = Math.min(65536, content.length - offset)
+
+            // ISLAST = 0 (1 bit), MNIBBLES = 4 (2 bits), MLEN - 1 (16 bits), ISUNCOMPRESSED = 1 (1 bit)
+            int header = ((length - 1) << 3) | (1 << 19)
+            if (offset == 0) {
+                // the first meta-block is preceded by WBITS = 16 (1 bit)
+                header = header << 1
+            }
+
+            stream.write(header & 0xFF)
+            stream.write((header >> 8) & 0xFF)
+            stream.write((header >> 16) & 0xFF)
+            stream.write(content, offset, length)
+        }
+
+        // ISLAST = 1, ISLASTEMPTY = 1
+        stream.write(0x03)
+
+        return stream.toByteArray()
+    }
+
+    /**
+     * A heap buffer that blocks the first read of its contents until it is unblocked, to hold the brotli decoding thread.
+     */
+    private static class BlockingByteBuf extends UnpooledHeapByteBuf {
+        final CountDownLatch reading = new CountDownLatch(1)
+        final CountDownLatch unblock = new CountDownLatch(1)
+
+        BlockingByteBuf(byte[] contents) {
+            super(UnpooledByteBufAllocator.DEFAULT, contents, contents.length)
+        }
+
+        @Override
+        ByteBuf getBytes(int index, byte[] dst, int dstIndex, int length) {
+            reading.countDown()
+            unblock.await()
+
+            return super.getBytes(index, dst, dstIndex, length)
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package net.lightbody.bmp.proxy
+
+import com.google.common.util.concurrent.Futures
+import com.google.common.util.concurrent.ListenableFuture
+import com.google.common.util.concurrent.ListeningScheduledExecutorService
+import com.google.common.util.concurrent.MoreExecutors
+import com.google.common.util.concurrent.SettableFuture
+import io.netty.handler.codec.http.DefaultFullHttpResponse
+import io.netty.handler.codec.http.HttpHeaders
+import io.netty.handler.codec.http.HttpRequest
+import io.netty.handler.codec.http.HttpResponse
+import io.netty.handler.codec.http.HttpResponseStatus
+import io.netty.handler.codec.http.HttpVersion
+import net.lightbody.bmp.BrowserMobProxyServer
+import net.lightbody.bmp.filters.AsyncRequestFilter
+import net.lightbody.bmp.filters.AsyncResponseFilter
+import net.lightbody.bmp.proxy.test.util.MockServerTest
+import net.lightbody.bmp.proxy.test.util.NewProxyServerTestUtil
+import net.lightbody.bmp.util.HttpMessageContents
+import net.lightbody.bmp.util.HttpMessageInfo
+import org.apache.http.client.methods.CloseableHttpResponse
+import org.apache.http.client.methods.HttpGet
+import org.junit.After
+import org.junit.Test
+import org.littleshoot.proxy.impl.ThreadPoolConfiguration
+import org.mockserver.matchers.Times
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertTrue
+import static org.mockserver.model.HttpRequest.request
+import static org.mockserver.model.HttpResponse.response
+
+class AsyncFilterTest extends MockServerTest {
+    private BrowserMobProxyServer proxy
+
+    private ListeningScheduledExecutorService filterExecutor = MoreExecutors.listeningDecorator(Executors.newScheduledThreadPool(2))
+
+    @After
+    void tearDown() {
+        if (proxy?.started) {
+            proxy.abort()
+        }
+
+        filterExecutor.shutdownNow()
+    }
+
+    @Test
+    void testAsyncRequestFilterModifiesRequest() {
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/asyncrequestfilter")
+                .withHeader("X-Async-Filter", "added"),
+                Times.exactly(2))
+                .respond(response()
+                .withStatusCode(200)
+                .withBody("success"))
+
+        proxy = new BrowserMobProxyServer()
+        proxy.start()
+
+        // async filters can be added after the proxy has started
+        proxy.addAsyncRequestFilter(new AsyncRequestFilter() {
+            @Override
+            ListenableFuture<HttpResponse> filterRequest(HttpRequest request, HttpMessageContents contents, HttpMessageInfo messageInfo) {
+                return filterExecutor.schedule({
+                    request.headers().add("X-Async-Filter", "added")
+                    return null
+                } as Callable<HttpResponse>, 100, TimeUnit.MILLISECONDS)
+            }
+        })
+
+        2.times {
+            NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+                CloseableHttpResponse response = it.execute(new HttpGet("http://localhost:${mockServerPort}/asyncrequestfilter"))
+                assertEquals("Expected the async filter to add the header the mock server requires", 200, response.getStatusLine().getStatusCode())
+                assertEquals("success", NewProxyServerTestUtil.toStringAndClose(response.getEntity().getContent()))
+            }
+        }
+    }
+
+    @Test
+    void testAsyncRequestFilterShortCircuitsRequest() {
+        proxy = new BrowserMobProxyServer()
+        proxy.addAsyncRequestFilter(new AsyncRequestFilter() {
+            @Override
+            ListenableFuture<HttpResponse> filterRequest(HttpRequest request, HttpMessageContents contents, HttpMessageInfo messageInfo) {
+                return filterExecutor.schedule({
+                    HttpResponse shortCircuitResponse = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.PAYMENT_REQUIRED)
+                    HttpHeaders.setContentLength(shortCircuitResponse, 0L)
+                    return shortCircuitResponse
+                } as Callable<HttpResponse>, 100, TimeUnit.MILLISECONDS)
+            }
+        })
+        proxy.start()
+
+        NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+            CloseableHttpResponse response = it.execute(new HttpGet("http://localhost:${mockServerPort}/asyncshortcircuit"))
+            assertEquals("Expected the short-circuit response from the async filter", 402, response.getStatusLine().getStatusCode())
+        }
+    }
+
+    @Test
+    void testAsyncRequestFilterTimesOut() {
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/asynctimeout"),
+                Times.exactly(2))
+                .respond(response()
+                .withStatusCode(200)
+                .withBody("success"))
+
+        List<SettableFuture<HttpResponse>> futures = Collections.synchronizedList([])
+
+        proxy = new BrowserMobProxyServer()
+        proxy.setAsyncFilterTimeout(500, TimeUnit.MILLISECONDS)
+        proxy.addAsyncRequestFilter(new AsyncRequestFilter() {
+            @Override
+            ListenableFuture<HttpResponse> filterRequest(HttpRequest request, HttpMessageContents contents, HttpMessageInfo messageInfo) {
+                SettableFuture<HttpResponse> future = SettableFuture.create()
+                futures.add(future)
+                return future
+            }
+        })
+        proxy.start()
+
+        2.times {
+            NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+                CloseableHttpResponse response = it.execute(new HttpGet("http://localhost:${mockServerPort}/asynctimeout"))
+                assertEquals("Expected the request to proceed after the async filter timed out", 200, response.getStatusLine().getStatusCode())
+                NewProxyServerTestUtil.toStringAndClose(response.getEntity().getContent())
+            }
+        }
+
+        assertEquals(2, futures.size())
+        futures.each {
+            assertTrue("Expected the timed out future to be cancelled", it.isCancelled())
+        }
+    }
+
+    @Test
+    void testAsyncResponseFilterModifiesContents() {
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/asyncresponsefilter"),
+                Times.exactly(1))
+                .respond(response()
+                .withStatusCode(200)
+                .withHeader("Content-Type", "text/plain")
+                .withBody("original contents"))
+
+        proxy = new BrowserMobProxyServer()
+        proxy.addAsyncResponseFilter(new AsyncResponseFilter() {
+            @Override
+            ListenableFuture<?> filterResponse(HttpResponse response, HttpMessageContents contents, HttpMessageInfo messageInfo) {
+                return filterExecutor.schedule({
+                    contents.setTextContents(contents.getTextContents().replace("original", "modified"))
+                    response.headers().add("X-Async-Filter", messageInfo.getOriginalUrl())
+                } as Runnable, 100, TimeUnit.MILLISECONDS)
+            }
+        })
+        proxy.start()
+
+        String requestUrl = "http://localhost:${mockServerPort}/asyncresponsefilter"
+
+        NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+            CloseableHttpResponse response = it.execute(new HttpGet(requestUrl))
+            assertEquals(200, response.getStatusLine().getStatusCode())
+            assertEquals(requestUrl, response.getFirstHeader("X-Async-Filter")?.getValue())
+            assertEquals("modified contents", NewProxyServerTestUtil.toStringAndClose(response.getEntity().getContent()))
+        }
+    }
+
+    @Test
+    void testAsyncFiltersInstalledBeforeStartReturns() {
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/asyncinstalled"),
+                Times.exactly(3))
+                .respond(response()
+                .withStatusCode(200)
+                .withBody("success"))
+
+        // each proxy's first connection is made as soon as start() returns
+        3.times {
+            BrowserMobProxyServer startedProxy = new BrowserMobProxyServer()
+            startedProxy.addAsyncResponseFilter(new AsyncResponseFilter() {
+                @Override
+                ListenableFuture<?> filterResponse(HttpResponse response, HttpMessageContents contents, HttpMessageInfo messageInfo) {
+                    response.headers().add("X-Async-Filter", "invoked")
+                    return Futures.immediateFuture(null)
+                }
+            })
+            startedProxy.start()
+
+            try {
+                NewProxyServerTestUtil.getNewHttpClient(startedProxy.port).withCloseable {
+                    CloseableHttpResponse response = it.execute(new HttpGet("http://localhost:${mockServerPort}/asyncinstalled"))
+                    assertEquals("Expected the async filter to be invoked on the first connection", "invoked", response.getFirstHeader("X-Async-Filter")?.getValue())
+                    NewProxyServerTestUtil.toStringAndClose(response.getEntity().getContent())
+                }
+            } finally {
+                startedProxy.abort()
+            }
+        }
+    }
+
+    @Test
+    void testPendingAsyncFilterDoesNotBlockOtherConnections() {
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/asyncslow"),
+                Times.exactly(1))
+                .respond(response()
+                .withStatusCode(200)
+                .withBody("slow"))
+
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/asyncfast"),
+                Times.exactly(1))
+                .respond(response()
+                .withStatusCode(200)
+                .withBody("fast"))
+
+        SettableFuture<HttpResponse> slowFilterFuture = SettableFuture.create()
+        CountDownLatch slowRequestFiltering = new CountDownLatch(1)
+
+        proxy = new BrowserMobProxyServer()
+        // a single event loop serves all client connections, so a blocked event loop would block the fast request
+        proxy.setThreadPoolConfiguration(new ThreadPoolConfiguration()
+                .withAcceptorThreads(1)
+                .withClientToProxyWorkerThreads(1)
+                .withProxyToServerWorkerThreads(1))
+        proxy.setAsyncFilterTimeout(0, TimeUnit.MILLISECONDS)
+        proxy.addAsyncRequestFilter(new AsyncRequestFilter() {
+            @Override
+            ListenableFuture<HttpResponse> filterRequest(HttpRequest request, HttpMessageContents contents, HttpMessageInfo messageInfo) {
+                if (messageInfo.getOriginalUrl().endsWith("/asyncslow")) {
+                    slowRequestFiltering.countDown()
+                    return slowFilterFuture
+                }
+
+                return null
+            }
+        })
+        proxy.start()
+
+        Future<String> slowResponse = Executors.newSingleThreadExecutor().submit({
+            NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+                CloseableHttpResponse response = it.execute(new HttpGet("http://localhost:${mockServerPort}/asyncslow"))
+                return NewProxyServerTestUtil.toStringAndClose(response.getEntity().getContent())
+            }
+        } as Callable<String>)
+
+        assertTrue("Expected the slow request to reach the async filter", slowRequestFiltering.await(10, TimeUnit.SECONDS))
+
+        NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+            CloseableHttpResponse response = it.execute(new HttpGet("http://localhost:${mockServerPort}/asyncfast"))
+            assertEquals("Expected the fast request to complete while the slow request's filter was pending", "fast", NewProxyServerTestUtil.toStringAndClose(response.getEntity().getContent()))
+        }
+
+        assertFalse("Expected the slow request to wait for its filter", slowResponse.isDone())
+
+        slowFilterFuture.set(null)
+
+        assertEquals("slow", slowResponse.get(10, TimeUnit.SECONDS))
+    }
+}
@@ -0,0 +1,109 @@
+package net.lightbody.bmp.proxy
+
+import net.lightbody.bmp.BrowserMobProxy
+import net.lightbody.bmp.BrowserMobProxyServer
+import net.lightbody.bmp.core.har.Har
+import net.lightbody.bmp.core.har.HarEntry
+import net.lightbody.bmp.proxy.test.util.MockServerTest
+import net.lightbody.bmp.proxy.test.util.NewProxyServerTestUtil
+import org.apache.http.client.methods.HttpGet
+import org.junit.After
+import org.junit.Test
+import org.mockserver.matchers.Times
+import org.mockserver.model.Header
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertNull
+import static org.junit.Assert.assertTrue
+import static org.mockserver.model.HttpRequest.request
+import static org.mockserver.model.HttpResponse.response
+
+class ContentCapturePolicyTest extends MockServerTest {
+    BrowserMobProxy proxy
+
+    @After
+    void tearDown() {
+        if (proxy?.started) {
+            proxy.abort()
+        }
+    }
+
+    @Test
+    void testRuleMatchesAllCriteria() {
+        ContentCaptureRule rule = new ContentCaptureRule("http://www\\.example\\.com/.*", "www.example.com", "text/html.*", 10, 100)
+
+        assertTrue(rule.matchesRequest("http://www.example.com/index.html", "WWW.EXAMPLE.COM"))
+        assertFalse(rule.matchesRequest("http://www.example.com/index.html", "other.example.com"))
+
+        assertTrue(rule.matchesResponse("http://www.example.com/index.html", "www.example.com", "text/html; charset=UTF-8", 50))
+        assertTrue("Expected unknown content length to match", rule.matchesResponse("http://www.example.com/index.html", "www.example.com", "text/html", -1))
+        assertFalse(rule.matchesResponse("http://www.example.com/index.html", "www.example.com", "image/png", 50))
+        assertFalse(rule.matchesResponse("http://www.example.com/index.html", "www.example.com", null, 50))
+        assertFalse(rule.matchesResponse("http://www.example.com/index.html", "www.example.com", "text/html", 5))
+        assertFalse(rule.matchesResponse("http://www.example.com/index.html", "www.example.com", "text/html", 500))
+        assertFalse(rule.matchesResponse("http://www.other.com/index.html", "www.example.com", "text/html", 50))
+    }
+
+    @Test
+    void testPolicyWithoutRulesMatchesEverything() {
+        assertTrue(ContentCapturePolicy.CAPTURE_ALL.captureAll)
+        assertTrue(ContentCapturePolicy.CAPTURE_ALL.matchesResponse("http://www.example.com/", "www.example.com", "image/png", 1))
+        assertTrue(ContentCapturePolicy.CAPTURE_ALL.sample())
+    }
+
+    @Test
+    void testZeroPercentSampleNeverSamples() {
+        ContentCapturePolicy policy = new ContentCapturePolicy(null, 0)
+
+        assertFalse(policy.captureAll)
+        100.times { assertFalse(policy.sample()) }
+    }
+
+    @Test
+    void testOnlyMatchingResponseContentCaptured() {
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/page.html"),
+                Times.exactly(1))
+                .respond(response()
+                .withStatusCode(200)
+                .withBody("<html></html>")
+                .withHeader(new Header("Content-Type", "text/html; charset=UTF-8")))
+
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/style.css"),
+                Times.exactly(1))
+                .respond(response()
+                .withStatusCode(200)
+                .withBody("body {}")
+                .withHeader(new Header("Content-Type", "text/css")))
+
+        proxy = new BrowserMobProxyServer()
+        proxy.setHarCaptureTypes(CaptureType.RESPONSE_CONTENT)
+        proxy.setHarContentCapturePolicy(new ContentCapturePolicy([new ContentCaptureRule(null, "text/html.*")]))
+        proxy.start()
+
+        proxy.newHar()
+
+        NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+            assertEquals("<html></html>", NewProxyServerTestUtil.toStringAndClose(it.execute(new HttpGet("http://localhost:${mockServerPort}/page.html")).getEntity().getContent()))
+            assertEquals("body {}", NewProxyServerTestUtil.toStringAndClose(it.execute(new HttpGet("http://localhost:${mockServerPort}/style.css")).getEntity().getContent()))
+        }
+
+        Thread.sleep(500)
+        Har har = proxy.getHar()
+
+        assertEquals(2, har.log.entries.size())
+
+        HarEntry htmlEntry = har.log.entries.find { it.request.url.endsWith("/page.html") }
+        HarEntry cssEntry = har.log.entries.find { it.request.url.endsWith("/style.css") }
+
+        assertEquals("<html></html>", htmlEntry.response.content.text)
+
+        assertNull("Expected content of response not matched by the policy to be skipped", cssEntry.response.content.text)
+        assertEquals("Expected response body size to be captured regardless of the policy", 7L, cssEntry.response.bodySize)
+        assertEquals("text/css", cssEntry.response.content.mimeType)
+    }
+}
@@ -6,6 +6,7 @@ import io.netty.handler.codec.http.HttpRequest
 import io.netty.handler.codec.http.HttpResponse
 import net.lightbody.bmp.BrowserMobProxy
 import net.lightbody.bmp.BrowserMobProxyServer
+import net.lightbody.bmp.filters.ConditionalFiltersSource
 import net.lightbody.bmp.proxy.test.util.MockServerTest
 import net.lightbody.bmp.proxy.test.util.NewProxyServerTestUtil
 import org.apache.http.client.methods.CloseableHttpResponse
@@ -14,9 +15,11 @@ import org.junit.After
 import org.junit.Test
 import org.littleshoot.proxy.HttpFilters
 import org.littleshoot.proxy.HttpFiltersAdapter
+import org.littleshoot.proxy.HttpFiltersSource
 import org.littleshoot.proxy.HttpFiltersSourceAdapter
 import org.mockserver.matchers.Times
 
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicBoolean
 
 import static org.junit.Assert.assertEquals
@@ -226,6 +229,34 @@ class FilterChainTest extends MockServerTest {
         assertTrue("Expected second response filter to be invoked", secondResponseFilterInvoked.get())
     }
 
+    @Test
+    void testInactiveBuiltInFiltersExcludedFromFilterPlan() {
+        BrowserMobProxyServer proxyServer = new BrowserMobProxyServer()
+        proxy = proxyServer
+        proxy.start()
+
+        List<HttpFiltersSource> unconfiguredPlan = proxyServer.activeFilterPlan.filterFactories
+        assertTrue("Expected unconfigured built-in filters to be excluded from the filter plan", unconfiguredPlan.size() < proxyServer.filterFactories.size())
+        assertFalse("Expected no inactive filter factories in the filter plan", unconfiguredPlan.any { it instanceof ConditionalFiltersSource && !it.active })
+
+        proxy.blacklistRequests("http://www\\.blacklisted\\.domain/.*", 404)
+        proxy.setLatency(10, TimeUnit.MILLISECONDS)
+        proxy.addHeader("X-Header", "value")
+
+        assertEquals("Expected the blacklist, latency and header filters to be added to the filter plan", unconfiguredPlan.size() + 3, proxyServer.activeFilterPlan.filterFactories.size())
+
+        proxy.clearBlacklist()
+        proxy.setLatency(0, TimeUnit.MILLISECONDS)
+        proxy.removeAllHeaders()
+
+        assertEquals("Expected the filter plan to exclude the filters once they are no longer configured", unconfiguredPlan, proxyServer.activeFilterPlan.filterFactories)
+
+        HttpFiltersSource filterFactory = new HttpFiltersSourceAdapter()
+        proxy.addLastHttpFilterFactory(filterFactory)
+
+        assertEquals("Expected filter factories added after the proxy started to be added to the filter plan", filterFactory, proxyServer.activeFilterPlan.filterFactories.last())
+    }
+
     /**
      * An HttpFilters implementation that throws an exception from every filter method.
      */
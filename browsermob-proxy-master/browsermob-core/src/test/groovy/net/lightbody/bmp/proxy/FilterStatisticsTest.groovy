@@ -0,0 +1,114 @@
+package net.lightbody.bmp.proxy
+
+import io.netty.channel.ChannelHandlerContext
+import io.netty.handler.codec.http.HttpObject
+import io.netty.handler.codec.http.HttpRequest
+import io.netty.handler.codec.http.HttpResponse
+import net.lightbody.bmp.BrowserMobProxyServer
+import net.lightbody.bmp.filters.RegisterRequestFilter
+import net.lightbody.bmp.filters.support.FilterCallbackStatistics
+import net.lightbody.bmp.filters.support.FilterStatistics
+import net.lightbody.bmp.proxy.test.util.MockServerTest
+import net.lightbody.bmp.proxy.test.util.NewProxyServerTestUtil
+import org.apache.http.client.methods.CloseableHttpResponse
+import org.apache.http.client.methods.HttpGet
+import org.junit.After
+import org.junit.Test
+import org.littleshoot.proxy.HttpFilters
+import org.littleshoot.proxy.HttpFiltersAdapter
+import org.littleshoot.proxy.HttpFiltersSourceAdapter
+import org.mockserver.matchers.Times
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertNotNull
+import static org.junit.Assert.assertTrue
+import static org.mockserver.model.HttpRequest.request
+import static org.mockserver.model.HttpResponse.response
+
+class FilterStatisticsTest extends MockServerTest {
+    private BrowserMobProxyServer proxy
+
+    @After
+    void tearDown() {
+        if (proxy?.started) {
+            proxy.abort()
+        }
+    }
+
+    @Test
+    void testFilterCallbacksAndExceptionsRecorded() {
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/filterstatistics"),
+                Times.exactly(2))
+                .respond(response()
+                .withStatusCode(200)
+                .withBody("success"))
+
+        proxy = new BrowserMobProxyServer()
+        proxy.addHttpFilterFactory(new HttpFiltersSourceAdapter() {
+            @Override
+            HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
+                return new ThrowOnRequestFilter(originalRequest)
+            }
+        })
+        proxy.start()
+
+        String requestUrl = "http://localhost:${mockServerPort}/filterstatistics"
+
+        NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+            CloseableHttpResponse response = it.execute(new HttpGet(requestUrl))
+            assertEquals("Did not receive HTTP 200 from mock server", 200, response.getStatusLine().getStatusCode())
+            NewProxyServerTestUtil.toStringAndClose(response.getEntity().getContent())
+        }
+
+        assertTrue("Expected no filter statistics when statistics are disabled", proxy.filterStatistics.isEmpty())
+
+        proxy.filterStatisticsEnabled = true
+
+        NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+            CloseableHttpResponse response = it.execute(new HttpGet(requestUrl))
+            assertEquals("Did not receive HTTP 200 from mock server", 200, response.getStatusLine().getStatusCode())
+            NewProxyServerTestUtil.toStringAndClose(response.getEntity().getContent())
+        }
+
+        List<FilterStatistics> statistics = proxy.filterStatistics
+
+        FilterStatistics throwingFilter = statistics.find { it.filter == ThrowOnRequestFilter.name }
+        assertNotNull("Expected statistics for the throwing filter", throwingFilter)
+        assertEquals(1L, throwingFilter.exceptions)
+
+        FilterCallbackStatistics clientToProxyRequest = throwingFilter.callbacks.get("clientToProxyRequest")
+        assertNotNull("Expected clientToProxyRequest to be recorded", clientToProxyRequest)
+        assertEquals(1L, clientToProxyRequest.exceptions)
+        assertTrue(clientToProxyRequest.count >= 1)
+        assertTrue(clientToProxyRequest.max >= clientToProxyRequest.p50)
+        assertTrue("Expected filter callbacks after the request filters to be recorded", throwingFilter.callbacks.containsKey("proxyToClientResponse"))
+
+        FilterStatistics registerRequestFilter = statistics.find { it.filter == RegisterRequestFilter.name }
+        assertNotNull("Expected statistics for built-in filters", registerRequestFilter)
+        assertEquals(0L, registerRequestFilter.exceptions)
+        assertTrue(registerRequestFilter.count > 0)
+
+        proxy.resetFilterStatistics()
+        assertTrue("Expected no filter statistics after reset", proxy.filterStatistics.isEmpty())
+    }
+
+    /**
+     * A filter that throws an exception when filtering the HttpRequest.
+     */
+    static class ThrowOnRequestFilter extends HttpFiltersAdapter {
+        ThrowOnRequestFilter(HttpRequest originalRequest) {
+            super(originalRequest)
+        }
+
+        @Override
+        HttpResponse clientToProxyRequest(HttpObject httpObject) {
+            if (httpObject instanceof HttpRequest) {
+                throw new RuntimeException("Throwing exception from filter")
+            }
+
+            return null
+        }
+    }
+}
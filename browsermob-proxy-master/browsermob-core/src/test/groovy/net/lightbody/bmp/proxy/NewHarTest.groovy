@@ -7,9 +7,17 @@ import net.lightbody.bmp.core.har.Har
 import net.lightbody.bmp.core.har.HarContent
 import net.lightbody.bmp.core.har.HarCookie
 import net.lightbody.bmp.core.har.HarEntry
+import net.lightbody.bmp.core.har.HarEntryBatch
+import net.lightbody.bmp.core.har.HarEntryIndex
+import net.lightbody.bmp.core.har.HarIndexDimension
+import net.lightbody.bmp.core.har.HarIndexMetric
+import net.lightbody.bmp.core.har.HarIndexQuery
+import net.lightbody.bmp.core.har.HarIndexStats
 import net.lightbody.bmp.core.har.HarNameValuePair
+import net.lightbody.bmp.core.har.HarPageSummary
 import net.lightbody.bmp.core.har.HarResponse
 import net.lightbody.bmp.core.har.HarTimings
+import net.lightbody.bmp.core.har.SpillingContentStore
 import net.lightbody.bmp.filters.util.HarCaptureUtil
 import net.lightbody.bmp.proxy.dns.AdvancedHostResolver
 import net.lightbody.bmp.proxy.test.util.MockServerTest
@@ -28,6 +36,7 @@ import java.text.SimpleDateFormat
 import java.util.concurrent.TimeUnit
 
 import static org.hamcrest.Matchers.empty
+import static org.hamcrest.Matchers.endsWith
 import static org.hamcrest.Matchers.equalTo
 import static org.hamcrest.Matchers.greaterThan
 import static org.hamcrest.Matchers.greaterThanOrEqualTo
@@ -38,6 +47,7 @@ import static org.junit.Assert.assertFalse
 import static org.junit.Assert.assertNotNull
 import static org.junit.Assert.assertNull
 import static org.junit.Assert.assertThat
+import static org.junit.Assert.assertTrue
 import static org.mockito.Mockito.mock
 import static org.mockito.Mockito.when
 import static org.mockserver.model.HttpRequest.request
@@ -223,6 +233,220 @@ class NewHarTest extends MockServerTest {
 
         assertEquals("Expected to capture body content in HAR", expectedResponseBody, content.text)
         assertEquals("Unexpected response content length", expectedResponseBody.getBytes("UTF-8").length, content.size)
+
+        assertNotNull("Expected response body to be kept as bytes until the HAR is read", content.storedContent)
+    }
+
+    @Test
+    void testCaptureResponseContentInSpillingContentStore() {
+        String expectedResponseBody = "success" * 1000;
+        String responseContentType = "text/plain; charset=UTF-8";
+
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/testCaptureResponseContentInSpillingContentStore"),
+                Times.exactly(1))
+                .respond(response()
+                .withStatusCode(200)
+                .withBody(expectedResponseBody)
+                .withHeader(new Header("Content-Type", responseContentType)))
+
+        proxy = new BrowserMobProxyServer();
+        proxy.setHarContentStoreFactory(SpillingContentStore.newFactory(1024, SpillingContentStore.SpillTarget.MEMORY_MAPPED_FILE, null))
+        proxy.setHarCaptureTypes(CaptureType.RESPONSE_CONTENT)
+        proxy.start()
+
+        proxy.newHar()
+
+        NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+            String responseBody = NewProxyServerTestUtil.toStringAndClose(it.execute(new HttpGet("http://localhost:${mockServerPort}/testCaptureResponseContentInSpillingContentStore")).getEntity().getContent());
+            assertEquals("Did not receive expected response from mock server", expectedResponseBody, responseBody);
+        };
+
+        Thread.sleep(500)
+        Har har = proxy.endHar()
+
+        SpillingContentStore contentStore = (SpillingContentStore) har.log.contentStore
+        assertEquals("Expected response body to be spilled", expectedResponseBody.length(), contentStore.spilledBytes)
+        assertFalse("Expected spill file to be deleted when the HAR ended", contentStore.spillFile.exists())
+
+        HarContent content = har.getLog().getEntries().first().response.content
+        assertEquals("Expected to read body content from the spilled content", expectedResponseBody, content.text)
+        assertEquals("Unexpected response content length", expectedResponseBody.length(), content.size)
+    }
+
+    @Test
+    void testCaptureResponseContentTruncatedAtMaxContentSize() {
+        String responseBody = "success" * 1000;
+
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/testCaptureResponseContentTruncatedAtMaxContentSize"),
+                Times.exactly(1))
+                .respond(response()
+                .withStatusCode(200)
+                .withBody(responseBody)
+                .withHeader(new Header("Content-Type", "text/plain; charset=UTF-8")))
+
+        proxy = new BrowserMobProxyServer();
+        proxy.setHarMaxContentSize(700)
+        proxy.setHarCaptureTypes(CaptureType.RESPONSE_CONTENT)
+        proxy.start()
+
+        proxy.newHar()
+
+        NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+            String body = NewProxyServerTestUtil.toStringAndClose(it.execute(new HttpGet("http://localhost:${mockServerPort}/testCaptureResponseContentTruncatedAtMaxContentSize")).getEntity().getContent());
+            assertEquals("Expected the client to receive the entire response", responseBody, body);
+        };
+
+        Thread.sleep(500)
+        Har har = proxy.getHar()
+
+        HarContent content = har.getLog().getEntries().first().response.content
+        assertEquals("Expected captured content to be truncated", responseBody.substring(0, 700), content.text)
+        assertTrue("Expected content to be marked as truncated", content.truncated)
+        assertEquals("Expected original content size to be recorded", responseBody.length(), content.originalSize)
+    }
+
+    @Test
+    void testHarEntriesPolledWithCursor() {
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/testHarEntriesPolledWithCursor"),
+                Times.unlimited())
+                .respond(response()
+                .withStatusCode(200)
+                .withBody("success"))
+
+        proxy = new BrowserMobProxyServer();
+        proxy.start()
+
+        proxy.newHar()
+
+        NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+            2.times { i ->
+                NewProxyServerTestUtil.toStringAndClose(it.execute(new HttpGet("http://localhost:${mockServerPort}/testHarEntriesPolledWithCursor?request=${i}")).getEntity().getContent());
+            }
+        };
+
+        Thread.sleep(500)
+        HarEntryBatch firstPoll = proxy.getHarEntriesSince(0)
+
+        assertEquals("Expected both completed entries in the first poll", 2, firstPoll.entries.size())
+        assertEquals(2L, firstPoll.cursor)
+        assertEquals(1L, firstPoll.entries[0].sequence)
+        assertEquals(200, firstPoll.entries[0].response.status)
+
+        NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+            NewProxyServerTestUtil.toStringAndClose(it.execute(new HttpGet("http://localhost:${mockServerPort}/testHarEntriesPolledWithCursor?request=2")).getEntity().getContent());
+        };
+
+        Thread.sleep(500)
+        HarEntryBatch secondPoll = proxy.getHarEntriesSince(firstPoll.cursor)
+
+        assertEquals("Expected only the newly completed entry in the second poll", 1, secondPoll.entries.size())
+        assertThat(secondPoll.entries[0].request.url, endsWith("request=2"))
+        assertEquals(3L, secondPoll.cursor)
+
+        HarEntryBatch emptyPoll = proxy.getHarEntriesSince(secondPoll.cursor)
+        assertThat("Expected no entries when nothing completed since the last poll", emptyPoll.entries, empty())
+        assertEquals(3L, emptyPoll.cursor)
+    }
+
+    @Test
+    void testHarIndexAndPageSummaryUpdatedAsEntriesComplete() {
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/testHarIndexAndPageSummary.html"),
+                Times.unlimited())
+                .respond(response()
+                .withStatusCode(200)
+                .withBody("<!DOCTYPE html><html></html>")
+                .withHeader(new Header("Content-Type", "text/html; charset=UTF-8")))
+
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/testHarIndexAndPageSummary.js"),
+                Times.unlimited())
+                .respond(response()
+                .withStatusCode(200)
+                .withBody("var x = 1;")
+                .withHeader(new Header("Content-Type", "application/javascript")))
+
+        proxy = new BrowserMobProxyServer();
+        proxy.start()
+
+        proxy.newHar("first page")
+
+        NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+            NewProxyServerTestUtil.toStringAndClose(it.execute(new HttpGet("http://localhost:${mockServerPort}/testHarIndexAndPageSummary.html")).getEntity().getContent());
+            NewProxyServerTestUtil.toStringAndClose(it.execute(new HttpGet("http://localhost:${mockServerPort}/testHarIndexAndPageSummary.js")).getEntity().getContent());
+        };
+
+        Thread.sleep(500)
+
+        HarEntryIndex index = proxy.harEntryIndex
+        assertEquals(2, index.entryCount)
+
+        Map<String, HarIndexStats> bytesByMimeType = index.statsBy(new HarIndexQuery(), HarIndexMetric.BODY_SIZE, HarIndexDimension.MIME_TYPE)
+        assertEquals(28d, bytesByMimeType["text/html"].sum, 0.001d)
+        assertEquals(10d, bytesByMimeType["application/javascript"].sum, 0.001d)
+
+        List<HarPageSummary> summaries = proxy.harPageSummaries
+        assertEquals(1, summaries.size())
+        assertEquals("first page", summaries[0].pageref)
+        assertEquals(2, summaries[0].entryCount)
+        assertEquals(38L, summaries[0].pageSize)
+        assertEquals(10L, summaries[0].jsSize)
+        assertEquals(28L, summaries[0].mainHtmlSize)
+
+        proxy.newHar()
+        assertEquals("Expected a new HAR to have an empty index", 0, proxy.harEntryIndex.entryCount)
+    }
+
+    @Test
+    void testEndedPagesPersistedAndStitchedIntoHar() {
+        mockServer.when(request()
+                .withMethod("GET")
+                .withPath("/testEndedPagesPersisted"),
+                Times.unlimited())
+                .respond(response()
+                .withStatusCode(200)
+                .withBody("success"))
+
+        File persistenceDirectory = java.nio.file.Files.createTempDirectory("har-persistence-test").toFile()
+
+        proxy = new BrowserMobProxyServer();
+        proxy.setHarPersistence(persistenceDirectory, 0)
+        proxy.setHarCaptureTypes(CaptureType.RESPONSE_CONTENT)
+        proxy.start()
+
+        proxy.newHar("first page")
+
+        NewProxyServerTestUtil.getNewHttpClient(proxy.port).withCloseable {
+            NewProxyServerTestUtil.toStringAndClose(it.execute(new HttpGet("http://localhost:${mockServerPort}/testEndedPagesPersisted?page=1")).getEntity().getContent());
+
+            Thread.sleep(500)
+            Har firstPageHar = proxy.newPage("second page")
+            assertEquals(1, firstPageHar.log.entries.size())
+
+            NewProxyServerTestUtil.toStringAndClose(it.execute(new HttpGet("http://localhost:${mockServerPort}/testEndedPagesPersisted?page=2")).getEntity().getContent());
+        };
+
+        Thread.sleep(500)
+
+        proxy.har.log.pageArchive.flush()
+        assertEquals("Expected the first page's entry to be persisted", 1L, proxy.har.log.pageArchive.writtenEntryCount)
+        assertEquals(1, persistenceDirectory.listFiles().length)
+
+        Har har = proxy.endHar()
+        assertEquals(["first page", "second page"], har.log.entries*.pageref)
+        assertThat(har.log.entries[0].request.url, endsWith("page=1"))
+        assertThat(har.log.entries[1].request.url, endsWith("page=2"))
+        assertEquals("success", har.log.entries[0].response.content.text)
+
+        persistenceDirectory.deleteDir()
     }
 
     @Test
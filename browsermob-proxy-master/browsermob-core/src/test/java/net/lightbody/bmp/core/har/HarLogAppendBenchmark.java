@@ -0,0 +1,81 @@
+package net.lightbody.bmp.core.har;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of building a HAR with {@link HarLog#addEntry(HarEntry)} to the cost of appending the same entries to a
+ * {@link CopyOnWriteArrayList}, which previously backed the HarLog's entries. This benchmark is not run as part of the build.
+ * To run it, execute the main method from an IDE, or run the test classpath from the command line, e.g.:
+ * <pre>
+ *     mvn test-compile exec:java -Dexec.mainClass=net.lightbody.bmp.core.har.HarLogAppendBenchmark -Dexec.classpathScope=test
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class HarLogAppendBenchmark {
+    @Param({"1000", "20000"})
+    public int numEntries;
+
+    private HarEntry[] entries;
+
+    @Setup
+    public void createEntries() {
+        entries = new HarEntry[numEntries];
+        for (int i = 0; i < numEntries; i++) {
+            HarEntry entry = new HarEntry("page 1");
+            entry.setRequest(new HarRequest("GET", "http://www.example.com/" + i, "HTTP/1.1"));
+
+            entries[i] = entry;
+        }
+    }
+
+    @Benchmark
+    public HarLog appendToHarLog() {
+        HarLog log = new HarLog();
+        for (HarEntry entry : entries) {
+            log.addEntry(entry);
+        }
+
+        return log;
+    }
+
+    @Benchmark
+    public List<HarEntry> appendToCopyOnWriteArrayList() {
+        List<HarEntry> list = new CopyOnWriteArrayList<>();
+        for (HarEntry entry : entries) {
+            list.add(entry);
+        }
+
+        return list;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(HarLogAppendBenchmark.class.getSimpleName())
+                .build();
+
+        new Runner(options).run();
+    }
+}
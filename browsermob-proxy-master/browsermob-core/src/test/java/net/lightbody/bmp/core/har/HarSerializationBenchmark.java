@@ -0,0 +1,78 @@
+package net.lightbody.bmp.core.har;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of serializing a HAR with the {@link HarModule} serializers to serializing it with Jackson's bean
+ * serializers. The HAR is built by {@link HarFixtureBuilder#detailed()}, so its entries have request and response headers,
+ * cookies, query parameters, post data, timings and small text bodies. This benchmark is not run as part of the build. To run
+ * it, execute the main method from an IDE, or run the test classpath from the command line, e.g.:
+ * <pre>
+ *     mvn test-compile exec:java -Dexec.mainClass=net.lightbody.bmp.core.har.HarSerializationBenchmark -Dexec.classpathScope=test
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class HarSerializationBenchmark {
+    @Param({"10000"})
+    public int numEntries;
+
+    private Har har;
+
+    private HarStreamingWriter beanSerializerWriter;
+    private HarStreamingWriter harModuleWriter;
+
+    @Setup
+    public void createHar() {
+        // one page for every 100 entries
+        this.har = new HarFixtureBuilder()
+                .entries(numEntries)
+                .pages(Math.max(1, numEntries / 100))
+                .detailed()
+                .build();
+
+        this.beanSerializerWriter = new HarStreamingWriter(new ObjectMapper());
+        this.harModuleWriter = new HarStreamingWriter(HarFormat.JSON.newObjectMapper());
+    }
+
+    @Benchmark
+    public void serializeWithBeanSerializers() throws IOException {
+        beanSerializerWriter.write(har, ByteStreams.nullOutputStream());
+    }
+
+    @Benchmark
+    public void serializeWithHarModule() throws IOException {
+        harModuleWriter.write(har, ByteStreams.nullOutputStream());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(HarSerializationBenchmark.class.getSimpleName())
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,123 @@
+package net.lightbody.bmp.filters;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import net.lightbody.bmp.util.BrowserMobHttpUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time and memory allocated to capture a chunked response with {@link ServerResponseCaptureFilter}, compared to
+ * the previous approach of copying each chunk into a ByteArrayOutputStream. Run with the GC profiler to see the bytes
+ * allocated per operation ("gc.alloc.rate.norm"). This benchmark is not run as part of the build; to run it, execute the main
+ * method from an IDE, or run the test classpath from the command line, e.g.:
+ * <pre>
+ *     mvn test-compile exec:java -Dexec.mainClass=net.lightbody.bmp.filters.ResponseCaptureBenchmark -Dexec.classpathScope=test
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ResponseCaptureBenchmark {
+    @Param({"65536", "1048576"})
+    public int responseSize;
+
+    @Param({"8192"})
+    public int chunkSize;
+
+    private HttpRequest request;
+
+    private ByteBuf[] chunks;
+
+    @Setup
+    public void createResponseChunks() {
+        request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "http://www.example.com/");
+
+        byte[] body = new byte[responseSize];
+        new Random(0).nextBytes(body);
+
+        int numChunks = (responseSize + chunkSize - 1) / chunkSize;
+        chunks = new ByteBuf[numChunks];
+        for (int i = 0; i < numChunks; i++) {
+            int offset = i * chunkSize;
+            chunks[i] = Unpooled.directBuffer(chunkSize).writeBytes(body, offset, Math.min(chunkSize, responseSize - offset));
+        }
+    }
+
+    @TearDown
+    public void releaseResponseChunks() {
+        for (ByteBuf chunk : chunks) {
+            chunk.release();
+        }
+    }
+
+    @Benchmark
+    public byte[] captureWithServerResponseCaptureFilter() {
+        ServerResponseCaptureFilter filter = new ServerResponseCaptureFilter(request, false);
+
+        filter.serverToProxyResponse(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+        for (int i = 0; i < chunks.length - 1; i++) {
+            filter.serverToProxyResponse(new DefaultHttpContent(chunks[i].duplicate()));
+        }
+        filter.serverToProxyResponse(new DefaultLastHttpContent(chunks[chunks.length - 1].duplicate()));
+
+        return filter.getFullResponseContents();
+    }
+
+    /**
+     * The capture strategy previously used by ServerResponseCaptureFilter: copy each chunk to a byte array, write it to a
+     * ByteArrayOutputStream, and copy the stream's contents when the response is complete.
+     */
+    @Benchmark
+    public byte[] captureWithByteArrayOutputStream() throws IOException {
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+
+        for (ByteBuf chunk : chunks) {
+            contents.write(BrowserMobHttpUtil.extractReadableBytes(chunk));
+        }
+
+        // the full contents were previously copied once for the raw contents and once for the full contents
+        contents.toByteArray();
+        return contents.toByteArray();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ResponseCaptureBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,402 @@
+package net.lightbody.bmp.proxy.analyzer;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import joptsimple.ArgumentAcceptingOptionSpec;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import net.lightbody.bmp.core.har.HarPage;
+import net.lightbody.bmp.core.har.HarPageAnalyzer;
+import net.lightbody.bmp.core.har.HarPageSummary;
+import net.lightbody.bmp.core.har.HarReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Analyzes a corpus of HAR files organized as (corpus)/(category)/(device)/(site).har, e.g. HAR/Arts/Desktop/example.com.har,
+ * and writes the aggregate statistics of each category and device as JSON. For each HAR, the summary metrics of its first page
+ * are calculated by a {@link HarPageAnalyzer}, so the metrics are the same as those returned by the proxy's HAR summary.
+ * <p/>
+ * Each HAR is streamed one entry at a time using {@link HarReader#readEntries(File, net.lightbody.bmp.core.har.HarEntryListener)},
+ * so memory use does not depend on the size of the HARs, and HARs are analyzed in parallel on a fork-join pool. The result
+ * for each file is cached in the corpus directory, keyed by the SHA-256 hash of the file, so rerunning the analyzer only reads
+ * new or changed files. Files whose size and last modified time have not changed are not hashed again.
+ * <p/>
+ * HAR files may be compressed, e.g. example.com.har.gz, and may be in any of the supported HAR formats.
+ */
+public class HarCorpusAnalyzer {
+    public static final String CACHE_FILE_NAME = ".har-analyzer-cache.json";
+
+    private static final TypeReference<Map<String, HarFileResult>> CACHE_TYPE = new TypeReference<Map<String, HarFileResult>>() {};
+
+    private final Path corpusDir;
+    private final Map<String, HarFileResult> cachedResults;
+
+    private final HarReader harReader = new HarReader();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final AtomicInteger analyzedFileCount = new AtomicInteger();
+    private final AtomicInteger cachedFileCount = new AtomicInteger();
+
+    /**
+     * Creates an analyzer for the HARs in the corpus directory.
+     *
+     * @param corpusDir directory containing a subdirectory for each category
+     * @param cachedResults results of a previous run, keyed by path relative to the corpus directory
+     */
+    public HarCorpusAnalyzer(Path corpusDir, Map<String, HarFileResult> cachedResults) {
+        this.corpusDir = corpusDir;
+        this.cachedResults = cachedResults;
+    }
+
+    public static void main(String[] args) throws IOException {
+        OptionParser parser = new OptionParser();
+
+        ArgumentAcceptingOptionSpec<String> outputSpec =
+                parser.accepts("output", "The file to write the aggregate statistics to")
+                        .withRequiredArg()
+                        .ofType(String.class)
+                        .defaultsTo("har-analysis.json");
+
+        ArgumentAcceptingOptionSpec<String> cacheSpec =
+                parser.accepts("cache", "The file to cache the results of each HAR in. Defaults to " + CACHE_FILE_NAME + " in the corpus directory.")
+                        .withRequiredArg()
+                        .ofType(String.class);
+
+        ArgumentAcceptingOptionSpec<Integer> threadsSpec =
+                parser.accepts("threads", "The number of HARs to analyze in parallel")
+                        .withRequiredArg()
+                        .ofType(Integer.class)
+                        .defaultsTo(Runtime.getRuntime().availableProcessors());
+
+        parser.acceptsAll(Arrays.asList("help", "?"), "This help text");
+
+        OptionSet options = parser.parse(args);
+
+        if (options.has("?")) {
+            System.out.println("Usage: har-analyzer [options] [corpus directory, default HAR]");
+            parser.printHelpOn(System.out);
+            return;
+        }
+
+        List<String> nonOptionArgs = options.nonOptionArguments();
+        Path corpusDir = Paths.get(nonOptionArgs.isEmpty() ? "HAR" : nonOptionArgs.get(0));
+        if (!Files.isDirectory(corpusDir)) {
+            System.err.println("HAR corpus directory does not exist: " + corpusDir.toAbsolutePath());
+            System.exit(1);
+        }
+
+        Path cacheFile = options.has(cacheSpec) ? Paths.get(cacheSpec.value(options)) : corpusDir.resolve(CACHE_FILE_NAME);
+        Path outputFile = Paths.get(outputSpec.value(options));
+
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        Map<String, HarFileResult> cachedResults = Collections.emptyMap();
+        if (Files.isReadable(cacheFile)) {
+            try {
+                cachedResults = objectMapper.readValue(cacheFile.toFile(), CACHE_TYPE);
+            } catch (IOException e) {
+                System.err.println("Ignoring unreadable cache file " + cacheFile + ": " + e.getMessage());
+            }
+        }
+
+        HarCorpusAnalyzer analyzer = new HarCorpusAnalyzer(corpusDir, cachedResults);
+
+        long start = System.nanoTime();
+        Map<String, HarFileResult> results = analyzer.analyze(threadsSpec.value(options));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        // write the cache to a temporary file first, so an interrupted run cannot corrupt it
+        Path tempCacheFile = Files.createTempFile(cacheFile.toAbsolutePath().getParent(), CACHE_FILE_NAME, ".tmp");
+        objectMapper.writeValue(tempCacheFile.toFile(), results);
+        Files.move(tempCacheFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(outputFile.toFile(), aggregate(results));
+
+        System.out.println(String.format("Analyzed %d HAR files (%d read, %d unchanged) in %d ms. Statistics written to %s",
+                results.size(), analyzer.getAnalyzedFileCount(), analyzer.getCachedFileCount(), elapsedMillis, outputFile.toAbsolutePath()));
+    }
+
+    /**
+     * Analyzes each HAR in the corpus, reusing the cached results of unchanged files.
+     *
+     * @param parallelism number of HARs to analyze in parallel
+     * @return the result for each HAR, keyed by path relative to the corpus directory
+     * @throws IOException if the corpus directory cannot be read
+     */
+    public Map<String, HarFileResult> analyze(int parallelism) throws IOException {
+        final List<Path> harFiles = new ArrayList<>();
+
+        Files.walkFileTree(corpusDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                String fileName = file.getFileName().toString().toLowerCase(Locale.US);
+                if (attrs.isRegularFile() && (fileName.endsWith(".har") || fileName.endsWith(".har.gz"))) {
+                    harFiles.add(file);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Map<String, HarFileResult> results = new ConcurrentHashMap<>();
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new AnalyzeFilesTask(harFiles, results));
+        } finally {
+            pool.shutdown();
+        }
+
+        return new TreeMap<>(results);
+    }
+
+    /**
+     * @return number of HARs read during the last analysis
+     */
+    public int getAnalyzedFileCount() {
+        return analyzedFileCount.get();
+    }
+
+    /**
+     * @return number of HARs whose cached result was reused during the last analysis
+     */
+    public int getCachedFileCount() {
+        return cachedFileCount.get();
+    }
+
+    private HarFileResult analyzeFile(Path file, String relativePath) throws IOException {
+        long size = Files.size(file);
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+
+        HarFileResult cachedResult = cachedResults.get(relativePath);
+        if (cachedResult != null && cachedResult.getSize() == size && cachedResult.getLastModified() == lastModified) {
+            cachedFileCount.incrementAndGet();
+            return cachedResult;
+        }
+
+        String sha256 = com.google.common.io.Files.hash(file.toFile(), Hashing.sha256()).toString();
+        if (cachedResult != null && sha256.equals(cachedResult.getSha256())) {
+            cachedResult.setSize(size);
+            cachedResult.setLastModified(lastModified);
+
+            cachedFileCount.incrementAndGet();
+            return cachedResult;
+        }
+
+        HarFileResult result = new HarFileResult();
+        result.setSha256(sha256);
+        result.setSize(size);
+        result.setLastModified(lastModified);
+
+        // categorize by the directories the file is in: (category)/(device)/(file)
+        Path relative = corpusDir.relativize(file);
+        result.setCategory(relative.getNameCount() > 1 ? relative.getName(0).toString() : "");
+        result.setDevice(relative.getNameCount() > 2 ? capitalize(relative.getName(1).toString()) : "");
+
+        try {
+            HarPageAnalyzer pageAnalyzer = new HarPageAnalyzer();
+            List<HarPage> pages = harReader.readEntries(file.toFile(), pageAnalyzer);
+
+            if (pages.isEmpty()) {
+                result.setError("HAR does not contain any pages");
+            } else {
+                HarPageSummary summary = pageAnalyzer.getPageSummaries(pages.subList(0, 1)).get(0);
+
+                Map<String, Object> summaryFields = objectMapper.convertValue(summary, new TypeReference<Map<String, Object>>() {});
+                for (Map.Entry<String, Object> field : summaryFields.entrySet()) {
+                    if (field.getValue() instanceof Number) {
+                        result.getMetrics().put(field.getKey(), ((Number) field.getValue()).longValue());
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            result.setError(e.toString());
+        }
+
+        analyzedFileCount.incrementAndGet();
+
+        return result;
+    }
+
+    /**
+     * Aggregates the results by category and device. For each metric, reports the number of HARs the metric was available
+     * for and the metric's mean, minimum, maximum, median, and 90th percentile. Negative values, like the main HTML size of a
+     * HAR without a main HTML document, are not included.
+     *
+     * @param results result of each HAR
+     * @return the aggregate statistics, as a tree of maps
+     */
+    static Map<String, Object> aggregate(Map<String, HarFileResult> results) {
+        Map<String, Map<String, List<HarFileResult>>> resultsByCategory = new TreeMap<>();
+        int failedFileCount = 0;
+
+        for (HarFileResult result : results.values()) {
+            Map<String, List<HarFileResult>> resultsByDevice = resultsByCategory.get(result.getCategory());
+            if (resultsByDevice == null) {
+                resultsByDevice = new TreeMap<>();
+                resultsByCategory.put(result.getCategory(), resultsByDevice);
+            }
+
+            List<HarFileResult> deviceResults = resultsByDevice.get(result.getDevice());
+            if (deviceResults == null) {
+                deviceResults = new ArrayList<>();
+                resultsByDevice.put(result.getDevice(), deviceResults);
+            }
+
+            deviceResults.add(result);
+
+            if (result.getError() != null) {
+                failedFileCount++;
+            }
+        }
+
+        Map<String, Object> categories = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, List<HarFileResult>>> category : resultsByCategory.entrySet()) {
+            Map<String, Object> devices = new LinkedHashMap<>();
+            for (Map.Entry<String, List<HarFileResult>> device : category.getValue().entrySet()) {
+                devices.put(device.getKey(), aggregateFiles(device.getValue()));
+            }
+
+            categories.put(category.getKey(), devices);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("files", results.size());
+        report.put("failed", failedFileCount);
+        report.put("categories", categories);
+
+        return report;
+    }
+
+    private static Map<String, Object> aggregateFiles(List<HarFileResult> results) {
+        Map<String, List<Long>> valuesByMetric = new LinkedHashMap<>();
+        int failedFileCount = 0;
+
+        for (HarFileResult result : results) {
+            if (result.getError() != null) {
+                failedFileCount++;
+                continue;
+            }
+
+            for (Map.Entry<String, Long> metric : result.getMetrics().entrySet()) {
+                List<Long> values = valuesByMetric.get(metric.getKey());
+                if (values == null) {
+                    values = new ArrayList<>();
+                    valuesByMetric.put(metric.getKey(), values);
+                }
+
+                if (metric.getValue() >= 0) {
+                    values.add(metric.getValue());
+                }
+            }
+        }
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Long>> metric : valuesByMetric.entrySet()) {
+            List<Long> values = metric.getValue();
+            Collections.sort(values);
+
+            long sum = 0;
+            for (long value : values) {
+                sum += value;
+            }
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("count", values.size());
+            stats.put("mean", values.isEmpty() ? 0 : (double) sum / values.size());
+            stats.put("min", values.isEmpty() ? 0 : values.get(0));
+            stats.put("p50", percentile(values, 50));
+            stats.put("p90", percentile(values, 90));
+            stats.put("max", values.isEmpty() ? 0 : values.get(values.size() - 1));
+
+            metrics.put(metric.getKey(), stats);
+        }
+
+        Map<String, Object> aggregate = new LinkedHashMap<>();
+        aggregate.put("files", results.size());
+        aggregate.put("failed", failedFileCount);
+        aggregate.put("metrics", metrics);
+
+        return aggregate;
+    }
+
+    /**
+     * Returns the percentile of the sorted values, using the nearest-rank method.
+     */
+    static long percentile(List<Long> sortedValues, int percentile) {
+        if (sortedValues.isEmpty()) {
+            return 0;
+        }
+
+        int rank = (int) Math.ceil(percentile / 100.0 * sortedValues.size());
+
+        return sortedValues.get(Math.max(rank, 1) - 1);
+    }
+
+    /**
+     * Capitalizes the device directory name, so that e.g. "desktop" and "Desktop" directories are aggregated together.
+     */
+    private static String capitalize(String name) {
+        if (name.isEmpty()) {
+            return name;
+        }
+
+        return name.substring(0, 1).toUpperCase(Locale.US) + name.substring(1).toLowerCase(Locale.US);
+    }
+
+    /**
+     * Analyzes a list of files by recursively splitting it in half, so that idle threads in the pool can steal the analysis
+     * of the remaining files.
+     */
+    private class AnalyzeFilesTask extends RecursiveAction {
+        private final List<Path> files;
+        private final Map<String, HarFileResult> results;
+
+        AnalyzeFilesTask(List<Path> files, Map<String, HarFileResult> results) {
+            this.files = files;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            if (files.size() > 1) {
+                int middle = files.size() / 2;
+                invokeAll(new AnalyzeFilesTask(files.subList(0, middle), results),
+                        new AnalyzeFilesTask(files.subList(middle, files.size()), results));
+                return;
+            }
+
+            for (Path file : files) {
+                String relativePath = corpusDir.relativize(file).toString().replace(File.separatorChar, '/');
+
+                try {
+                    results.put(relativePath, analyzeFile(file, relativePath));
+                } catch (IOException e) {
+                    System.err.println("Unable to read " + file + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+}
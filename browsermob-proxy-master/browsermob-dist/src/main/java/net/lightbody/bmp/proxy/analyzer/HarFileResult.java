@@ -0,0 +1,94 @@
+package net.lightbody.bmp.proxy.analyzer;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The analysis of a single HAR file: the summary metrics of the HAR's first page, or the error that prevented the HAR from
+ * being read. Results are cached between runs, keyed by the file's path relative to the corpus directory, and reused as long as
+ * the file's hash has not changed.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class HarFileResult {
+    private String sha256;
+    private long size;
+    private long lastModified;
+    private String category;
+    private String device;
+    private Map<String, Long> metrics = new LinkedHashMap<>();
+    private String error;
+
+    /**
+     * @return hex-encoded SHA-256 hash of the file's contents
+     */
+    public String getSha256() {
+        return sha256;
+    }
+
+    public void setSha256(String sha256) {
+        this.sha256 = sha256;
+    }
+
+    /**
+     * @return size of the file when it was analyzed. Used with the last modified time to avoid hashing unchanged files.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    /**
+     * @return last modified time of the file when it was analyzed
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    public String getDevice() {
+        return device;
+    }
+
+    public void setDevice(String device) {
+        this.device = device;
+    }
+
+    /**
+     * @return summary metrics of the HAR's first page, keyed by the name of the metric in
+     *         {@link net.lightbody.bmp.core.har.HarPageSummary}; empty if the HAR could not be read
+     */
+    public Map<String, Long> getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(Map<String, Long> metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the reason the HAR could not be read, or null if it was analyzed successfully
+     */
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
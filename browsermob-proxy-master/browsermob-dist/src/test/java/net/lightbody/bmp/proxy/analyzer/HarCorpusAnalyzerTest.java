@@ -0,0 +1,189 @@
+package net.lightbody.bmp.proxy.analyzer;
+
+import net.lightbody.bmp.core.har.Har;
+import net.lightbody.bmp.core.har.HarEntry;
+import net.lightbody.bmp.core.har.HarLog;
+import net.lightbody.bmp.core.har.HarPage;
+import net.lightbody.bmp.core.har.HarRequest;
+import net.lightbody.bmp.core.har.HarResponse;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class HarCorpusAnalyzerTest {
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    @Test
+    public void testCorpusAnalyzedAndCachedResultsReused() throws IOException {
+        Path corpus = tmpDir.getRoot().toPath();
+
+        writeHar(corpus.resolve("Arts/Desktop/a.har"), 1);
+        writeHar(corpus.resolve("Arts/desktop/b.har"), 2);
+        writeHar(corpus.resolve("Arts/Mobile/c.har.gz"), 3);
+        writeHar(corpus.resolve("top.har"), 1);
+        writeFile(corpus.resolve("News/Desktop/broken.har"), "not a HAR");
+        writeFile(corpus.resolve("News/Desktop/empty.har"), "{\"log\":{\"version\":\"1.2\",\"pages\":[],\"entries\":[]}}");
+        writeFile(corpus.resolve("News/Desktop/notes.txt"), "not analyzed");
+
+        HarCorpusAnalyzer firstRun = new HarCorpusAnalyzer(corpus, Collections.<String, HarFileResult>emptyMap());
+        Map<String, HarFileResult> firstResults = firstRun.analyze(2);
+
+        assertEquals(Arrays.asList("Arts/Desktop/a.har", "Arts/Mobile/c.har.gz", "Arts/desktop/b.har", "News/Desktop/broken.har",
+                "News/Desktop/empty.har", "top.har"), new ArrayList<>(firstResults.keySet()));
+        assertEquals(6, firstRun.getAnalyzedFileCount());
+        assertEquals(0, firstRun.getCachedFileCount());
+
+        // the category and device are derived from the path, and device directories are grouped regardless of case
+        HarFileResult b = firstResults.get("Arts/desktop/b.har");
+        assertEquals("Arts", b.getCategory());
+        assertEquals("Desktop", b.getDevice());
+        assertEquals(Long.valueOf(200L), b.getMetrics().get("pageSize"));
+        assertEquals(Long.valueOf(2L), b.getMetrics().get("entryCount"));
+        assertNull(b.getError());
+
+        assertEquals("", firstResults.get("top.har").getCategory());
+        assertEquals("", firstResults.get("top.har").getDevice());
+        assertEquals("Mobile", firstResults.get("Arts/Mobile/c.har.gz").getDevice());
+        assertEquals(Long.valueOf(300L), firstResults.get("Arts/Mobile/c.har.gz").getMetrics().get("pageSize"));
+
+        assertNotNull(firstResults.get("News/Desktop/broken.har").getError());
+        assertEquals("HAR does not contain any pages", firstResults.get("News/Desktop/empty.har").getError());
+
+        Map<String, Object> report = HarCorpusAnalyzer.aggregate(firstResults);
+        assertEquals(6, report.get("files"));
+        assertEquals(2, report.get("failed"));
+
+        Map<String, Object> categories = getMap(report, "categories");
+        assertEquals(Arrays.asList("", "Arts", "News"), new ArrayList<>(categories.keySet()));
+        assertEquals(Arrays.asList("Desktop", "Mobile"), new ArrayList<>(getMap(categories, "Arts").keySet()));
+
+        Map<String, Object> artsDesktop = getMap(getMap(categories, "Arts"), "Desktop");
+        assertEquals(2, artsDesktop.get("files"));
+        assertEquals(0, artsDesktop.get("failed"));
+        assertEquals(stats(2, 150d, 100L, 100L, 200L, 200L), getMap(artsDesktop, "metrics").get("pageSize"));
+
+        Map<String, Object> newsDesktop = getMap(getMap(categories, "News"), "Desktop");
+        assertEquals(2, newsDesktop.get("failed"));
+        assertEquals(Collections.emptyMap(), newsDesktop.get("metrics"));
+
+        // change one file, and touch another without changing its contents
+        Path changed = corpus.resolve("Arts/desktop/b.har");
+        writeHar(changed, 4);
+        Files.setLastModifiedTime(changed, FileTime.fromMillis(Files.getLastModifiedTime(changed).toMillis() + 5000));
+
+        Path touched = corpus.resolve("Arts/Desktop/a.har");
+        long touchedLastModified = Files.getLastModifiedTime(touched).toMillis() + 5000;
+        Files.setLastModifiedTime(touched, FileTime.fromMillis(touchedLastModified));
+
+        HarCorpusAnalyzer secondRun = new HarCorpusAnalyzer(corpus, firstResults);
+        Map<String, HarFileResult> secondResults = secondRun.analyze(2);
+
+        assertEquals("Expected only the changed file to be read", 1, secondRun.getAnalyzedFileCount());
+        assertEquals("Expected the cached results of unchanged and touched files to be reused", 5, secondRun.getCachedFileCount());
+
+        assertEquals(Long.valueOf(400L), secondResults.get("Arts/desktop/b.har").getMetrics().get("pageSize"));
+        assertNotEquals(b.getSha256(), secondResults.get("Arts/desktop/b.har").getSha256());
+
+        // the touched file's cached result is updated, so the file is not hashed again on the next run
+        assertEquals(touchedLastModified, secondResults.get("Arts/Desktop/a.har").getLastModified());
+        assertEquals(Long.valueOf(100L), secondResults.get("Arts/Desktop/a.har").getMetrics().get("pageSize"));
+
+        Map<String, Object> artsDesktopAfterChange = getMap(getMap(getMap(HarCorpusAnalyzer.aggregate(secondResults), "categories"), "Arts"), "Desktop");
+        assertEquals(stats(2, 250d, 100L, 100L, 400L, 400L), getMap(artsDesktopAfterChange, "metrics").get("pageSize"));
+    }
+
+    @Test
+    public void testNegativeMetricsExcludedFromAggregates() {
+        Map<String, HarFileResult> results = new HashMap<>();
+        results.put("a.har", createResult("mainHtmlSize", 500L));
+        results.put("b.har", createResult("mainHtmlSize", -1L));
+
+        Map<String, Object> artsDesktop = getMap(getMap(getMap(HarCorpusAnalyzer.aggregate(results), "categories"), "Arts"), "Desktop");
+
+        assertEquals(stats(1, 500d, 500L, 500L, 500L, 500L), getMap(artsDesktop, "metrics").get("mainHtmlSize"));
+    }
+
+    @Test
+    public void testPercentile() {
+        List<Long> values = Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L);
+
+        assertEquals(5L, HarCorpusAnalyzer.percentile(values, 50));
+        assertEquals(9L, HarCorpusAnalyzer.percentile(values, 90));
+        assertEquals(10L, HarCorpusAnalyzer.percentile(values, 100));
+        assertEquals(1L, HarCorpusAnalyzer.percentile(values, 0));
+        assertEquals(7L, HarCorpusAnalyzer.percentile(Collections.singletonList(7L), 90));
+        assertEquals(0L, HarCorpusAnalyzer.percentile(Collections.<Long>emptyList(), 50));
+    }
+
+    /**
+     * Writes a HAR with a single page and the specified number of entries, each with a 100 byte body.
+     */
+    private static void writeHar(Path file, int numEntries) throws IOException {
+        Files.createDirectories(file.getParent());
+
+        HarLog log = new HarLog();
+        log.addPage(new HarPage("page 1", "Page 1"));
+
+        for (int i = 0; i < numEntries; i++) {
+            HarEntry entry = new HarEntry("page 1");
+            entry.setStartedDateTimeMillis(1500000000000L + i);
+            entry.setRequest(new HarRequest("GET", "http://www.example.com/resource/" + i, "HTTP/1.1"));
+            entry.setResponse(new HarResponse(200, "OK", "HTTP/1.1"));
+            entry.getResponse().getContent().setMimeType("text/plain");
+            entry.getResponse().setBodySize(100);
+            log.addEntry(entry);
+        }
+
+        new Har(log).writeTo(file.toFile());
+    }
+
+    private static void writeFile(Path file, String contents) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static HarFileResult createResult(String metric, long value) {
+        HarFileResult result = new HarFileResult();
+        result.setCategory("Arts");
+        result.setDevice("Desktop");
+        result.getMetrics().put(metric, value);
+
+        return result;
+    }
+
+    private static Map<String, Object> stats(int count, double mean, long min, long p50, long p90, long max) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", count);
+        stats.put("mean", mean);
+        stats.put("min", min);
+        stats.put("p50", p50);
+        stats.put("p90", p90);
+        stats.put("max", max);
+
+        return stats;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> getMap(Map<String, Object> map, String key) {
+        return (Map<String, Object>) map.get(key);
+    }
+}
@@ -6,6 +6,7 @@ import net.lightbody.bmp.BrowserMobProxy;
 import net.lightbody.bmp.client.ClientUtil;
 import net.lightbody.bmp.core.har.Har;
 import net.lightbody.bmp.core.har.HarEntry;
+import net.lightbody.bmp.core.har.HarEntryBatch;
 import net.lightbody.bmp.core.har.HarLog;
 import net.lightbody.bmp.core.har.HarNameVersion;
 import net.lightbody.bmp.core.har.HarPage;
@@ -428,6 +429,33 @@ public class ProxyServer implements LegacyProxyServer, BrowserMobProxy {
         }
     }
 
+    @Override
+    public void setHarMaxContentSize(long maxContentSize) {
+        LOG.warn("The legacy ProxyServer implementation does not support limiting the captured content size");
+    }
+
+    @Override
+    public long getHarMaxContentSize() {
+        return 0L;
+    }
+
+    @Override
+    public void setHarContentBudget(long contentBudget) {
+        LOG.warn("The legacy ProxyServer implementation does not support HAR content budgets");
+    }
+
+    @Override
+    public long getHarContentBudget() {
+        return 0L;
+    }
+
+    @Override
+    public HarEntryBatch getHarEntriesSince(long cursor) {
+        LOG.warn("The legacy ProxyServer implementation does not support polling HAR entries with cursors");
+
+        return null;
+    }
+
     @Override
     public Har newPage() {
         return newPage(null);
@@ -527,7 +555,7 @@ public class ProxyServer implements LegacyProxyServer, BrowserMobProxy {
             return;
         }
 
-        currentPage.getPageTimings().setOnLoad(new Date().getTime() - currentPage.getStartedDateTime().getTime());
+        currentPage.getPageTimings().setOnLoad(System.currentTimeMillis() - currentPage.getStartedDateTimeMillis());
         client.setHarPageRef(null);
         currentPage = null;
     }
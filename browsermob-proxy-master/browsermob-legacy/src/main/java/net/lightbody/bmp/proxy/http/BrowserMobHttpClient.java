@@ -576,7 +576,7 @@ public class BrowserMobHttpClient {
     private BadURIException reportBadURI(String url, String method, URISyntaxException cause) {
         if (this.har != null && harPageRef != null) {
             HarEntry entry = new HarEntry(harPageRef);
-            entry.setStartedDateTime(new Date());
+            entry.setStartedDateTimeMillis(System.currentTimeMillis());
             entry.setRequest(new HarRequest(method, url, "HTTP/1.1"));
             entry.setResponse(new HarResponse(-998, "Bad URI", "HTTP/1.1"));
             har.getLog().addEntry(entry);
@@ -702,7 +702,7 @@ public class BrowserMobHttpClient {
         // link the object up now, before we make the request, so that if we get cut off (ie: favicon.ico request and browser shuts down)
         // we still have the attempt associated, even if we never got a response
         HarEntry entry = new HarEntry(harPageRef);
-        entry.setStartedDateTime(new Date());
+        entry.setStartedDateTimeMillis(System.currentTimeMillis());
 
         // clear out any connection-related information so that it's not stale from previous use of this thread.
         RequestInfo.clear(url, entry);
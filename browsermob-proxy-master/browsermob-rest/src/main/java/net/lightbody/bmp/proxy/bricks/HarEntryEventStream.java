@@ -0,0 +1,43 @@
+package net.lightbody.bmp.proxy.bricks;
+
+import net.lightbody.bmp.BrowserMobProxyServer;
+import net.lightbody.bmp.core.har.HarEntrySubscription;
+
+/**
+ * A stream of completed HAR entries from a proxy, sent to a REST client as Server-Sent Events by the
+ * {@link HarEntryEventStreamTransport}. The subscription is registered with the proxy when the stream is created, and removed
+ * when the stream ends.
+ */
+public class HarEntryEventStream {
+    private final BrowserMobProxyServer proxy;
+    private final HarEntrySubscription subscription;
+
+    public HarEntryEventStream(BrowserMobProxyServer proxy, int queueCapacity) {
+        this.proxy = proxy;
+        this.subscription = new HarEntrySubscription(queueCapacity);
+
+        proxy.addHarEntryListener(subscription);
+    }
+
+    public BrowserMobProxyServer getProxy() {
+        return proxy;
+    }
+
+    public HarEntrySubscription getSubscription() {
+        return subscription;
+    }
+
+    /**
+     * @return true while the proxy is running
+     */
+    public boolean isOpen() {
+        return proxy.isStarted() && !proxy.isStopped();
+    }
+
+    /**
+     * Removes this stream's subscription from the proxy.
+     */
+    public void close() {
+        proxy.removeHarEntryListener(subscription);
+    }
+}
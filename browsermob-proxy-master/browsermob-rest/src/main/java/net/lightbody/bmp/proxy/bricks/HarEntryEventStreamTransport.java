@@ -0,0 +1,107 @@
+package net.lightbody.bmp.proxy.bricks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.TypeLiteral;
+import com.google.sitebricks.client.Transport;
+import net.lightbody.bmp.core.har.HarEntry;
+import net.lightbody.bmp.core.har.HarEntrySubscription;
+import net.lightbody.bmp.core.har.HarFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A sitebricks transport that sends a {@link HarEntryEventStream} to the client as
+ * <a href="https://html.spec.whatwg.org/multipage/server-sent-events.html">Server-Sent Events</a>. Each completed entry is sent
+ * as an "entry" event whose id is the entry's sequence number and whose data is the entry's JSON. If the client falls behind
+ * and entries are dropped from its subscription queue, a "dropped" event reports the number of entries dropped. A comment is
+ * sent when no entries are completed for a while, so the client can detect a broken connection.
+ * <p/>
+ * The stream ends when the client disconnects or the proxy is stopped. Since the stream is written on the request thread,
+ * entries are serialized off the proxy's event loop, and a slow client only delays its own stream.
+ */
+public class HarEntryEventStreamTransport implements Transport {
+    private static final Logger LOG = LoggerFactory.getLogger(HarEntryEventStreamTransport.class);
+
+    public static final String TEXT_EVENT_STREAM = "text/event-stream";
+
+    /**
+     * Number of seconds without any completed entries after which a keep-alive comment is sent.
+     */
+    private static final int KEEP_ALIVE_INTERVAL_SECONDS = 15;
+
+    private final ObjectMapper objectMapper = StreamingHarTransport.newObjectMapper(HarFormat.JSON);
+
+    @Override
+    public <T> T in(InputStream in, Class<T> type) throws IOException {
+        throw new UnsupportedOperationException("Event streams cannot be read");
+    }
+
+    @Override
+    public <T> T in(InputStream in, TypeLiteral<T> type) throws IOException {
+        throw new UnsupportedOperationException("Event streams cannot be read");
+    }
+
+    @Override
+    public <T> void out(OutputStream out, Class<T> type, T data) throws IOException {
+        if (!(data instanceof HarEntryEventStream)) {
+            throw new IllegalArgumentException("Only HAR entry event streams can be sent as Server-Sent Events");
+        }
+
+        HarEntryEventStream stream = (HarEntryEventStream) data;
+        HarEntrySubscription subscription = stream.getSubscription();
+
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        long reportedDroppedEntries = 0;
+
+        try {
+            // send something immediately, so the client knows the stream is open
+            writer.write(": connected\n\n");
+            writer.flush();
+
+            while (stream.isOpen()) {
+                HarEntry entry = subscription.poll(KEEP_ALIVE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+                long droppedEntries = subscription.getDroppedEntryCount();
+                if (droppedEntries > reportedDroppedEntries) {
+                    writer.write("event: dropped\ndata: {\"dropped\":" + (droppedEntries - reportedDroppedEntries)
+                            + ",\"totalDropped\":" + droppedEntries + "}\n\n");
+                    reportedDroppedEntries = droppedEntries;
+                }
+
+                if (entry != null) {
+                    writer.write("event: entry\nid: " + entry.getSequence() + "\ndata: ");
+                    writer.write(objectMapper.writeValueAsString(entry));
+                    writer.write("\n\n");
+                } else {
+                    writer.write(": keep-alive\n\n");
+                }
+
+                // only flush when no more entries are waiting, so bursts of entries are sent together
+                if (subscription.getQueuedEntryCount() == 0) {
+                    writer.flush();
+                }
+            }
+
+            writer.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOG.debug("HAR entry event stream closed by client", e);
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Override
+    public String contentType() {
+        return TEXT_EVENT_STREAM;
+    }
+}
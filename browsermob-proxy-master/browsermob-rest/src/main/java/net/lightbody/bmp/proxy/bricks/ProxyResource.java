@@ -15,6 +15,15 @@ import com.google.sitebricks.http.Put;
 import net.lightbody.bmp.BrowserMobProxy;
 import net.lightbody.bmp.BrowserMobProxyServer;
 import net.lightbody.bmp.core.har.Har;
+import net.lightbody.bmp.core.har.HarCapacity;
+import net.lightbody.bmp.core.har.HarCaptureBudget;
+import net.lightbody.bmp.core.har.HarEntryBatch;
+import net.lightbody.bmp.core.har.HarEntryIndex;
+import net.lightbody.bmp.core.har.HarFormat;
+import net.lightbody.bmp.core.har.HarIndexDimension;
+import net.lightbody.bmp.core.har.HarIndexMetric;
+import net.lightbody.bmp.core.har.HarIndexQuery;
+import net.lightbody.bmp.core.har.HarPageSummary;
 import net.lightbody.bmp.exception.ProxyExistsException;
 import net.lightbody.bmp.exception.ProxyPortsExhaustedException;
 import net.lightbody.bmp.exception.UnsupportedCharsetException;
@@ -45,8 +54,11 @@ import java.io.StringWriter;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @At("/proxy")
@@ -54,6 +66,16 @@ import java.util.Map;
 public class ProxyResource {
     private static final Logger LOG = LoggerFactory.getLogger(ProxyResource.class);
 
+    /**
+     * Number of completed entries queued for a HAR entry stream client before entries are dropped, when not specified.
+     */
+    private static final int DEFAULT_HAR_STREAM_QUEUE_SIZE = 1000;
+
+    /**
+     * Number of entries returned by HAR index top entry queries, when not specified.
+     */
+    private static final int DEFAULT_HAR_INDEX_TOP_LIMIT = 10;
+
     private final ProxyManager proxyManager;
 
     @Inject
@@ -122,15 +144,241 @@ public class ProxyResource {
 
     @Get
     @At("/:port/har")
-    public Reply<?> getHar(@Named("port") int port) {
+    public Reply<?> getHar(@Named("port") int port, Request<String> request) {
         LegacyProxyServer proxy = proxyManager.get(port);
         if (proxy == null) {
             return Reply.saying().notFound();
         }
 
+        HarFormat format = getRequestedHarFormat(request);
+        if (format == null) {
+            return Reply.saying().badRequest();
+        }
+
         Har har = proxy.getHar();
 
-        return Reply.with(har).as(Json.class);
+        // stream the HAR to the client instead of serializing it in memory first
+        return Reply.with(har).as(StreamingHarTransport.forFormat(format));
+    }
+
+    @Get
+    @At("/:port/har/entries")
+    public Reply<?> getHarEntries(@Named("port") int port, Request<String> request) {
+        LegacyProxyServer proxy = proxyManager.get(port);
+        if (proxy == null) {
+            return Reply.saying().notFound();
+        }
+
+        HarFormat format = getRequestedHarFormat(request);
+        if (format == null) {
+            return Reply.saying().badRequest();
+        }
+
+        String since = request.param("since");
+        long cursor;
+        try {
+            cursor = since == null ? 0L : Long.parseLong(since);
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid HAR entry cursor specified", e);
+            return Reply.saying().badRequest();
+        }
+
+        HarEntryBatch entries = null;
+        if (proxy instanceof BrowserMobProxy) {
+            entries = ((BrowserMobProxy) proxy).getHarEntriesSince(cursor);
+        }
+
+        if (entries == null) {
+            return Reply.saying().noContent();
+        }
+
+        return Reply.with(entries).as(StreamingHarTransport.forFormat(format));
+    }
+
+    @Get
+    @At("/:port/har/stream")
+    public Reply<?> streamHarEntries(@Named("port") int port, Request<String> request) {
+        LegacyProxyServer proxy = proxyManager.get(port);
+        if (proxy == null) {
+            return Reply.saying().notFound();
+        }
+
+        if (!(proxy instanceof BrowserMobProxyServer)) {
+            LOG.warn("HAR entry streams are only supported by BrowserMobProxyServer");
+            return Reply.saying().badRequest();
+        }
+
+        String queueSizeParam = request.param("queueSize");
+        int queueSize;
+        try {
+            queueSize = queueSizeParam == null ? DEFAULT_HAR_STREAM_QUEUE_SIZE : Integer.parseInt(queueSizeParam);
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid HAR stream queue size specified", e);
+            return Reply.saying().badRequest();
+        }
+
+        if (queueSize <= 0) {
+            LOG.warn("Invalid HAR stream queue size specified: {}", queueSize);
+            return Reply.saying().badRequest();
+        }
+
+        HarEntryEventStream stream = new HarEntryEventStream((BrowserMobProxyServer) proxy, queueSize);
+
+        return Reply.with(stream).as(HarEntryEventStreamTransport.class);
+    }
+
+    @Get
+    @At("/:port/har/index/stats")
+    public Reply<?> getHarIndexStats(@Named("port") int port, Request<String> request) {
+        LegacyProxyServer proxy = proxyManager.get(port);
+        if (proxy == null) {
+            return Reply.saying().notFound();
+        }
+
+        if (!(proxy instanceof BrowserMobProxyServer)) {
+            LOG.warn("HAR entry index queries are only supported by BrowserMobProxyServer");
+            return Reply.saying().badRequest();
+        }
+
+        HarEntryIndex index = ((BrowserMobProxyServer) proxy).getHarEntryIndex();
+        if (index == null) {
+            return Reply.saying().noContent();
+        }
+
+        HarIndexMetric metric = getRequestedHarIndexMetric(request, HarIndexMetric.TIME);
+        HarIndexQuery query = getRequestedHarIndexQuery(request);
+        if (metric == null || query == null) {
+            return Reply.saying().badRequest();
+        }
+
+        String groupBy = request.param("groupBy");
+        if (groupBy == null) {
+            return Reply.with(index.stats(query, metric)).as(Json.class);
+        }
+
+        HarIndexDimension dimension = HarIndexDimension.forName(groupBy);
+        if (dimension == null) {
+            LOG.warn("Unsupported HAR index dimension specified: {}", groupBy);
+            return Reply.saying().badRequest();
+        }
+
+        return Reply.with(index.statsBy(query, metric, dimension)).as(Json.class);
+    }
+
+    @Get
+    @At("/:port/har/index/top")
+    public Reply<?> getHarIndexTopEntries(@Named("port") int port, Request<String> request) {
+        LegacyProxyServer proxy = proxyManager.get(port);
+        if (proxy == null) {
+            return Reply.saying().notFound();
+        }
+
+        if (!(proxy instanceof BrowserMobProxyServer)) {
+            LOG.warn("HAR entry index queries are only supported by BrowserMobProxyServer");
+            return Reply.saying().badRequest();
+        }
+
+        HarEntryIndex index = ((BrowserMobProxyServer) proxy).getHarEntryIndex();
+        if (index == null) {
+            return Reply.saying().noContent();
+        }
+
+        HarIndexMetric metric = getRequestedHarIndexMetric(request, HarIndexMetric.TIME);
+        HarIndexQuery query = getRequestedHarIndexQuery(request);
+        if (metric == null || query == null) {
+            return Reply.saying().badRequest();
+        }
+
+        String limitParam = request.param("limit");
+        int limit;
+        try {
+            limit = limitParam == null ? DEFAULT_HAR_INDEX_TOP_LIMIT : Integer.parseInt(limitParam);
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid HAR index limit specified", e);
+            return Reply.saying().badRequest();
+        }
+
+        return Reply.with(index.top(query, metric, limit)).as(Json.class);
+    }
+
+    @Get
+    @At("/:port/har/summary")
+    public Reply<?> getHarSummary(@Named("port") int port) {
+        LegacyProxyServer proxy = proxyManager.get(port);
+        if (proxy == null) {
+            return Reply.saying().notFound();
+        }
+
+        if (!(proxy instanceof BrowserMobProxyServer)) {
+            LOG.warn("HAR summaries are only supported by BrowserMobProxyServer");
+            return Reply.saying().badRequest();
+        }
+
+        List<HarPageSummary> pageSummaries = ((BrowserMobProxyServer) proxy).getHarPageSummaries();
+        if (pageSummaries == null) {
+            return Reply.saying().noContent();
+        }
+
+        return Reply.with(Collections.singletonMap("pages", pageSummaries)).as(Json.class);
+    }
+
+    @Get
+    @At("/:port/stats/filters")
+    public Reply<?> getFilterStatistics(@Named("port") int port) {
+        LegacyProxyServer proxy = proxyManager.get(port);
+        if (proxy == null) {
+            return Reply.saying().notFound();
+        }
+
+        if (!(proxy instanceof BrowserMobProxyServer)) {
+            LOG.warn("Filter statistics are only supported by BrowserMobProxyServer");
+            return Reply.saying().badRequest();
+        }
+
+        BrowserMobProxyServer browserMobProxy = (BrowserMobProxyServer) proxy;
+
+        Map<String, Object> filterStatistics = new LinkedHashMap<>();
+        filterStatistics.put("enabled", browserMobProxy.isFilterStatisticsEnabled());
+        filterStatistics.put("filters", browserMobProxy.getFilterStatistics());
+
+        return Reply.with(filterStatistics).as(Json.class);
+    }
+
+    @Put
+    @At("/:port/stats/filters")
+    public Reply<?> setFilterStatisticsEnabled(@Named("port") int port, Request<String> request) {
+        LegacyProxyServer proxy = proxyManager.get(port);
+        if (proxy == null) {
+            return Reply.saying().notFound();
+        }
+
+        if (!(proxy instanceof BrowserMobProxyServer)) {
+            LOG.warn("Filter statistics are only supported by BrowserMobProxyServer");
+            return Reply.saying().badRequest();
+        }
+
+        String enabled = request.param("enabled");
+        ((BrowserMobProxyServer) proxy).setFilterStatisticsEnabled(enabled == null || Boolean.parseBoolean(enabled));
+
+        return Reply.saying().ok();
+    }
+
+    @Delete
+    @At("/:port/stats/filters")
+    public Reply<?> resetFilterStatistics(@Named("port") int port) {
+        LegacyProxyServer proxy = proxyManager.get(port);
+        if (proxy == null) {
+            return Reply.saying().notFound();
+        }
+
+        if (!(proxy instanceof BrowserMobProxyServer)) {
+            LOG.warn("Filter statistics are only supported by BrowserMobProxyServer");
+            return Reply.saying().badRequest();
+        }
+
+        ((BrowserMobProxyServer) proxy).resetFilterStatistics();
+
+        return Reply.saying().ok();
     }
 
     @Put
@@ -141,6 +389,53 @@ public class ProxyResource {
             return Reply.saying().notFound();
         }
 
+        HarFormat format = getRequestedHarFormat(request);
+        if (format == null) {
+            return Reply.saying().badRequest();
+        }
+
+        if (proxy instanceof BrowserMobProxyServer) {
+            BrowserMobProxyServer browserMobProxyServer = (BrowserMobProxyServer) proxy;
+
+            // validate all of the HAR limits before applying any of them, and leave limits that were not specified unchanged
+            String maxEntries = request.param("maxEntries");
+            String maxRetainedBytes = request.param("maxRetainedBytes");
+            String evictionPolicy = request.param("evictionPolicy");
+            HarCapacity harCapacity = null;
+            if (maxEntries != null || maxRetainedBytes != null || evictionPolicy != null) {
+                HarCapacity currentCapacity = browserMobProxyServer.getHarCapacity();
+                try {
+                    harCapacity = new HarCapacity(
+                            maxEntries == null ? currentCapacity.getMaxEntries() : Integer.parseInt(maxEntries),
+                            maxRetainedBytes == null ? currentCapacity.getMaxRetainedBytes() : Long.parseLong(maxRetainedBytes),
+                            evictionPolicy == null ? currentCapacity.getEvictionPolicy() : HarCapacity.EvictionPolicy.valueOf(evictionPolicy.toUpperCase()));
+                } catch (IllegalArgumentException e) {
+                    // NumberFormatException is an IllegalArgumentException, so this also catches invalid numbers
+                    LOG.warn("Invalid HAR capacity specified", e);
+                    return Reply.saying().badRequest();
+                }
+            }
+
+            String maxContentSize = request.param("maxContentSize");
+            String contentBudget = request.param("contentBudget");
+            HarCaptureBudget harCaptureBudget;
+            try {
+                harCaptureBudget = new HarCaptureBudget(
+                        maxContentSize == null ? browserMobProxyServer.getHarMaxContentSize() : Long.parseLong(maxContentSize),
+                        contentBudget == null ? browserMobProxyServer.getHarContentBudget() : Long.parseLong(contentBudget));
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Invalid HAR content budget specified", e);
+                return Reply.saying().badRequest();
+            }
+
+            if (harCapacity != null) {
+                browserMobProxyServer.setHarCapacity(harCapacity);
+            }
+
+            browserMobProxyServer.setHarMaxContentSize(harCaptureBudget.getMaxContentSize());
+            browserMobProxyServer.setHarContentBudget(harCaptureBudget.getMaxTotalContentSize());
+        }
+
         String initialPageRef = request.param("initialPageRef");
         String initialPageTitle = request.param("initialPageTitle");
         Har oldHar = proxy.newHar(initialPageRef, initialPageTitle);
@@ -159,7 +454,7 @@ public class ProxyResource {
         }
 
         if (oldHar != null) {
-            return Reply.with(oldHar).as(Json.class);
+            return Reply.with(oldHar).as(StreamingHarTransport.forFormat(format));
         } else {
             return Reply.saying().noContent();
         }
@@ -772,4 +1067,66 @@ public class ProxyResource {
         return new String(entityBodyBytes.toByteArray(), charset);
     }
 
+    /**
+     * Returns the HAR format requested by the client. The format parameter takes precedence over the Accept header.
+     *
+     * @return the requested format, or null if the format parameter does not name a supported format
+     */
+    private HarFormat getRequestedHarFormat(Request<String> request) {
+        String formatParam = request.param("format");
+        if (formatParam != null) {
+            HarFormat format = HarFormat.forName(formatParam);
+            if (format == null) {
+                LOG.warn("Unsupported HAR format specified: {}", formatParam);
+            }
+
+            return format;
+        }
+
+        return HarFormat.fromAcceptHeader(request.header("Accept"));
+    }
+
+    /**
+     * Returns the HAR index metric named by the metric parameter of the request.
+     *
+     * @return the requested metric, the default metric if no metric is specified, or null if the metric is not supported
+     */
+    private HarIndexMetric getRequestedHarIndexMetric(Request<String> request, HarIndexMetric defaultMetric) {
+        String metricParam = request.param("metric");
+        if (metricParam == null) {
+            return defaultMetric;
+        }
+
+        HarIndexMetric metric = HarIndexMetric.forName(metricParam);
+        if (metric == null) {
+            LOG.warn("Unsupported HAR index metric specified: {}", metricParam);
+        }
+
+        return metric;
+    }
+
+    /**
+     * Returns a query for the HAR entry index, using the host, mimeType, status, and pageRef parameters of the request.
+     *
+     * @return the query, or null if the status parameter is not a number
+     */
+    private HarIndexQuery getRequestedHarIndexQuery(Request<String> request) {
+        HarIndexQuery query = new HarIndexQuery()
+                .host(request.param("host"))
+                .mimeType(request.param("mimeType"))
+                .pageRef(request.param("pageRef"));
+
+        String status = request.param("status");
+        if (status != null) {
+            try {
+                query.status(Integer.parseInt(status));
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid HAR index status specified", e);
+                return null;
+            }
+        }
+
+        return query;
+    }
+
 }
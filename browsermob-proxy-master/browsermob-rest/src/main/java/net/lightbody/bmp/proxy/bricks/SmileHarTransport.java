@@ -0,0 +1,23 @@
+package net.lightbody.bmp.proxy.bricks;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import net.lightbody.bmp.core.har.HarFormat;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Streams {@link net.lightbody.bmp.core.har.Har} objects to the HTTP response in the binary Smile format.
+ */
+public class SmileHarTransport extends StreamingHarTransport {
+    @Inject
+    public SmileHarTransport(Provider<HttpServletRequest> requestProvider, Provider<HttpServletResponse> responseProvider) {
+        super(newObjectMapper(HarFormat.SMILE), requestProvider, responseProvider);
+    }
+
+    @Override
+    public String contentType() {
+        return HarFormat.SMILE.getMediaType();
+    }
+}
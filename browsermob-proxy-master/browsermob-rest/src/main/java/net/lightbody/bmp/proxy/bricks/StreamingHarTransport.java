@@ -0,0 +1,104 @@
+package net.lightbody.bmp.proxy.bricks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.TypeLiteral;
+import com.google.sitebricks.client.transport.Json;
+import net.lightbody.bmp.core.har.Har;
+import net.lightbody.bmp.core.har.HarCompression;
+import net.lightbody.bmp.core.har.HarFormat;
+import net.lightbody.bmp.core.har.HarStreamingWriter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.TimeZone;
+
+/**
+ * A sitebricks JSON transport that streams {@link Har} objects directly to the HTTP response using a {@link HarStreamingWriter}.
+ * Since the servlet container does not know the length of the response in advance, the HAR is sent to the client
+ * using chunked transfer encoding as entries are serialized. Non-HAR objects are serialized normally.
+ * <p/>
+ * HARs in the binary {@link HarFormat}s are streamed by the {@link SmileHarTransport} and {@link CborHarTransport} subclasses.
+ * <p/>
+ * If the client's Accept-Encoding header allows it, the HAR is compressed as it is serialized (see {@link HarCompression}),
+ * rather than being serialized and then compressed.
+ */
+public class StreamingHarTransport extends Json {
+    private final ObjectMapper objectMapper;
+    private final HarStreamingWriter harWriter;
+
+    private final Provider<HttpServletRequest> requestProvider;
+    private final Provider<HttpServletResponse> responseProvider;
+
+    @Inject
+    public StreamingHarTransport(ObjectMapper objectMapper, Provider<HttpServletRequest> requestProvider, Provider<HttpServletResponse> responseProvider) {
+        this.objectMapper = objectMapper;
+        this.harWriter = new HarStreamingWriter(objectMapper);
+        this.requestProvider = requestProvider;
+        this.responseProvider = responseProvider;
+    }
+
+    /**
+     * Returns the transport that streams HARs in the specified format.
+     *
+     * @param format HAR format
+     * @return transport class for the format
+     */
+    public static Class<? extends StreamingHarTransport> forFormat(HarFormat format) {
+        switch (format) {
+            case SMILE:
+                return SmileHarTransport.class;
+
+            case CBOR:
+                return CborHarTransport.class;
+
+            default:
+                return StreamingHarTransport.class;
+        }
+    }
+
+    /**
+     * Creates an ObjectMapper for the specified format, configured the same way as the JSON ObjectMapper bound in
+     * {@link net.lightbody.bmp.proxy.guice.ConfigModule}.
+     */
+    protected static ObjectMapper newObjectMapper(HarFormat format) {
+        ObjectMapper objectMapper = format.newObjectMapper();
+        objectMapper.setTimeZone(TimeZone.getDefault());
+
+        return objectMapper;
+    }
+
+    @Override
+    public <T> T in(InputStream in, Class<T> type) throws IOException {
+        return objectMapper.readValue(in, type);
+    }
+
+    @Override
+    public <T> T in(InputStream in, TypeLiteral<T> type) throws IOException {
+        return objectMapper.readValue(in, objectMapper.getTypeFactory().constructType(type.getType()));
+    }
+
+    @Override
+    public <T> void out(OutputStream out, Class<T> type, T data) throws IOException {
+        if (data instanceof Har) {
+            HarCompression compression = HarCompression.fromAcceptEncodingHeader(requestProvider.get().getHeader("Accept-Encoding"));
+
+            // the response is not committed until the first compressed bytes are written, so the headers can still be set
+            HttpServletResponse response = responseProvider.get();
+            response.addHeader("Vary", "Accept-Encoding");
+            if (compression != HarCompression.NONE) {
+                response.setHeader("Content-Encoding", compression.getContentEncoding());
+            }
+
+            try (OutputStream compressedOut = compression.compress(out)) {
+                harWriter.write((Har) data, compressedOut);
+            }
+        } else {
+            objectMapper.writeValue(out, data);
+        }
+    }
+}
@@ -8,6 +8,7 @@ import com.google.inject.Provider;
 import joptsimple.ArgumentAcceptingOptionSpec;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
+import net.lightbody.bmp.core.har.HarFormat;
 import net.lightbody.bmp.proxy.LegacyProxyServer;
 
 import java.io.IOException;
@@ -106,11 +107,11 @@ public class ConfigModule implements Module {
 
         binder.bind(LegacyProxyServer.class).toProvider(LegacyProxyServerProvider.class);
 
-        // bind an ObjectMapper provider that uses the system time zone instead of UTC by default
+        // bind an ObjectMapper provider that uses the system time zone instead of UTC by default, and the HAR serializers
         binder.bind(ObjectMapper.class).toProvider(new Provider<ObjectMapper>() {
             @Override
             public ObjectMapper get() {
-                ObjectMapper objectMapper = new ObjectMapper();
+                ObjectMapper objectMapper = HarFormat.JSON.newObjectMapper();
 
                 objectMapper.setTimeZone(TimeZone.getDefault());
 
@@ -0,0 +1,76 @@
+package net.lightbody.bmp.proxy
+
+import com.google.sitebricks.headless.Reply
+import com.google.sitebricks.headless.Request
+import net.lightbody.bmp.BrowserMobProxyServer
+import net.lightbody.bmp.core.har.HarCapacity
+import net.lightbody.bmp.proxy.test.util.ProxyResourceTest
+import org.junit.Before
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.mockito.Mockito.mock
+import static org.mockito.Mockito.when
+
+class HarLimitsTest extends ProxyResourceTest {
+    BrowserMobProxyServer proxy
+
+    @Before
+    void setUpHarLimits() {
+        proxy = (BrowserMobProxyServer) proxyManager.get(proxyPort)
+        proxy.setHarCapacity(new HarCapacity(100, 5000L, HarCapacity.EvictionPolicy.EVICT_OLDEST_ENTRIES))
+        proxy.setHarMaxContentSize(1000L)
+        proxy.setHarContentBudget(10000L)
+    }
+
+    @Test
+    void testUnspecifiedLimitsUnchanged() {
+        proxyResource.newHar(proxyPort, createMockHarRequest([maxContentSize: "2000", maxEntries: "50"]))
+
+        assertEquals(2000L, proxy.harMaxContentSize)
+        assertEquals("Expected content budget to be unchanged", 10000L, proxy.harContentBudget)
+
+        assertEquals(50, proxy.harCapacity.maxEntries)
+        assertEquals("Expected retained bytes limit to be unchanged", 5000L, proxy.harCapacity.maxRetainedBytes)
+
+        proxyResource.newHar(proxyPort, createMockHarRequest([contentBudget: "20000"]))
+
+        assertEquals("Expected maximum content size to be unchanged", 2000L, proxy.harMaxContentSize)
+        assertEquals(20000L, proxy.harContentBudget)
+        assertEquals("Expected HAR capacity to persist across new HARs", 50, proxy.harCapacity.maxEntries)
+    }
+
+    @Test
+    void testInvalidFormatChangesNoLimits() {
+        assertRejectedWithoutChanges([format: "xml", maxContentSize: "2000", contentBudget: "20000", maxEntries: "50"])
+    }
+
+    @Test
+    void testInvalidLimitChangesNoLimits() {
+        assertRejectedWithoutChanges([maxContentSize: "2000", contentBudget: "-1", maxEntries: "50"])
+        assertRejectedWithoutChanges([maxContentSize: "2000", contentBudget: "20000", maxEntries: "many"])
+    }
+
+    private void assertRejectedWithoutChanges(Map<String, String> params) {
+        Reply<?> reply = proxyResource.newHar(proxyPort, createMockHarRequest(params))
+
+        assertEquals(400, reply.status)
+        assertEquals(1000L, proxy.harMaxContentSize)
+        assertEquals(10000L, proxy.harContentBudget)
+        assertEquals(100, proxy.harCapacity.maxEntries)
+        assertEquals(5000L, proxy.harCapacity.maxRetainedBytes)
+    }
+
+    private static Request<String> createMockHarRequest(Map<String, String> params) {
+        Request<String> mockRestRequest = mock(Request)
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            when(mockRestRequest.param(param.key)).thenReturn(param.value)
+        }
+
+        mockRestRequest
+    }
+
+    String[] getArgs() {
+        return ["--use-littleproxy", "true"]
+    }
+}